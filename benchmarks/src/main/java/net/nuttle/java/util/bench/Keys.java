@@ -0,0 +1,102 @@
+package net.nuttle.java.util.bench;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Utility methods that build the key sets used by the benchmarks.
+ * Keys are generated up front, so that the measured methods only pay for the
+ * collection operation itself and not for random number generation or boxing.
+ * @author dan
+ *
+ */
+public final class Keys {
+
+  /**
+   * Fixed seed, so that every implementation sees the same key order.
+   */
+  public static final long SEED = 42L;
+
+  private Keys() {
+  }
+
+  /**
+   * Returns the values 0 to size - 1 (which are all present in a populated collection)
+   * in a random order.
+   * @param size
+   * @return
+   */
+  public static Integer[] present(int size) {
+    Integer[] keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = Integer.valueOf(i);
+    }
+    shuffle(keys, new Random(SEED));
+    return keys;
+  }
+
+  /**
+   * Returns size values that are never present in a populated collection
+   * (they are all negative), in a random order.
+   * @param size
+   * @return
+   */
+  public static Integer[] absent(int size) {
+    Integer[] keys = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      keys[i] = Integer.valueOf(-1 - i);
+    }
+    shuffle(keys, new Random(SEED + 1));
+    return keys;
+  }
+
+  /**
+   * Returns the random positions 0 to size - 1, used to pick indexes in lists and bit sets.
+   * @param size
+   * @return
+   */
+  public static int[] positions(int size) {
+    int[] positions = new int[size];
+    Random random = new Random(SEED + 2);
+    for (int i = 0; i < size; i++) {
+      positions[i] = random.nextInt(size);
+    }
+    return positions;
+  }
+
+  /**
+   * Returns count values drawn from 0 to size - 1 with a Zipfian distribution:
+   * value i is drawn with a probability proportional to 1 / (i + 1)^skew,
+   * so that a few hot keys take most of the traffic (with skew 0.99, the YCSB default,
+   * the top 1% of 1M keys get about half of it).
+   * @param size
+   * @param count
+   * @param skew
+   * @param seed
+   * @return
+   */
+  public static int[] zipfian(int size, int count, double skew, long seed) {
+    double[] cumulative = new double[size];
+    double sum = 0;
+    for (int i = 0; i < size; i++) {
+      sum += 1 / Math.pow(i + 1, skew);
+      cumulative[i] = sum;
+    }
+    Random random = new Random(seed);
+    int[] values = new int[count];
+    for (int i = 0; i < count; i++) {
+      int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+      values[i] = Math.min(index < 0 ? -index - 1 : index, size - 1);
+    }
+    return values;
+  }
+
+  private static <T> void shuffle(T[] values, Random random) {
+    for (int i = values.length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      T tmp = values[i];
+      values[i] = values[j];
+      values[j] = tmp;
+    }
+  }
+}
@@ -0,0 +1,59 @@
+package net.nuttle.java.util.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Common settings of the collection benchmarks.
+ * Every benchmark reports both throughput and sampled latency (from which JMH
+ * derives the p50 to p99.99 percentiles), for collection sizes from 10 to 10M.
+ * The cursor methods walk precomputed key arrays round-robin.
+ * @author dan
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public abstract class SizedBenchmark {
+
+  @Param({"10", "1000", "100000", "10000000"})
+  public int size;
+
+  private int cursor;
+
+  /**
+   * Returns the next element of keys, wrapping around at the end.
+   * @param keys
+   * @return
+   */
+  protected final <T> T next(T[] keys) {
+    if (++cursor >= keys.length) {
+      cursor = 0;
+    }
+    return keys[cursor];
+  }
+
+  /**
+   * Returns the next element of positions, wrapping around at the end.
+   * @param positions
+   * @return
+   */
+  protected final int next(int[] positions) {
+    if (++cursor >= positions.length) {
+      cursor = 0;
+    }
+    return positions[cursor];
+  }
+}
@@ -0,0 +1,101 @@
+package net.nuttle.java.util.concurrent;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares WorkStealingPool with ForkJoinPool on a naive recursive Fibonacci, whose tasks
+ * do almost nothing but fork and join, so that the cost of scheduling dominates.
+ * @author dan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class WorkStealingPoolBenchmark {
+
+  @Param({"4"})
+  public int parallelism;
+
+  @Param({"25"})
+  public int n;
+
+  private ForkJoinPool forkJoinPool;
+  private WorkStealingPool workStealingPool;
+
+  @Setup
+  public void setUp() {
+    forkJoinPool = new ForkJoinPool(parallelism);
+    workStealingPool = new WorkStealingPool(parallelism);
+  }
+
+  @TearDown
+  public void tearDown() {
+    forkJoinPool.shutdown();
+    workStealingPool.shutdown();
+  }
+
+  @Benchmark
+  public int forkJoinPool() {
+    return forkJoinPool.invoke(new FibonacciRecursiveTask(n));
+  }
+
+  @Benchmark
+  public int workStealingPool() {
+    return workStealingPool.invoke(new FibonacciTask(n));
+  }
+
+  private static final class FibonacciTask extends Task<Integer> {
+    private final int n;
+
+    FibonacciTask(int n) {
+      this.n = n;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (n < 2) {
+        return n;
+      }
+      FibonacciTask b = new FibonacciTask(n - 2);
+      b.fork();
+      return new FibonacciTask(n - 1).invoke() + b.join();
+    }
+  }
+
+  private static final class FibonacciRecursiveTask extends RecursiveTask<Integer> {
+    private static final long serialVersionUID = 1L;
+    private final int n;
+
+    FibonacciRecursiveTask(int n) {
+      this.n = n;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (n < 2) {
+        return n;
+      }
+      FibonacciRecursiveTask b = new FibonacciRecursiveTask(n - 2);
+      b.fork();
+      return new FibonacciRecursiveTask(n - 1).compute() + b.join();
+    }
+  }
+}
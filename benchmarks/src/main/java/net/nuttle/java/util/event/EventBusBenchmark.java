@@ -0,0 +1,129 @@
+package net.nuttle.java.util.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import net.nuttle.java.util.impl.Supplier;
+import net.nuttle.java.util.impl.WaitStrategies;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares publishing to an EventBus with three handlers with putting to three ArrayBlockingQueues,
+ * each drained by a thread of its own, the usual way to give observers threads of their own.
+ * The handlers and consumers only count the events, so the score is the cost of the fan-out.
+ * @author dan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class EventBusBenchmark {
+
+  private static final int HANDLERS = 3;
+
+  private static final EventTranslator<long[], Long> TRANSLATOR = new EventTranslator<long[], Long>() {
+    @Override
+    public void translateTo(long[] event, long sequence, Long arg) {
+      event[0] = arg;
+    }
+  };
+
+  @Param({"ArrayBlockingQueue", "EventBus"})
+  public String impl;
+
+  @Param({"1024"})
+  public int size;
+
+  private EventBus<long[]> bus;
+  private List<BlockingQueue<Long>> queues;
+  private List<Thread> consumers;
+  private long published;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    if ("EventBus".equals(impl)) {
+      bus = new EventBus<>(new Supplier<long[]>() {
+        @Override
+        public long[] get() {
+          return new long[1];
+        }
+      }, size, WaitStrategies.YIELD);
+      bus.handleWith(new Counter(), new Counter(), new Counter());
+      bus.start();
+    } else {
+      queues = new ArrayList<>();
+      consumers = new ArrayList<>();
+      for (int i = 0; i < HANDLERS; i++) {
+        final BlockingQueue<Long> queue = new ArrayBlockingQueue<>(size);
+        queues.add(queue);
+        Thread consumer = new Thread() {
+          @Override
+          public void run() {
+            long count = 0;
+            try {
+              while (true) {
+                count += queue.take();
+              }
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+        };
+        consumer.setDaemon(true);
+        consumers.add(consumer);
+        consumer.start();
+      }
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws InterruptedException {
+    if (bus != null) {
+      bus.halt();
+    } else {
+      for (Thread consumer : consumers) {
+        consumer.interrupt();
+      }
+    }
+  }
+
+  @Benchmark
+  public void publish() throws InterruptedException {
+    Long value = published++;
+    if (bus != null) {
+      bus.publish(TRANSLATOR, value);
+    } else {
+      for (int i = 0; i < HANDLERS; i++) {
+        queues.get(i).put(value);
+      }
+    }
+  }
+
+  private static final class Counter implements EventHandler<long[]> {
+    private long count;
+
+    @Override
+    public void onEvent(long[] event, long sequence, boolean endOfBatch) {
+      count += event[0];
+    }
+  }
+}
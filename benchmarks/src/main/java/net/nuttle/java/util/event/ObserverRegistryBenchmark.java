@@ -0,0 +1,140 @@
+package net.nuttle.java.util.event;
+
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares notifying observers through an ObserverRegistry with a CopyOnWriteArrayList,
+ * a java.util.Observable, and a loop over a plain array, which no thread changes, as the baseline.
+ * Three threads notify while a fourth adds and removes an observer over and over.
+ * The observers only count their notifications.
+ * @author dan
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@SuppressWarnings("deprecation")
+public class ObserverRegistryBenchmark {
+
+  private static final Object ARG = new Object();
+
+  private static final Notification<Observer, Object> UPDATE = new Notification<Observer, Object>() {
+    @Override
+    public void deliver(Observer observer, Object arg) {
+      observer.update(null, arg);
+    }
+  };
+
+  @Param({"array", "CopyOnWriteArrayList", "Observable", "ObserverRegistry"})
+  public String impl;
+
+  @Param({"16"})
+  public int observers;
+
+  private Observer[] array;
+  private List<Observer> list;
+  private ChangingObservable observable;
+  private ObserverRegistry<Observer> registry;
+  private final Observer churner = new Counter();
+
+  @Setup
+  public void setUp() {
+    array = new Observer[observers];
+    list = new CopyOnWriteArrayList<>();
+    observable = new ChangingObservable();
+    registry = new ObserverRegistry<>();
+    for (int i = 0; i < observers; i++) {
+      array[i] = new Counter();
+      list.add(array[i]);
+      observable.addObserver(array[i]);
+      registry.add(array[i]);
+    }
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(3)
+  public void notifyObservers() {
+    switch (impl) {
+      case "array":
+        for (Observer observer : array) {
+          observer.update(null, ARG);
+        }
+        break;
+      case "CopyOnWriteArrayList":
+        for (Observer observer : list) {
+          observer.update(null, ARG);
+        }
+        break;
+      case "Observable":
+        observable.notifyObservers(ARG);
+        break;
+      default:
+        registry.notifyObservers(UPDATE, ARG);
+        break;
+    }
+  }
+
+  @Benchmark
+  @Group("churn")
+  @GroupThreads(1)
+  public void addRemove() {
+    switch (impl) {
+      case "array":
+        break;
+      case "CopyOnWriteArrayList":
+        list.add(churner);
+        list.remove(churner);
+        break;
+      case "Observable":
+        observable.addObserver(churner);
+        observable.deleteObserver(churner);
+        break;
+      default:
+        registry.add(churner);
+        registry.remove(churner);
+        break;
+    }
+  }
+
+  /**
+   * Notifies on every call, as ObserverTest's ObservableImpl does.
+   */
+  private static final class ChangingObservable extends Observable {
+    @Override
+    public void notifyObservers(Object arg) {
+      setChanged();
+      super.notifyObservers(arg);
+    }
+  }
+
+  private static final class Counter implements Observer {
+    int count;
+
+    @Override
+    public void update(Observable o, Object arg) {
+      count++;
+    }
+  }
+}
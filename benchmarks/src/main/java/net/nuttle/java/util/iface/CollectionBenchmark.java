@@ -0,0 +1,79 @@
+package net.nuttle.java.util.iface;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedList;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.Collection operations covered by CollectionTest.
+ * @author dan
+ *
+ */
+public class CollectionBenchmark extends SizedBenchmark {
+
+  @Param({"ArrayList", "LinkedList", "ArrayDeque", "HashSet"})
+  public String impl;
+
+  private Collection<Integer> collection;
+  private Integer[] present;
+  private Integer[] absent;
+
+  @Setup
+  public void setUp() {
+    collection = newCollection(impl);
+    present = Keys.present(size);
+    absent = Keys.absent(size);
+    for (Integer value : present) {
+      collection.add(value);
+    }
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return collection.contains(next(present));
+  }
+
+  @Benchmark
+  public boolean addRemove() {
+    Integer value = next(absent);
+    collection.add(value);
+    return collection.remove(value);
+  }
+
+  @Benchmark
+  public void iterator(Blackhole bh) {
+    for (Integer value : collection) {
+      bh.consume(value);
+    }
+  }
+
+  /**
+   * Returns an empty collection of the named implementation.
+   * @param impl
+   * @return
+   */
+  static Collection<Integer> newCollection(String impl) {
+    switch (impl) {
+      case "ArrayList":
+        return new ArrayList<Integer>();
+      case "LinkedList":
+        return new LinkedList<Integer>();
+      case "ArrayDeque":
+        return new ArrayDeque<Integer>();
+      case "HashSet":
+        return new HashSet<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown collection: " + impl);
+    }
+  }
+}
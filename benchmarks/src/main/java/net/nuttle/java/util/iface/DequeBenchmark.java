@@ -0,0 +1,81 @@
+package net.nuttle.java.util.iface;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the java.util.Deque operations covered by DequeTest.
+ * The deque is filled to size elements, and every insertion is paired with a removal.
+ * @author dan
+ *
+ */
+public class DequeBenchmark extends SizedBenchmark {
+
+  @Param({"ArrayDeque", "LinkedList", "ConcurrentLinkedDeque", "LinkedBlockingDeque"})
+  public String impl;
+
+  private Deque<Integer> deque;
+  private Integer[] values;
+
+  @Setup
+  public void setUp() {
+    deque = newDeque(impl);
+    values = Keys.present(size);
+    for (Integer value : values) {
+      deque.offerLast(value);
+    }
+  }
+
+  @Benchmark
+  public Integer pushPop() {
+    deque.push(next(values));
+    return deque.pop();
+  }
+
+  @Benchmark
+  public Integer offerLastPollFirst() {
+    deque.offerLast(next(values));
+    return deque.pollFirst();
+  }
+
+  @Benchmark
+  public Integer offerFirstPollLast() {
+    deque.offerFirst(next(values));
+    return deque.pollLast();
+  }
+
+  @Benchmark
+  public Integer peekLast() {
+    return deque.peekLast();
+  }
+
+  /**
+   * Returns an empty deque of the named implementation.
+   * @param impl
+   * @return
+   */
+  static Deque<Integer> newDeque(String impl) {
+    switch (impl) {
+      case "ArrayDeque":
+        return new ArrayDeque<Integer>();
+      case "LinkedList":
+        return new LinkedList<Integer>();
+      case "ConcurrentLinkedDeque":
+        return new ConcurrentLinkedDeque<Integer>();
+      case "LinkedBlockingDeque":
+        return new LinkedBlockingDeque<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown deque: " + impl);
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package net.nuttle.java.util.iface;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+import net.nuttle.java.util.impl.TreeList;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the java.util.List operations covered by ListTest.
+ * The positional insert and remove happen at random indexes, so that their cost
+ * includes the average shift (for arrays), walk (for linked lists) or descent (for TreeList).
+ * @author dan
+ *
+ */
+public class ListBenchmark extends SizedBenchmark {
+
+  @Param({"ArrayList", "LinkedList", "TreeList"})
+  public String impl;
+
+  private List<Integer> list;
+  private int[] positions;
+  private Integer[] absent;
+
+  @Setup
+  public void setUp() {
+    list = newList(impl);
+    positions = Keys.positions(size);
+    absent = Keys.absent(size);
+    for (Integer value : Keys.present(size)) {
+      list.add(value);
+    }
+  }
+
+  @Benchmark
+  public Integer get() {
+    return list.get(next(positions));
+  }
+
+  @Benchmark
+  public Integer set() {
+    int index = next(positions);
+    return list.set(index, list.get(index));
+  }
+
+  @Benchmark
+  public Integer addRemoveInt() {
+    int index = next(positions);
+    list.add(index, next(absent));
+    return list.remove(index);
+  }
+
+  @Benchmark
+  public Integer addRemoveLast() {
+    list.add(next(absent));
+    return list.remove(list.size() - 1);
+  }
+
+  @Benchmark
+  public int indexOfMiss() {
+    return list.indexOf(next(absent));
+  }
+
+  /**
+   * Returns an empty list of the named implementation.
+   * @param impl
+   * @return
+   */
+  static List<Integer> newList(String impl) {
+    switch (impl) {
+      case "ArrayList":
+        return new ArrayList<Integer>();
+      case "LinkedList":
+        return new LinkedList<Integer>();
+      case "TreeList":
+        return new TreeList<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown list: " + impl);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package net.nuttle.java.util.iface;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.ListIterator operations covered by ListIteratorTest.
+ * @author dan
+ *
+ */
+public class ListIteratorBenchmark extends SizedBenchmark {
+
+  @Param({"ArrayList", "LinkedList", "TreeList"})
+  public String impl;
+
+  private List<Integer> list;
+  private int[] positions;
+  private Integer[] absent;
+
+  @Setup
+  public void setUp() {
+    list = ListBenchmark.newList(impl);
+    positions = Keys.positions(size);
+    absent = Keys.absent(size);
+    for (Integer value : Keys.present(size)) {
+      list.add(value);
+    }
+  }
+
+  @Benchmark
+  public void next(Blackhole bh) {
+    ListIterator<Integer> lit = list.listIterator();
+    while (lit.hasNext()) {
+      bh.consume(lit.next());
+    }
+  }
+
+  @Benchmark
+  public void previous(Blackhole bh) {
+    ListIterator<Integer> lit = list.listIterator(list.size());
+    while (lit.hasPrevious()) {
+      bh.consume(lit.previous());
+    }
+  }
+
+  @Benchmark
+  public void set() {
+    ListIterator<Integer> lit = list.listIterator();
+    while (lit.hasNext()) {
+      lit.set(lit.next());
+    }
+  }
+
+  @Benchmark
+  public int addRemove() {
+    ListIterator<Integer> lit = list.listIterator(next(positions));
+    lit.add(next(absent));
+    lit.previous();
+    lit.remove();
+    return lit.nextIndex();
+  }
+}
@@ -0,0 +1,92 @@
+package net.nuttle.java.util.iface;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.Map operations covered by MapTest.
+ * @author dan
+ *
+ */
+public class MapBenchmark extends SizedBenchmark {
+
+  @Param({"HashMap", "LinkedHashMap", "TreeMap"})
+  public String impl;
+
+  private Map<Integer, Integer> map;
+  private Integer[] present;
+  private Integer[] absent;
+
+  @Setup
+  public void setUp() {
+    map = newMap(impl);
+    present = Keys.present(size);
+    absent = Keys.absent(size);
+    for (Integer key : present) {
+      map.put(key, key);
+    }
+  }
+
+  @Benchmark
+  public Integer getHit() {
+    return map.get(next(present));
+  }
+
+  @Benchmark
+  public Integer getMiss() {
+    return map.get(next(absent));
+  }
+
+  @Benchmark
+  public boolean containsKey() {
+    return map.containsKey(next(present));
+  }
+
+  @Benchmark
+  public Integer putReplace() {
+    Integer key = next(present);
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public Integer removePut() {
+    Integer key = next(present);
+    map.remove(key);
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public void entrySet(Blackhole bh) {
+    for (Map.Entry<Integer, Integer> entry : map.entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+
+  /**
+   * Returns an empty map of the named implementation.
+   * @param impl
+   * @return
+   */
+  static Map<Integer, Integer> newMap(String impl) {
+    switch (impl) {
+      case "HashMap":
+        return new HashMap<Integer, Integer>();
+      case "LinkedHashMap":
+        return new LinkedHashMap<Integer, Integer>();
+      case "TreeMap":
+        return new TreeMap<Integer, Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown map: " + impl);
+    }
+  }
+}
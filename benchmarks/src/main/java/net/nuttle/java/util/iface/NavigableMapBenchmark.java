@@ -0,0 +1,123 @@
+package net.nuttle.java.util.iface;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.impl.BTreeMap;
+import net.nuttle.java.util.impl.ConcurrentBTreeMap;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.NavigableMap operations covered by NavigableMapTest.
+ * The map holds the even keys 0 to 2 * (size - 1), so that every odd probe falls
+ * between two entries and exercises the inexact branch of the navigation methods.
+ * @author dan
+ *
+ */
+public class NavigableMapBenchmark extends SizedBenchmark {
+
+  /**
+   * Number of entries visited by the range scans.
+   */
+  private static final int RANGE = 100;
+
+  @Param({"TreeMap", "ConcurrentSkipListMap", "BTreeMap", "ConcurrentBTreeMap"})
+  public String impl;
+
+  private NavigableMap<Integer, Integer> map;
+  private Integer[] probes;
+
+  @Setup
+  public void setUp() {
+    map = newNavigableMap(impl);
+    Integer[] keys = Keys.present(size);
+    probes = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      map.put(keys[i] * 2, keys[i]);
+      probes[i] = keys[i] * 2 + 1;
+    }
+  }
+
+  @Benchmark
+  public Map.Entry<Integer, Integer> lowerEntry() {
+    return map.lowerEntry(next(probes));
+  }
+
+  @Benchmark
+  public Integer floorKey() {
+    return map.floorKey(next(probes));
+  }
+
+  @Benchmark
+  public Integer ceilingKey() {
+    return map.ceilingKey(next(probes));
+  }
+
+  @Benchmark
+  public Map.Entry<Integer, Integer> higherEntry() {
+    return map.higherEntry(next(probes));
+  }
+
+  @Benchmark
+  public Map.Entry<Integer, Integer> pollFirstPut() {
+    Map.Entry<Integer, Integer> entry = map.pollFirstEntry();
+    map.put(entry.getKey(), entry.getValue());
+    return entry;
+  }
+
+  @Benchmark
+  public Map.Entry<Integer, Integer> pollLastPut() {
+    Map.Entry<Integer, Integer> entry = map.pollLastEntry();
+    map.put(entry.getKey(), entry.getValue());
+    return entry;
+  }
+
+  @Benchmark
+  public void subMap(Blackhole bh) {
+    int from = next(probes);
+    NavigableMap<Integer, Integer> sub = map.subMap(from, true, from + 2 * RANGE, false);
+    for (Map.Entry<Integer, Integer> entry : sub.entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+
+  @Benchmark
+  public void descendingMap(Blackhole bh) {
+    int from = next(probes);
+    int n = 0;
+    for (Map.Entry<Integer, Integer> entry : map.headMap(from, false).descendingMap().entrySet()) {
+      bh.consume(entry.getValue());
+      if (++n == RANGE) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Returns an empty navigable map of the named implementation.
+   * @param impl
+   * @return
+   */
+  static NavigableMap<Integer, Integer> newNavigableMap(String impl) {
+    switch (impl) {
+      case "TreeMap":
+        return new TreeMap<Integer, Integer>();
+      case "ConcurrentSkipListMap":
+        return new ConcurrentSkipListMap<Integer, Integer>();
+      case "BTreeMap":
+        return new BTreeMap<Integer, Integer>();
+      case "ConcurrentBTreeMap":
+        return new ConcurrentBTreeMap<Integer, Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown navigable map: " + impl);
+    }
+  }
+}
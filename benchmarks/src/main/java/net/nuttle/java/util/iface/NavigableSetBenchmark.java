@@ -0,0 +1,108 @@
+package net.nuttle.java.util.iface;
+
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.NavigableSet operations covered by NavigableSetTest.
+ * The set holds the even values 0 to 2 * (size - 1), and the probes are odd,
+ * so navigation never finds an exact match.
+ * @author dan
+ *
+ */
+public class NavigableSetBenchmark extends SizedBenchmark {
+
+  /**
+   * Number of elements visited by the range scans.
+   */
+  private static final int RANGE = 100;
+
+  @Param({"TreeSet", "ConcurrentSkipListSet"})
+  public String impl;
+
+  private NavigableSet<Integer> set;
+  private Integer[] probes;
+
+  @Setup
+  public void setUp() {
+    set = newNavigableSet(impl);
+    Integer[] values = Keys.present(size);
+    probes = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      set.add(values[i] * 2);
+      probes[i] = values[i] * 2 + 1;
+    }
+  }
+
+  @Benchmark
+  public Integer lower() {
+    return set.lower(next(probes));
+  }
+
+  @Benchmark
+  public Integer floor() {
+    return set.floor(next(probes));
+  }
+
+  @Benchmark
+  public Integer ceiling() {
+    return set.ceiling(next(probes));
+  }
+
+  @Benchmark
+  public Integer higher() {
+    return set.higher(next(probes));
+  }
+
+  @Benchmark
+  public boolean pollFirstAdd() {
+    return set.add(set.pollFirst());
+  }
+
+  @Benchmark
+  public boolean pollLastAdd() {
+    return set.add(set.pollLast());
+  }
+
+  @Benchmark
+  public void subSet(Blackhole bh) {
+    int from = next(probes);
+    for (Integer value : set.subSet(from, true, from + 2 * RANGE, false)) {
+      bh.consume(value);
+    }
+  }
+
+  @Benchmark
+  public void descendingIterator(Blackhole bh) {
+    Iterator<Integer> it = set.headSet(next(probes), false).descendingIterator();
+    for (int n = 0; n < RANGE && it.hasNext(); n++) {
+      bh.consume(it.next());
+    }
+  }
+
+  /**
+   * Returns an empty navigable set of the named implementation.
+   * @param impl
+   * @return
+   */
+  static NavigableSet<Integer> newNavigableSet(String impl) {
+    switch (impl) {
+      case "TreeSet":
+        return new TreeSet<Integer>();
+      case "ConcurrentSkipListSet":
+        return new ConcurrentSkipListSet<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown navigable set: " + impl);
+    }
+  }
+}
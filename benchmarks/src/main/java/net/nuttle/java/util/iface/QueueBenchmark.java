@@ -0,0 +1,78 @@
+package net.nuttle.java.util.iface;
+
+import java.util.ArrayDeque;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the java.util.Queue operations covered by QueueTest.
+ * The queue is filled to size elements, and each offer is paired with a poll,
+ * so the queue length stays constant during the measurement.
+ * @author dan
+ *
+ */
+public class QueueBenchmark extends SizedBenchmark {
+
+  @Param({"ArrayDeque", "LinkedList", "ArrayBlockingQueue", "LinkedBlockingQueue", "ConcurrentLinkedQueue"})
+  public String impl;
+
+  private Queue<Integer> queue;
+
+  @Setup
+  public void setUp() {
+    queue = newQueue(impl, size + 1);
+    for (Integer value : Keys.present(size)) {
+      queue.offer(value);
+    }
+  }
+
+  @Benchmark
+  public Integer offerPoll() {
+    queue.offer(queue.peek());
+    return queue.poll();
+  }
+
+  @Benchmark
+  public Integer addRemove() {
+    queue.add(queue.element());
+    return queue.remove();
+  }
+
+  @Benchmark
+  public Integer peek() {
+    return queue.peek();
+  }
+
+  /**
+   * Returns an empty queue of the named implementation.
+   * @param impl
+   * @param capacity used by bounded implementations
+   * @return
+   */
+  static Queue<Integer> newQueue(String impl, int capacity) {
+    switch (impl) {
+      case "ArrayDeque":
+        return new ArrayDeque<Integer>();
+      case "LinkedList":
+        return new LinkedList<Integer>();
+      case "ArrayBlockingQueue":
+        return new ArrayBlockingQueue<Integer>(capacity);
+      case "LinkedBlockingQueue":
+        return new LinkedBlockingQueue<Integer>();
+      case "ConcurrentLinkedQueue":
+        return new ConcurrentLinkedQueue<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown queue: " + impl);
+    }
+  }
+}
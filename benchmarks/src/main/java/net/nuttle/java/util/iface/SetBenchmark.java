@@ -0,0 +1,86 @@
+package net.nuttle.java.util.iface;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.Set operations covered by SetTest.
+ * @author dan
+ *
+ */
+public class SetBenchmark extends SizedBenchmark {
+
+  @Param({"HashSet", "LinkedHashSet", "TreeSet"})
+  public String impl;
+
+  private Set<Integer> set;
+  private Integer[] present;
+  private Integer[] absent;
+
+  @Setup
+  public void setUp() {
+    set = newSet(impl);
+    present = Keys.present(size);
+    absent = Keys.absent(size);
+    for (Integer value : present) {
+      set.add(value);
+    }
+  }
+
+  @Benchmark
+  public boolean containsHit() {
+    return set.contains(next(present));
+  }
+
+  @Benchmark
+  public boolean containsMiss() {
+    return set.contains(next(absent));
+  }
+
+  @Benchmark
+  public boolean addDuplicate() {
+    return set.add(next(present));
+  }
+
+  @Benchmark
+  public boolean removeAdd() {
+    Integer value = next(present);
+    set.remove(value);
+    return set.add(value);
+  }
+
+  @Benchmark
+  public void iterator(Blackhole bh) {
+    for (Integer value : set) {
+      bh.consume(value);
+    }
+  }
+
+  /**
+   * Returns an empty set of the named implementation.
+   * @param impl
+   * @return
+   */
+  static Set<Integer> newSet(String impl) {
+    switch (impl) {
+      case "HashSet":
+        return new HashSet<Integer>();
+      case "LinkedHashSet":
+        return new LinkedHashSet<Integer>();
+      case "TreeSet":
+        return new TreeSet<Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown set: " + impl);
+    }
+  }
+}
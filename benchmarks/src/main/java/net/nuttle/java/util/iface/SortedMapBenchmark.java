@@ -0,0 +1,101 @@
+package net.nuttle.java.util.iface;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the java.util.SortedMap operations covered by SortedMapTest.
+ * The map holds the keys 0 to size - 1, so range views have a predictable size.
+ * @author dan
+ *
+ */
+public class SortedMapBenchmark extends SizedBenchmark {
+
+  /**
+   * Number of entries visited by the range scans.
+   */
+  private static final int RANGE = 100;
+
+  @Param({"TreeMap", "ConcurrentSkipListMap"})
+  public String impl;
+
+  private SortedMap<Integer, Integer> map;
+  private Integer[] present;
+
+  @Setup
+  public void setUp() {
+    map = newSortedMap(impl);
+    present = Keys.present(size);
+    for (Integer key : present) {
+      map.put(key, key);
+    }
+  }
+
+  @Benchmark
+  public Integer firstKey() {
+    return map.firstKey();
+  }
+
+  @Benchmark
+  public Integer lastKey() {
+    return map.lastKey();
+  }
+
+  @Benchmark
+  public void subMap(Blackhole bh) {
+    int from = next(present);
+    for (Map.Entry<Integer, Integer> entry : map.subMap(from, from + RANGE).entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+
+  @Benchmark
+  public void headMap(Blackhole bh) {
+    int to = next(present);
+    int n = 0;
+    for (Integer key : map.headMap(to).keySet()) {
+      bh.consume(key);
+      if (++n == RANGE) {
+        break;
+      }
+    }
+  }
+
+  @Benchmark
+  public void tailMap(Blackhole bh) {
+    int from = next(present);
+    int n = 0;
+    for (Integer key : map.tailMap(from).keySet()) {
+      bh.consume(key);
+      if (++n == RANGE) {
+        break;
+      }
+    }
+  }
+
+  /**
+   * Returns an empty sorted map of the named implementation.
+   * @param impl
+   * @return
+   */
+  static SortedMap<Integer, Integer> newSortedMap(String impl) {
+    switch (impl) {
+      case "TreeMap":
+        return new TreeMap<Integer, Integer>();
+      case "ConcurrentSkipListMap":
+        return new ConcurrentSkipListMap<Integer, Integer>();
+      default:
+        throw new IllegalArgumentException("Unknown sorted map: " + impl);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package net.nuttle.java.util.impl;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks the java.util.BitSet operations covered by BitSetTest.
+ * Here size is the number of bits in the universe, and density the fraction of them that are set.
+ * @author dan
+ *
+ */
+public class BitSetBenchmark extends SizedBenchmark {
+
+  @Param({"0.001", "0.5"})
+  public double density;
+
+  private BitSet set;
+  private BitSet other;
+  private int[] positions;
+
+  @Setup
+  public void setUp() {
+    set = randomBitSet(size, density, Keys.SEED);
+    other = randomBitSet(size, density, Keys.SEED + 1);
+    positions = Keys.positions(size);
+  }
+
+  @Benchmark
+  public boolean get() {
+    return set.get(next(positions));
+  }
+
+  @Benchmark
+  public boolean flip() {
+    int index = next(positions);
+    set.flip(index);
+    set.flip(index);
+    return set.get(index);
+  }
+
+  @Benchmark
+  public int nextSetBit() {
+    int count = 0;
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int nextClearBit() {
+    return set.nextClearBit(next(positions));
+  }
+
+  @Benchmark
+  public int cardinality() {
+    return set.cardinality();
+  }
+
+  @Benchmark
+  public boolean intersects() {
+    return set.intersects(other);
+  }
+
+  @Benchmark
+  public BitSet and() {
+    BitSet result = (BitSet) set.clone();
+    result.and(other);
+    return result;
+  }
+
+  @Benchmark
+  public BitSet or() {
+    BitSet result = (BitSet) set.clone();
+    result.or(other);
+    return result;
+  }
+
+  @Benchmark
+  public BitSet xor() {
+    BitSet result = (BitSet) set.clone();
+    result.xor(other);
+    return result;
+  }
+
+  @Benchmark
+  public BitSet andNot() {
+    BitSet result = (BitSet) set.clone();
+    result.andNot(other);
+    return result;
+  }
+
+  /**
+   * Returns a BitSet over size bits, each set with probability density.
+   * @param size
+   * @param density
+   * @param seed
+   * @return
+   */
+  static BitSet randomBitSet(int size, double density, long seed) {
+    Random random = new Random(seed);
+    BitSet bs = new BitSet(size);
+    for (int i = 0; i < size; i++) {
+      if (random.nextDouble() < density) {
+        bs.set(i);
+      }
+    }
+    return bs;
+  }
+}
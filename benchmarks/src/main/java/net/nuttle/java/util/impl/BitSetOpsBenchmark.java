@@ -0,0 +1,111 @@
+package net.nuttle.java.util.impl;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the N-way operations of BitSetOps with chains of pairwise BitSet operations.
+ * Here size is the number of bits in each of the filters.
+ * The words variants run on the filters kept as word arrays, which BitSetOps reads in place,
+ * and so leave out the copies of the BitSet methods.
+ * @author dan
+ *
+ */
+public class BitSetOpsBenchmark extends SizedBenchmark {
+
+  @Param({"50"})
+  public int filters;
+
+  private BitSet[] sets;
+  private long[][] words;
+  private ForkJoinPool pool;
+
+  @Setup
+  public void setUp() {
+    sets = new BitSet[filters];
+    for (int i = 0; i < filters; i++) {
+      sets[i] = BitSetBenchmark.randomBitSet(size, 0.95, Keys.SEED + i);
+    }
+    words = new long[filters][];
+    for (int i = 0; i < filters; i++) {
+      words[i] = sets[i].toLongArray();
+    }
+    pool = new ForkJoinPool();
+  }
+
+  @TearDown
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public BitSet pairwiseAnd() {
+    BitSet result = (BitSet) sets[0].clone();
+    for (int i = 1; i < sets.length; i++) {
+      result.and(sets[i]);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public BitSet and() {
+    return BitSetOps.and(sets);
+  }
+
+  @Benchmark
+  public long[] andWords() {
+    return BitSetOps.and(words);
+  }
+
+  @Benchmark
+  public BitSet parallelAnd() {
+    return BitSetOps.parallelAnd(pool, sets);
+  }
+
+  @Benchmark
+  public long[] parallelAndWords() {
+    return BitSetOps.parallelAnd(pool, words);
+  }
+
+  @Benchmark
+  public BitSet pairwiseOr() {
+    BitSet result = (BitSet) sets[0].clone();
+    for (int i = 1; i < sets.length; i++) {
+      result.or(sets[i]);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public BitSet or() {
+    return BitSetOps.or(sets);
+  }
+
+  @Benchmark
+  public long[] orWords() {
+    return BitSetOps.or(words);
+  }
+
+  @Benchmark
+  public BitSet threshold() {
+    return BitSetOps.threshold(filters / 2, sets);
+  }
+
+  @Benchmark
+  public long[] thresholdWords() {
+    return BitSetOps.threshold(filters / 2, words);
+  }
+
+  @Benchmark
+  public BitSet parallelThreshold() {
+    return BitSetOps.parallelThreshold(pool, filters / 2, sets);
+  }
+}
@@ -0,0 +1,95 @@
+package net.nuttle.java.util.impl;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Benchmarks CompressedBitSet with the same operations and data as BitSetBenchmark.
+ * @author dan
+ *
+ */
+public class CompressedBitSetBenchmark extends SizedBenchmark {
+
+  @Param({"0.001", "0.5"})
+  public double density;
+
+  private CompressedBitSet set;
+  private CompressedBitSet other;
+  private int[] positions;
+
+  @Setup
+  public void setUp() {
+    set = CompressedBitSet.valueOf(BitSetBenchmark.randomBitSet(size, density, Keys.SEED));
+    other = CompressedBitSet.valueOf(BitSetBenchmark.randomBitSet(size, density, Keys.SEED + 1));
+    positions = Keys.positions(size);
+  }
+
+  @Benchmark
+  public boolean get() {
+    return set.get(next(positions));
+  }
+
+  @Benchmark
+  public boolean flip() {
+    int index = next(positions);
+    set.flip(index);
+    set.flip(index);
+    return set.get(index);
+  }
+
+  @Benchmark
+  public int nextSetBit() {
+    int count = 0;
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      count++;
+    }
+    return count;
+  }
+
+  @Benchmark
+  public int nextClearBit() {
+    return set.nextClearBit(next(positions));
+  }
+
+  @Benchmark
+  public int cardinality() {
+    return set.cardinality();
+  }
+
+  @Benchmark
+  public boolean intersects() {
+    return set.intersects(other);
+  }
+
+  @Benchmark
+  public CompressedBitSet and() {
+    CompressedBitSet result = set.clone();
+    result.and(other);
+    return result;
+  }
+
+  @Benchmark
+  public CompressedBitSet or() {
+    CompressedBitSet result = set.clone();
+    result.or(other);
+    return result;
+  }
+
+  @Benchmark
+  public CompressedBitSet xor() {
+    CompressedBitSet result = set.clone();
+    result.xor(other);
+    return result;
+  }
+
+  @Benchmark
+  public CompressedBitSet andNot() {
+    CompressedBitSet result = set.clone();
+    result.andNot(other);
+    return result;
+  }
+}
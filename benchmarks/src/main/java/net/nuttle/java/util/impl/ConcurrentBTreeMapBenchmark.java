@@ -0,0 +1,184 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+
+import net.nuttle.java.util.bench.Keys;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Compares ConcurrentBTreeMap with ConcurrentSkipListMap and a TreeMap guarded by its own monitor
+ * (Collections.synchronizedNavigableMap is not in Java 7) under a mix of point lookups and range scans:
+ * of every 16 operations, writePercent / 100 * 16 are puts, 4 are scans of RANGE entries through
+ * subMap, and the rest are gets, on keys drawn from a Zipfian distribution.
+ * The 50 and 100 percent loads are the writer-heavy cases that ConcurrentBTreeMap is not meant for,
+ * as its writers serialize on the root; they measure how far it falls behind ConcurrentSkipListMap there.
+ * JMH cannot take the thread count as a parameter, so there is one method per thread count.
+ * @author dan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConcurrentBTreeMapBenchmark {
+
+  private static final int SAMPLES = 1 << 16;
+
+  /**
+   * Number of entries visited by a range scan.
+   */
+  private static final int RANGE = 100;
+
+  @Param({"ConcurrentSkipListMap", "SynchronizedTreeMap", "ConcurrentBTreeMap"})
+  public String impl;
+
+  @Param({"1000", "1000000"})
+  public int size;
+
+  @Param({"0.99"})
+  public double skew;
+
+  /**
+   * Percentage of puts, rounded down to a multiple of 1/16.  At 100 there are no gets or scans.
+   */
+  @Param({"0", "12.5", "50", "100"})
+  public double writePercent;
+
+  private NavigableMap<Integer, Integer> map;
+  private boolean locked;
+  private int writes;
+  private Integer[] keys;
+
+  @Setup
+  public void setUp() {
+    switch (impl) {
+      case "ConcurrentSkipListMap":
+        map = new ConcurrentSkipListMap<Integer, Integer>();
+        break;
+      case "SynchronizedTreeMap":
+        map = new TreeMap<Integer, Integer>();
+        locked = true;
+        break;
+      case "ConcurrentBTreeMap":
+        map = new ConcurrentBTreeMap<Integer, Integer>();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown navigable map: " + impl);
+    }
+    writes = (int) (writePercent * 16 / 100);
+    keys = Keys.present(size);
+    for (Integer key : keys) {
+      map.put(key, key);
+    }
+  }
+
+  /**
+   * The Zipfian key positions of one thread, each thread with its own seed.
+   */
+  @State(Scope.Thread)
+  public static class Load {
+
+    private int[] positions;
+    private int cursor;
+
+    @Setup
+    public void setUp(ConcurrentBTreeMapBenchmark benchmark, ThreadParams params) {
+      positions = Keys.zipfian(benchmark.size, SAMPLES, benchmark.skew, Keys.SEED + params.getThreadIndex());
+    }
+
+    Integer next(Integer[] keys) {
+      cursor = (cursor + 1) & (SAMPLES - 1);
+      return keys[positions[cursor]];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void threads01(Load load, Blackhole bh) {
+    mixed(load, bh);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void threads04(Load load, Blackhole bh) {
+    mixed(load, bh);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public void threads16(Load load, Blackhole bh) {
+    mixed(load, bh);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public void threads64(Load load, Blackhole bh) {
+    mixed(load, bh);
+  }
+
+  private void mixed(Load load, Blackhole bh) {
+    Integer key = load.next(keys);
+    int op = load.cursor & 15;
+    if (op < writes) {
+      bh.consume(put(key));
+    } else if (op < writes + 4) {
+      scan(key, bh);
+    } else {
+      bh.consume(get(key));
+    }
+  }
+
+  private Integer get(Integer key) {
+    if (locked) {
+      synchronized (map) {
+        return map.get(key);
+      }
+    }
+    return map.get(key);
+  }
+
+  private Integer put(Integer key) {
+    if (locked) {
+      synchronized (map) {
+        return map.put(key, key);
+      }
+    }
+    return map.put(key, key);
+  }
+
+  private void scan(Integer key, Blackhole bh) {
+    if (locked) {
+      synchronized (map) {
+        scan(map.subMap(key, true, key + RANGE, false), bh);
+      }
+    } else {
+      scan(map.subMap(key, true, key + RANGE, false), bh);
+    }
+  }
+
+  private static void scan(NavigableMap<Integer, Integer> sub, Blackhole bh) {
+    for (Map.Entry<Integer, Integer> entry : sub.entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package net.nuttle.java.util.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares MpscQueue with a bounded LinkedBlockingQueue, with producer threads offering elements
+ * and one consumer thread draining them in batches.  Each group has its own queue; a failed offer
+ * (or empty drain) counts as an operation, so compare the producer and consumer rates as well as
+ * the total.  JMH cannot take the thread count as a parameter, so there is one group per producer count.
+ * @author dan
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MpscQueueBenchmark {
+
+  private static final Integer ELEMENT = 1;
+  private static final int BATCH = 256;
+
+  @Param({"LinkedBlockingQueue", "MpscQueue"})
+  public String impl;
+
+  @Param({"65536"})
+  public int capacity;
+
+  private Queue<Integer> queue;
+  private final List<Integer> batch = new ArrayList<>(BATCH);
+
+  @Setup
+  public void setUp() {
+    queue = "LinkedBlockingQueue".equals(impl)
+      ? new LinkedBlockingQueue<Integer>(capacity) : new MpscQueue<Integer>(1024, capacity);
+  }
+
+  @Benchmark
+  @Group("producers04")
+  @GroupThreads(4)
+  public boolean offer04() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("producers04")
+  @GroupThreads(1)
+  public int drain04() {
+    return drain();
+  }
+
+  @Benchmark
+  @Group("producers16")
+  @GroupThreads(16)
+  public boolean offer16() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("producers16")
+  @GroupThreads(1)
+  public int drain16() {
+    return drain();
+  }
+
+  private int drain() {
+    int n = queue instanceof MpscQueue
+      ? ((MpscQueue<Integer>) queue).drainTo(batch, BATCH)
+      : ((LinkedBlockingQueue<Integer>) queue).drainTo(batch, BATCH);
+    batch.clear();
+    return n;
+  }
+}
@@ -0,0 +1,57 @@
+package net.nuttle.java.util.impl;
+
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Measures the cost of publishing a snapshot after each write: copying a TreeMap, as our readers
+ * get their snapshots today, against making a new version of a PersistentTreeMap.
+ * @author dan
+ *
+ */
+public class PersistentTreeMapBenchmark extends SizedBenchmark {
+
+  private TreeMap<Integer, Integer> tree;
+  private PersistentTreeMap<Integer, Integer> persistent;
+  private Integer[] keys;
+
+  @Setup
+  public void setUp() {
+    keys = Keys.present(size);
+    tree = new TreeMap<>();
+    for (Integer key : keys) {
+      tree.put(key, key);
+    }
+    persistent = new PersistentTreeMap<>(tree);
+  }
+
+  @Benchmark
+  public NavigableMap<Integer, Integer> treeMapCopy() {
+    Integer key = next(keys);
+    tree.put(key, key + 1);
+    return new TreeMap<>(tree);
+  }
+
+  @Benchmark
+  public NavigableMap<Integer, Integer> persistentPlus() {
+    Integer key = next(keys);
+    persistent = persistent.plus(key, key + 1);
+    return persistent;
+  }
+
+  @Benchmark
+  public Integer persistentGet() {
+    return persistent.get(next(keys));
+  }
+
+  @Benchmark
+  public Integer treeMapGet() {
+    return tree.get(next(keys));
+  }
+}
@@ -0,0 +1,78 @@
+package net.nuttle.java.util.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares RobinHoodHashMap with java.util.HashMap on String keys, the case of our large lookup tables.
+ * Lookups use copies of the stored keys, so that equals compares characters as it would
+ * for keys read from input, instead of succeeding on identity.
+ * @author dan
+ *
+ */
+public class RobinHoodHashMapBenchmark extends SizedBenchmark {
+
+  @Param({"HashMap", "RobinHoodHashMap"})
+  public String impl;
+
+  private Map<String, String> map;
+  private String[] present;
+  private String[] absent;
+
+  @Setup
+  public void setUp() {
+    map = "HashMap".equals(impl)
+      ? new HashMap<String, String>() : new RobinHoodHashMap<String, String>();
+    present = strings(Keys.present(size));
+    absent = strings(Keys.absent(size));
+    for (String key : present) {
+      map.put(new String(key), key);
+    }
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(next(present));
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(next(absent));
+  }
+
+  @Benchmark
+  public String putReplace() {
+    String key = next(present);
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public String removePut() {
+    String key = next(present);
+    map.remove(key);
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public void entrySet(Blackhole bh) {
+    for (Map.Entry<String, String> entry : map.entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+
+  private static String[] strings(Integer[] keys) {
+    String[] strings = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      strings[i] = "customer-" + keys[i];
+    }
+    return strings;
+  }
+}
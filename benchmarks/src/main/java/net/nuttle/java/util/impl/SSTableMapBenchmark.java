@@ -0,0 +1,84 @@
+package net.nuttle.java.util.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the lookups and range scans of a compacted SSTableMap, read through the page cache,
+ * with those of a TreeMap on the heap.  The scans visit 100 entries.
+ * @author dan
+ *
+ */
+public class SSTableMapBenchmark extends SizedBenchmark {
+
+  @Param({"TreeMap", "SSTableMap"})
+  public String impl;
+
+  private NavigableMap<Integer, Long> map;
+  private Integer[] present;
+  private Integer[] absent;
+  private File dir;
+
+  @Setup
+  public void setUp() throws IOException {
+    if ("TreeMap".equals(impl)) {
+      map = new TreeMap<>();
+    } else {
+      dir = Files.createTempDirectory("sstable").toFile();
+      map = new SSTableMap<>(dir, Serializers.INTEGER, Serializers.LONG);
+    }
+    present = Keys.present(size);
+    absent = Keys.absent(size);
+    for (Integer key : present) {
+      map.put(key, (long) key);
+    }
+    if (map instanceof SSTableMap) {
+      ((SSTableMap<Integer, Long>) map).compact();
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    if (map instanceof SSTableMap) {
+      ((SSTableMap<Integer, Long>) map).close();
+      for (File file : dir.listFiles()) {
+        Files.delete(file.toPath());
+      }
+      Files.delete(dir.toPath());
+    }
+  }
+
+  @Benchmark
+  public Long getHit() {
+    return map.get(next(present));
+  }
+
+  @Benchmark
+  public Integer floorKey() {
+    return map.floorKey(next(absent));
+  }
+
+  @Benchmark
+  public void scan(Blackhole bh) {
+    int n = 0;
+    for (Map.Entry<Integer, Long> entry : map.tailMap(next(present), true).entrySet()) {
+      bh.consume(entry.getValue());
+      if (++n == 100) {
+        break;
+      }
+    }
+  }
+}
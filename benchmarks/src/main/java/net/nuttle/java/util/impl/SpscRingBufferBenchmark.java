@@ -0,0 +1,97 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares SpscRingBuffer with ArrayBlockingQueue, passing elements from one producer thread
+ * to one consumer thread.  Each group has its own queue; a failed offer (or poll) counts as
+ * an operation, so compare the producer and consumer rates as well as the total.
+ * The batch group uses fill and drain, and only measures SpscRingBuffer.
+ * @author dan
+ *
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class SpscRingBufferBenchmark {
+
+  private static final Integer ELEMENT = 1;
+  private static final int BATCH = 64;
+
+  @Param({"ArrayBlockingQueue", "SpscRingBuffer"})
+  public String impl;
+
+  @Param({"1024"})
+  public int capacity;
+
+  private Queue<Integer> queue;
+  private int sum;
+  private final Supplier<Integer> supplier = new Supplier<Integer>() {
+    @Override
+    public Integer get() {
+      return ELEMENT;
+    }
+  };
+  private final Consumer<Integer> consumer = new Consumer<Integer>() {
+    @Override
+    public void accept(Integer e) {
+      sum += e;
+    }
+  };
+
+  @Setup
+  public void setUp() {
+    queue = "ArrayBlockingQueue".equals(impl)
+      ? new ArrayBlockingQueue<Integer>(capacity) : new SpscRingBuffer<Integer>(capacity);
+  }
+
+  @Benchmark
+  @Group("single")
+  @GroupThreads(1)
+  public boolean offer() {
+    return queue.offer(ELEMENT);
+  }
+
+  @Benchmark
+  @Group("single")
+  @GroupThreads(1)
+  public Integer poll() {
+    return queue.poll();
+  }
+
+  @Benchmark
+  @Group("batch")
+  @GroupThreads(1)
+  public int fill() {
+    return queue instanceof SpscRingBuffer ? ((SpscRingBuffer<Integer>) queue).fill(supplier, BATCH) : 0;
+  }
+
+  @Benchmark
+  @Group("batch")
+  @GroupThreads(1)
+  public int drain() {
+    if (queue instanceof SpscRingBuffer) {
+      ((SpscRingBuffer<Integer>) queue).drain(consumer, BATCH);
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,86 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import net.nuttle.java.util.bench.Keys;
+import net.nuttle.java.util.bench.SizedBenchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares StringRadixTreeMap with TreeMap on URL-like keys, which share long prefixes,
+ * so that compareTo runs far into the keys at every level of the TreeMap.
+ * Lookups use copies of the stored keys, as in RobinHoodHashMapBenchmark.
+ * The prefix scans visit the 10 keys of one "directory".
+ * @author dan
+ *
+ */
+public class StringRadixTreeMapBenchmark extends SizedBenchmark {
+
+  @Param({"TreeMap", "StringRadixTreeMap"})
+  public String impl;
+
+  private NavigableMap<String, String> map;
+  private String[] present;
+  private String[] absent;
+  private String[] prefixes;
+
+  @Setup
+  public void setUp() {
+    map = "TreeMap".equals(impl)
+      ? new TreeMap<String, String>() : new StringRadixTreeMap<String>();
+    Integer[] keys = Keys.present(size);
+    present = urls(keys);
+    absent = urls(Keys.absent(size));
+    prefixes = new String[size];
+    for (int i = 0; i < size; i++) {
+      map.put(new String(present[i]), present[i]);
+      prefixes[i] = prefix(keys[i]);
+    }
+  }
+
+  @Benchmark
+  public String getHit() {
+    return map.get(next(present));
+  }
+
+  @Benchmark
+  public String getMiss() {
+    return map.get(next(absent));
+  }
+
+  @Benchmark
+  public String removePut() {
+    String key = next(present);
+    map.remove(key);
+    return map.put(key, key);
+  }
+
+  @Benchmark
+  public void prefixScan(Blackhole bh) {
+    String prefix = next(prefixes);
+    NavigableMap<String, String> scan = map instanceof StringRadixTreeMap
+      ? ((StringRadixTreeMap<String>) map).prefixMap(prefix)
+      : map.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    for (Map.Entry<String, String> entry : scan.entrySet()) {
+      bh.consume(entry.getValue());
+    }
+  }
+
+  private static String[] urls(Integer[] keys) {
+    String[] urls = new String[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      urls[i] = prefix(keys[i]) + keys[i] % 10;
+    }
+    return urls;
+  }
+
+  private static String prefix(int key) {
+    return "https://example.com/api/v2/customers/" + key / 10 + "/orders/";
+  }
+}
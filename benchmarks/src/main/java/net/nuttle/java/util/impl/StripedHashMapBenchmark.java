@@ -0,0 +1,114 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import net.nuttle.java.util.bench.Keys;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Compares StripedHashMap with ConcurrentHashMap under a write-heavy, skewed load:
+ * every thread does 3 puts for each get, on keys drawn from a Zipfian distribution,
+ * so that the hot keys (and their stripes or bins) are contended.
+ * JMH cannot take the thread count as a parameter, so there is one method per thread count.
+ * @author dan
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StripedHashMapBenchmark {
+
+  private static final int SAMPLES = 1 << 16;
+
+  @Param({"ConcurrentHashMap", "StripedHashMap"})
+  public String impl;
+
+  @Param({"1000", "1000000"})
+  public int size;
+
+  @Param({"0.99"})
+  public double skew;
+
+  private Map<Integer, Integer> map;
+  private Integer[] keys;
+
+  @Setup
+  public void setUp() {
+    map = "ConcurrentHashMap".equals(impl)
+      ? new ConcurrentHashMap<Integer, Integer>() : new StripedHashMap<Integer, Integer>();
+    keys = Keys.present(size);
+    for (Integer key : keys) {
+      map.put(key, key);
+    }
+  }
+
+  /**
+   * The Zipfian key positions of one thread, each thread with its own seed.
+   */
+  @State(Scope.Thread)
+  public static class Load {
+
+    private int[] positions;
+    private int cursor;
+
+    @Setup
+    public void setUp(StripedHashMapBenchmark benchmark, ThreadParams params) {
+      positions = Keys.zipfian(benchmark.size, SAMPLES, benchmark.skew, Keys.SEED + params.getThreadIndex());
+    }
+
+    Integer next(Integer[] keys) {
+      cursor = (cursor + 1) & (SAMPLES - 1);
+      return keys[positions[cursor]];
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Integer threads01(Load load) {
+    return mixed(load);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Integer threads04(Load load) {
+    return mixed(load);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Integer threads16(Load load) {
+    return mixed(load);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Integer threads64(Load load) {
+    return mixed(load);
+  }
+
+  private Integer mixed(Load load) {
+    Integer key = load.next(keys);
+    if ((load.cursor & 3) == 0) {
+      return map.get(key);
+    }
+    return map.put(key, key);
+  }
+}
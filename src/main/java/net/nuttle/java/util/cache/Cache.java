@@ -0,0 +1,388 @@
+package net.nuttle.java.util.cache;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded, thread-safe cache that implements java.util.Map.
+ * The cache holds at most a maximum number of entries, or a maximum total weight computed by a Weigher,
+ * and when a put takes it over the limit, it evicts the keys chosen by its EvictionPolicy
+ * (LruPolicy, LfuPolicy or TinyLfuPolicy, which may also reject the new key itself).
+ * Entries are kept in a ConcurrentHashMap, so get never blocks: a read records its access in a
+ * striped ReadBuffer, without the lock, and the buffer is replayed into the policy under the lock
+ * before every write, and whenever a stripe of it fills.  The policy thus sees reads in batches,
+ * and drops one only if a stripe is full or two threads on a stripe collide, rather than costing
+ * readers a lock.
+ * Writes take the lock, so that the entries, the total weight and the policy always agree.
+ * get counts hits and misses, and evictions are counted; see stats().
+ * containsKey, the views and their iterators neither count nor record accesses.
+ * Null keys and values are not allowed.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class Cache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+  private final ConcurrentHashMap<K, Node<V>> data = new ConcurrentHashMap<>();
+  private final ReentrantLock lock = new ReentrantLock();
+  private final ReadBuffer<K> readBuffer = new ReadBuffer<>();
+  private final EvictionPolicy<K> policy;
+  private final Weigher<? super K, ? super V> weigher;
+  private final long maximumWeight;
+  private long weight;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  private Set<Map.Entry<K, V>> entrySet;
+
+  /**
+   * Creates a cache of at most maximumSize entries.
+   * @param maximumSize
+   * @param policy
+   */
+  public Cache(long maximumSize, EvictionPolicy<K> policy) {
+    this(maximumSize, null, policy);
+  }
+
+  /**
+   * Creates a cache whose entries weigh at most maximumWeight in total.
+   * @param maximumWeight
+   * @param weigher computes the weight of each entry; if null, every entry weighs 1
+   * @param policy
+   */
+  public Cache(long maximumWeight, Weigher<? super K, ? super V> weigher, EvictionPolicy<K> policy) {
+    if (maximumWeight < 0) {
+      throw new IllegalArgumentException("Illegal maximum weight: " + maximumWeight);
+    }
+    if (policy == null) {
+      throw new NullPointerException("policy");
+    }
+    this.maximumWeight = maximumWeight;
+    this.weigher = weigher;
+    this.policy = policy;
+  }
+
+  /**
+   * Returns the value of key, or null, and counts a hit or a miss.
+   */
+  @Override
+  public V get(Object key) {
+    Node<V> node = data.get(key);
+    if (node == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    @SuppressWarnings("unchecked")
+    K k = (K) key;
+    if (readBuffer.offer(k) && lock.tryLock()) {
+      try {
+        readBuffer.drainTo(policy);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return node.value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return data.containsKey(key);
+  }
+
+  @Override
+  public int size() {
+    return data.size();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return data.isEmpty();
+  }
+
+  /**
+   * Maps key to value, evicts entries if the cache is then over its limit (possibly this one),
+   * and returns the previous value, or null.
+   */
+  @Override
+  public V put(K key, V value) {
+    return put(key, value, false);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    return put(key, value, true);
+  }
+
+  @Override
+  public V remove(Object key) {
+    lock.lock();
+    try {
+      readBuffer.drainTo(policy);
+      Node<V> node = data.remove(key);
+      if (node == null) {
+        return null;
+      }
+      weight -= node.weight;
+      @SuppressWarnings("unchecked")
+      K k = (K) key;
+      policy.onRemove(k);
+      return node.value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    if (value == null) {
+      return false;
+    }
+    lock.lock();
+    try {
+      Node<V> node = data.get(key);
+      if (node == null || !value.equals(node.value)) {
+        return false;
+      }
+      remove(key);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    if (oldValue == null) {
+      throw new NullPointerException();
+    }
+    lock.lock();
+    try {
+      Node<V> node = data.get(key);
+      if (node == null || !oldValue.equals(node.value)) {
+        return false;
+      }
+      put(key, newValue);
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    lock.lock();
+    try {
+      return data.containsKey(key) ? put(key, value) : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clear() {
+    lock.lock();
+    try {
+      readBuffer.drainTo(policy);
+      data.clear();
+      policy.clear();
+      weight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns a view of the entries.  Its iterator is weakly consistent, and its remove
+   * and the entries' setValue write through to the cache.
+   */
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  /**
+   * Returns the total weight of the entries (their number, if there is no weigher).
+   * @return
+   */
+  public long weight() {
+    lock.lock();
+    try {
+      return weight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Returns the maximum total weight (or number of entries, if there is no weigher).
+   * @return
+   */
+  public long maximumWeight() {
+    return maximumWeight;
+  }
+
+  /**
+   * Returns a snapshot of the hit, miss and eviction counters.
+   * @return
+   */
+  public CacheStats stats() {
+    return new CacheStats(hits.get(), misses.get(), evictions.get());
+  }
+
+  private V put(K key, V value, boolean onlyIfAbsent) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    int w = weigher == null ? 1 : weigher.weigh(key, value);
+    if (w < 0) {
+      throw new IllegalArgumentException("Negative weight: " + w);
+    }
+    lock.lock();
+    try {
+      readBuffer.drainTo(policy);
+      Node<V> old = data.get(key);
+      if (old != null) {
+        if (onlyIfAbsent) {
+          policy.onAccess(key);
+          return old.value;
+        }
+        data.put(key, new Node<V>(value, w));
+        weight += w - old.weight;
+        policy.onAccess(key);
+      } else {
+        data.put(key, new Node<V>(value, w));
+        weight += w;
+        policy.onInsert(key);
+      }
+      evict();
+      return old == null ? null : old.value;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Evicts the policy's victims until the cache is within its maximum weight.
+   */
+  private void evict() {
+    while (weight > maximumWeight) {
+      K victim = policy.evict();
+      if (victim == null) {
+        break;
+      }
+      Node<V> node = data.remove(victim);
+      if (node != null) {
+        weight -= node.weight;
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * A cached value and its weight.
+   */
+  private static final class Node<V> {
+
+    final V value;
+    final int weight;
+
+    Node(V value, int weight) {
+      this.value = value;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * An entry returned by the entry set iterator.  setValue writes through to the cache.
+   */
+  private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      final Iterator<Map.Entry<K, Node<V>>> it = data.entrySet().iterator();
+      return new Iterator<Map.Entry<K, V>>() {
+
+        private K last;
+
+        @Override
+        public boolean hasNext() {
+          return it.hasNext();
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+          Map.Entry<K, Node<V>> e = it.next();
+          last = e.getKey();
+          return new Entry(e.getKey(), e.getValue().value);
+        }
+
+        @Override
+        public void remove() {
+          if (last == null) {
+            throw new IllegalStateException();
+          }
+          Cache.this.remove(last);
+          last = null;
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return data.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Node<V> node = e.getKey() == null ? null : data.get(e.getKey());
+      return node != null && node.value.equals(e.getValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return e.getKey() != null && Cache.this.remove(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public void clear() {
+      Cache.this.clear();
+    }
+  }
+}
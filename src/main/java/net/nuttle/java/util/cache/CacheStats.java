@@ -0,0 +1,77 @@
+package net.nuttle.java.util.cache;
+
+/**
+ * A snapshot of the counters of a Cache.
+ * @author dan
+ *
+ */
+public final class CacheStats {
+
+  private final long hitCount;
+  private final long missCount;
+  private final long evictionCount;
+
+  public CacheStats(long hitCount, long missCount, long evictionCount) {
+    this.hitCount = hitCount;
+    this.missCount = missCount;
+    this.evictionCount = evictionCount;
+  }
+
+  /**
+   * Returns the number of get calls that found a value.
+   * @return
+   */
+  public long hitCount() {
+    return hitCount;
+  }
+
+  /**
+   * Returns the number of get calls that found no value.
+   * @return
+   */
+  public long missCount() {
+    return missCount;
+  }
+
+  /**
+   * Returns the number of entries evicted to stay within the maximum size or weight.
+   * Explicit removals are not counted.
+   * @return
+   */
+  public long evictionCount() {
+    return evictionCount;
+  }
+
+  public long requestCount() {
+    return hitCount + missCount;
+  }
+
+  /**
+   * Returns the fraction of requests that were hits, or 1 if there were no requests.
+   * @return
+   */
+  public double hitRate() {
+    long requests = requestCount();
+    return requests == 0 ? 1.0 : (double) hitCount / requests;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof CacheStats)) {
+      return false;
+    }
+    CacheStats other = (CacheStats) obj;
+    return hitCount == other.hitCount && missCount == other.missCount && evictionCount == other.evictionCount;
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (31 * (31 * hitCount + missCount) + evictionCount);
+  }
+
+  @Override
+  public String toString() {
+    return "CacheStats{hitCount=" + hitCount + ", missCount=" + missCount
+      + ", evictionCount=" + evictionCount + "}";
+  }
+}
@@ -0,0 +1,44 @@
+package net.nuttle.java.util.cache;
+
+/**
+ * Decides which key a Cache evicts when it is over its maximum size or weight.
+ * The cache tells the policy about every insertion, access and removal, and asks it for a victim
+ * as many times as it needs to get back under its limit.
+ * A policy is used by one cache only, always under the cache's lock, so it need not be thread-safe.
+ * Under contention the cache may drop some accesses, and may report an access to a key that
+ * was just removed; a policy must ignore accesses and removals of keys it does not hold.
+ * @author dan
+ *
+ * @param <K>
+ */
+public interface EvictionPolicy<K> {
+
+  /**
+   * Called when key is added to the cache.
+   * @param key
+   */
+  void onInsert(K key);
+
+  /**
+   * Called when key is read, or its value replaced.
+   * @param key
+   */
+  void onAccess(K key);
+
+  /**
+   * Called when key is removed from the cache, other than by eviction.
+   * @param key
+   */
+  void onRemove(K key);
+
+  /**
+   * Chooses a key to evict, forgets it, and returns it, or returns null if the policy holds no keys.
+   * @return
+   */
+  K evict();
+
+  /**
+   * Forgets all keys.
+   */
+  void clear();
+}
@@ -0,0 +1,97 @@
+package net.nuttle.java.util.cache;
+
+import java.util.Arrays;
+
+/**
+ * A count-min sketch of 4-bit counters that estimates how often each key was seen recently.
+ * Each key maps to one counter in each of 4 rows (all packed 16 to a long), and its estimate
+ * is the smallest of the four.  After 10 additions per cache entry, every counter is halved,
+ * so that old popularity fades.  It takes about 2 bytes per cache entry, whatever the number of keys seen.
+ * @author dan
+ *
+ */
+final class FrequencySketch {
+
+  private static final long[] SEEDS = {
+    0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+  private static final long RESET_MASK = 0x7777777777777777L;
+
+  private final long[] table;
+  private final int mask;
+  private final int sampleSize;
+  private int additions;
+
+  /**
+   * Creates a sketch sized for a cache of maximumSize entries.
+   * @param maximumSize
+   */
+  FrequencySketch(long maximumSize) {
+    int length = 16;
+    while (length < maximumSize / 4 && length < (1 << 26)) {
+      length <<= 1;
+    }
+    table = new long[length];
+    mask = length - 1;
+    sampleSize = (int) Math.min(10L * Math.max(maximumSize, 1), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Returns the estimated recent frequency of key, from 0 to 15.
+   */
+  int frequency(Object key) {
+    int hash = spread(key.hashCode());
+    int frequency = 15;
+    for (int i = 0; i < 4; i++) {
+      long h = rehash(hash, i);
+      int slot = (int) (h >>> 60) << 2;
+      frequency = Math.min(frequency, (int) ((table[index(h)] >>> slot) & 15));
+    }
+    return frequency;
+  }
+
+  /**
+   * Counts one occurrence of key.
+   */
+  void increment(Object key) {
+    int hash = spread(key.hashCode());
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      long h = rehash(hash, i);
+      int index = index(h);
+      int slot = (int) (h >>> 60) << 2;
+      if (((table[index] >>> slot) & 15) != 15) {
+        table[index] += 1L << slot;
+        added = true;
+      }
+    }
+    if (added && ++additions >= sampleSize) {
+      reset();
+    }
+  }
+
+  void clear() {
+    Arrays.fill(table, 0);
+    additions = 0;
+  }
+
+  private int index(long h) {
+    return (int) h & mask;
+  }
+
+  private void reset() {
+    for (int i = 0; i < table.length; i++) {
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    additions >>>= 1;
+  }
+
+  private static int spread(int h) {
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static long rehash(int hash, int row) {
+    long h = (hash + SEEDS[row]) * SEEDS[(row + 1) & 3];
+    return h ^ (h >>> 29);
+  }
+}
@@ -0,0 +1,97 @@
+package net.nuttle.java.util.cache;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Evicts the least frequently used key, and among those, the least recently used.
+ * Counts start at 1 on insertion and are forgotten on eviction, so a new key is always
+ * the first candidate; use TinyLfuPolicy to keep frequencies of keys that are not cached.
+ * @author dan
+ *
+ * @param <K>
+ */
+public class LfuPolicy<K> implements EvictionPolicy<K> {
+
+  private final Map<K, Integer> counts = new HashMap<>();
+
+  /**
+   * Keys by count, each set in order of last access.
+   */
+  private final TreeMap<Integer, LinkedHashSet<K>> buckets = new TreeMap<>();
+
+  @Override
+  public void onInsert(K key) {
+    Integer count = counts.get(key);
+    if (count != null) {
+      onAccess(key);
+      return;
+    }
+    counts.put(key, 1);
+    bucket(1).add(key);
+  }
+
+  @Override
+  public void onAccess(K key) {
+    Integer count = counts.get(key);
+    if (count == null) {
+      return;
+    }
+    unlink(key, count);
+    if (count < Integer.MAX_VALUE) {
+      count++;
+    }
+    counts.put(key, count);
+    bucket(count).add(key);
+  }
+
+  @Override
+  public void onRemove(K key) {
+    Integer count = counts.remove(key);
+    if (count != null) {
+      unlink(key, count);
+    }
+  }
+
+  @Override
+  public K evict() {
+    if (buckets.isEmpty()) {
+      return null;
+    }
+    Map.Entry<Integer, LinkedHashSet<K>> lowest = buckets.firstEntry();
+    Iterator<K> it = lowest.getValue().iterator();
+    K victim = it.next();
+    it.remove();
+    if (lowest.getValue().isEmpty()) {
+      buckets.remove(lowest.getKey());
+    }
+    counts.remove(victim);
+    return victim;
+  }
+
+  @Override
+  public void clear() {
+    counts.clear();
+    buckets.clear();
+  }
+
+  private LinkedHashSet<K> bucket(int count) {
+    LinkedHashSet<K> bucket = buckets.get(count);
+    if (bucket == null) {
+      bucket = new LinkedHashSet<>();
+      buckets.put(count, bucket);
+    }
+    return bucket;
+  }
+
+  private void unlink(K key, int count) {
+    LinkedHashSet<K> bucket = buckets.get(count);
+    bucket.remove(key);
+    if (bucket.isEmpty()) {
+      buckets.remove(count);
+    }
+  }
+}
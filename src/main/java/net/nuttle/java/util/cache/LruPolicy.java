@@ -0,0 +1,50 @@
+package net.nuttle.java.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Evicts the least recently used key.
+ * @author dan
+ *
+ * @param <K>
+ */
+public class LruPolicy<K> implements EvictionPolicy<K> {
+
+  /**
+   * Keys in access order, least recent first.
+   */
+  private final LinkedHashMap<K, Boolean> keys = new LinkedHashMap<>(16, 0.75f, true);
+
+  @Override
+  public void onInsert(K key) {
+    keys.put(key, Boolean.TRUE);
+  }
+
+  @Override
+  public void onAccess(K key) {
+    //get moves a present key to the end, and ignores an absent one
+    keys.get(key);
+  }
+
+  @Override
+  public void onRemove(K key) {
+    keys.remove(key);
+  }
+
+  @Override
+  public K evict() {
+    Iterator<K> it = keys.keySet().iterator();
+    if (!it.hasNext()) {
+      return null;
+    }
+    K victim = it.next();
+    it.remove();
+    return victim;
+  }
+
+  @Override
+  public void clear() {
+    keys.clear();
+  }
+}
@@ -0,0 +1,103 @@
+package net.nuttle.java.util.cache;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A striped, lossy buffer of the keys read from a Cache, so that a read records its access
+ * without the cache's lock.  Each stripe is a ring of STRIPE_SIZE keys, and a thread adds to the
+ * stripe of its thread id with one compare-and-set; if the stripe is full, or another thread
+ * takes the slot first, the access is dropped.  The cache drains the buffer into its policy under
+ * its lock: before every write, and when a reader fills its stripe and the lock is free.
+ * Few accesses are dropped, as the rings fill only while the lock is held for a long time,
+ * and readers on different stripes share no cache line: the slots of a stripe are contiguous,
+ * and its counters are 128 bytes apart from those of the next stripe.
+ * <p>
+ * Any thread may offer; only the holder of the cache's lock may drain.
+ * A key is published with an ordered store after its slot is claimed, so the drain stops at a
+ * slot that is claimed but still empty, and takes it up on the next drain.
+ * @author dan
+ *
+ * @param <K>
+ */
+final class ReadBuffer<K> {
+
+  static final int STRIPE_SIZE = 16;
+  private static final int MAX_STRIPES = 64;
+  /**
+   * Longs from the counter of one stripe to that of the next: 128 bytes, as the hardware prefetches
+   * cache lines in pairs.
+   */
+  private static final int STRIDE = 16;
+
+  private final int mask;
+  private final AtomicLongArray writes;
+  private final AtomicLongArray reads;
+  private final AtomicReferenceArray<Object> slots;
+
+  /**
+   * Creates a buffer with a stripe per processor, rounded up to a power of two.
+   */
+  ReadBuffer() {
+    int cpus = Runtime.getRuntime().availableProcessors();
+    int n = 1;
+    while (n < cpus && n < MAX_STRIPES) {
+      n <<= 1;
+    }
+    mask = n - 1;
+    writes = new AtomicLongArray(n * STRIDE);
+    reads = new AtomicLongArray(n * STRIDE);
+    slots = new AtomicReferenceArray<Object>(n * STRIPE_SIZE);
+  }
+
+  /**
+   * Records a read of key, unless its stripe is full or contended, and returns true if the stripe
+   * is full, so that the caller should drain the buffer.
+   * @param key
+   * @return
+   */
+  boolean offer(K key) {
+    int stripe = (int) Thread.currentThread().getId() & mask;
+    int counter = stripe * STRIDE;
+    long w = writes.get(counter);
+    long r = reads.get(counter);
+    if (w - r >= STRIPE_SIZE) {
+      return true;
+    }
+    if (!writes.compareAndSet(counter, w, w + 1)) {
+      return false;
+    }
+    slots.lazySet(stripe * STRIPE_SIZE + (int) (w & (STRIPE_SIZE - 1)), key);
+    return w + 1 - r >= STRIPE_SIZE;
+  }
+
+  /**
+   * Passes the keys in the buffer to policy, stripe by stripe, in the order they were added.
+   * Called under the cache's lock.
+   * @param policy
+   */
+  @SuppressWarnings("unchecked")
+  void drainTo(EvictionPolicy<K> policy) {
+    for (int stripe = 0; stripe <= mask; stripe++) {
+      int counter = stripe * STRIDE;
+      long r = reads.get(counter);
+      long w = writes.get(counter);
+      if (r == w) {
+        continue;
+      }
+      long start = r;
+      for (; r < w; r++) {
+        int index = stripe * STRIPE_SIZE + (int) (r & (STRIPE_SIZE - 1));
+        Object key = slots.get(index);
+        if (key == null) {
+          break;
+        }
+        slots.lazySet(index, null);
+        policy.onAccess((K) key);
+      }
+      if (r != start) {
+        reads.lazySet(counter, r);
+      }
+    }
+  }
+}
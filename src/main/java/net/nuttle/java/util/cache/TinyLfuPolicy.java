@@ -0,0 +1,131 @@
+package net.nuttle.java.util.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Window TinyLFU: a small LRU window in front of a segmented LRU main area,
+ * with admission to the main area decided by a frequency sketch.
+ * New keys enter the window (1% of the cache), and a key pushed out of the window moves to the
+ * probation segment of the main area.  When the cache must evict, that newcomer is kept only if the
+ * sketch has seen it more often than the least recently used key of probation; otherwise it is the one
+ * evicted.  A key accessed in probation moves to the protected
+ * segment (80% of the main area), and keys pushed out of protected go back to probation.
+ * The sketch counts keys whether or not they are cached, so a scan of keys read once cannot push
+ * out the keys that are read often, and the window still lets bursts of new keys settle in.
+ * @author dan
+ *
+ * @param <K>
+ */
+public class TinyLfuPolicy<K> implements EvictionPolicy<K> {
+
+  private final int windowMax;
+  private final int protectedMax;
+  private final FrequencySketch sketch;
+
+  /**
+   * The three segments, least recently used first.  Entries are moved to the end by remove and put.
+   */
+  private final LinkedHashMap<K, Boolean> window = new LinkedHashMap<>();
+  private final LinkedHashMap<K, Boolean> probation = new LinkedHashMap<>();
+  private final LinkedHashMap<K, Boolean> protectedSegment = new LinkedHashMap<>();
+
+  /**
+   * The key last moved from the window to probation, which has not yet faced admission.
+   */
+  private K candidate;
+
+  /**
+   * Creates a policy for a cache of about maximumSize entries, which sizes the window,
+   * the protected segment and the sketch.
+   * @param maximumSize
+   */
+  public TinyLfuPolicy(long maximumSize) {
+    if (maximumSize <= 0) {
+      throw new IllegalArgumentException("Illegal maximum size: " + maximumSize);
+    }
+    long capped = Math.min(maximumSize, Integer.MAX_VALUE);
+    windowMax = (int) Math.max(1, capped / 100);
+    protectedMax = (int) ((capped - windowMax) * 4 / 5);
+    sketch = new FrequencySketch(capped);
+  }
+
+  @Override
+  public void onInsert(K key) {
+    sketch.increment(key);
+    if (!window.containsKey(key) && !probation.containsKey(key) && !protectedSegment.containsKey(key)) {
+      window.put(key, Boolean.TRUE);
+      if (window.size() > windowMax) {
+        candidate = removeFirst(window);
+        probation.put(candidate, Boolean.TRUE);
+      }
+    }
+  }
+
+  @Override
+  public void onAccess(K key) {
+    if (window.remove(key) != null) {
+      sketch.increment(key);
+      window.put(key, Boolean.TRUE);
+    } else if (probation.remove(key) != null) {
+      sketch.increment(key);
+      protectedSegment.put(key, Boolean.TRUE);
+      if (protectedSegment.size() > protectedMax) {
+        K demoted = removeFirst(protectedSegment);
+        probation.put(demoted, Boolean.TRUE);
+      }
+    } else if (protectedSegment.remove(key) != null) {
+      sketch.increment(key);
+      protectedSegment.put(key, Boolean.TRUE);
+    }
+  }
+
+  @Override
+  public void onRemove(K key) {
+    if (window.remove(key) == null && probation.remove(key) == null) {
+      protectedSegment.remove(key);
+    }
+  }
+
+  @Override
+  public K evict() {
+    K c = candidate;
+    candidate = null;
+    if (c != null && probation.containsKey(c)) {
+      K victim = probation.keySet().iterator().next();
+      if (victim.equals(c)) {
+        victim = protectedSegment.isEmpty() ? null : protectedSegment.keySet().iterator().next();
+      }
+      if (victim != null && sketch.frequency(c) > sketch.frequency(victim)) {
+        onRemove(victim);
+        return victim;
+      }
+      probation.remove(c);
+      return c;
+    }
+    K victim = removeFirst(probation);
+    if (victim == null) {
+      victim = removeFirst(protectedSegment);
+    }
+    return victim != null ? victim : removeFirst(window);
+  }
+
+  @Override
+  public void clear() {
+    window.clear();
+    probation.clear();
+    protectedSegment.clear();
+    sketch.clear();
+    candidate = null;
+  }
+
+  private static <K> K removeFirst(LinkedHashMap<K, Boolean> segment) {
+    Iterator<K> it = segment.keySet().iterator();
+    if (!it.hasNext()) {
+      return null;
+    }
+    K first = it.next();
+    it.remove();
+    return first;
+  }
+}
@@ -0,0 +1,21 @@
+package net.nuttle.java.util.cache;
+
+/**
+ * Computes the weight of a cache entry, when a Cache is bounded by total weight rather than
+ * by number of entries (for example, the size in bytes of the value).
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public interface Weigher<K, V> {
+
+  /**
+   * Returns the weight of the entry, which must not be negative.
+   * The weight of an entry is computed once, when it is put.
+   * @param key
+   * @param value
+   * @return
+   */
+  int weigh(K key, V value);
+}
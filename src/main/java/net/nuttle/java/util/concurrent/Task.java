@@ -0,0 +1,148 @@
+package net.nuttle.java.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A task run by a WorkStealingPool, in the style of ForkJoinTask: compute may fork subtasks,
+ * which go onto the head of the running worker's deque, and join them, which runs other tasks
+ * (its own first, then stolen ones) until they are done rather than blocking the worker.
+ * A task runs at most once.
+ * @author dan
+ *
+ * @param <V>
+ */
+public abstract class Task<V> {
+
+  private static final int NEW = 0;
+  private static final int RUNNING = 1;
+  private static final int DONE = 2;
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicIntegerFieldUpdater<Task> STATE = AtomicIntegerFieldUpdater.newUpdater(Task.class, "state");
+
+  private volatile int state;
+  // Set by a thread outside the pool that is waiting in join, for run to notify it
+  private volatile boolean signal;
+  private V result;
+  private Throwable failure;
+
+  /**
+   * Computes the result of the task.
+   * @return
+   */
+  protected abstract V compute();
+
+  /**
+   * Pushes this task onto the deque of the worker running the current task, and returns it.
+   * @return
+   * @throws IllegalStateException if the current thread is not a worker of a WorkStealingPool
+   */
+  public final Task<V> fork() {
+    Thread thread = Thread.currentThread();
+    if (!(thread instanceof WorkStealingPool.Worker)) {
+      throw new IllegalStateException("fork outside a WorkStealingPool");
+    }
+    ((WorkStealingPool.Worker) thread).push(this);
+    return this;
+  }
+
+  /**
+   * Returns the result of the task once it is done, rethrowing any exception compute threw.
+   * A worker runs other tasks while it waits; any other thread blocks.
+   * @return
+   */
+  public final V join() {
+    if (state != DONE) {
+      Thread thread = Thread.currentThread();
+      if (thread instanceof WorkStealingPool.Worker) {
+        ((WorkStealingPool.Worker) thread).helpUntilDone(this);
+      } else {
+        awaitDone();
+      }
+    }
+    return result();
+  }
+
+  /**
+   * Runs the task in the current thread, unless it has already run, and returns its result as join does.
+   * @return
+   */
+  public final V invoke() {
+    run();
+    return join();
+  }
+
+  /**
+   * Forks b, runs a, and joins b.
+   * @param a
+   * @param b
+   */
+  public static void invokeAll(Task<?> a, Task<?> b) {
+    b.fork();
+    a.invoke();
+    b.join();
+  }
+
+  public final boolean isDone() {
+    return state == DONE;
+  }
+
+  /**
+   * Returns true if compute threw an exception.
+   * @return
+   */
+  public final boolean isFailed() {
+    return state == DONE && failure != null;
+  }
+
+  /**
+   * Computes the result, unless the task has already run or is running.
+   */
+  final void run() {
+    if (state != NEW || !STATE.compareAndSet(this, NEW, RUNNING)) {
+      return;
+    }
+    try {
+      result = compute();
+    } catch (Throwable t) {
+      failure = t;
+    }
+    state = DONE;
+    if (signal) {
+      synchronized (this) {
+        notifyAll();
+      }
+    }
+  }
+
+  private void awaitDone() {
+    signal = true;
+    boolean interrupted = false;
+    synchronized (this) {
+      while (state != DONE) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private V result() {
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    if (failure != null) {
+      // A checked exception thrown by stealth
+      throw new RuntimeException(failure);
+    }
+    return result;
+  }
+}
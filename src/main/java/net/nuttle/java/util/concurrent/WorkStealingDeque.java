@@ -0,0 +1,389 @@
+package net.nuttle.java.util.concurrent;
+
+import java.util.AbstractCollection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A Chase-Lev work-stealing deque: one owner thread pushes and pops elements at the head,
+ * as a stack, while any thread may steal the oldest element from the tail with pollLast.
+ * <p>
+ * The elements live in a circular array between two counters, the bottom, written only by the owner,
+ * and the top, advanced by a compare-and-set.  push and most pops touch only the bottom, so they
+ * cost no more than an ordered store (a pop, a volatile store); only a pop of the last element
+ * races the thieves for it with a compare-and-set of the top, as every steal does.
+ * When the array fills, the owner copies the elements to one twice its size; the thieves may go on
+ * reading the old one, as the elements between the counters are the same in both.  The array
+ * never shrinks, and a stolen slot keeps its element until the owner reuses it.
+ * <p>
+ * push, addFirst, offerFirst, pop, removeFirst, pollFirst, poll, remove, peekFirst, peek, getFirst
+ * and element may only be called by the owner; pollLast, removeLast, peekLast, getLast, size,
+ * isEmpty and the iterators by any thread.  Only the owner inserts, at the head, so add, offer,
+ * addLast and offerLast throw UnsupportedOperationException, as do the methods that remove
+ * an element from the middle.  The iterators are weakly consistent.  Null elements are not allowed.
+ * @author dan
+ *
+ * @param <E>
+ */
+public class WorkStealingDeque<E> extends DequeBottom<E> implements Deque<E> {
+
+  long p30, p31, p32, p33, p34, p35, p36, p37;
+
+  private static final int DEFAULT_CAPACITY = 64;
+
+  /**
+   * Creates a deque with room for 64 elements before it grows.
+   */
+  public WorkStealingDeque() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a deque with room for initialCapacity elements, rounded up to a power of two, before it grows.
+   * @param initialCapacity
+   */
+  public WorkStealingDeque(int initialCapacity) {
+    if (initialCapacity <= 0 || initialCapacity > 1 << 30) {
+      throw new IllegalArgumentException("initialCapacity out of range: " + initialCapacity);
+    }
+    array = new AtomicReferenceArray<Object>(Math.max(2, Integer.highestOneBit(initialCapacity - 1) << 1));
+  }
+
+  /**
+   * Pushes e onto the head.  Owner only.
+   */
+  @Override
+  public void push(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long b = bottom;
+    long t = top;
+    AtomicReferenceArray<Object> a = array;
+    if (b - t >= a.length() - 1) {
+      a = grow(a, t, b);
+    }
+    a.lazySet((int) b & (a.length() - 1), e);
+    BOTTOM.lazySet(this, b + 1);
+  }
+
+  @Override
+  public void addFirst(E e) {
+    push(e);
+  }
+
+  @Override
+  public boolean offerFirst(E e) {
+    push(e);
+    return true;
+  }
+
+  /**
+   * Removes and returns the head, the element pushed last, or null if the deque is empty.  Owner only.
+   */
+  @Override
+  public E pollFirst() {
+    long b = bottom - 1;
+    AtomicReferenceArray<Object> a = array;
+    // The volatile store keeps thieves from taking this element unless they read the top first
+    bottom = b;
+    long t = top;
+    if (t > b) {
+      bottom = b + 1;
+      return null;
+    }
+    int index = (int) b & (a.length() - 1);
+    @SuppressWarnings("unchecked")
+    E e = (E) a.get(index);
+    if (t == b) {
+      // The last element: race the thieves for it
+      if (!TOP.compareAndSet(this, t, t + 1)) {
+        e = null;
+      }
+      bottom = b + 1;
+      return e;
+    }
+    a.lazySet(index, null);
+    return e;
+  }
+
+  @Override
+  public E pop() {
+    return removeFirst();
+  }
+
+  @Override
+  public E removeFirst() {
+    E e = pollFirst();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  @Override
+  public E poll() {
+    return pollFirst();
+  }
+
+  @Override
+  public E remove() {
+    return removeFirst();
+  }
+
+  /**
+   * Removes and returns the tail, the oldest element, or null if the deque is empty.
+   * This is the steal operation; any thread may call it.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public E pollLast() {
+    while (true) {
+      long t = top;
+      long b = bottom;
+      if (t >= b) {
+        return null;
+      }
+      AtomicReferenceArray<Object> a = array;
+      Object e = a.get((int) t & (a.length() - 1));
+      if (TOP.compareAndSet(this, t, t + 1)) {
+        return (E) e;
+      }
+    }
+  }
+
+  @Override
+  public E removeLast() {
+    E e = pollLast();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  /**
+   * Returns the head, or null if the deque is empty.  Owner only.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peekFirst() {
+    long b = bottom - 1;
+    long t = top;
+    AtomicReferenceArray<Object> a = array;
+    return t > b ? null : (E) a.get((int) b & (a.length() - 1));
+  }
+
+  @Override
+  public E peek() {
+    return peekFirst();
+  }
+
+  @Override
+  public E getFirst() {
+    E e = peekFirst();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  @Override
+  public E element() {
+    return getFirst();
+  }
+
+  /**
+   * Returns the tail, or null if the deque is empty.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peekLast() {
+    long t = top;
+    long b = bottom;
+    AtomicReferenceArray<Object> a = array;
+    return t >= b ? null : (E) a.get((int) t & (a.length() - 1));
+  }
+
+  @Override
+  public E getLast() {
+    E e = peekLast();
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e;
+  }
+
+  @Override
+  public int size() {
+    while (true) {
+      long t = top;
+      long b = bottom;
+      if (t == top) {
+        return (int) Math.max(0, b - t);
+      }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return top >= bottom;
+  }
+
+  /**
+   * Returns a weakly consistent iterator from head to tail, which does not support remove.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    long t = top;
+    return new DequeIterator(bottom - 1, t, -1);
+  }
+
+  /**
+   * Returns a weakly consistent iterator from tail to head, which does not support remove.
+   */
+  @Override
+  public Iterator<E> descendingIterator() {
+    long t = top;
+    return new DequeIterator(t, bottom - 1, 1);
+  }
+
+  @Override
+  public boolean add(E e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean offer(E e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void addLast(E e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean offerLast(E e) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean remove(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeFirstOccurrence(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public boolean removeLastOccurrence(Object o) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Copies the elements from top to bottom to an array twice the size of a, and installs it.
+   */
+  private AtomicReferenceArray<Object> grow(AtomicReferenceArray<Object> a, long t, long b) {
+    if (a.length() == 1 << 30) {
+      throw new IllegalStateException("deque full");
+    }
+    AtomicReferenceArray<Object> grown = new AtomicReferenceArray<Object>(a.length() << 1);
+    for (long i = t; i < b; i++) {
+      grown.lazySet((int) i & (grown.length() - 1), a.get((int) i & (a.length() - 1)));
+    }
+    array = grown;
+    return grown;
+  }
+
+  /**
+   * Walks the array from one index to another, inclusive, skipping the slots found empty.
+   */
+  private final class DequeIterator implements Iterator<E> {
+
+    private final AtomicReferenceArray<Object> a = array;
+    private final long end;
+    private final int step;
+    private long index;
+    private E next;
+
+    DequeIterator(long from, long to, int step) {
+      this.index = from;
+      this.end = to;
+      this.step = step;
+      next = advance();
+    }
+
+    @SuppressWarnings("unchecked")
+    private E advance() {
+      while ((end - index) * step >= 0) {
+        Object e = a.get((int) index & (a.length() - 1));
+        index += step;
+        if (e != null) {
+          return (E) e;
+        }
+      }
+      return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public E next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      E e = next;
+      next = advance();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
+
+/**
+ * The fields of WorkStealingDeque, padded apart as those of SpscRingBuffer are,
+ * so that thieves advancing the top do not slow the owner writing the bottom.
+ */
+abstract class DequeFields<E> extends AbstractCollection<E> {
+
+  volatile AtomicReferenceArray<Object> array;
+}
+
+abstract class DequePad1<E> extends DequeFields<E> {
+
+  long p10, p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class DequeTop<E> extends DequePad1<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<DequeTop> TOP = AtomicLongFieldUpdater.newUpdater(DequeTop.class, "top");
+
+  volatile long top;
+}
+
+abstract class DequePad2<E> extends DequeTop<E> {
+
+  long p20, p21, p22, p23, p24, p25, p26, p27;
+}
+
+abstract class DequeBottom<E> extends DequePad2<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<DequeBottom> BOTTOM =
+    AtomicLongFieldUpdater.newUpdater(DequeBottom.class, "bottom");
+
+  volatile long bottom;
+}
@@ -0,0 +1,319 @@
+package net.nuttle.java.util.concurrent;
+
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A small fork/join scheduler: a fixed set of worker threads, each with a WorkStealingDeque of tasks.
+ * A worker runs the tasks it forks itself, newest first, and when it has none, steals the oldest
+ * task of another worker, which is usually the largest left to split.  Tasks submitted from outside
+ * go into a shared queue, or, when submitted to a given worker, into that worker's own inbox,
+ * which no other worker takes from, so that work can be kept near its data; the tasks such a task
+ * forks can still be stolen.
+ * <p>
+ * Compared with ForkJoinPool, this does much less: there is no compensation for blocked workers,
+ * no cancellation and no per-task bookkeeping beyond a state and a result, so a fork is a push onto
+ * the deque and a join of a task that has not been stolen is a pop.  Idle workers spin briefly,
+ * yield, and then park until a task is submitted or forked, or for at most a millisecond.
+ * @author dan
+ *
+ */
+public class WorkStealingPool implements Executor {
+
+  private static final int SPINS = 64;
+  private static final int YIELDS = 64;
+  private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final Worker[] workers;
+  private final Queue<Task<?>> submissions = new ConcurrentLinkedQueue<Task<?>>();
+  // The number of workers parked, or about to park
+  private final AtomicInteger parked = new AtomicInteger();
+  private volatile boolean shutdown;
+
+  /**
+   * Creates a pool with one worker per available processor.
+   */
+  public WorkStealingPool() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a pool with parallelism workers, and starts them.
+   * @param parallelism
+   */
+  public WorkStealingPool(int parallelism) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism out of range: " + parallelism);
+    }
+    workers = new Worker[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      workers[i] = new Worker(this, i);
+    }
+    for (Worker worker : workers) {
+      worker.start();
+    }
+  }
+
+  public int parallelism() {
+    return workers.length;
+  }
+
+  /**
+   * Submits task to any worker, and returns it.
+   * @param task
+   * @return
+   * @throws RejectedExecutionException if the pool has been shut down
+   */
+  public <V> Task<V> submit(Task<V> task) {
+    checkOpen();
+    submissions.add(task);
+    signal();
+    return task;
+  }
+
+  /**
+   * Submits task to the worker numbered worker, from 0 to parallelism - 1, which alone will run it,
+   * and returns it.
+   * @param task
+   * @param worker
+   * @return
+   * @throws RejectedExecutionException if the pool has been shut down
+   */
+  public <V> Task<V> submit(Task<V> task, int worker) {
+    checkOpen();
+    Worker w = workers[worker];
+    w.inbox.add(task);
+    if (w.parked) {
+      LockSupport.unpark(w);
+    }
+    return task;
+  }
+
+  /**
+   * Submits task, and returns its result once it is done.
+   * @param task
+   * @return
+   */
+  public <V> V invoke(Task<V> task) {
+    return submit(task).join();
+  }
+
+  /**
+   * Runs command in the pool.  An exception it throws goes to the worker's uncaught exception handler.
+   */
+  @Override
+  public void execute(final Runnable command) {
+    if (command == null) {
+      throw new NullPointerException();
+    }
+    submit(new Task<Void>() {
+      @Override
+      protected Void compute() {
+        try {
+          command.run();
+        } catch (RuntimeException | Error e) {
+          Thread thread = Thread.currentThread();
+          thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Stops accepting tasks from outside the pool.  The workers exit once they have run the tasks
+   * already submitted, and those they fork.
+   */
+  public void shutdown() {
+    shutdown = true;
+    for (Worker worker : workers) {
+      LockSupport.unpark(worker);
+    }
+  }
+
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * Waits until all the workers have exited after shutdown, or timeout has passed,
+   * and returns true if they have.
+   * @param timeout
+   * @param unit
+   * @return
+   * @throws InterruptedException
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : workers) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining > 0) {
+        TimeUnit.NANOSECONDS.timedJoin(worker, remaining);
+      }
+      if (worker.isAlive()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void checkOpen() {
+    if (shutdown) {
+      throw new RejectedExecutionException("pool is shut down");
+    }
+  }
+
+  /**
+   * Wakes a parked worker, if there is one, to take new work.
+   */
+  void signal() {
+    if (parked.get() > 0) {
+      for (Worker worker : workers) {
+        if (worker.parked) {
+          LockSupport.unpark(worker);
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns a task taken from the shared queue, or stolen from a worker other than thief, or null.
+   */
+  Task<?> steal(Worker thief) {
+    Task<?> task = submissions.poll();
+    if (task != null) {
+      return task;
+    }
+    int n = workers.length;
+    int start = thief.random.nextInt(n);
+    for (int i = 0; i < n; i++) {
+      Worker victim = workers[(start + i) % n];
+      if (victim != thief) {
+        task = victim.deque.pollLast();
+        if (task != null) {
+          return task;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * A worker thread, which owns the deque its tasks fork into.
+   */
+  static final class Worker extends Thread {
+
+    final WorkStealingPool pool;
+    final WorkStealingDeque<Task<?>> deque = new WorkStealingDeque<Task<?>>();
+    final Queue<Task<?>> inbox = new ConcurrentLinkedQueue<Task<?>>();
+    final Random random;
+    volatile boolean parked;
+
+    Worker(WorkStealingPool pool, int index) {
+      super("WorkStealingPool-worker-" + index);
+      this.pool = pool;
+      this.random = new Random(index);
+      setDaemon(true);
+    }
+
+    void push(Task<?> task) {
+      deque.push(task);
+      // Idle workers will find the tasks pushed after this one while they steal; only the first needs a wakeup
+      if (deque.size() <= 1) {
+        pool.signal();
+      }
+    }
+
+    @Override
+    public void run() {
+      int idle = 0;
+      while (true) {
+        Task<?> task = next();
+        if (task != null) {
+          task.run();
+          idle = 0;
+        } else if (idle < SPINS + YIELDS) {
+          if (idle++ >= SPINS) {
+            Thread.yield();
+          }
+        } else if (!park()) {
+          return;
+        }
+      }
+    }
+
+    /**
+     * Runs other tasks until task is done.
+     */
+    void helpUntilDone(Task<?> task) {
+      int idle = 0;
+      while (!task.isDone()) {
+        Task<?> other = next();
+        if (other != null) {
+          other.run();
+          idle = 0;
+        } else if (idle < SPINS) {
+          idle++;
+        } else {
+          // The task is running on a thief, which has nothing left for us to steal
+          Thread.yield();
+        }
+      }
+    }
+
+    private Task<?> next() {
+      Task<?> task = deque.pollFirst();
+      if (task == null) {
+        task = inbox.poll();
+        if (task == null) {
+          task = pool.steal(this);
+        }
+      }
+      return task;
+    }
+
+    /**
+     * Parks until signalled, or for at most PARK_NANOS, and returns false if the worker should exit.
+     */
+    private boolean park() {
+      parked = true;
+      pool.parked.incrementAndGet();
+      try {
+        // Check again after announcing the park, so that work queued meanwhile is not missed
+        if (hasWork()) {
+          return true;
+        }
+        if (pool.shutdown) {
+          return false;
+        }
+        LockSupport.parkNanos(this, PARK_NANOS);
+        return true;
+      } finally {
+        parked = false;
+        pool.parked.decrementAndGet();
+      }
+    }
+
+    /**
+     * Returns true if a task is queued that this worker could take.
+     */
+    private boolean hasWork() {
+      if (!inbox.isEmpty() || !pool.submissions.isEmpty()) {
+        return true;
+      }
+      for (Worker worker : pool.workers) {
+        if (!worker.deque.isEmpty()) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,318 @@
+package net.nuttle.java.util.event;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An Observable that notifies its observers asynchronously, in batches: notifyObservers queues
+ * its argument for each observer and returns, and each observer receives the arguments queued
+ * for it as a list, on a thread of the executor, once there are maxBatchSize of them or
+ * the first has waited maxDelay, whichever comes first.  A slow observer receives bigger batches
+ * rather than delaying the others, until its queue fills, when its OverflowPolicy either blocks
+ * the notifying thread (back-pressure) or drops a notification.
+ * <p>
+ * Each observer receives its batches one at a time, in order, though not always on the same
+ * thread.  The executor may be any, such as a fixed thread pool, or on Java 21, one that runs each
+ * task on a virtual thread (Executors.newVirtualThreadPerTaskExecutor).  The delays are timed
+ * by a daemon thread of the observable's own, which shutdown stops.  An exception thrown by
+ * an observer goes to its thread's uncaught exception handler.  Null arguments are not allowed.
+ * A BLOCK observer must not be notified from its own update, which could wait for itself.
+ * @author dan
+ *
+ * @param <T>
+ */
+public class AsyncObservable<T> {
+
+  private static final int DEFAULT_BATCH_SIZE = 256;
+  private static final long DEFAULT_DELAY_MILLIS = 1;
+  private static final int DEFAULT_CAPACITY = 4096;
+
+  private final Executor executor;
+  private final ScheduledExecutorService scheduler;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+  private volatile boolean shutdown;
+
+  /**
+   * Creates an observable that runs its observers on executor.
+   * @param executor
+   */
+  public AsyncObservable(Executor executor) {
+    this.executor = executor;
+    ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "AsyncObservable-timer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    scheduler.setRemoveOnCancelPolicy(true);
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Adds observer, with batches of up to 256 notifications delayed up to a millisecond,
+   * and a queue of 4096 notifications that blocks when it is full.
+   * @param observer
+   * @return
+   */
+  public Subscription addObserver(BatchObserver<? super T> observer) {
+    return addObserver(observer, DEFAULT_BATCH_SIZE, DEFAULT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Adds observer, with batches of up to maxBatchSize notifications delayed up to maxDelay.
+   * @param observer
+   * @param maxBatchSize
+   * @param maxDelay
+   * @param unit
+   * @return
+   */
+  public Subscription addObserver(BatchObserver<? super T> observer, int maxBatchSize, long maxDelay, TimeUnit unit) {
+    return addObserver(observer, maxBatchSize, maxDelay, unit, Math.max(DEFAULT_CAPACITY, maxBatchSize),
+      OverflowPolicy.BLOCK);
+  }
+
+  /**
+   * Adds observer, with batches of up to maxBatchSize notifications delayed up to maxDelay,
+   * and a queue of capacity notifications that follows policy when it is full.
+   * A maxDelay of 0 delivers each notification as soon as the observer is free.
+   * @param observer
+   * @param maxBatchSize
+   * @param maxDelay
+   * @param unit
+   * @param capacity
+   * @param policy
+   * @return
+   */
+  public Subscription addObserver(BatchObserver<? super T> observer, int maxBatchSize, long maxDelay, TimeUnit unit,
+    int capacity, OverflowPolicy policy) {
+    if (observer == null || policy == null) {
+      throw new NullPointerException();
+    }
+    if (maxBatchSize <= 0 || maxDelay < 0 || capacity < maxBatchSize) {
+      throw new IllegalArgumentException("bad batch size, delay or capacity: " + maxBatchSize + ", " + maxDelay
+        + ", " + capacity);
+    }
+    Subscription subscription = new Subscription(observer, maxBatchSize, unit.toNanos(maxDelay), capacity, policy);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  /**
+   * Removes observer, discarding the notifications queued for it, and returns true if it was found.
+   * @param observer
+   * @return
+   */
+  public boolean deleteObserver(BatchObserver<?> observer) {
+    for (Subscription subscription : subscriptions) {
+      if (subscription.observer == observer) {
+        subscription.cancel();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int countObservers() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Queues arg for each observer.
+   * @param arg
+   * @throws IllegalStateException if the observable has been shut down
+   */
+  public void notifyObservers(T arg) {
+    if (arg == null) {
+      throw new NullPointerException();
+    }
+    if (shutdown) {
+      throw new IllegalStateException("shut down");
+    }
+    for (Subscription subscription : subscriptions) {
+      subscription.offer(arg);
+    }
+  }
+
+  /**
+   * Delivers the notifications queued without waiting for their delays, stops accepting new ones,
+   * and stops the timer thread.  Does not shut down the executor.
+   */
+  public void shutdown() {
+    shutdown = true;
+    for (Subscription subscription : subscriptions) {
+      subscription.signal(true);
+    }
+    scheduler.shutdown();
+  }
+
+  /**
+   * An observer's queue and batching, returned by addObserver.
+   */
+  public final class Subscription {
+
+    private static final int IDLE = 0;
+    // A timer will deliver the batch
+    private static final int SCHEDULED = 1;
+    // A drain is queued on the executor, or running
+    private static final int RUNNING = 2;
+
+    final BatchObserver<? super T> observer;
+    private final BlockingQueue<T> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final OverflowPolicy policy;
+    private final AtomicInteger state = new AtomicInteger(IDLE);
+    private final AtomicLong dropped = new AtomicLong();
+    private final List<T> batch;
+    private volatile boolean cancelled;
+
+    private final Runnable drain = new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    };
+
+    private final Runnable timer = new Runnable() {
+      @Override
+      public void run() {
+        if (state.compareAndSet(SCHEDULED, RUNNING)) {
+          execute();
+        }
+      }
+    };
+
+    Subscription(BatchObserver<? super T> observer, int maxBatchSize, long maxDelayNanos, int capacity,
+      OverflowPolicy policy) {
+      this.observer = observer;
+      this.queue = new ArrayBlockingQueue<T>(capacity);
+      this.maxBatchSize = maxBatchSize;
+      this.maxDelayNanos = maxDelayNanos;
+      this.policy = policy;
+      this.batch = new ArrayList<T>(maxBatchSize);
+    }
+
+    /**
+     * Removes the observer, discarding the notifications queued for it.  A batch it is processing
+     * is not interrupted.
+     */
+    public void cancel() {
+      cancelled = true;
+      subscriptions.remove(this);
+      queue.clear();
+    }
+
+    /**
+     * Returns the number of notifications dropped because the queue was full, or the notifying
+     * thread was interrupted while it blocked.
+     * @return
+     */
+    public long dropped() {
+      return dropped.get();
+    }
+
+    /**
+     * Returns the number of notifications queued.
+     * @return
+     */
+    public int pending() {
+      return queue.size();
+    }
+
+    void offer(T arg) {
+      switch (policy) {
+        case BLOCK:
+          try {
+            queue.put(arg);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+            return;
+          }
+          break;
+        case DROP_NEWEST:
+          if (!queue.offer(arg)) {
+            dropped.incrementAndGet();
+            return;
+          }
+          break;
+        default:
+          while (!queue.offer(arg)) {
+            if (queue.poll() != null) {
+              dropped.incrementAndGet();
+            }
+          }
+          break;
+      }
+      signal(false);
+    }
+
+    /**
+     * Delivers the queued notifications now if now is true, or there is a full batch, or else
+     * has the timer deliver them after the delay, unless a delivery is already on its way.
+     */
+    void signal(boolean now) {
+      if (now || shutdown || maxDelayNanos == 0 || queue.size() >= maxBatchSize) {
+        if (state.compareAndSet(IDLE, RUNNING) || state.compareAndSet(SCHEDULED, RUNNING)) {
+          execute();
+        }
+      } else if (state.compareAndSet(IDLE, SCHEDULED)) {
+        scheduler.schedule(timer, maxDelayNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+
+    private void execute() {
+      try {
+        executor.execute(drain);
+      } catch (RejectedExecutionException e) {
+        state.set(IDLE);
+        throw e;
+      }
+    }
+
+    /**
+     * Delivers full batches while there are any, and a partial one, which has waited its delay
+     * or is being flushed, then leaves the rest to wait.
+     */
+    private void drain() {
+      try {
+        while (!cancelled) {
+          queue.drainTo(batch, maxBatchSize);
+          if (batch.isEmpty()) {
+            break;
+          }
+          try {
+            observer.update(AsyncObservable.this, batch);
+          } catch (RuntimeException | Error e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+          }
+          batch.clear();
+          if (queue.size() < maxBatchSize) {
+            break;
+          }
+        }
+      } finally {
+        batch.clear();
+        state.set(IDLE);
+      }
+      // Notifications queued while the state was RUNNING did not signal
+      if (!cancelled && !queue.isEmpty()) {
+        signal(false);
+      }
+    }
+  }
+}
@@ -0,0 +1,21 @@
+package net.nuttle.java.util.event;
+
+import java.util.List;
+
+/**
+ * Receives the notifications of an AsyncObservable in batches, as java.util.Observer
+ * receives those of an Observable one at a time.
+ * @author dan
+ *
+ * @param <T>
+ */
+public interface BatchObserver<T> {
+
+  /**
+   * Processes batch, the arguments of the notifications since the last batch, in order.
+   * The list is reused once this returns, so an observer that keeps it must copy it.
+   * @param source
+   * @param batch
+   */
+  void update(AsyncObservable<?> source, List<? extends T> batch);
+}
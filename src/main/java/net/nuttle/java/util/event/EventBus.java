@@ -0,0 +1,244 @@
+package net.nuttle.java.util.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.nuttle.java.util.impl.Supplier;
+import net.nuttle.java.util.impl.WaitStrategies;
+import net.nuttle.java.util.impl.WaitStrategy;
+
+/**
+ * A multicast event bus in the style of the LMAX Disruptor: publishers fill in the preallocated
+ * events of a RingBuffer, and every handler processes every event, in order, on a thread of its
+ * own, at its own pace.  A slow handler delays only the handlers that depend on it, and,
+ * once it falls a whole ring behind, the publishers; it never delays the others.
+ * <p>
+ * Each handler has a sequence, the last event it has processed, and waits on a barrier: the cursor
+ * of the ring buffer, or the sequences of the handlers it depends on, so that a handler added with
+ * then sees each event only after the handlers before it have.  A handler that finds several
+ * events available processes them all before it stores its sequence once, so the handlers
+ * batch naturally under load.  Publishing allocates nothing.
+ * <pre>
+ *   EventBus&lt;Trade&gt; bus = new EventBus&lt;&gt;(factory, 1024);
+ *   bus.handleWith(journal, replicate).then(execute);
+ *   bus.start();
+ *   bus.publish(translator, order);
+ * </pre>
+ * Handlers must be added before start, and before any event is published.  An exception thrown by a handler goes to its thread's
+ * uncaught exception handler, and the handler goes on with the next event.
+ * @author dan
+ *
+ * @param <T>
+ */
+public class EventBus<T> {
+
+  private final RingBuffer<T> ringBuffer;
+  private final WaitStrategy waitStrategy;
+  private final List<Processor<T>> processors = new ArrayList<Processor<T>>();
+  private final List<Thread> threads = new ArrayList<Thread>();
+  // The sequences of the handlers others depend on
+  private final List<Sequence> upstream = new ArrayList<Sequence>();
+  private boolean started;
+
+  /**
+   * Creates a bus of size events, a power of two, from factory, whose handlers and publishers
+   * wait by backing off from spinning to parking.
+   * @param factory
+   * @param size
+   */
+  public EventBus(Supplier<? extends T> factory, int size) {
+    this(factory, size, WaitStrategies.backoff(100, 100, 1000));
+  }
+
+  /**
+   * Creates a bus whose handlers, and publishers facing a full ring, wait with waitStrategy.
+   * @param factory
+   * @param size
+   * @param waitStrategy
+   */
+  public EventBus(Supplier<? extends T> factory, int size, WaitStrategy waitStrategy) {
+    this.ringBuffer = new RingBuffer<T>(factory, size, waitStrategy);
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * Adds handlers that process each event as soon as it is published, and returns them as a group,
+   * after which more handlers may be added.
+   * @param handlers
+   * @return
+   */
+  @SafeVarargs
+  public final HandlerGroup handleWith(EventHandler<? super T>... handlers) {
+    // Copied, not passed on, so that the generic varargs array does not escape
+    List<EventHandler<? super T>> list = new ArrayList<EventHandler<? super T>>(handlers.length);
+    for (EventHandler<? super T> handler : handlers) {
+      list.add(handler);
+    }
+    return add(new Sequence[0], list);
+  }
+
+  public RingBuffer<T> ringBuffer() {
+    return ringBuffer;
+  }
+
+  /**
+   * Publishes an event, filled in by translator from arg, waiting while the ring is full.
+   * @param translator
+   * @param arg
+   */
+  public <A> void publish(EventTranslator<? super T, A> translator, A arg) {
+    ringBuffer.publishEvent(translator, arg);
+  }
+
+  /**
+   * Publishes as publish does, unless the ring is full, and returns false if it is.
+   * @param translator
+   * @param arg
+   * @return
+   */
+  public <A> boolean tryPublish(EventTranslator<? super T, A> translator, A arg) {
+    return ringBuffer.tryPublishEvent(translator, arg);
+  }
+
+  /**
+   * Starts a thread for each handler.
+   * @throws IllegalStateException if the bus has already been started
+   */
+  public synchronized void start() {
+    if (started) {
+      throw new IllegalStateException("already started");
+    }
+    started = true;
+    for (int i = 0; i < processors.size(); i++) {
+      Thread thread = new Thread(processors.get(i), "EventBus-handler-" + i);
+      thread.setDaemon(true);
+      threads.add(thread);
+      thread.start();
+    }
+  }
+
+  /**
+   * Waits until the handlers have processed every event published, then stops them and waits for
+   * their threads to exit.  Events published meanwhile may not be processed.
+   * @throws InterruptedException
+   */
+  public synchronized void shutdown() throws InterruptedException {
+    long published = ringBuffer.cursor.get();
+    int count = 0;
+    for (Processor<T> processor : processors) {
+      while (processor.sequence.get() < published) {
+        if (Thread.interrupted()) {
+          throw new InterruptedException();
+        }
+        waitStrategy.idle(count);
+        count = count == Integer.MAX_VALUE ? count : count + 1;
+      }
+    }
+    halt();
+  }
+
+  /**
+   * Stops the handlers after the events they are processing, and waits for their threads to exit.
+   * @throws InterruptedException
+   */
+  public synchronized void halt() throws InterruptedException {
+    for (Processor<T> processor : processors) {
+      processor.halt();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  private synchronized HandlerGroup add(Sequence[] dependencies, List<EventHandler<? super T>> handlers) {
+    if (started) {
+      throw new IllegalStateException("handlers must be added before start");
+    }
+    Sequence[] sequences = new Sequence[handlers.size()];
+    for (int i = 0; i < sequences.length; i++) {
+      Processor<T> processor = new Processor<T>(ringBuffer, handlers.get(i),
+        new SequenceBarrier(ringBuffer, dependencies, waitStrategy));
+      processors.add(processor);
+      sequences[i] = processor.sequence;
+    }
+    for (Sequence dependency : dependencies) {
+      upstream.add(dependency);
+    }
+    // The publishers are gated by the handlers that no other depends on, which are the slowest
+    List<Sequence> gating = new ArrayList<Sequence>();
+    for (Processor<T> processor : processors) {
+      if (!upstream.contains(processor.sequence)) {
+        gating.add(processor.sequence);
+      }
+    }
+    ringBuffer.setGating(gating.toArray(new Sequence[gating.size()]));
+    return new HandlerGroup(sequences);
+  }
+
+  /**
+   * Handlers added together, after which handlers that depend on them all may be added.
+   */
+  public final class HandlerGroup {
+
+    private final Sequence[] sequences;
+
+    HandlerGroup(Sequence[] sequences) {
+      this.sequences = sequences;
+    }
+
+    /**
+     * Adds handlers that process each event only after all the handlers of this group have,
+     * and returns them as a group.
+     * @param handlers
+     * @return
+     */
+    @SafeVarargs
+    public final HandlerGroup then(EventHandler<? super T>... handlers) {
+      List<EventHandler<? super T>> list = new ArrayList<EventHandler<? super T>>(handlers.length);
+      for (EventHandler<? super T> handler : handlers) {
+        list.add(handler);
+      }
+      return add(sequences, list);
+    }
+  }
+
+  /**
+   * Runs a handler: waits on its barrier for events, and processes them.
+   */
+  private static final class Processor<T> implements Runnable {
+
+    final Sequence sequence = new Sequence(-1);
+    private final RingBuffer<T> ringBuffer;
+    private final EventHandler<? super T> handler;
+    private final SequenceBarrier barrier;
+    private volatile boolean running = true;
+
+    Processor(RingBuffer<T> ringBuffer, EventHandler<? super T> handler, SequenceBarrier barrier) {
+      this.ringBuffer = ringBuffer;
+      this.handler = handler;
+      this.barrier = barrier;
+    }
+
+    @Override
+    public void run() {
+      long next = sequence.get() + 1;
+      while (running) {
+        long available = barrier.waitFor(next);
+        for (; next <= available; next++) {
+          try {
+            handler.onEvent(ringBuffer.get(next), next, next == available);
+          } catch (RuntimeException | Error e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+          }
+        }
+        sequence.set(next - 1);
+      }
+    }
+
+    void halt() {
+      running = false;
+      barrier.alert();
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package net.nuttle.java.util.event;
+
+/**
+ * Processes the events of an EventBus, on a thread of its own.
+ * @author dan
+ *
+ * @param <T>
+ */
+public interface EventHandler<T> {
+
+  /**
+   * Processes event, the one published at sequence.  endOfBatch is true for the last event
+   * available when the handler caught up, which is the time to flush any work it batches.
+   * The event belongs to the ring buffer, and may be overwritten once this returns.
+   * @param event
+   * @param sequence
+   * @param endOfBatch
+   */
+  void onEvent(T event, long sequence, boolean endOfBatch);
+}
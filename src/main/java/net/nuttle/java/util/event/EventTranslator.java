@@ -0,0 +1,13 @@
+package net.nuttle.java.util.event;
+
+/**
+ * Fills in a ring buffer's preallocated event from arg, when it is published.
+ * @author dan
+ *
+ * @param <T>
+ * @param <A>
+ */
+public interface EventTranslator<T, A> {
+
+  void translateTo(T event, long sequence, A arg);
+}
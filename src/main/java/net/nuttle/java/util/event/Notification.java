@@ -0,0 +1,13 @@
+package net.nuttle.java.util.event;
+
+/**
+ * Delivers a notification to one observer, for ObserverRegistry.notifyObservers.
+ * @author dan
+ *
+ * @param <O>
+ * @param <A>
+ */
+public interface Notification<O, A> {
+
+  void deliver(O observer, A arg);
+}
@@ -0,0 +1,130 @@
+package net.nuttle.java.util.event;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A thread-safe set of observers, for notifying them without locks or allocation while they
+ * subscribe and unsubscribe concurrently.
+ * <p>
+ * The observers are kept in an array that is never modified: add and remove copy it with
+ * the change, and install the copy by a compare-and-set of the field, retrying if another thread
+ * installed one first.  A notification reads the field once and loops over the array it finds,
+ * so it costs what a loop over a plain array costs, never waits for a writer, and never sees
+ * a half-made change; an observer added or removed meanwhile is or is not notified, depending on
+ * whether the change was installed before the notification read the field.  Writes cost O(n),
+ * which suits observers, which are notified far more often than they change.
+ * Unlike CopyOnWriteArrayList, writers do not take a lock, and unlike java.util.Observable,
+ * neither do notifications.  Observers are compared with equals, and null is not allowed.
+ * @author dan
+ *
+ * @param <O>
+ */
+public final class ObserverRegistry<O> {
+
+  private static final Object[] EMPTY = new Object[0];
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<ObserverRegistry, Object[]> OBSERVERS =
+    AtomicReferenceFieldUpdater.newUpdater(ObserverRegistry.class, Object[].class, "observers");
+
+  private volatile Object[] observers = EMPTY;
+
+  /**
+   * Adds observer, unless it is already registered, and returns true if it was added.
+   * @param observer
+   * @return
+   */
+  public boolean add(O observer) {
+    if (observer == null) {
+      throw new NullPointerException();
+    }
+    while (true) {
+      Object[] current = observers;
+      if (indexOf(current, observer) >= 0) {
+        return false;
+      }
+      Object[] next = Arrays.copyOf(current, current.length + 1);
+      next[current.length] = observer;
+      if (OBSERVERS.compareAndSet(this, current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Removes observer, and returns true if it was registered.
+   * @param observer
+   * @return
+   */
+  public boolean remove(Object observer) {
+    while (true) {
+      Object[] current = observers;
+      int index = indexOf(current, observer);
+      if (index < 0) {
+        return false;
+      }
+      Object[] next = EMPTY;
+      if (current.length > 1) {
+        next = new Object[current.length - 1];
+        System.arraycopy(current, 0, next, 0, index);
+        System.arraycopy(current, index + 1, next, index, current.length - index - 1);
+      }
+      if (OBSERVERS.compareAndSet(this, current, next)) {
+        return true;
+      }
+    }
+  }
+
+  public boolean contains(Object observer) {
+    return indexOf(observers, observer) >= 0;
+  }
+
+  public int size() {
+    return observers.length;
+  }
+
+  public boolean isEmpty() {
+    return observers.length == 0;
+  }
+
+  public void clear() {
+    observers = EMPTY;
+  }
+
+  /**
+   * Returns the observers registered now, in the order they were added, for a notification loop.
+   * The array is shared, and must not be modified.
+   * @return
+   */
+  public Object[] snapshot() {
+    return observers;
+  }
+
+  /**
+   * Delivers arg to every observer registered now, in the order they were added, with notification.
+   * An exception thrown by an observer stops the loop, as it does in java.util.Observable.
+   * @param notification
+   * @param arg
+   */
+  @SuppressWarnings("unchecked")
+  public <A> void notifyObservers(Notification<? super O, ? super A> notification, A arg) {
+    for (Object observer : observers) {
+      notification.deliver((O) observer, arg);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Arrays.toString(observers);
+  }
+
+  private static int indexOf(Object[] observers, Object observer) {
+    for (int i = 0; i < observers.length; i++) {
+      if (observers[i].equals(observer)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+}
@@ -0,0 +1,26 @@
+package net.nuttle.java.util.event;
+
+/**
+ * What an AsyncObservable does with a notification for an observer whose queue is full.
+ * @author dan
+ *
+ */
+public enum OverflowPolicy {
+
+  /**
+   * Blocks the notifying thread until the observer has room, slowing the publisher to the pace
+   * of the slowest observer.
+   */
+  BLOCK,
+
+  /**
+   * Drops the new notification.
+   */
+  DROP_NEWEST,
+
+  /**
+   * Drops the oldest notification queued, to make room for the new one, which suits observers
+   * that only care about the latest state, such as prices.
+   */
+  DROP_OLDEST
+}
@@ -0,0 +1,225 @@
+package net.nuttle.java.util.event;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import net.nuttle.java.util.impl.Supplier;
+import net.nuttle.java.util.impl.WaitStrategy;
+
+/**
+ * The preallocated events of an EventBus, in a ring numbered by an ever-increasing sequence,
+ * for any number of publisher threads.
+ * <p>
+ * A publisher claims slots by a compare-and-set of the cursor, fills in their events, and publishes
+ * them by an ordered store of their sequences' laps into an availability array, so that publishers
+ * finishing out of order neither wait for nor overwrite each other.  A publisher may not claim
+ * a slot until the slowest handler (the gating sequences) has processed the event of the previous
+ * lap, and waits with the wait strategy until it has; it reads the handlers' sequences only when
+ * its cached minimum says the ring may be full.
+ * @author dan
+ *
+ * @param <T>
+ */
+public final class RingBuffer<T> {
+
+  private final Object[] entries;
+  private final int mask;
+  private final int shift;
+  // The lap of the sequence last published into each slot
+  private final AtomicIntegerArray available;
+  private final WaitStrategy waitStrategy;
+  final Sequence cursor = new Sequence(-1);
+  // The least gating sequence, as last read
+  private final Sequence gatingCache = new Sequence(-1);
+  private volatile Sequence[] gating = new Sequence[0];
+
+  /**
+   * Creates a ring of size events, a power of two, from factory.
+   * @param factory
+   * @param size
+   * @param waitStrategy what a publisher does while the ring is full
+   */
+  public RingBuffer(Supplier<? extends T> factory, int size, WaitStrategy waitStrategy) {
+    if (size <= 0 || Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("size must be a power of two: " + size);
+    }
+    entries = new Object[size];
+    for (int i = 0; i < size; i++) {
+      entries[i] = factory.get();
+    }
+    mask = size - 1;
+    shift = Integer.numberOfTrailingZeros(size);
+    available = new AtomicIntegerArray(size);
+    for (int i = 0; i < size; i++) {
+      available.set(i, -1);
+    }
+    this.waitStrategy = waitStrategy;
+  }
+
+  public int size() {
+    return entries.length;
+  }
+
+  /**
+   * Returns the event at sequence.
+   * @param sequence
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public T get(long sequence) {
+    return (T) entries[(int) sequence & mask];
+  }
+
+  /**
+   * Claims the next slot, waiting while the ring is full, and returns its sequence.
+   * @return
+   */
+  public long next() {
+    return next(1);
+  }
+
+  /**
+   * Claims the next n slots, waiting while the ring is full, and returns the sequence of the last.
+   * @param n
+   * @return
+   */
+  public long next(int n) {
+    checkClaim(n);
+    int count = 0;
+    while (true) {
+      long current = cursor.get();
+      long next = current + n;
+      if (hasCapacity(current, next)) {
+        if (cursor.compareAndSet(current, next)) {
+          return next;
+        }
+      } else {
+        waitStrategy.idle(count);
+        count = count == Integer.MAX_VALUE ? count : count + 1;
+      }
+    }
+  }
+
+  /**
+   * Claims the next n slots, unless the ring is full, and returns the sequence of the last, or -1.
+   * @param n
+   * @return
+   */
+  public long tryNext(int n) {
+    checkClaim(n);
+    while (true) {
+      long current = cursor.get();
+      long next = current + n;
+      if (!hasCapacity(current, next)) {
+        return -1;
+      }
+      if (cursor.compareAndSet(current, next)) {
+        return next;
+      }
+    }
+  }
+
+  /**
+   * Publishes the event at sequence to the handlers.
+   * @param sequence
+   */
+  public void publish(long sequence) {
+    available.lazySet((int) sequence & mask, (int) (sequence >>> shift));
+  }
+
+  /**
+   * Publishes the events from lo to hi, inclusive.
+   * @param lo
+   * @param hi
+   */
+  public void publish(long lo, long hi) {
+    for (long sequence = lo; sequence <= hi; sequence++) {
+      publish(sequence);
+    }
+  }
+
+  /**
+   * Claims a slot, has translator fill in its event from arg, and publishes it.
+   * @param translator
+   * @param arg
+   */
+  public <A> void publishEvent(EventTranslator<? super T, A> translator, A arg) {
+    long sequence = next();
+    try {
+      translator.translateTo(get(sequence), sequence, arg);
+    } finally {
+      // A claimed slot must be published, or the handlers would wait for it forever
+      publish(sequence);
+    }
+  }
+
+  /**
+   * Publishes as publishEvent does, unless the ring is full, and returns false if it is.
+   * @param translator
+   * @param arg
+   * @return
+   */
+  public <A> boolean tryPublishEvent(EventTranslator<? super T, A> translator, A arg) {
+    long sequence = tryNext(1);
+    if (sequence < 0) {
+      return false;
+    }
+    try {
+      translator.translateTo(get(sequence), sequence, arg);
+    } finally {
+      publish(sequence);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of slots that can be claimed without waiting.
+   * @return
+   */
+  public long remainingCapacity() {
+    long current = cursor.get();
+    return entries.length - (current - Sequence.min(gating, current));
+  }
+
+  /**
+   * Returns true if the event at sequence has been published.
+   */
+  boolean isAvailable(long sequence) {
+    return available.get((int) sequence & mask) == (int) (sequence >>> shift);
+  }
+
+  /**
+   * Returns the last sequence from lo up to which all events have been published, at most hi.
+   */
+  long highestPublished(long lo, long hi) {
+    for (long sequence = lo; sequence <= hi; sequence++) {
+      if (!isAvailable(sequence)) {
+        return sequence - 1;
+      }
+    }
+    return hi;
+  }
+
+  void setGating(Sequence[] sequences) {
+    gating = sequences;
+  }
+
+  /**
+   * Returns true if the slots after current up to next have been processed on their previous lap.
+   */
+  private boolean hasCapacity(long current, long next) {
+    long wrap = next - entries.length;
+    long cached = gatingCache.get();
+    if (wrap > cached || cached > current) {
+      long min = Sequence.min(gating, current);
+      gatingCache.set(min);
+      return wrap <= min;
+    }
+    return true;
+  }
+
+  private void checkClaim(int n) {
+    if (n < 1 || n > entries.length) {
+      throw new IllegalArgumentException("n out of range: " + n);
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package net.nuttle.java.util.event;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A counter of ring buffer slots, such as the last slot claimed by the publishers, or the last
+ * event a handler has processed, padded on both sides so that no two share a cache line.
+ * @author dan
+ *
+ */
+class Sequence extends SequenceValue {
+
+  long p20, p21, p22, p23, p24, p25, p26;
+
+  Sequence(long initial) {
+    value = initial;
+  }
+
+  long get() {
+    return value;
+  }
+
+  /**
+   * Sets the value with an ordered store, which publishes the writes made before it.
+   */
+  void set(long v) {
+    VALUE.lazySet(this, v);
+  }
+
+  boolean compareAndSet(long expected, long v) {
+    return VALUE.compareAndSet(this, expected, v);
+  }
+
+  /**
+   * Returns the least of the values of sequences and of min.
+   */
+  static long min(Sequence[] sequences, long min) {
+    for (Sequence sequence : sequences) {
+      min = Math.min(min, sequence.value);
+    }
+    return min;
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(value);
+  }
+}
+
+abstract class SequencePad {
+
+  long p10, p11, p12, p13, p14, p15, p16;
+}
+
+abstract class SequenceValue extends SequencePad {
+
+  static final AtomicLongFieldUpdater<SequenceValue> VALUE = AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+  volatile long value;
+}
@@ -0,0 +1,55 @@
+package net.nuttle.java.util.event;
+
+import net.nuttle.java.util.impl.WaitStrategy;
+
+/**
+ * What a handler waits on before it processes an event: that the event has been published,
+ * and that the handlers it depends on, if any, have processed it.
+ * @author dan
+ *
+ */
+final class SequenceBarrier {
+
+  private final RingBuffer<?> ringBuffer;
+  private final Sequence[] dependencies;
+  private final WaitStrategy waitStrategy;
+  private volatile boolean alerted;
+
+  SequenceBarrier(RingBuffer<?> ringBuffer, Sequence[] dependencies, WaitStrategy waitStrategy) {
+    this.ringBuffer = ringBuffer;
+    this.dependencies = dependencies;
+    this.waitStrategy = waitStrategy;
+  }
+
+  /**
+   * Waits until the event at sequence may be processed, and returns the last sequence
+   * that may be, which may be greater; or, if the barrier has been alerted, returns at once,
+   * possibly with a sequence less than sequence.
+   */
+  long waitFor(long sequence) {
+    int count = 0;
+    while (true) {
+      long claimed = ringBuffer.cursor.get();
+      long available = dependencies.length == 0 ? claimed : Sequence.min(dependencies, claimed);
+      if (available >= sequence) {
+        // Events the dependencies have processed were published, but those merely claimed may not be
+        available = dependencies.length == 0 ? ringBuffer.highestPublished(sequence, available) : available;
+        if (available >= sequence) {
+          return available;
+        }
+      }
+      if (alerted) {
+        return sequence - 1;
+      }
+      waitStrategy.idle(count);
+      count = count == Integer.MAX_VALUE ? count : count + 1;
+    }
+  }
+
+  /**
+   * Makes waitFor return at once, so that the handler waiting on it can stop.
+   */
+  void alert() {
+    alerted = true;
+  }
+}
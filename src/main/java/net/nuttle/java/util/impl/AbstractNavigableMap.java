@@ -0,0 +1,970 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Skeleton of a NavigableMap, which builds the whole NavigableMap contract (navigation methods,
+ * key sets, sub maps and descending views, with their iterators) on a few primitives:
+ * findEntry, firstEntry, lastEntry, entryIterator, size, and the usual put, remove and clear.
+ * Entries returned by the navigation methods are snapshots, as in TreeMap;
+ * those of the entry set iterators write setValue through to the map.
+ * Null keys are not allowed.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+abstract class AbstractNavigableMap<K, V> extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+  /**
+   * Relations for findEntry, which may be combined: LT | EQ finds the floor, and GT | EQ the ceiling.
+   */
+  static final int EQ = 1;
+  static final int LT = 2;
+  static final int GT = 4;
+
+  private static final int KEYS = 0;
+  private static final int VALUES = 1;
+  private static final int ENTRIES = 2;
+
+  private Set<Map.Entry<K, V>> entrySet;
+  private Collection<V> values;
+  private NavigableSet<K> keySet;
+  private NavigableMap<K, V> descendingMap;
+
+  /**
+   * Returns the entry whose key has relation rel to key (the closest one, for LT and GT), or null.
+   * @param key not null
+   * @param rel EQ, LT, GT, LT | EQ or GT | EQ
+   * @return
+   */
+  abstract Map.Entry<K, V> findEntry(Object key, int rel);
+
+  /**
+   * Returns an iterator over the entries, in ascending or descending key order, starting with the
+   * first entry at or after from (strictly after, unless inclusive), or with the first
+   * (last, if descending) entry if from is null.  The iterator need not support remove.
+   * @param from
+   * @param inclusive
+   * @param descending
+   * @return
+   */
+  abstract Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending);
+
+  /**
+   * Returns true if the iterators of entryIterator walk a snapshot that writes to the map leave
+   * alone, so that an iterator carries on with its walk after its own remove or setValue,
+   * which change only the entry it has already returned.  Otherwise it starts a new walk on
+   * the map after the entry ahead.
+   * @return
+   */
+  boolean snapshotIterators() {
+    return false;
+  }
+
+  /**
+   * Returns the number of structural changes to the map, so that iterators can fail fast, as those
+   * of java.util.TreeMap do, on the first call after the map is changed other than through them.
+   * Maps whose iterators need not fail fast may return 0.
+   * @return
+   */
+  int modCount() {
+    return 0;
+  }
+
+  /**
+   * Compares two keys with the comparator of the map, or their natural ordering.
+   */
+  @SuppressWarnings("unchecked")
+  final int compare(Object a, Object b) {
+    Comparator<? super K> cmp = comparator();
+    return cmp == null ? ((Comparable<Object>) a).compareTo(b) : cmp.compare((K) a, (K) b);
+  }
+
+  /**
+   * Returns an immutable snapshot of an entry.
+   */
+  static <K, V> Map.Entry<K, V> snapshot(K key, V value) {
+    return new AbstractMap.SimpleImmutableEntry<K, V>(key, value);
+  }
+
+  static <K> K key(Map.Entry<K, ?> e) {
+    if (e == null) {
+      throw new NoSuchElementException();
+    }
+    return e.getKey();
+  }
+
+  static <K> K keyOrNull(Map.Entry<K, ?> e) {
+    return e == null ? null : e.getKey();
+  }
+
+  static void checkKey(Object key) {
+    if (key == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    checkKey(key);
+    return findEntry(key, EQ) != null;
+  }
+
+  @Override
+  public V get(Object key) {
+    checkKey(key);
+    Map.Entry<K, V> e = findEntry(key, EQ);
+    return e == null ? null : e.getValue();
+  }
+
+  @Override
+  public Map.Entry<K, V> lowerEntry(K key) {
+    checkKey(key);
+    return findEntry(key, LT);
+  }
+
+  @Override
+  public K lowerKey(K key) {
+    return keyOrNull(lowerEntry(key));
+  }
+
+  @Override
+  public Map.Entry<K, V> floorEntry(K key) {
+    checkKey(key);
+    return findEntry(key, LT | EQ);
+  }
+
+  @Override
+  public K floorKey(K key) {
+    return keyOrNull(floorEntry(key));
+  }
+
+  @Override
+  public Map.Entry<K, V> ceilingEntry(K key) {
+    checkKey(key);
+    return findEntry(key, GT | EQ);
+  }
+
+  @Override
+  public K ceilingKey(K key) {
+    return keyOrNull(ceilingEntry(key));
+  }
+
+  @Override
+  public Map.Entry<K, V> higherEntry(K key) {
+    checkKey(key);
+    return findEntry(key, GT);
+  }
+
+  @Override
+  public K higherKey(K key) {
+    return keyOrNull(higherEntry(key));
+  }
+
+  @Override
+  public K firstKey() {
+    return key(firstEntry());
+  }
+
+  @Override
+  public K lastKey() {
+    return key(lastEntry());
+  }
+
+  @Override
+  public Map.Entry<K, V> pollFirstEntry() {
+    Map.Entry<K, V> e = firstEntry();
+    if (e != null) {
+      remove(e.getKey());
+    }
+    return e;
+  }
+
+  @Override
+  public Map.Entry<K, V> pollLastEntry() {
+    Map.Entry<K, V> e = lastEntry();
+    if (e != null) {
+      remove(e.getKey());
+    }
+    return e;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySetView(this);
+    }
+    return entrySet;
+  }
+
+  @Override
+  public Collection<V> values() {
+    if (values == null) {
+      values = new ValuesView(this);
+    }
+    return values;
+  }
+
+  @Override
+  public Set<K> keySet() {
+    return navigableKeySet();
+  }
+
+  @Override
+  public NavigableSet<K> navigableKeySet() {
+    if (keySet == null) {
+      keySet = new KeySet(this);
+    }
+    return keySet;
+  }
+
+  @Override
+  public NavigableSet<K> descendingKeySet() {
+    return descendingMap().navigableKeySet();
+  }
+
+  @Override
+  public NavigableMap<K, V> descendingMap() {
+    if (descendingMap == null) {
+      descendingMap = new SubMap(true, null, true, true, null, true, true);
+    }
+    return descendingMap;
+  }
+
+  @Override
+  public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+    checkKey(fromKey);
+    checkKey(toKey);
+    if (compare(fromKey, toKey) > 0) {
+      throw new IllegalArgumentException("fromKey > toKey");
+    }
+    return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+  }
+
+  @Override
+  public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+    checkKey(toKey);
+    return new SubMap(true, null, true, false, toKey, inclusive, false);
+  }
+
+  @Override
+  public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+    checkKey(fromKey);
+    return new SubMap(false, fromKey, inclusive, true, null, true, false);
+  }
+
+  @Override
+  public SortedMap<K, V> subMap(K fromKey, K toKey) {
+    return subMap(fromKey, true, toKey, false);
+  }
+
+  @Override
+  public SortedMap<K, V> headMap(K toKey) {
+    return headMap(toKey, false);
+  }
+
+  @Override
+  public SortedMap<K, V> tailMap(K fromKey) {
+    return tailMap(fromKey, true);
+  }
+
+  /**
+   * Returns an iterator of the keys, values or entries of m, this map or one of its sub maps.
+   */
+  private <E> Iterator<E> iterator(NavigableMap<K, V> m, int kind) {
+    return new NavigableIterator<E>(m == this ? null : (SubMap) m, kind);
+  }
+
+  /**
+   * Walks entryIterator, one entry ahead, from the start of the range (null for the whole map)
+   * and stops at its end.  remove, and setValue on the entries it returns, go through the map,
+   * after which the walk resumes after the entry ahead, so that entryIterator need not cope
+   * with changes to the map.
+   */
+  private final class NavigableIterator<E> implements Iterator<E> {
+
+    private final boolean descending;
+    private final SubMap range;
+    private final int kind;
+    private Iterator<Map.Entry<K, V>> it;
+    private Map.Entry<K, V> next;
+    private Map.Entry<K, V> last;
+    private int expectedModCount = modCount();
+
+    NavigableIterator(SubMap range, int kind) {
+      this.range = range;
+      this.kind = kind;
+      if (range == null) {
+        descending = false;
+        it = entryIterator(null, true, false);
+      } else if (range.descending) {
+        descending = true;
+        it = entryIterator(range.toEnd ? null : range.hi, range.hiInclusive, true);
+      } else {
+        descending = false;
+        it = entryIterator(range.fromStart ? null : range.lo, range.loInclusive, false);
+      }
+      next = fetch();
+    }
+
+    private Map.Entry<K, V> fetch() {
+      if (it == null || !it.hasNext()) {
+        return null;
+      }
+      Map.Entry<K, V> e = it.next();
+      if (range != null && (descending ? range.tooLow(e.getKey()) : range.tooHigh(e.getKey()))) {
+        it = null;
+        return null;
+      }
+      return e;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+      // The entry ahead was fetched before any change, so the underlying iterator cannot catch it
+      checkForComodification();
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = fetch();
+      switch (kind) {
+        case KEYS:
+          return (E) last.getKey();
+        case VALUES:
+          return (E) last.getValue();
+        default:
+          return (E) new WriteThroughEntry(last.getKey(), last.getValue(), this);
+      }
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      checkForComodification();
+      AbstractNavigableMap.this.remove(last.getKey());
+      last = null;
+      resume();
+    }
+
+    /**
+     * Starts a new walk after the entry ahead, once the map has been changed.
+     */
+    void resume() {
+      if (next != null && !snapshotIterators()) {
+        it = entryIterator(next.getKey(), false, descending);
+      }
+      expectedModCount = modCount();
+    }
+
+    private void checkForComodification() {
+      if (modCount() != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /**
+   * An entry of an entry set iterator.  setValue writes through to the map, and has
+   * the iterator resume its walk, as its remove does.
+   */
+  private final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient NavigableIterator<?> iterator;
+
+    WriteThroughEntry(K key, V value, NavigableIterator<?> iterator) {
+      super(key, value);
+      this.iterator = iterator;
+    }
+
+    @Override
+    public V setValue(V value) {
+      put(getKey(), value);
+      iterator.resume();
+      return super.setValue(value);
+    }
+  }
+
+  /**
+   * The entry set of this map or of one of its sub maps.
+   */
+  private final class EntrySetView extends AbstractSet<Map.Entry<K, V>> {
+
+    private final NavigableMap<K, V> m;
+
+    EntrySetView(NavigableMap<K, V> m) {
+      this.m = m;
+    }
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return AbstractNavigableMap.this.<Map.Entry<K, V>>iterator(m, ENTRIES);
+    }
+
+    @Override
+    public int size() {
+      return m.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return m.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      Object key = e.getKey();
+      if (key == null || !m.containsKey(key)) {
+        return false;
+      }
+      Object value = m.get(key);
+      return value == null ? e.getValue() == null : value.equals(e.getValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!contains(o)) {
+        return false;
+      }
+      m.remove(((Map.Entry<?, ?>) o).getKey());
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      m.clear();
+    }
+  }
+
+  /**
+   * The values of this map or of one of its sub maps.
+   */
+  private final class ValuesView extends AbstractCollection<V> {
+
+    private final NavigableMap<K, V> m;
+
+    ValuesView(NavigableMap<K, V> m) {
+      this.m = m;
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+      return AbstractNavigableMap.this.<V>iterator(m, VALUES);
+    }
+
+    @Override
+    public int size() {
+      return m.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return m.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+      m.clear();
+    }
+  }
+
+  /**
+   * The keys of this map or of one of its sub maps.
+   */
+  private final class KeySet extends AbstractSet<K> implements NavigableSet<K> {
+
+    private final NavigableMap<K, V> m;
+
+    KeySet(NavigableMap<K, V> m) {
+      this.m = m;
+    }
+
+    @Override
+    public Iterator<K> iterator() {
+      return AbstractNavigableMap.this.<K>iterator(m, KEYS);
+    }
+
+    @Override
+    public Iterator<K> descendingIterator() {
+      return descendingSet().iterator();
+    }
+
+    @Override
+    public int size() {
+      return m.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return m.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return m.containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!m.containsKey(o)) {
+        return false;
+      }
+      m.remove(o);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      m.clear();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+      return m.comparator();
+    }
+
+    @Override
+    public K first() {
+      return m.firstKey();
+    }
+
+    @Override
+    public K last() {
+      return m.lastKey();
+    }
+
+    @Override
+    public K lower(K k) {
+      return m.lowerKey(k);
+    }
+
+    @Override
+    public K floor(K k) {
+      return m.floorKey(k);
+    }
+
+    @Override
+    public K ceiling(K k) {
+      return m.ceilingKey(k);
+    }
+
+    @Override
+    public K higher(K k) {
+      return m.higherKey(k);
+    }
+
+    @Override
+    public K pollFirst() {
+      return keyOrNull(m.pollFirstEntry());
+    }
+
+    @Override
+    public K pollLast() {
+      return keyOrNull(m.pollLastEntry());
+    }
+
+    @Override
+    public NavigableSet<K> descendingSet() {
+      return new KeySet(m.descendingMap());
+    }
+
+    @Override
+    public NavigableSet<K> subSet(K fromElement, boolean fromInclusive, K toElement, boolean toInclusive) {
+      return new KeySet(m.subMap(fromElement, fromInclusive, toElement, toInclusive));
+    }
+
+    @Override
+    public NavigableSet<K> headSet(K toElement, boolean inclusive) {
+      return new KeySet(m.headMap(toElement, inclusive));
+    }
+
+    @Override
+    public NavigableSet<K> tailSet(K fromElement, boolean inclusive) {
+      return new KeySet(m.tailMap(fromElement, inclusive));
+    }
+
+    @Override
+    public SortedSet<K> subSet(K fromElement, K toElement) {
+      return subSet(fromElement, true, toElement, false);
+    }
+
+    @Override
+    public SortedSet<K> headSet(K toElement) {
+      return headSet(toElement, false);
+    }
+
+    @Override
+    public SortedSet<K> tailSet(K fromElement) {
+      return tailSet(fromElement, true);
+    }
+  }
+
+  /**
+   * A view of the keys between lo and hi, in ascending or descending order.
+   * The abs methods work in ascending order, whatever the order of the view.
+   */
+  private final class SubMap extends AbstractMap<K, V> implements NavigableMap<K, V> {
+
+    private final boolean fromStart;
+    private final K lo;
+    private final boolean loInclusive;
+    private final boolean toEnd;
+    private final K hi;
+    private final boolean hiInclusive;
+    private final boolean descending;
+
+    SubMap(boolean fromStart, K lo, boolean loInclusive, boolean toEnd, K hi, boolean hiInclusive,
+        boolean descending) {
+      this.fromStart = fromStart;
+      this.lo = lo;
+      this.loInclusive = loInclusive;
+      this.toEnd = toEnd;
+      this.hi = hi;
+      this.hiInclusive = hiInclusive;
+      this.descending = descending;
+    }
+
+    boolean tooLow(Object key) {
+      if (fromStart) {
+        return false;
+      }
+      int c = compare(key, lo);
+      return c < 0 || (c == 0 && !loInclusive);
+    }
+
+    boolean tooHigh(Object key) {
+      if (toEnd) {
+        return false;
+      }
+      int c = compare(key, hi);
+      return c > 0 || (c == 0 && !hiInclusive);
+    }
+
+    boolean inRange(Object key) {
+      return !tooLow(key) && !tooHigh(key);
+    }
+
+    /**
+     * Returns true if key may bound a sub view: within the range, or equal to an exclusive bound
+     * when the new bound is exclusive too.
+     */
+    private boolean inRange(Object key, boolean inclusive) {
+      if (inclusive) {
+        return inRange(key);
+      }
+      return (fromStart || compare(key, lo) >= 0) && (toEnd || compare(key, hi) <= 0);
+    }
+
+    private Map.Entry<K, V> absLowest() {
+      Map.Entry<K, V> e = fromStart ? AbstractNavigableMap.this.firstEntry() : findEntry(lo, loInclusive ? GT | EQ : GT);
+      return e == null || tooHigh(e.getKey()) ? null : e;
+    }
+
+    private Map.Entry<K, V> absHighest() {
+      Map.Entry<K, V> e = toEnd ? AbstractNavigableMap.this.lastEntry() : findEntry(hi, hiInclusive ? LT | EQ : LT);
+      return e == null || tooLow(e.getKey()) ? null : e;
+    }
+
+    private Map.Entry<K, V> absCeiling(Object key) {
+      if (tooLow(key)) {
+        return absLowest();
+      }
+      Map.Entry<K, V> e = findEntry(key, GT | EQ);
+      return e == null || tooHigh(e.getKey()) ? null : e;
+    }
+
+    private Map.Entry<K, V> absHigher(Object key) {
+      if (tooLow(key)) {
+        return absLowest();
+      }
+      Map.Entry<K, V> e = findEntry(key, GT);
+      return e == null || tooHigh(e.getKey()) ? null : e;
+    }
+
+    private Map.Entry<K, V> absFloor(Object key) {
+      if (tooHigh(key)) {
+        return absHighest();
+      }
+      Map.Entry<K, V> e = findEntry(key, LT | EQ);
+      return e == null || tooLow(e.getKey()) ? null : e;
+    }
+
+    private Map.Entry<K, V> absLower(Object key) {
+      if (tooHigh(key)) {
+        return absHighest();
+      }
+      Map.Entry<K, V> e = findEntry(key, LT);
+      return e == null || tooLow(e.getKey()) ? null : e;
+    }
+
+    @Override
+    public int size() {
+      if (fromStart && toEnd) {
+        return AbstractNavigableMap.this.size();
+      }
+      int n = 0;
+      for (Iterator<K> it = navigableKeySet().iterator(); it.hasNext(); it.next()) {
+        n++;
+      }
+      return n;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return absLowest() == null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      checkKey(key);
+      return inRange(key) && AbstractNavigableMap.this.containsKey(key);
+    }
+
+    @Override
+    public V get(Object key) {
+      checkKey(key);
+      return inRange(key) ? AbstractNavigableMap.this.get(key) : null;
+    }
+
+    @Override
+    public V put(K key, V value) {
+      checkKey(key);
+      if (!inRange(key)) {
+        throw new IllegalArgumentException("key out of range");
+      }
+      return AbstractNavigableMap.this.put(key, value);
+    }
+
+    @Override
+    public V remove(Object key) {
+      checkKey(key);
+      return inRange(key) ? AbstractNavigableMap.this.remove(key) : null;
+    }
+
+    @Override
+    public void clear() {
+      if (fromStart && toEnd) {
+        AbstractNavigableMap.this.clear();
+      } else {
+        for (Iterator<K> it = navigableKeySet().iterator(); it.hasNext();) {
+          it.next();
+          it.remove();
+        }
+      }
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+      return new EntrySetView(this);
+    }
+
+    @Override
+    public Collection<V> values() {
+      return new ValuesView(this);
+    }
+
+    @Override
+    public Set<K> keySet() {
+      return navigableKeySet();
+    }
+
+    @Override
+    public NavigableSet<K> navigableKeySet() {
+      return new KeySet(this);
+    }
+
+    @Override
+    public NavigableSet<K> descendingKeySet() {
+      return descendingMap().navigableKeySet();
+    }
+
+    @Override
+    public Comparator<? super K> comparator() {
+      Comparator<? super K> cmp = AbstractNavigableMap.this.comparator();
+      if (!descending) {
+        return cmp;
+      }
+      if (cmp == null) {
+        return Collections.reverseOrder();
+      }
+      return Collections.reverseOrder(cmp);
+    }
+
+    @Override
+    public Map.Entry<K, V> firstEntry() {
+      return descending ? absHighest() : absLowest();
+    }
+
+    @Override
+    public Map.Entry<K, V> lastEntry() {
+      return descending ? absLowest() : absHighest();
+    }
+
+    @Override
+    public K firstKey() {
+      return key(firstEntry());
+    }
+
+    @Override
+    public K lastKey() {
+      return key(lastEntry());
+    }
+
+    @Override
+    public Map.Entry<K, V> pollFirstEntry() {
+      Map.Entry<K, V> e = firstEntry();
+      if (e != null) {
+        AbstractNavigableMap.this.remove(e.getKey());
+      }
+      return e;
+    }
+
+    @Override
+    public Map.Entry<K, V> pollLastEntry() {
+      Map.Entry<K, V> e = lastEntry();
+      if (e != null) {
+        AbstractNavigableMap.this.remove(e.getKey());
+      }
+      return e;
+    }
+
+    @Override
+    public Map.Entry<K, V> lowerEntry(K key) {
+      checkKey(key);
+      return descending ? absHigher(key) : absLower(key);
+    }
+
+    @Override
+    public K lowerKey(K key) {
+      return keyOrNull(lowerEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> floorEntry(K key) {
+      checkKey(key);
+      return descending ? absCeiling(key) : absFloor(key);
+    }
+
+    @Override
+    public K floorKey(K key) {
+      return keyOrNull(floorEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> ceilingEntry(K key) {
+      checkKey(key);
+      return descending ? absFloor(key) : absCeiling(key);
+    }
+
+    @Override
+    public K ceilingKey(K key) {
+      return keyOrNull(ceilingEntry(key));
+    }
+
+    @Override
+    public Map.Entry<K, V> higherEntry(K key) {
+      checkKey(key);
+      return descending ? absLower(key) : absHigher(key);
+    }
+
+    @Override
+    public K higherKey(K key) {
+      return keyOrNull(higherEntry(key));
+    }
+
+    @Override
+    public NavigableMap<K, V> descendingMap() {
+      return new SubMap(fromStart, lo, loInclusive, toEnd, hi, hiInclusive, !descending);
+    }
+
+    @Override
+    public NavigableMap<K, V> subMap(K fromKey, boolean fromInclusive, K toKey, boolean toInclusive) {
+      checkKey(fromKey);
+      checkKey(toKey);
+      if (!inRange(fromKey, fromInclusive)) {
+        throw new IllegalArgumentException("fromKey out of range");
+      }
+      if (!inRange(toKey, toInclusive)) {
+        throw new IllegalArgumentException("toKey out of range");
+      }
+      if (descending) {
+        if (compare(fromKey, toKey) < 0) {
+          throw new IllegalArgumentException("fromKey < toKey");
+        }
+        return new SubMap(false, toKey, toInclusive, false, fromKey, fromInclusive, true);
+      }
+      if (compare(fromKey, toKey) > 0) {
+        throw new IllegalArgumentException("fromKey > toKey");
+      }
+      return new SubMap(false, fromKey, fromInclusive, false, toKey, toInclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> headMap(K toKey, boolean inclusive) {
+      checkKey(toKey);
+      if (!inRange(toKey, inclusive)) {
+        throw new IllegalArgumentException("toKey out of range");
+      }
+      if (descending) {
+        return new SubMap(false, toKey, inclusive, toEnd, hi, hiInclusive, true);
+      }
+      return new SubMap(fromStart, lo, loInclusive, false, toKey, inclusive, false);
+    }
+
+    @Override
+    public NavigableMap<K, V> tailMap(K fromKey, boolean inclusive) {
+      checkKey(fromKey);
+      if (!inRange(fromKey, inclusive)) {
+        throw new IllegalArgumentException("fromKey out of range");
+      }
+      if (descending) {
+        return new SubMap(fromStart, lo, loInclusive, false, fromKey, inclusive, true);
+      }
+      return new SubMap(false, fromKey, inclusive, toEnd, hi, hiInclusive, false);
+    }
+
+    @Override
+    public SortedMap<K, V> subMap(K fromKey, K toKey) {
+      return subMap(fromKey, true, toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> headMap(K toKey) {
+      return headMap(toKey, false);
+    }
+
+    @Override
+    public SortedMap<K, V> tailMap(K fromKey) {
+      return tailMap(fromKey, true);
+    }
+  }
+}
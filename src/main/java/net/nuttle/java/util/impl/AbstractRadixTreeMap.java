@@ -0,0 +1,848 @@
+package net.nuttle.java.util.impl;
+
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+
+/**
+ * Skeleton of a NavigableMap stored as an adaptive radix tree (ART), for keys that subclasses
+ * encode as byte strings whose unsigned lexicographic order is the order of the map.
+ * <p>
+ * An inner node branches on one byte of the key, and comes in 4 sizes, holding up to 4, 16, 48
+ * or 256 children, which it grows and shrinks between as children come and go, so that sparse
+ * nodes stay small and dense ones are direct arrays.  Bytes shared by every key below a node are
+ * stored once, as the prefix of the node (path compression), and a key that is alone below a
+ * branch is stored as a leaf right there (lazy expansion).  A lookup thus costs one step per
+ * branching byte of the key, whatever the size of the map, and compares bytes instead of calling
+ * compareTo on the keys along the path.  A key that is a prefix of others is the terminal leaf
+ * of the node where the others branch, which comes before the children of the node.
+ * <p>
+ * Like TreeMap, this class is not thread-safe, its iterators are fail-fast, and null keys are not allowed.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+abstract class AbstractRadixTreeMap<K, V> extends AbstractNavigableMap<K, V> {
+
+  private static final byte[] NO_PREFIX = new byte[0];
+
+  private Node root;
+  private int size;
+  private int modCount;
+
+  /**
+   * The previous value of the last put or remove.
+   */
+  private Object previous;
+
+  /**
+   * Returns the bytes of key.  The order of the map is the unsigned lexicographic order of these bytes.
+   * @param key
+   * @return
+   */
+  abstract byte[] encode(Object key);
+
+  /**
+   * Returns the lowest key above every key that starts with prefix, or null if there is none.
+   * @param prefix
+   * @return
+   */
+  abstract K successor(K prefix);
+
+  /**
+   * Returns a view of the entries whose keys start with prefix.
+   * Iterating it seeks to the prefix, in as many steps as the prefix has bytes, and then scans
+   * only the subtree below it.
+   * @param prefix
+   * @return
+   */
+  public NavigableMap<K, V> prefixMap(K prefix) {
+    checkKey(prefix);
+    K successor = successor(prefix);
+    return successor == null ? tailMap(prefix, true) : subMap(prefix, true, successor, false);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    root = null;
+    size = 0;
+    modCount++;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    checkKey(key);
+    Leaf leaf = find(encode(key));
+    return leaf == null ? null : (V) leaf.value;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    checkKey(key);
+    return find(encode(key)) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    checkKey(key);
+    previous = null;
+    root = insert(root, encode(key), 0, key, value);
+    V result = (V) previous;
+    previous = null;
+    return result;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    checkKey(key);
+    previous = null;
+    root = delete(root, encode(key), 0);
+    V result = (V) previous;
+    previous = null;
+    return result;
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    Cursor cursor = new Cursor(null, true, false);
+    return cursor.hasNext() ? cursor.next() : null;
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    Cursor cursor = new Cursor(null, true, true);
+    return cursor.hasNext() ? cursor.next() : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  Map.Entry<K, V> findEntry(Object key, int rel) {
+    byte[] bytes = encode(key);
+    if ((rel & EQ) != 0) {
+      Leaf leaf = find(bytes);
+      if (leaf != null) {
+        return snapshot((K) leaf.key, (V) leaf.value);
+      }
+    }
+    if ((rel & (LT | GT)) == 0) {
+      return null;
+    }
+    Cursor cursor = new Cursor(bytes, false, (rel & LT) != 0);
+    return cursor.hasNext() ? cursor.next() : null;
+  }
+
+  @Override
+  int modCount() {
+    return modCount;
+  }
+
+  @Override
+  Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending) {
+    return new Cursor(from == null ? null : encode(from), inclusive, descending);
+  }
+
+  private Leaf find(byte[] key) {
+    Node node = root;
+    int depth = 0;
+    while (node instanceof Inner) {
+      Inner inner = (Inner) node;
+      byte[] prefix = inner.prefix;
+      if (mismatch(prefix, key, depth) < prefix.length) {
+        return null;
+      }
+      depth += prefix.length;
+      if (depth == key.length) {
+        return inner.terminal;
+      }
+      node = inner.child(key[depth] & 0xFF);
+      depth++;
+    }
+    Leaf leaf = (Leaf) node;
+    return leaf != null && equal(leaf.bytes, key) ? leaf : null;
+  }
+
+  /**
+   * Inserts into the subtree node, whose keys share the first depth bytes of key,
+   * and returns the node that replaces it in its parent.
+   */
+  private Node insert(Node node, byte[] key, int depth, K k, V value) {
+    if (node == null) {
+      added();
+      return new Leaf(key, k, value);
+    }
+    if (node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      if (equal(leaf.bytes, key)) {
+        previous = leaf.value;
+        leaf.value = value;
+        return leaf;
+      }
+      // Expand the leaf into a node where the two keys part
+      int common = depth;
+      while (common < key.length && common < leaf.bytes.length && key[common] == leaf.bytes[common]) {
+        common++;
+      }
+      Inner inner = new ArrayNode(4, copy(key, depth, common));
+      inner.attach(leaf, common);
+      inner.attach(new Leaf(key, k, value), common);
+      added();
+      return inner;
+    }
+    Inner inner = (Inner) node;
+    byte[] prefix = inner.prefix;
+    int matched = mismatch(prefix, key, depth);
+    if (matched < prefix.length) {
+      // Split the prefix where the key leaves it
+      Inner parent = new ArrayNode(4, copy(prefix, 0, matched));
+      inner.prefix = copy(prefix, matched + 1, prefix.length);
+      parent.put(prefix[matched] & 0xFF, inner);
+      parent.attach(new Leaf(key, k, value), depth + matched);
+      added();
+      return parent;
+    }
+    depth += prefix.length;
+    if (depth == key.length) {
+      if (inner.terminal != null) {
+        previous = inner.terminal.value;
+        inner.terminal.value = value;
+      } else {
+        inner.terminal = new Leaf(key, k, value);
+        added();
+      }
+      return inner;
+    }
+    int b = key[depth] & 0xFF;
+    Node child = inner.child(b);
+    if (child == null) {
+      if (inner.isFull()) {
+        inner = inner.grow();
+      }
+      inner.put(b, new Leaf(key, k, value));
+      added();
+      return inner;
+    }
+    Node replacement = insert(child, key, depth + 1, k, value);
+    if (replacement != child) {
+      inner.put(b, replacement);
+    }
+    return inner;
+  }
+
+  /**
+   * Deletes key from the subtree node, and returns the node that replaces it in its parent (null if none).
+   */
+  private Node delete(Node node, byte[] key, int depth) {
+    if (node == null) {
+      return null;
+    }
+    if (node instanceof Leaf) {
+      Leaf leaf = (Leaf) node;
+      if (!equal(leaf.bytes, key)) {
+        return leaf;
+      }
+      removed(leaf);
+      return null;
+    }
+    Inner inner = (Inner) node;
+    byte[] prefix = inner.prefix;
+    if (mismatch(prefix, key, depth) < prefix.length) {
+      return inner;
+    }
+    depth += prefix.length;
+    if (depth == key.length) {
+      if (inner.terminal == null) {
+        return inner;
+      }
+      removed(inner.terminal);
+      inner.terminal = null;
+      return collapse(inner);
+    }
+    int b = key[depth] & 0xFF;
+    Node child = inner.child(b);
+    if (child == null) {
+      return inner;
+    }
+    Node replacement = delete(child, key, depth + 1);
+    if (replacement == child) {
+      return inner;
+    }
+    if (replacement == null) {
+      inner.remove(b);
+      return collapse(inner);
+    }
+    inner.put(b, replacement);
+    return inner;
+  }
+
+  /**
+   * Returns the node that replaces inner after a removal: its only leaf, its only child with
+   * the prefixes joined, a smaller node, or inner itself.
+   */
+  private static Node collapse(Inner inner) {
+    if (inner.count == 0) {
+      return inner.terminal;
+    }
+    if (inner.count == 1 && inner.terminal == null) {
+      int b = inner.next(0);
+      Node child = inner.child(b);
+      if (child instanceof Inner) {
+        Inner only = (Inner) child;
+        byte[] prefix = new byte[inner.prefix.length + 1 + only.prefix.length];
+        System.arraycopy(inner.prefix, 0, prefix, 0, inner.prefix.length);
+        prefix[inner.prefix.length] = (byte) b;
+        System.arraycopy(only.prefix, 0, prefix, inner.prefix.length + 1, only.prefix.length);
+        only.prefix = prefix;
+      }
+      return child;
+    }
+    return inner.shrink();
+  }
+
+  private void added() {
+    size++;
+    modCount++;
+  }
+
+  private void removed(Leaf leaf) {
+    previous = leaf.value;
+    size--;
+    modCount++;
+  }
+
+  /**
+   * Returns the number of leading bytes of prefix found in key at depth.
+   */
+  private static int mismatch(byte[] prefix, byte[] key, int depth) {
+    int n = Math.min(prefix.length, key.length - depth);
+    for (int i = 0; i < n; i++) {
+      if (prefix[i] != key[depth + i]) {
+        return i;
+      }
+    }
+    return n;
+  }
+
+  private static boolean equal(byte[] a, byte[] b) {
+    return java.util.Arrays.equals(a, b);
+  }
+
+  private static byte[] copy(byte[] a, int from, int to) {
+    return from == to ? NO_PREFIX : java.util.Arrays.copyOfRange(a, from, to);
+  }
+
+  /**
+   * Compares two byte strings in unsigned lexicographic order, a prefix before the strings it starts.
+   */
+  static int compareBytes(byte[] a, byte[] b) {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++) {
+      int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+      if (c != 0) {
+        return c;
+      }
+    }
+    return a.length - b.length;
+  }
+
+  abstract static class Node {
+  }
+
+  static final class Leaf extends Node {
+
+    final byte[] bytes;
+    final Object key;
+    Object value;
+
+    Leaf(byte[] bytes, Object key, Object value) {
+      this.bytes = bytes;
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * An inner node: a compressed prefix, the leaf of the key that ends after it, if any,
+   * and children indexed by the next byte.
+   */
+  abstract static class Inner extends Node {
+
+    byte[] prefix;
+    Leaf terminal;
+    int count;
+
+    Inner(byte[] prefix) {
+      this.prefix = prefix;
+    }
+
+    /**
+     * Returns the child for byte b, or null.
+     */
+    abstract Node child(int b);
+
+    /**
+     * Sets the child for byte b, replacing the one there.  A new child needs room for it.
+     */
+    abstract void put(int b, Node child);
+
+    abstract void remove(int b);
+
+    /**
+     * Returns the lowest byte at least b that has a child, or -1.
+     */
+    abstract int next(int b);
+
+    /**
+     * Returns the highest byte at most b that has a child, or -1.
+     */
+    abstract int prev(int b);
+
+    abstract boolean isFull();
+
+    /**
+     * Returns a copy with room for more children.
+     */
+    abstract Inner grow();
+
+    /**
+     * Returns a smaller copy if the children fit one comfortably, or this node.
+     */
+    abstract Inner shrink();
+
+    /**
+     * Adds leaf below this new node, whose prefix ends at depth of the leaf's key.
+     */
+    void attach(Leaf leaf, int depth) {
+      if (leaf.bytes.length == depth) {
+        terminal = leaf;
+      } else {
+        put(leaf.bytes[depth] & 0xFF, leaf);
+      }
+    }
+
+    /**
+     * Copies prefix, terminal and children into a node of another size.
+     */
+    <T extends Inner> T copyTo(T to) {
+      to.terminal = terminal;
+      for (int b = next(0); b >= 0; b = next(b + 1)) {
+        to.put(b, child(b));
+      }
+      return to;
+    }
+  }
+
+  /**
+   * Node4 and Node16 of the ART paper: bytes sorted in an array, with the children alongside.
+   */
+  static final class ArrayNode extends Inner {
+
+    final byte[] bytes;
+    final Node[] children;
+
+    ArrayNode(int capacity, byte[] prefix) {
+      super(prefix);
+      bytes = new byte[capacity];
+      children = new Node[capacity];
+    }
+
+    private int indexOf(int b) {
+      for (int i = 0; i < count; i++) {
+        int x = bytes[i] & 0xFF;
+        if (x >= b) {
+          return x == b ? i : -i - 1;
+        }
+      }
+      return -count - 1;
+    }
+
+    @Override
+    Node child(int b) {
+      int i = indexOf(b);
+      return i >= 0 ? children[i] : null;
+    }
+
+    @Override
+    void put(int b, Node child) {
+      int i = indexOf(b);
+      if (i >= 0) {
+        children[i] = child;
+        return;
+      }
+      i = -i - 1;
+      System.arraycopy(bytes, i, bytes, i + 1, count - i);
+      System.arraycopy(children, i, children, i + 1, count - i);
+      bytes[i] = (byte) b;
+      children[i] = child;
+      count++;
+    }
+
+    @Override
+    void remove(int b) {
+      int i = indexOf(b);
+      System.arraycopy(bytes, i + 1, bytes, i, count - i - 1);
+      System.arraycopy(children, i + 1, children, i, count - i - 1);
+      count--;
+      children[count] = null;
+    }
+
+    @Override
+    int next(int b) {
+      for (int i = 0; i < count; i++) {
+        int x = bytes[i] & 0xFF;
+        if (x >= b) {
+          return x;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int prev(int b) {
+      for (int i = count - 1; i >= 0; i--) {
+        int x = bytes[i] & 0xFF;
+        if (x <= b) {
+          return x;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    boolean isFull() {
+      return count == bytes.length;
+    }
+
+    @Override
+    Inner grow() {
+      return copyTo(bytes.length == 4 ? new ArrayNode(16, prefix) : new Node48(prefix));
+    }
+
+    @Override
+    Inner shrink() {
+      return bytes.length == 16 && count <= 3 ? copyTo(new ArrayNode(4, prefix)) : this;
+    }
+  }
+
+  /**
+   * Node48: a byte-indexed table of slots (plus one) into 48 children.
+   */
+  static final class Node48 extends Inner {
+
+    final byte[] index = new byte[256];
+    final Node[] children = new Node[48];
+
+    Node48(byte[] prefix) {
+      super(prefix);
+    }
+
+    @Override
+    Node child(int b) {
+      int slot = index[b];
+      return slot == 0 ? null : children[slot - 1];
+    }
+
+    @Override
+    void put(int b, Node child) {
+      int slot = index[b];
+      if (slot == 0) {
+        slot = 1;
+        while (children[slot - 1] != null) {
+          slot++;
+        }
+        index[b] = (byte) slot;
+        count++;
+      }
+      children[slot - 1] = child;
+    }
+
+    @Override
+    void remove(int b) {
+      children[index[b] - 1] = null;
+      index[b] = 0;
+      count--;
+    }
+
+    @Override
+    int next(int b) {
+      for (; b < 256; b++) {
+        if (index[b] != 0) {
+          return b;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int prev(int b) {
+      for (b = Math.min(b, 255); b >= 0; b--) {
+        if (index[b] != 0) {
+          return b;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    boolean isFull() {
+      return count == 48;
+    }
+
+    @Override
+    Inner grow() {
+      return copyTo(new Node256(prefix));
+    }
+
+    @Override
+    Inner shrink() {
+      return count <= 12 ? copyTo(new ArrayNode(16, prefix)) : this;
+    }
+  }
+
+  /**
+   * Node256: a child per byte.
+   */
+  static final class Node256 extends Inner {
+
+    final Node[] children = new Node[256];
+
+    Node256(byte[] prefix) {
+      super(prefix);
+    }
+
+    @Override
+    Node child(int b) {
+      return children[b];
+    }
+
+    @Override
+    void put(int b, Node child) {
+      if (children[b] == null) {
+        count++;
+      }
+      children[b] = child;
+    }
+
+    @Override
+    void remove(int b) {
+      children[b] = null;
+      count--;
+    }
+
+    @Override
+    int next(int b) {
+      for (; b < 256; b++) {
+        if (children[b] != null) {
+          return b;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    int prev(int b) {
+      for (b = Math.min(b, 255); b >= 0; b--) {
+        if (children[b] != null) {
+          return b;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    boolean isFull() {
+      return false;
+    }
+
+    @Override
+    Inner grow() {
+      return this;
+    }
+
+    @Override
+    Inner shrink() {
+      return count <= 36 ? copyTo(new Node48(prefix)) : this;
+    }
+  }
+
+  /**
+   * Walks the leaves in order, keeping the inner nodes of the path from the root and the position
+   * reached in each: BEFORE (the terminal is next), AFTER (every child is done, when descending),
+   * TERMINAL (the terminal is done, or next when descending), or the byte of the current child.
+   */
+  private final class Cursor implements Iterator<Map.Entry<K, V>> {
+
+    private static final int BEFORE = -2;
+    private static final int TERMINAL = -1;
+    private static final int AFTER = 256;
+
+    private final boolean descending;
+    private Inner[] nodes = new Inner[16];
+    private int[] positions = new int[16];
+    private int depth;
+    private Leaf next;
+    private final int expectedModCount = modCount;
+
+    /**
+     * Positions the cursor before the first leaf at or after from (strictly after, unless inclusive),
+     * in the direction of the walk, or before the first leaf if from is null.
+     */
+    Cursor(byte[] from, boolean inclusive, boolean descending) {
+      this.descending = descending;
+      int start = descending ? AFTER : BEFORE;
+      if (from == null) {
+        enter(root, start);
+      } else {
+        seek(from, inclusive, start);
+      }
+      if (next == null) {
+        next = advance();
+      }
+    }
+
+    /**
+     * Pushes node, if it is inner, or makes it the next leaf.
+     */
+    private void enter(Node node, int position) {
+      if (node instanceof Inner) {
+        push((Inner) node, position);
+      } else {
+        next = (Leaf) node;
+      }
+    }
+
+    private void seek(byte[] from, boolean inclusive, int start) {
+      Node node = root;
+      int d = 0;
+      while (node instanceof Inner) {
+        Inner inner = (Inner) node;
+        byte[] prefix = inner.prefix;
+        int matched = mismatch(prefix, from, d);
+        if (matched < prefix.length) {
+          // The subtree lies wholly before or after from
+          boolean after = d + matched == from.length
+            || (prefix[matched] & 0xFF) > (from[d + matched] & 0xFF);
+          if (after != descending) {
+            push(inner, start);
+          }
+          return;
+        }
+        d += prefix.length;
+        if (d == from.length) {
+          // from is the terminal; the children come after it
+          if (descending) {
+            push(inner, TERMINAL);
+            if (inclusive) {
+              next = inner.terminal;
+            }
+          } else {
+            push(inner, inclusive ? BEFORE : TERMINAL);
+          }
+          return;
+        }
+        int b = from[d] & 0xFF;
+        push(inner, b);
+        node = inner.child(b);
+        d++;
+      }
+      if (node != null) {
+        int c = compareBytes(((Leaf) node).bytes, from);
+        if (descending ? c < 0 : c > 0) {
+          next = (Leaf) node;
+        } else if (c == 0 && inclusive) {
+          next = (Leaf) node;
+        }
+      }
+    }
+
+    private void push(Inner inner, int position) {
+      if (depth == nodes.length) {
+        nodes = java.util.Arrays.copyOf(nodes, depth * 2);
+        positions = java.util.Arrays.copyOf(positions, depth * 2);
+      }
+      nodes[depth] = inner;
+      positions[depth] = position;
+      depth++;
+    }
+
+    /**
+     * Returns the leaf after the positions on the stack, or null at the end.
+     */
+    private Leaf advance() {
+      while (depth > 0) {
+        Inner inner = nodes[depth - 1];
+        int position = positions[depth - 1];
+        int b;
+        if (descending) {
+          if (position == TERMINAL) {
+            depth--;
+            continue;
+          }
+          b = position == 0 ? -1 : inner.prev(position - 1);
+          if (b < 0) {
+            positions[depth - 1] = TERMINAL;
+            if (inner.terminal != null) {
+              return inner.terminal;
+            }
+            depth--;
+            continue;
+          }
+        } else {
+          if (position == BEFORE) {
+            positions[depth - 1] = TERMINAL;
+            if (inner.terminal != null) {
+              return inner.terminal;
+            }
+            position = TERMINAL;
+          }
+          b = inner.next(position + 1);
+          if (b < 0) {
+            depth--;
+            continue;
+          }
+        }
+        positions[depth - 1] = b;
+        Node child = inner.child(b);
+        if (child instanceof Leaf) {
+          return (Leaf) child;
+        }
+        push((Inner) child, descending ? AFTER : BEFORE);
+      }
+      return null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map.Entry<K, V> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Leaf leaf = next;
+      next = advance();
+      return snapshot((K) leaf.key, (V) leaf.value);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
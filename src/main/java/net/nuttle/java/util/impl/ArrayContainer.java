@@ -0,0 +1,248 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+
+/**
+ * Container for sparse chunks: the values are kept in a sorted char[].
+ * Once it would hold more than MAX_SIZE values it turns into a BitmapContainer,
+ * which is smaller beyond that point.
+ * @author dan
+ *
+ */
+final class ArrayContainer extends Container {
+
+  /**
+   * Largest number of values kept in an array (4096 chars are as large as a bitmap).
+   */
+  static final int MAX_SIZE = 4096;
+
+  char[] content;
+  int card;
+
+  ArrayContainer() {
+    this(new char[4], 0);
+  }
+
+  ArrayContainer(char[] content, int card) {
+    this.content = content;
+    this.card = card;
+  }
+
+  static ArrayContainer fromWords(long[] words, int card) {
+    char[] content = new char[Math.max(card, 1)];
+    int n = 0;
+    for (int i = 0; i < WORDS; i++) {
+      long w = words[i];
+      while (w != 0) {
+        content[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(w));
+        w &= w - 1;
+      }
+    }
+    return new ArrayContainer(content, n);
+  }
+
+  @Override
+  boolean contains(int x) {
+    return Arrays.binarySearch(content, 0, card, (char) x) >= 0;
+  }
+
+  @Override
+  Container add(int x) {
+    int pos = Arrays.binarySearch(content, 0, card, (char) x);
+    if (pos >= 0) {
+      return this;
+    }
+    if (card == MAX_SIZE) {
+      return toBitmap().add(x);
+    }
+    pos = -pos - 1;
+    if (card == content.length) {
+      content = Arrays.copyOf(content, Math.min(MAX_SIZE, card + (card >> 1) + 1));
+    }
+    System.arraycopy(content, pos, content, pos + 1, card - pos);
+    content[pos] = (char) x;
+    card++;
+    return this;
+  }
+
+  @Override
+  Container remove(int x) {
+    int pos = Arrays.binarySearch(content, 0, card, (char) x);
+    if (pos >= 0) {
+      System.arraycopy(content, pos + 1, content, pos, card - pos - 1);
+      card--;
+    }
+    return this;
+  }
+
+  @Override
+  Container remove(int from, int to) {
+    if (from >= to) {
+      return this;
+    }
+    int start = lowerBound(from);
+    int end = lowerBound(to);
+    System.arraycopy(content, end, content, start, card - end);
+    card -= end - start;
+    return this;
+  }
+
+  @Override
+  int cardinality() {
+    return card;
+  }
+
+  @Override
+  int nextSetBit(int from) {
+    int pos = lowerBound(from);
+    return pos < card ? content[pos] : -1;
+  }
+
+  @Override
+  int nextClearBit(int from) {
+    int x = from;
+    for (int pos = lowerBound(from); pos < card && content[pos] == x; pos++) {
+      x++;
+    }
+    return x;
+  }
+
+  @Override
+  int last() {
+    return card == 0 ? -1 : content[card - 1];
+  }
+
+  @Override
+  long[] toWords() {
+    long[] words = new long[WORDS];
+    orInto(words);
+    return words;
+  }
+
+  BitmapContainer toBitmap() {
+    return new BitmapContainer(toWords(), card);
+  }
+
+  @Override
+  void orInto(long[] words) {
+    for (int i = 0; i < card; i++) {
+      words[content[i] >>> 6] |= 1L << content[i];
+    }
+  }
+
+  @Override
+  void andNotInto(long[] words) {
+    for (int i = 0; i < card; i++) {
+      words[content[i] >>> 6] &= ~(1L << content[i]);
+    }
+  }
+
+  @Override
+  void xorInto(long[] words) {
+    for (int i = 0; i < card; i++) {
+      words[content[i] >>> 6] ^= 1L << content[i];
+    }
+  }
+
+  @Override
+  int sizeInBytes() {
+    return 2 * content.length + 16;
+  }
+
+  @Override
+  Container copy() {
+    return new ArrayContainer(Arrays.copyOf(content, Math.max(card, 1)), card);
+  }
+
+  /**
+   * Returns the values of this container that are (keep = true) or are not (keep = false) in other.
+   * The cost is proportional to the number of values in this container.
+   */
+  ArrayContainer filter(Container other, boolean keep) {
+    char[] result = new char[Math.max(card, 1)];
+    int n = 0;
+    for (int i = 0; i < card; i++) {
+      if (other.contains(content[i]) == keep) {
+        result[n++] = content[i];
+      }
+    }
+    return new ArrayContainer(result, n);
+  }
+
+  boolean anyIn(Container other) {
+    for (int i = 0; i < card; i++) {
+      if (other.contains(content[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  ArrayContainer union(ArrayContainer other) {
+    char[] result = new char[Math.max(card + other.card, 1)];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < card && j < other.card) {
+      char a = content[i];
+      char b = other.content[j];
+      if (a < b) {
+        result[n++] = a;
+        i++;
+      } else if (b < a) {
+        result[n++] = b;
+        j++;
+      } else {
+        result[n++] = a;
+        i++;
+        j++;
+      }
+    }
+    while (i < card) {
+      result[n++] = content[i++];
+    }
+    while (j < other.card) {
+      result[n++] = other.content[j++];
+    }
+    return new ArrayContainer(result, n);
+  }
+
+  ArrayContainer symmetricDifference(ArrayContainer other) {
+    char[] result = new char[Math.max(card + other.card, 1)];
+    int i = 0;
+    int j = 0;
+    int n = 0;
+    while (i < card && j < other.card) {
+      char a = content[i];
+      char b = other.content[j];
+      if (a < b) {
+        result[n++] = a;
+        i++;
+      } else if (b < a) {
+        result[n++] = b;
+        j++;
+      } else {
+        i++;
+        j++;
+      }
+    }
+    while (i < card) {
+      result[n++] = content[i++];
+    }
+    while (j < other.card) {
+      result[n++] = other.content[j++];
+    }
+    return new ArrayContainer(result, n);
+  }
+
+  /**
+   * Returns the position of the first value greater than or equal to x.
+   */
+  private int lowerBound(int x) {
+    if (x >= CHUNK) {
+      return card;
+    }
+    int pos = Arrays.binarySearch(content, 0, card, (char) x);
+    return pos >= 0 ? pos : -pos - 1;
+  }
+}
@@ -0,0 +1,545 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+/**
+ * A NavigableMap stored as a B+tree.
+ * Entries live in leaves of up to 64 keys and values held in arrays, and the leaves are linked
+ * both ways, so that in-order and descending iteration, and the range scans of the sub map views,
+ * read consecutive array slots instead of following a pointer per entry.
+ * Inner nodes hold up to 64 separator keys, so a million entries take 4 levels, against about
+ * 20 in the red-black tree of TreeMap, and the tree costs 2 to 4 references per entry (as the leaves
+ * are full or half full) instead of TreeMap's 40-byte node.
+ * Nodes are kept at least half full: a removal borrows from a sibling, or merges with it.
+ * Like TreeMap, this class is not thread-safe, its iterators are fail-fast, and null keys are not allowed.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class BTreeMap<K, V> extends AbstractNavigableMap<K, V> {
+
+  /**
+   * Maximum number of keys in a node.  Must be even.
+   */
+  static final int MAX = 64;
+  static final int MIN = MAX / 2;
+
+  private final Comparator<? super K> comparator;
+  private Node root;
+  private Leaf head;
+  private Leaf tail;
+  private int size;
+  private int modCount;
+
+  /**
+   * Number of inner levels above the leaves.
+   */
+  private int height;
+
+  /**
+   * The inner nodes and child indexes of the last descent, reused by put and remove.
+   */
+  private Inner[] path = new Inner[8];
+  private int[] pathIndex = new int[8];
+
+  /**
+   * Creates an empty map, ordered by the natural ordering of its keys.
+   */
+  public BTreeMap() {
+    this((Comparator<? super K>) null);
+  }
+
+  /**
+   * Creates an empty map, ordered by comparator.
+   * @param comparator
+   */
+  public BTreeMap(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+    clear();
+  }
+
+  /**
+   * Creates a map with the entries of m, ordered by the natural ordering of their keys.
+   * @param m
+   */
+  public BTreeMap(Map<? extends K, ? extends V> m) {
+    this((Comparator<? super K>) null);
+    putAll(m);
+  }
+
+  /**
+   * Creates a map with the entries and ordering of m.
+   * @param m
+   */
+  public BTreeMap(SortedMap<K, ? extends V> m) {
+    this(m.comparator());
+    putAll(m);
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    Leaf leaf = new Leaf();
+    root = leaf;
+    head = leaf;
+    tail = leaf;
+    size = 0;
+    height = 0;
+    modCount++;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    checkKey(key);
+    Leaf leaf = findLeaf(key);
+    int index = search(leaf, key);
+    return index >= 0 ? (V) leaf.values[index] : null;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    checkKey(key);
+    return search(findLeaf(key), key) >= 0;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    checkKey(key);
+    Leaf leaf = descend(key);
+    int index = search(leaf, key);
+    if (index >= 0) {
+      V previous = (V) leaf.values[index];
+      leaf.values[index] = value;
+      return previous;
+    }
+    index = -index - 1;
+    leaf.insert(index, key, value);
+    size++;
+    modCount++;
+    if (leaf.size > MAX) {
+      split(leaf);
+    }
+    return null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    checkKey(key);
+    Leaf leaf = descend(key);
+    int index = search(leaf, key);
+    if (index < 0) {
+      return null;
+    }
+    V previous = (V) leaf.values[index];
+    leaf.delete(index);
+    size--;
+    modCount++;
+    if (leaf.size < MIN && height > 0) {
+      rebalance(leaf);
+    }
+    return previous;
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    return head.size == 0 ? null : entry(head, 0);
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    return tail.size == 0 ? null : entry(tail, tail.size - 1);
+  }
+
+  @Override
+  Map.Entry<K, V> findEntry(Object key, int rel) {
+    Leaf leaf = findLeaf(key);
+    int index = search(leaf, key);
+    if (index >= 0 && (rel & EQ) != 0) {
+      return entry(leaf, index);
+    }
+    if ((rel & LT) != 0) {
+      index = index >= 0 ? index - 1 : -index - 2;
+      if (index >= 0) {
+        return entry(leaf, index);
+      }
+      return leaf.prev == null ? null : entry(leaf.prev, leaf.prev.size - 1);
+    }
+    if ((rel & GT) != 0) {
+      index = index >= 0 ? index + 1 : -index - 1;
+      if (index < leaf.size) {
+        return entry(leaf, index);
+      }
+      return leaf.next == null ? null : entry(leaf.next, 0);
+    }
+    return null;
+  }
+
+  @Override
+  int modCount() {
+    return modCount;
+  }
+
+  @Override
+  Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending) {
+    if (from == null) {
+      return descending ? new LeafIterator(tail, tail.size - 1, true) : new LeafIterator(head, 0, false);
+    }
+    Leaf leaf = findLeaf(from);
+    int index = search(leaf, from);
+    if (index >= 0) {
+      if (!inclusive) {
+        index += descending ? -1 : 1;
+      }
+    } else {
+      index = descending ? -index - 2 : -index - 1;
+    }
+    return new LeafIterator(leaf, index, descending);
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map.Entry<K, V> entry(Leaf leaf, int index) {
+    return snapshot((K) leaf.keys[index], (V) leaf.values[index]);
+  }
+
+  /**
+   * Returns the index of key in node, or (-(insertion point) - 1) if it is absent.
+   */
+  private int search(Node node, Object key) {
+    Object[] keys = node.keys;
+    int low = 0;
+    int high = node.size - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = compare(keys[mid], key);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Returns the index of the child of inner whose keys may include key.
+   * Separator i is the lowest key of child i + 1.
+   */
+  private int childIndex(Inner inner, Object key) {
+    int index = search(inner, key);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  private Leaf findLeaf(Object key) {
+    Node node = root;
+    for (int level = 0; level < height; level++) {
+      Inner inner = (Inner) node;
+      node = inner.children[childIndex(inner, key)];
+    }
+    return (Leaf) node;
+  }
+
+  /**
+   * Like findLeaf, but records the path in path and pathIndex.
+   */
+  private Leaf descend(Object key) {
+    if (path.length < height) {
+      path = new Inner[height * 2];
+      pathIndex = new int[height * 2];
+    }
+    Node node = root;
+    for (int level = 0; level < height; level++) {
+      Inner inner = (Inner) node;
+      int index = childIndex(inner, key);
+      path[level] = inner;
+      pathIndex[level] = index;
+      node = inner.children[index];
+    }
+    return (Leaf) node;
+  }
+
+  /**
+   * Splits an overfull leaf, and then its ancestors as long as they overflow.
+   */
+  private void split(Leaf leaf) {
+    Leaf right = new Leaf();
+    int half = leaf.size / 2;
+    right.size = leaf.size - half;
+    System.arraycopy(leaf.keys, half, right.keys, 0, right.size);
+    System.arraycopy(leaf.values, half, right.values, 0, right.size);
+    clearSlots(leaf, half, leaf.size);
+    leaf.size = half;
+    right.next = leaf.next;
+    right.prev = leaf;
+    if (leaf.next != null) {
+      leaf.next.prev = right;
+    } else {
+      tail = right;
+    }
+    leaf.next = right;
+    Object separator = right.keys[0];
+    Node child = right;
+    for (int level = height - 1; level >= 0; level--) {
+      Inner parent = path[level];
+      parent.insert(pathIndex[level], separator, child);
+      if (parent.size <= MAX) {
+        return;
+      }
+      Inner sibling = new Inner();
+      int mid = parent.size / 2;
+      separator = parent.keys[mid];
+      sibling.size = parent.size - mid - 1;
+      System.arraycopy(parent.keys, mid + 1, sibling.keys, 0, sibling.size);
+      System.arraycopy(parent.children, mid + 1, sibling.children, 0, sibling.size + 1);
+      for (int i = mid; i < parent.size; i++) {
+        parent.keys[i] = null;
+        parent.children[i + 1] = null;
+      }
+      parent.size = mid;
+      child = sibling;
+    }
+    Inner newRoot = new Inner();
+    newRoot.size = 1;
+    newRoot.keys[0] = separator;
+    newRoot.children[0] = root;
+    newRoot.children[1] = child;
+    root = newRoot;
+    height++;
+  }
+
+  /**
+   * Restores the minimum size of an underfull node and then of its ancestors,
+   * by borrowing from a sibling or merging with it.
+   */
+  private void rebalance(Node node) {
+    for (int level = height - 1; level >= 0 && node.size < MIN; level--) {
+      Inner parent = path[level];
+      int index = pathIndex[level];
+      Node left = index > 0 ? parent.children[index - 1] : null;
+      Node right = index < parent.size ? parent.children[index + 1] : null;
+      if (left != null && left.size > MIN) {
+        borrowFromLeft(parent, index, left, node);
+        return;
+      }
+      if (right != null && right.size > MIN) {
+        borrowFromRight(parent, index, node, right);
+        return;
+      }
+      if (left != null) {
+        merge(parent, index - 1, left, node);
+      } else {
+        merge(parent, index, node, right);
+      }
+      node = parent;
+    }
+    if (height > 0 && root.size == 0) {
+      Node child = ((Inner) root).children[0];
+      root = child;
+      height--;
+    }
+  }
+
+  private void borrowFromLeft(Inner parent, int index, Node left, Node node) {
+    if (node instanceof Leaf) {
+      Leaf from = (Leaf) left;
+      Leaf to = (Leaf) node;
+      to.insert(0, from.keys[from.size - 1], from.values[from.size - 1]);
+      from.delete(from.size - 1);
+      parent.keys[index - 1] = to.keys[0];
+    } else {
+      Inner from = (Inner) left;
+      Inner to = (Inner) node;
+      System.arraycopy(to.keys, 0, to.keys, 1, to.size);
+      System.arraycopy(to.children, 0, to.children, 1, to.size + 1);
+      to.keys[0] = parent.keys[index - 1];
+      to.children[0] = from.children[from.size];
+      to.size++;
+      parent.keys[index - 1] = from.keys[from.size - 1];
+      from.keys[from.size - 1] = null;
+      from.children[from.size] = null;
+      from.size--;
+    }
+  }
+
+  private void borrowFromRight(Inner parent, int index, Node node, Node right) {
+    if (node instanceof Leaf) {
+      Leaf to = (Leaf) node;
+      Leaf from = (Leaf) right;
+      to.insert(to.size, from.keys[0], from.values[0]);
+      from.delete(0);
+      parent.keys[index] = from.keys[0];
+    } else {
+      Inner to = (Inner) node;
+      Inner from = (Inner) right;
+      to.keys[to.size] = parent.keys[index];
+      to.children[to.size + 1] = from.children[0];
+      to.size++;
+      parent.keys[index] = from.keys[0];
+      System.arraycopy(from.keys, 1, from.keys, 0, from.size - 1);
+      System.arraycopy(from.children, 1, from.children, 0, from.size);
+      from.keys[from.size - 1] = null;
+      from.children[from.size] = null;
+      from.size--;
+    }
+  }
+
+  /**
+   * Moves the contents of right into left, and removes separator index and right from parent.
+   */
+  private void merge(Inner parent, int index, Node left, Node right) {
+    if (left instanceof Leaf) {
+      Leaf to = (Leaf) left;
+      Leaf from = (Leaf) right;
+      System.arraycopy(from.keys, 0, to.keys, to.size, from.size);
+      System.arraycopy(from.values, 0, to.values, to.size, from.size);
+      to.size += from.size;
+      to.next = from.next;
+      if (from.next != null) {
+        from.next.prev = to;
+      } else {
+        tail = to;
+      }
+    } else {
+      Inner to = (Inner) left;
+      Inner from = (Inner) right;
+      to.keys[to.size] = parent.keys[index];
+      System.arraycopy(from.keys, 0, to.keys, to.size + 1, from.size);
+      System.arraycopy(from.children, 0, to.children, to.size + 1, from.size + 1);
+      to.size += from.size + 1;
+    }
+    System.arraycopy(parent.keys, index + 1, parent.keys, index, parent.size - index - 1);
+    System.arraycopy(parent.children, index + 2, parent.children, index + 1, parent.size - index - 1);
+    parent.keys[parent.size - 1] = null;
+    parent.children[parent.size] = null;
+    parent.size--;
+  }
+
+  private static void clearSlots(Leaf leaf, int from, int to) {
+    for (int i = from; i < to; i++) {
+      leaf.keys[i] = null;
+      leaf.values[i] = null;
+    }
+  }
+
+  /**
+   * A node holds up to MAX keys, with room for one more before it is split.
+   */
+  abstract static class Node {
+    final Object[] keys = new Object[MAX + 1];
+    int size;
+  }
+
+  static final class Leaf extends Node {
+
+    final Object[] values = new Object[MAX + 1];
+    Leaf prev;
+    Leaf next;
+
+    void insert(int index, Object key, Object value) {
+      System.arraycopy(keys, index, keys, index + 1, size - index);
+      System.arraycopy(values, index, values, index + 1, size - index);
+      keys[index] = key;
+      values[index] = value;
+      size++;
+    }
+
+    void delete(int index) {
+      System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+      System.arraycopy(values, index + 1, values, index, size - index - 1);
+      size--;
+      keys[size] = null;
+      values[size] = null;
+    }
+  }
+
+  static final class Inner extends Node {
+
+    final Node[] children = new Node[MAX + 2];
+
+    /**
+     * Inserts separator, and child to its right, after the child at index.
+     */
+    void insert(int index, Object separator, Node child) {
+      System.arraycopy(keys, index, keys, index + 1, size - index);
+      System.arraycopy(children, index + 1, children, index + 2, size - index);
+      keys[index] = separator;
+      children[index + 1] = child;
+      size++;
+    }
+  }
+
+  /**
+   * Walks the linked leaves from a position, forwards or backwards.
+   */
+  private final class LeafIterator implements Iterator<Map.Entry<K, V>> {
+
+    private final boolean descending;
+    private Leaf leaf;
+    private int index;
+    private final int expectedModCount = modCount;
+
+    LeafIterator(Leaf leaf, int index, boolean descending) {
+      this.leaf = leaf;
+      this.index = index;
+      this.descending = descending;
+      skipEmpty();
+    }
+
+    private void skipEmpty() {
+      if (descending) {
+        while (leaf != null && index < 0) {
+          leaf = leaf.prev;
+          index = leaf == null ? -1 : leaf.size - 1;
+        }
+      } else {
+        while (leaf != null && index >= leaf.size) {
+          leaf = leaf.next;
+          index = 0;
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return leaf != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (leaf == null) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<K, V> e = entry(leaf, index);
+      index += descending ? -1 : 1;
+      skipEmpty();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,354 @@
+package net.nuttle.java.util.impl;
+
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Utility methods that combine any number of BitSets in a single pass.
+ * BitSet.and and BitSet.or combine two sets at a time and overwrite the receiver,
+ * so evaluating a query over N filters takes N - 1 passes and a defensive clone.
+ * These methods instead walk the words once, combining word i of every input before moving
+ * to word i + 1, and write each result word exactly once.
+ * The inputs are never modified.
+ * <p>
+ * The methods on long[] word arrays (laid out as BitSet.toLongArray() lays them out, bit i in
+ * bit i % 64 of word i / 64) read the words in place and return the result words, with no copy
+ * on either side.  The methods on BitSets are conveniences over them: BitSet does not expose its
+ * words, so they read each input once through toLongArray() and copy the result into a BitSet.
+ * Callers that combine the same sets repeatedly should keep them as word arrays.
+ * The parallel variants split the word range across the threads of a ForkJoinPool.
+ * @author dan
+ *
+ */
+public final class BitSetOps {
+
+  /**
+   * Number of words below which a parallel task is no longer split.
+   */
+  private static final int SPLIT_THRESHOLD = 1 << 12;
+
+  private BitSetOps() {
+  }
+
+  /**
+   * Returns the bits that are set in every one of sets.
+   * @param sets
+   * @return
+   */
+  public static BitSet and(BitSet... sets) {
+    return BitSet.valueOf(and(words(sets)));
+  }
+
+  /**
+   * Returns the bits that are set in at least one of sets.
+   * @param sets
+   * @return
+   */
+  public static BitSet or(BitSet... sets) {
+    return BitSet.valueOf(or(words(sets)));
+  }
+
+  /**
+   * Returns the bits that are set in at least k of sets.
+   * threshold(1, sets) is the same as or(sets), and threshold(sets.length, sets) as and(sets).
+   * @param k
+   * @param sets
+   * @return
+   */
+  public static BitSet threshold(int k, BitSet... sets) {
+    return BitSet.valueOf(threshold(k, words(sets)));
+  }
+
+  /**
+   * Same as and(sets), with the word range split across the threads of pool.
+   * @param pool
+   * @param sets
+   * @return
+   */
+  public static BitSet parallelAnd(ForkJoinPool pool, BitSet... sets) {
+    return BitSet.valueOf(parallelAnd(pool, words(sets)));
+  }
+
+  /**
+   * Same as or(sets), with the word range split across the threads of pool.
+   * @param pool
+   * @param sets
+   * @return
+   */
+  public static BitSet parallelOr(ForkJoinPool pool, BitSet... sets) {
+    return BitSet.valueOf(parallelOr(pool, words(sets)));
+  }
+
+  /**
+   * Same as threshold(k, sets), with the word range split across the threads of pool.
+   * @param pool
+   * @param k
+   * @param sets
+   * @return
+   */
+  public static BitSet parallelThreshold(ForkJoinPool pool, int k, BitSet... sets) {
+    return BitSet.valueOf(parallelThreshold(pool, k, words(sets)));
+  }
+
+  /**
+   * Returns the words of the bits that are set in every one of words, whose arrays are read in place.
+   * @param words
+   * @return
+   */
+  public static long[] and(long[]... words) {
+    return compute(null, new AndOp(check(words)));
+  }
+
+  /**
+   * Returns the words of the bits that are set in at least one of words, whose arrays are read in place.
+   * @param words
+   * @return
+   */
+  public static long[] or(long[]... words) {
+    return compute(null, new OrOp(check(words)));
+  }
+
+  /**
+   * Returns the words of the bits that are set in at least k of words, whose arrays are read in place.
+   * @param k
+   * @param words
+   * @return
+   */
+  public static long[] threshold(int k, long[]... words) {
+    return compute(null, thresholdOp(k, check(words)));
+  }
+
+  /**
+   * Same as and(words), with the word range split across the threads of pool.
+   * @param pool
+   * @param words
+   * @return
+   */
+  public static long[] parallelAnd(ForkJoinPool pool, long[]... words) {
+    return compute(pool, new AndOp(check(words)));
+  }
+
+  /**
+   * Same as or(words), with the word range split across the threads of pool.
+   * @param pool
+   * @param words
+   * @return
+   */
+  public static long[] parallelOr(ForkJoinPool pool, long[]... words) {
+    return compute(pool, new OrOp(check(words)));
+  }
+
+  /**
+   * Same as threshold(k, words), with the word range split across the threads of pool.
+   * @param pool
+   * @param k
+   * @param words
+   * @return
+   */
+  public static long[] parallelThreshold(ForkJoinPool pool, int k, long[]... words) {
+    return compute(pool, thresholdOp(k, check(words)));
+  }
+
+  private static Op thresholdOp(int k, long[][] words) {
+    if (k < 1) {
+      throw new IllegalArgumentException("k < 1: " + k);
+    }
+    if (k == 1) {
+      return new OrOp(words);
+    }
+    if (k == words.length) {
+      return new AndOp(words);
+    }
+    return new ThresholdOp(words, k);
+  }
+
+  private static long[][] words(BitSet... sets) {
+    long[][] words = new long[sets.length][];
+    for (int i = 0; i < sets.length; i++) {
+      words[i] = sets[i].toLongArray();
+    }
+    return words;
+  }
+
+  private static long[][] check(long[][] words) {
+    if (words.length == 0) {
+      throw new IllegalArgumentException("No bit sets");
+    }
+    return words;
+  }
+
+  private static long[] compute(ForkJoinPool pool, Op op) {
+    long[] result = new long[op.length()];
+    if (pool == null || result.length <= SPLIT_THRESHOLD) {
+      op.compute(result, 0, result.length);
+    } else {
+      pool.invoke(new RangeTask(op, result, 0, result.length));
+    }
+    return result;
+  }
+
+  /**
+   * Computes the words of a result, for a range of word indexes.
+   */
+  private abstract static class Op {
+
+    final long[][] words;
+
+    Op(long[][] words) {
+      this.words = words;
+    }
+
+    /**
+     * Returns the number of words of the result.
+     */
+    abstract int length();
+
+    /**
+     * Computes result[from] to result[to - 1].
+     */
+    abstract void compute(long[] result, int from, int to);
+  }
+
+  private static final class AndOp extends Op {
+
+    AndOp(long[][] words) {
+      super(words);
+    }
+
+    @Override
+    int length() {
+      int length = Integer.MAX_VALUE;
+      for (long[] w : words) {
+        length = Math.min(length, w.length);
+      }
+      return length;
+    }
+
+    @Override
+    void compute(long[] result, int from, int to) {
+      long[][] words = this.words;
+      for (int i = from; i < to; i++) {
+        long acc = words[0][i];
+        for (int j = 1; j < words.length && acc != 0; j++) {
+          acc &= words[j][i];
+        }
+        result[i] = acc;
+      }
+    }
+  }
+
+  private static final class OrOp extends Op {
+
+    OrOp(long[][] words) {
+      super(words);
+    }
+
+    @Override
+    int length() {
+      int length = 0;
+      for (long[] w : words) {
+        length = Math.max(length, w.length);
+      }
+      return length;
+    }
+
+    @Override
+    void compute(long[] result, int from, int to) {
+      long[][] words = this.words;
+      for (int i = from; i < to; i++) {
+        long acc = 0L;
+        for (long[] w : words) {
+          if (i < w.length) {
+            acc |= w[i];
+          }
+        }
+        result[i] = acc;
+      }
+    }
+  }
+
+  /**
+   * Counts, for each of the 64 bit positions of a word at once, how many inputs have the bit set.
+   * The counts are bit-sliced: counter[j] holds bit j of all 64 counts, and adding a word
+   * is a ripple-carry addition over the slices.  A final comparison of the sliced counts with k,
+   * from the most significant slice down, yields the result word.
+   */
+  private static final class ThresholdOp extends Op {
+
+    private final int k;
+    private final int slices;
+
+    ThresholdOp(long[][] words, int k) {
+      super(words);
+      this.k = k;
+      this.slices = 32 - Integer.numberOfLeadingZeros(Math.max(words.length, k));
+    }
+
+    @Override
+    int length() {
+      int length = 0;
+      for (long[] w : words) {
+        length = Math.max(length, w.length);
+      }
+      return length;
+    }
+
+    @Override
+    void compute(long[] result, int from, int to) {
+      long[][] words = this.words;
+      long[] counter = new long[slices];
+      for (int i = from; i < to; i++) {
+        for (int s = 0; s < slices; s++) {
+          counter[s] = 0L;
+        }
+        for (long[] w : words) {
+          long carry = i < w.length ? w[i] : 0L;
+          for (int s = 0; s < slices && carry != 0; s++) {
+            long c = counter[s] & carry;
+            counter[s] ^= carry;
+            carry = c;
+          }
+        }
+        long greater = 0L;
+        long equal = -1L;
+        for (int s = slices - 1; s >= 0; s--) {
+          if (((k >>> s) & 1) == 0) {
+            greater |= equal & counter[s];
+            equal &= ~counter[s];
+          } else {
+            equal &= counter[s];
+          }
+        }
+        result[i] = greater | equal;
+      }
+    }
+  }
+
+  private static final class RangeTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Op op;
+    private final long[] result;
+    private final int from;
+    private final int to;
+
+    RangeTask(Op op, long[] result, int from, int to) {
+      this.op = op;
+      this.result = result;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= SPLIT_THRESHOLD) {
+        op.compute(result, from, to);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new RangeTask(op, result, from, mid), new RangeTask(op, result, mid, to));
+    }
+  }
+}
@@ -0,0 +1,158 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * Container for dense chunks: a plain bitmap of 1024 words, with a cached cardinality.
+ * When removals bring it down to ArrayContainer.MAX_SIZE values it turns back into an array.
+ * @author dan
+ *
+ */
+final class BitmapContainer extends Container {
+
+  final long[] words;
+  int card;
+
+  BitmapContainer(long[] words, int card) {
+    this.words = words;
+    this.card = card;
+  }
+
+  @Override
+  boolean contains(int x) {
+    return (words[x >>> 6] & (1L << x)) != 0;
+  }
+
+  @Override
+  Container add(int x) {
+    long before = words[x >>> 6];
+    long after = before | (1L << x);
+    if (before != after) {
+      words[x >>> 6] = after;
+      card++;
+    }
+    return this;
+  }
+
+  @Override
+  Container remove(int x) {
+    long before = words[x >>> 6];
+    long after = before & ~(1L << x);
+    if (before != after) {
+      words[x >>> 6] = after;
+      card--;
+      if (card <= ArrayContainer.MAX_SIZE) {
+        return ArrayContainer.fromWords(words, card);
+      }
+    }
+    return this;
+  }
+
+  @Override
+  Container add(int from, int to) {
+    setRange(words, from, to);
+    return optimize(words);
+  }
+
+  @Override
+  Container remove(int from, int to) {
+    clearRange(words, from, to);
+    return optimize(words);
+  }
+
+  @Override
+  Container flip(int from, int to) {
+    flipRange(words, from, to);
+    return optimize(words);
+  }
+
+  @Override
+  int cardinality() {
+    return card;
+  }
+
+  @Override
+  int nextSetBit(int from) {
+    if (from >= CHUNK) {
+      return -1;
+    }
+    int i = from >>> 6;
+    long w = words[i] & (-1L << from);
+    while (true) {
+      if (w != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == WORDS) {
+        return -1;
+      }
+      w = words[i];
+    }
+  }
+
+  @Override
+  int nextClearBit(int from) {
+    if (from >= CHUNK) {
+      return CHUNK;
+    }
+    int i = from >>> 6;
+    long w = ~words[i] & (-1L << from);
+    while (true) {
+      if (w != 0) {
+        return (i << 6) + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == WORDS) {
+        return CHUNK;
+      }
+      w = ~words[i];
+    }
+  }
+
+  @Override
+  int last() {
+    for (int i = WORDS - 1; i >= 0; i--) {
+      if (words[i] != 0) {
+        return (i << 6) + 63 - Long.numberOfLeadingZeros(words[i]);
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  long word(int k) {
+    return words[k];
+  }
+
+  @Override
+  long[] toWords() {
+    return words.clone();
+  }
+
+  @Override
+  void orInto(long[] other) {
+    for (int i = 0; i < WORDS; i++) {
+      other[i] |= words[i];
+    }
+  }
+
+  @Override
+  void andNotInto(long[] other) {
+    for (int i = 0; i < WORDS; i++) {
+      other[i] &= ~words[i];
+    }
+  }
+
+  @Override
+  void xorInto(long[] other) {
+    for (int i = 0; i < WORDS; i++) {
+      other[i] ^= words[i];
+    }
+  }
+
+  @Override
+  int sizeInBytes() {
+    return 8 * WORDS + 16;
+  }
+
+  @Override
+  Container copy() {
+    return new BitmapContainer(words.clone(), card);
+  }
+}
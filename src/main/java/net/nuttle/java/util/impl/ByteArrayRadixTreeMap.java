@@ -0,0 +1,65 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A NavigableMap of byte[] keys stored as an adaptive radix tree (see AbstractRadixTreeMap),
+ * ordered as unsigned byte strings, with a prefix before the keys it starts.
+ * Lookups go by the contents of the keys, but keys must not be changed once they are in the map.
+ * As byte arrays do not override hashCode, the hashCode of this map is not consistent with equals.
+ * @author dan
+ *
+ * @param <V>
+ */
+public class ByteArrayRadixTreeMap<V> extends AbstractRadixTreeMap<byte[], V> {
+
+  /**
+   * The order of the keys: unsigned lexicographic.
+   */
+  public static final Comparator<byte[]> UNSIGNED = new Comparator<byte[]>() {
+    @Override
+    public int compare(byte[] a, byte[] b) {
+      return compareBytes(a, b);
+    }
+  };
+
+  /**
+   * Creates an empty map.
+   */
+  public ByteArrayRadixTreeMap() {
+  }
+
+  /**
+   * Creates a map with the entries of m.
+   * @param m
+   */
+  public ByteArrayRadixTreeMap(Map<byte[], ? extends V> m) {
+    putAll(m);
+  }
+
+  @Override
+  public Comparator<? super byte[]> comparator() {
+    return UNSIGNED;
+  }
+
+  @Override
+  byte[] encode(Object key) {
+    return (byte[]) key;
+  }
+
+  @Override
+  byte[] successor(byte[] prefix) {
+    int i = prefix.length - 1;
+    while (i >= 0 && prefix[i] == (byte) 0xFF) {
+      i--;
+    }
+    if (i < 0) {
+      return null;
+    }
+    byte[] successor = Arrays.copyOf(prefix, i + 1);
+    successor[i]++;
+    return successor;
+  }
+}
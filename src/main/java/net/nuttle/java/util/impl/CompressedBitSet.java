@@ -0,0 +1,609 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A compressed bitmap with the same operations as java.util.BitSet.
+ * The index space is split into 64K chunks (the high 16 bits of an index),
+ * and only chunks with at least one set bit are stored, each in the cheapest of three containers:
+ * a sorted array of values for sparse chunks, a plain bitmap for dense chunks,
+ * or a list of runs for chunks made of long stretches of set bits.
+ * So memory follows the number of set bits (or runs) rather than the highest index,
+ * and and, andNot and intersects cost time proportional to the smaller operand.
+ * Like BitSet, this class is not thread-safe.
+ * @author dan
+ *
+ */
+public class CompressedBitSet implements Cloneable {
+
+  private char[] keys;
+  private Container[] containers;
+  private int size;
+
+  /**
+   * Creates an empty set.
+   */
+  public CompressedBitSet() {
+    keys = new char[4];
+    containers = new Container[4];
+  }
+
+  /**
+   * Returns a CompressedBitSet with the same bits as bs.
+   * @param bs
+   * @return
+   */
+  public static CompressedBitSet valueOf(BitSet bs) {
+    CompressedBitSet result = new CompressedBitSet();
+    for (int i = bs.nextSetBit(0); i >= 0; i = bs.nextSetBit(i + 1)) {
+      int end = bs.nextClearBit(i);
+      result.set(i, end);
+      i = end;
+    }
+    return result;
+  }
+
+  /**
+   * Returns a java.util.BitSet with the same bits as this set.
+   * @return
+   */
+  public BitSet toBitSet() {
+    BitSet bs = new BitSet(length());
+    for (int i = nextSetBit(0); i >= 0; i = nextSetBit(i + 1)) {
+      int end = nextClearBit(i);
+      bs.set(i, end < 0 ? Integer.MAX_VALUE : end);
+      if (end < 0) {
+        break;
+      }
+      i = end;
+    }
+    return bs;
+  }
+
+  /**
+   * Returns the value of bit index.
+   * @param index
+   * @return
+   */
+  public boolean get(int index) {
+    checkIndex(index);
+    int pos = find(index >>> 16);
+    return pos >= 0 && containers[pos].contains(index & 0xFFFF);
+  }
+
+  /**
+   * Returns a new set made of the bits from fromIndex (inclusive) to toIndex (exclusive),
+   * shifted so that bit fromIndex becomes bit 0.
+   * @param fromIndex
+   * @param toIndex
+   * @return
+   */
+  public CompressedBitSet get(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    CompressedBitSet result = new CompressedBitSet();
+    long length = (long) toIndex - fromIndex;
+    long start = 0;
+    while (start < length) {
+      int next = nextSetBit((int) (fromIndex + start));
+      if (next < 0 || next >= toIndex) {
+        break;
+      }
+      start = ((next - fromIndex) >>> 16) << 16;
+      long end = Math.min(length, start + Container.CHUNK);
+      long[] words = new long[Container.WORDS];
+      for (int k = 0; start + 64L * k < end; k++) {
+        long w = readWord(fromIndex + start + 64L * k);
+        long remaining = end - start - 64L * k;
+        if (remaining < 64) {
+          w &= (1L << remaining) - 1;
+        }
+        words[k] = w;
+      }
+      Container c = Container.optimize(words);
+      if (!c.isEmpty()) {
+        result.insert(result.size, (int) (start >>> 16), c);
+      }
+      start += Container.CHUNK;
+    }
+    return result;
+  }
+
+  /**
+   * Sets bit index to true.
+   * @param index
+   */
+  public void set(int index) {
+    checkIndex(index);
+    int high = index >>> 16;
+    int pos = find(high);
+    if (pos >= 0) {
+      containers[pos] = containers[pos].add(index & 0xFFFF);
+    } else {
+      insert(-pos - 1, high, new ArrayContainer().add(index & 0xFFFF));
+    }
+  }
+
+  /**
+   * Sets bit index to value.
+   * @param index
+   * @param value
+   */
+  public void set(int index, boolean value) {
+    if (value) {
+      set(index);
+    } else {
+      clear(index);
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to true.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void set(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    int firstHigh = fromIndex >>> 16;
+    int lastHigh = (toIndex - 1) >>> 16;
+    for (int high = firstHigh; high <= lastHigh; high++) {
+      int from = high == firstHigh ? fromIndex & 0xFFFF : 0;
+      int to = high == lastHigh ? ((toIndex - 1) & 0xFFFF) + 1 : Container.CHUNK;
+      int pos = find(high);
+      if (pos >= 0) {
+        containers[pos] = containers[pos].add(from, to);
+      } else {
+        insert(-pos - 1, high, to - from > ArrayContainer.MAX_SIZE / 2
+          ? RunContainer.range(from, to) : new ArrayContainer().add(from, to));
+      }
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to value.
+   * @param fromIndex
+   * @param toIndex
+   * @param value
+   */
+  public void set(int fromIndex, int toIndex, boolean value) {
+    if (value) {
+      set(fromIndex, toIndex);
+    } else {
+      clear(fromIndex, toIndex);
+    }
+  }
+
+  /**
+   * Sets bit index to false.
+   * @param index
+   */
+  public void clear(int index) {
+    checkIndex(index);
+    int pos = find(index >>> 16);
+    if (pos >= 0) {
+      containers[pos] = containers[pos].remove(index & 0xFFFF);
+      removeIfEmpty(pos);
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to false.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void clear(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    int firstHigh = fromIndex >>> 16;
+    int lastHigh = (toIndex - 1) >>> 16;
+    int pos = find(firstHigh);
+    if (pos < 0) {
+      pos = -pos - 1;
+    }
+    while (pos < size && keys[pos] <= lastHigh) {
+      int high = keys[pos];
+      int from = high == firstHigh ? fromIndex & 0xFFFF : 0;
+      int to = high == lastHigh ? ((toIndex - 1) & 0xFFFF) + 1 : Container.CHUNK;
+      containers[pos] = containers[pos].remove(from, to);
+      if (!removeIfEmpty(pos)) {
+        pos++;
+      }
+    }
+  }
+
+  /**
+   * Sets all bits to false.
+   */
+  public void clear() {
+    Arrays.fill(containers, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Flips bit index.
+   * @param index
+   */
+  public void flip(int index) {
+    if (get(index)) {
+      clear(index);
+    } else {
+      set(index);
+    }
+  }
+
+  /**
+   * Flips the bits from fromIndex (inclusive) to toIndex (exclusive).
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void flip(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    int firstHigh = fromIndex >>> 16;
+    int lastHigh = (toIndex - 1) >>> 16;
+    for (int high = firstHigh; high <= lastHigh; high++) {
+      int from = high == firstHigh ? fromIndex & 0xFFFF : 0;
+      int to = high == lastHigh ? ((toIndex - 1) & 0xFFFF) + 1 : Container.CHUNK;
+      int pos = find(high);
+      if (pos >= 0) {
+        containers[pos] = containers[pos].flip(from, to);
+        removeIfEmpty(pos);
+      } else {
+        insert(-pos - 1, high, RunContainer.range(from, to));
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the first set bit at or after fromIndex, or -1 if there is none.
+   * @param fromIndex
+   * @return
+   */
+  public int nextSetBit(int fromIndex) {
+    checkIndex(fromIndex);
+    int high = fromIndex >>> 16;
+    int pos = find(high);
+    if (pos >= 0) {
+      int low = containers[pos].nextSetBit(fromIndex & 0xFFFF);
+      if (low >= 0) {
+        return (high << 16) | low;
+      }
+      pos++;
+    } else {
+      pos = -pos - 1;
+    }
+    if (pos < size) {
+      return (keys[pos] << 16) | containers[pos].nextSetBit(0);
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the first clear bit at or after fromIndex,
+   * or -1 if every bit up to Integer.MAX_VALUE is set.
+   * @param fromIndex
+   * @return
+   */
+  public int nextClearBit(int fromIndex) {
+    checkIndex(fromIndex);
+    int high = fromIndex >>> 16;
+    int low = fromIndex & 0xFFFF;
+    int pos = find(high);
+    while (pos >= 0) {
+      low = containers[pos].nextClearBit(low);
+      if (low < Container.CHUNK) {
+        break;
+      }
+      if (high == 0x7FFF) {
+        return -1;
+      }
+      high++;
+      low = 0;
+      pos = pos + 1 < size && keys[pos + 1] == high ? pos + 1 : -1;
+    }
+    return (high << 16) | low;
+  }
+
+  /**
+   * Returns the index of the highest set bit plus one, or 0 if no bits are set.
+   * @return
+   */
+  public int length() {
+    if (size == 0) {
+      return 0;
+    }
+    return ((keys[size - 1] << 16) | containers[size - 1].last()) + 1;
+  }
+
+  /**
+   * Returns true if no bits are set.
+   * @return
+   */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the number of set bits.
+   * @return
+   */
+  public int cardinality() {
+    int card = 0;
+    for (int i = 0; i < size; i++) {
+      card += containers[i].cardinality();
+    }
+    return card;
+  }
+
+  /**
+   * Returns true if bs has any set bit that is also set in this set.
+   * @param bs
+   * @return
+   */
+  public boolean intersects(CompressedBitSet bs) {
+    int i = 0;
+    int j = 0;
+    while (i < size && j < bs.size) {
+      if (keys[i] < bs.keys[j]) {
+        i++;
+      } else if (keys[i] > bs.keys[j]) {
+        j++;
+      } else {
+        if (containers[i].intersects(bs.containers[j])) {
+          return true;
+        }
+        i++;
+        j++;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Keeps only the bits that are also set in bs.
+   * @param bs
+   */
+  public void and(CompressedBitSet bs) {
+    int n = 0;
+    int j = 0;
+    for (int i = 0; i < size; i++) {
+      while (j < bs.size && bs.keys[j] < keys[i]) {
+        j++;
+      }
+      if (j < bs.size && bs.keys[j] == keys[i]) {
+        Container c = containers[i].and(bs.containers[j]);
+        if (!c.isEmpty()) {
+          keys[n] = keys[i];
+          containers[n] = c;
+          n++;
+        }
+      }
+    }
+    Arrays.fill(containers, n, size, null);
+    size = n;
+  }
+
+  /**
+   * Sets the bits that are set in bs.
+   * @param bs
+   */
+  public void or(CompressedBitSet bs) {
+    int pos = 0;
+    for (int j = 0; j < bs.size; j++) {
+      while (pos < size && keys[pos] < bs.keys[j]) {
+        pos++;
+      }
+      if (pos < size && keys[pos] == bs.keys[j]) {
+        containers[pos] = containers[pos].or(bs.containers[j]);
+      } else {
+        insert(pos, bs.keys[j], bs.containers[j].copy());
+      }
+      pos++;
+    }
+  }
+
+  /**
+   * Flips the bits that are set in bs.
+   * @param bs
+   */
+  public void xor(CompressedBitSet bs) {
+    int pos = 0;
+    for (int j = 0; j < bs.size; j++) {
+      while (pos < size && keys[pos] < bs.keys[j]) {
+        pos++;
+      }
+      if (pos < size && keys[pos] == bs.keys[j]) {
+        containers[pos] = containers[pos].xor(bs.containers[j]);
+        if (!removeIfEmpty(pos)) {
+          pos++;
+        }
+      } else {
+        insert(pos, bs.keys[j], bs.containers[j].copy());
+        pos++;
+      }
+    }
+  }
+
+  /**
+   * Clears the bits that are set in bs.
+   * @param bs
+   */
+  public void andNot(CompressedBitSet bs) {
+    int pos = 0;
+    for (int j = 0; j < bs.size && pos < size; j++) {
+      while (pos < size && keys[pos] < bs.keys[j]) {
+        pos++;
+      }
+      if (pos < size && keys[pos] == bs.keys[j]) {
+        containers[pos] = containers[pos].andNot(bs.containers[j]);
+        if (!removeIfEmpty(pos)) {
+          pos++;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns an estimate of the heap used by this set, in bytes.
+   * This takes the place of BitSet.size(), which reports the capacity of a dense bitmap.
+   * @return
+   */
+  public long sizeInBytes() {
+    long bytes = 2L * keys.length + 8L * containers.length + 32;
+    for (int i = 0; i < size; i++) {
+      bytes += containers[i].sizeInBytes();
+    }
+    return bytes;
+  }
+
+  @Override
+  public CompressedBitSet clone() {
+    CompressedBitSet copy;
+    try {
+      copy = (CompressedBitSet) super.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new InternalError();
+    }
+    copy.keys = keys.clone();
+    copy.containers = new Container[containers.length];
+    for (int i = 0; i < size; i++) {
+      copy.containers[i] = containers[i].copy();
+    }
+    return copy;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof CompressedBitSet)) {
+      return false;
+    }
+    CompressedBitSet other = (CompressedBitSet) obj;
+    if (size != other.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (keys[i] != other.keys[i]) {
+        return false;
+      }
+      for (int k = 0; k < Container.WORDS; k++) {
+        if (containers[i].word(k) != other.containers[i].word(k)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as a java.util.BitSet with the same bits.
+   */
+  @Override
+  public int hashCode() {
+    long h = 1234;
+    for (int i = 0; i < size; i++) {
+      long base = (long) keys[i] * Container.WORDS;
+      for (int k = 0; k < Container.WORDS; k++) {
+        h ^= containers[i].word(k) * (base + k + 1);
+      }
+    }
+    return (int) ((h >> 32) ^ h);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (int i = nextSetBit(0); i >= 0; i = i == Integer.MAX_VALUE ? -1 : nextSetBit(i + 1)) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(i);
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Reads the 64 bits that start at bit index.
+   */
+  private long readWord(long index) {
+    long word = index >>> 6;
+    int shift = (int) (index & 63);
+    long w = alignedWord(word);
+    if (shift == 0) {
+      return w;
+    }
+    return (w >>> shift) | (alignedWord(word + 1) << (64 - shift));
+  }
+
+  /**
+   * Returns word number word (bits 64 * word to 64 * word + 63).
+   */
+  private long alignedWord(long word) {
+    if (word >= (1L << 25)) {
+      return 0L;
+    }
+    int pos = find((int) (word >>> 10));
+    return pos < 0 ? 0L : containers[pos].word((int) (word & 1023));
+  }
+
+  /**
+   * Returns the position of the container for the chunk high, or (-(insertion point) - 1) if there is none.
+   */
+  private int find(int high) {
+    return Arrays.binarySearch(keys, 0, size, (char) high);
+  }
+
+  private void insert(int pos, int high, Container c) {
+    if (size == keys.length) {
+      int capacity = size + (size >> 1) + 1;
+      keys = Arrays.copyOf(keys, capacity);
+      containers = Arrays.copyOf(containers, capacity);
+    }
+    System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+    System.arraycopy(containers, pos, containers, pos + 1, size - pos);
+    keys[pos] = (char) high;
+    containers[pos] = c;
+    size++;
+  }
+
+  /**
+   * Removes the container at pos if it has become empty.
+   * @return true if it was removed
+   */
+  private boolean removeIfEmpty(int pos) {
+    if (!containers[pos].isEmpty()) {
+      return false;
+    }
+    System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+    System.arraycopy(containers, pos + 1, containers, pos, size - pos - 1);
+    containers[--size] = null;
+    return true;
+  }
+
+  private static void checkIndex(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("index < 0: " + index);
+    }
+  }
+
+  private static void checkRange(int fromIndex, int toIndex) {
+    if (fromIndex < 0) {
+      throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    }
+    if (toIndex < 0) {
+      throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+    }
+    if (fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+    }
+  }
+}
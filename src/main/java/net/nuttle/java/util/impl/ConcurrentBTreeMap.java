@@ -0,0 +1,266 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.nuttle.java.util.impl.PersistentBTree.Node;
+import net.nuttle.java.util.impl.PersistentBTree.Result;
+
+/**
+ * A concurrent NavigableMap stored as an immutable B+tree (see PersistentBTree) behind an atomic root.
+ * Reads take the current root and walk it without locks or retries, touching 4 or 5 nodes of
+ * 32 keys for a million entries, against the 20 or so nodes, each a cache miss, of a search in
+ * ConcurrentSkipListMap.  A write copies the path to its leaf and installs the new root with a
+ * compare-and-set, retrying if another write got there first.
+ * <p>
+ * As every iterator walks the root it started from, the iteration of the map and of its sub maps,
+ * key sets and descending views is snapshot-consistent: it sees the map as it was at one instant,
+ * whatever writes run in the meantime, including its own remove and setValue, which change only
+ * the entry it has already returned.  size() is exact and constant-time.
+ * snapshot() returns that view as a PersistentTreeMap, which shares the nodes of the tree.
+ * <p>
+ * Reads and range scans scale with the number of cores, as they share nothing that is written.
+ * Writes all go through the root, so they serialize: a write that loses the compare-and-set
+ * copies its path again, and concurrent writers do no better than one.  This map is therefore
+ * meant for read-mostly loads only, such as indexes read by many threads and updated by a few;
+ * under heavy concurrent writes use ConcurrentSkipListMap, whose writes contend only with
+ * their neighbors.  ConcurrentBTreeMapBenchmark measures both kinds of load.
+ * Neither keys nor values may be null.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class ConcurrentBTreeMap<K, V> extends AbstractNavigableMap<K, V> implements ConcurrentMap<K, V> {
+
+  private final Comparator<? super K> comparator;
+  private final Comparator<Object> cmp;
+  private final AtomicReference<Node> root = new AtomicReference<Node>(PersistentBTree.EMPTY);
+
+  /**
+   * Creates an empty map, ordered by the natural ordering of its keys.
+   */
+  public ConcurrentBTreeMap() {
+    this((Comparator<? super K>) null);
+  }
+
+  /**
+   * Creates an empty map, ordered by comparator.
+   * @param comparator
+   */
+  public ConcurrentBTreeMap(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+    this.cmp = PersistentBTree.comparator(comparator);
+  }
+
+  /**
+   * Creates a map with the entries of m, ordered by the natural ordering of their keys.
+   * @param m
+   */
+  public ConcurrentBTreeMap(Map<? extends K, ? extends V> m) {
+    this((Comparator<? super K>) null);
+    putAll(m);
+  }
+
+  /**
+   * Creates a map with the entries and ordering of m.
+   * @param m
+   */
+  public ConcurrentBTreeMap(SortedMap<K, ? extends V> m) {
+    this(m.comparator());
+    putAll(m);
+  }
+
+  /**
+   * Returns the map as it is now, as a PersistentTreeMap that later writes to this map do not change.
+   * Taking it costs a read of the root.
+   * @return
+   */
+  public PersistentTreeMap<K, V> snapshot() {
+    return new PersistentTreeMap<K, V>(root.get(), comparator);
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public int size() {
+    return root.get().count();
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  @Override
+  public void clear() {
+    root.set(PersistentBTree.EMPTY);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    checkKey(key);
+    return (V) PersistentBTree.get(root.get(), key, cmp);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    checkKey(key);
+    PersistentBTree.checkValue(value);
+    return update(key, value, null, false);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    checkKey(key);
+    PersistentBTree.checkValue(value);
+    return update(key, value, null, true);
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    checkKey(key);
+    PersistentBTree.checkValue(value);
+    while (true) {
+      Node r = root.get();
+      if (PersistentBTree.get(r, key, cmp) == null) {
+        return null;
+      }
+      Result result = new Result();
+      if (root.compareAndSet(r, PersistentBTree.put(r, key, value, cmp, result))) {
+        return previous(result);
+      }
+    }
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    checkKey(key);
+    PersistentBTree.checkValue(oldValue);
+    PersistentBTree.checkValue(newValue);
+    return update(key, newValue, oldValue, false) != null;
+  }
+
+  @Override
+  public V remove(Object key) {
+    checkKey(key);
+    return delete(key, null);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    checkKey(key);
+    return value != null && delete(key, value) != null;
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    return PersistentBTree.firstEntry(root.get());
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    return PersistentBTree.lastEntry(root.get());
+  }
+
+  /**
+   * Removes the first entry, unlike AbstractNavigableMap's, even if other threads remove it first.
+   */
+  @Override
+  public Map.Entry<K, V> pollFirstEntry() {
+    while (true) {
+      Map.Entry<K, V> e = firstEntry();
+      if (e == null || remove(e.getKey(), e.getValue())) {
+        return e;
+      }
+    }
+  }
+
+  @Override
+  public Map.Entry<K, V> pollLastEntry() {
+    while (true) {
+      Map.Entry<K, V> e = lastEntry();
+      if (e == null || remove(e.getKey(), e.getValue())) {
+        return e;
+      }
+    }
+  }
+
+  @Override
+  Map.Entry<K, V> findEntry(Object key, int rel) {
+    return PersistentBTree.findEntry(root.get(), key, rel, cmp);
+  }
+
+  @Override
+  Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending) {
+    return PersistentBTree.iterator(root.get(), from, inclusive, descending, cmp);
+  }
+
+  /**
+   * An iterator keeps the root it started from across its own writes, and so stays snapshot-consistent.
+   */
+  @Override
+  boolean snapshotIterators() {
+    return true;
+  }
+
+  /**
+   * Maps key to value, if key is absent (when ifAbsent is set) or mapped to expected (when it is
+   * not null), and returns the previous value.
+   */
+  private V update(K key, V value, Object expected, boolean ifAbsent) {
+    while (true) {
+      Node r = root.get();
+      if (ifAbsent || expected != null) {
+        Object current = PersistentBTree.get(r, key, cmp);
+        if (ifAbsent ? current != null : !expected.equals(current)) {
+          return ifAbsent ? cast(current) : null;
+        }
+      }
+      Result result = new Result();
+      Node updated = PersistentBTree.put(r, key, value, cmp, result);
+      if (updated == r || root.compareAndSet(r, updated)) {
+        return previous(result);
+      }
+    }
+  }
+
+  /**
+   * Removes key, if it is mapped to expected (when it is not null), and returns the removed value.
+   */
+  private V delete(Object key, Object expected) {
+    while (true) {
+      Node r = root.get();
+      Result result = new Result();
+      Node updated = PersistentBTree.remove(r, key, cmp, result);
+      if (!result.found || (expected != null && !expected.equals(result.previous))) {
+        return null;
+      }
+      if (root.compareAndSet(r, updated)) {
+        return previous(result);
+      }
+    }
+  }
+
+  private V previous(Result result) {
+    return cast(result.previous);
+  }
+
+  @SuppressWarnings("unchecked")
+  private V cast(Object value) {
+    return (V) value;
+  }
+}
@@ -0,0 +1,440 @@
+package net.nuttle.java.util.impl;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe, lock-free bit set with the operations of java.util.BitSet.
+ * Every update of a bit is a compare-and-set of the 64-bit word holding it,
+ * so threads working on different bits never block each other, and updates of
+ * a single bit (set, clear, flip, getAndSet) are atomic.
+ * Range updates and the logical operations are atomic per word, not as a whole.
+ * cardinality(), length(), nextSetBit() and the other scans are weakly consistent:
+ * they see every update that completed before they started, and may or may not
+ * see updates made while they run.
+ * Unlike BitSet the capacity is fixed when the set is created, so that words never
+ * have to be copied under the feet of concurrent writers.
+ * @author dan
+ *
+ */
+public class ConcurrentBitSet {
+
+  /**
+   * Operations applied to a word by update().
+   */
+  private static final int OR = 0;
+  private static final int AND_NOT = 1;
+  private static final int XOR = 2;
+
+  private final AtomicLongArray words;
+  private final int nbits;
+
+  /**
+   * Creates an empty set that can hold the bits 0 to nbits - 1.
+   * @param nbits
+   */
+  public ConcurrentBitSet(int nbits) {
+    if (nbits < 0) {
+      throw new NegativeArraySizeException("nbits < 0: " + nbits);
+    }
+    this.nbits = nbits;
+    this.words = new AtomicLongArray((int) ((nbits + 63L) >>> 6));
+  }
+
+  /**
+   * Returns the value of bit index.
+   * @param index
+   * @return
+   */
+  public boolean get(int index) {
+    checkIndex(index);
+    return (words.get(index >>> 6) & (1L << index)) != 0;
+  }
+
+  /**
+   * Returns a BitSet made of the bits from fromIndex (inclusive) to toIndex (exclusive),
+   * shifted so that bit fromIndex becomes bit 0.
+   * Each word is read atomically, the range as a whole is not.
+   * @param fromIndex
+   * @param toIndex
+   * @return
+   */
+  public BitSet get(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    int len = (int) (Math.min(toIndex, words.length() * 64L) - fromIndex);
+    if (len <= 0) {
+      return new BitSet();
+    }
+    long[] result = new long[((len - 1) >>> 6) + 1];
+    int shift = fromIndex & 63;
+    int source = fromIndex >>> 6;
+    for (int i = 0; i < result.length; i++, source++) {
+      long w = words.get(source) >>> shift;
+      if (shift != 0 && source + 1 < words.length()) {
+        w |= words.get(source + 1) << (64 - shift);
+      }
+      result[i] = w;
+    }
+    result[result.length - 1] &= -1L >>> -len;
+    return BitSet.valueOf(result);
+  }
+
+  /**
+   * Sets bit index to true.
+   * @param index
+   */
+  public void set(int index) {
+    getAndSet(index, true);
+  }
+
+  /**
+   * Sets bit index to value.
+   * @param index
+   * @param value
+   */
+  public void set(int index, boolean value) {
+    getAndSet(index, value);
+  }
+
+  /**
+   * Atomically sets bit index to value, and returns its previous value.
+   * When several threads call getAndSet(i, true) on a clear bit, exactly one of them gets false.
+   * @param index
+   * @param value
+   * @return
+   */
+  public boolean getAndSet(int index, boolean value) {
+    checkIndex(index);
+    int w = index >>> 6;
+    long mask = 1L << index;
+    while (true) {
+      long before = words.get(w);
+      long after = value ? before | mask : before & ~mask;
+      if (before == after || words.compareAndSet(w, before, after)) {
+        return (before & mask) != 0;
+      }
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to true.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void set(int fromIndex, int toIndex) {
+    updateRange(fromIndex, toIndex, OR);
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to value.
+   * @param fromIndex
+   * @param toIndex
+   * @param value
+   */
+  public void set(int fromIndex, int toIndex, boolean value) {
+    updateRange(fromIndex, toIndex, value ? OR : AND_NOT);
+  }
+
+  /**
+   * Sets bit index to false.
+   * @param index
+   */
+  public void clear(int index) {
+    getAndSet(index, false);
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to false.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void clear(int fromIndex, int toIndex) {
+    updateRange(fromIndex, toIndex, AND_NOT);
+  }
+
+  /**
+   * Sets all bits to false.
+   */
+  public void clear() {
+    for (int i = 0; i < words.length(); i++) {
+      words.set(i, 0L);
+    }
+  }
+
+  /**
+   * Atomically flips bit index.
+   * @param index
+   */
+  public void flip(int index) {
+    checkIndex(index);
+    update(index >>> 6, 1L << index, XOR);
+  }
+
+  /**
+   * Flips the bits from fromIndex (inclusive) to toIndex (exclusive).
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void flip(int fromIndex, int toIndex) {
+    updateRange(fromIndex, toIndex, XOR);
+  }
+
+  /**
+   * Returns the index of the first set bit at or after fromIndex, or -1 if there is none.
+   * @param fromIndex
+   * @return
+   */
+  public int nextSetBit(int fromIndex) {
+    if (fromIndex < 0) {
+      throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    }
+    int i = fromIndex >>> 6;
+    if (i >= words.length()) {
+      return -1;
+    }
+    long w = words.get(i) & (-1L << fromIndex);
+    while (true) {
+      if (w != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words.length()) {
+        return -1;
+      }
+      w = words.get(i);
+    }
+  }
+
+  /**
+   * Returns the index of the first clear bit at or after fromIndex.
+   * This may be equal to or greater than the capacity, if all bits from fromIndex on are set.
+   * @param fromIndex
+   * @return
+   */
+  public int nextClearBit(int fromIndex) {
+    if (fromIndex < 0) {
+      throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    }
+    int i = fromIndex >>> 6;
+    if (i >= words.length()) {
+      return fromIndex;
+    }
+    long w = ~words.get(i) & (-1L << fromIndex);
+    while (true) {
+      if (w != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words.length()) {
+        return (int) Math.min(Integer.MAX_VALUE, i * 64L);
+      }
+      w = ~words.get(i);
+    }
+  }
+
+  /**
+   * Returns the index of the highest set bit plus one, or 0 if no bits are set.
+   * @return
+   */
+  public int length() {
+    for (int i = words.length() - 1; i >= 0; i--) {
+      long w = words.get(i);
+      if (w != 0) {
+        return i * 64 + 64 - Long.numberOfLeadingZeros(w);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns true if no bits are set.
+   * @return
+   */
+  public boolean isEmpty() {
+    return length() == 0;
+  }
+
+  /**
+   * Returns the number of set bits.
+   * @return
+   */
+  public int cardinality() {
+    int card = 0;
+    for (int i = 0; i < words.length(); i++) {
+      card += Long.bitCount(words.get(i));
+    }
+    return card;
+  }
+
+  /**
+   * Returns the number of bits the set can hold.
+   * @return
+   */
+  public int size() {
+    return nbits;
+  }
+
+  /**
+   * Returns true if bs has any set bit that is also set in this set.
+   * @param bs
+   * @return
+   */
+  public boolean intersects(ConcurrentBitSet bs) {
+    int n = Math.min(words.length(), bs.words.length());
+    for (int i = 0; i < n; i++) {
+      if ((words.get(i) & bs.words.get(i)) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Keeps only the bits that are also set in bs.
+   * @param bs
+   */
+  public void and(ConcurrentBitSet bs) {
+    for (int i = 0; i < words.length(); i++) {
+      update(i, i < bs.words.length() ? ~bs.words.get(i) : -1L, AND_NOT);
+    }
+  }
+
+  /**
+   * Sets the bits that are set in bs.
+   * Throws IndexOutOfBoundsException if bs has a set bit beyond the capacity of this set.
+   * @param bs
+   */
+  public void or(ConcurrentBitSet bs) {
+    combine(bs, OR);
+  }
+
+  /**
+   * Flips the bits that are set in bs.
+   * Throws IndexOutOfBoundsException if bs has a set bit beyond the capacity of this set.
+   * @param bs
+   */
+  public void xor(ConcurrentBitSet bs) {
+    combine(bs, XOR);
+  }
+
+  /**
+   * Clears the bits that are set in bs.
+   * @param bs
+   */
+  public void andNot(ConcurrentBitSet bs) {
+    int n = Math.min(words.length(), bs.words.length());
+    for (int i = 0; i < n; i++) {
+      update(i, bs.words.get(i), AND_NOT);
+    }
+  }
+
+  /**
+   * Returns a BitSet copy of this set, atomic per word.
+   * @return
+   */
+  public BitSet toBitSet() {
+    long[] result = new long[words.length()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = words.get(i);
+    }
+    return BitSet.valueOf(result);
+  }
+
+  @Override
+  public String toString() {
+    return toBitSet().toString();
+  }
+
+  /**
+   * Atomically applies op with mask to word i.
+   */
+  private void update(int i, long mask, int op) {
+    if (mask == 0) {
+      return;
+    }
+    while (true) {
+      long before = words.get(i);
+      long after;
+      switch (op) {
+        case OR:
+          after = before | mask;
+          break;
+        case AND_NOT:
+          after = before & ~mask;
+          break;
+        default:
+          after = before ^ mask;
+      }
+      if (before == after || words.compareAndSet(i, before, after)) {
+        return;
+      }
+    }
+  }
+
+  private void updateRange(int fromIndex, int toIndex, int op) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    checkIndex(toIndex - 1);
+    int first = fromIndex >>> 6;
+    int last = (toIndex - 1) >>> 6;
+    long firstMask = -1L << fromIndex;
+    long lastMask = -1L >>> -toIndex;
+    if (first == last) {
+      update(first, firstMask & lastMask, op);
+      return;
+    }
+    update(first, firstMask, op);
+    for (int i = first + 1; i < last; i++) {
+      update(i, -1L, op);
+    }
+    update(last, lastMask, op);
+  }
+
+  /**
+   * Reads the words of bs once, checks that none of their bits lies beyond nbits,
+   * and only then applies them, so that a rejected bs leaves this set unchanged.
+   */
+  private void combine(ConcurrentBitSet bs, int op) {
+    long[] masks = new long[bs.words.length()];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = bs.words.get(i);
+      long beyond = masks[i] & ~wordMask(i);
+      if (beyond != 0) {
+        throw new IndexOutOfBoundsException("Bit " + (i * 64 + Long.numberOfTrailingZeros(beyond))
+          + " is beyond the capacity " + nbits);
+      }
+    }
+    for (int i = 0; i < masks.length; i++) {
+      update(i, masks[i], op);
+    }
+  }
+
+  /**
+   * Returns the bits of word i that lie below nbits.
+   */
+  private long wordMask(int i) {
+    long first = (long) i << 6;
+    if (first >= nbits) {
+      return 0;
+    }
+    return nbits - first >= 64 ? -1L : -1L >>> -nbits;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= nbits) {
+      throw new IndexOutOfBoundsException("index: " + index + ", capacity: " + nbits);
+    }
+  }
+
+  private static void checkRange(int fromIndex, int toIndex) {
+    if (fromIndex < 0) {
+      throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    }
+    if (toIndex < 0) {
+      throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+    }
+    if (fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * Accepts the elements drained from a queue, as java.util.function.Consumer does from Java 8.
+ * @author dan
+ *
+ * @param <E>
+ */
+public interface Consumer<E> {
+
+  /**
+   * Accepts one element.
+   * @param e
+   */
+  void accept(E e);
+}
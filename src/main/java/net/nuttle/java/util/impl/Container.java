@@ -0,0 +1,280 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * A set of 16-bit values, holding the low halves of the indexes in one 64K chunk of a CompressedBitSet.
+ * There are three representations:
+ * ArrayContainer, a sorted char[] for sparse chunks (up to 4096 values);
+ * BitmapContainer, a plain 1024-word bitmap for dense chunks;
+ * RunContainer, a list of (start, length) runs for chunks made of long stretches of set bits.
+ * Mutators return the container that holds the result, which may be this container
+ * or a new one of a different representation; callers must store the returned value.
+ * @author dan
+ *
+ */
+abstract class Container {
+
+  /**
+   * Number of values in a chunk, and so the exclusive upper bound of every value in a container.
+   */
+  static final int CHUNK = 1 << 16;
+
+  /**
+   * Number of 64-bit words in the bitmap of a chunk.
+   */
+  static final int WORDS = CHUNK / 64;
+
+  abstract boolean contains(int x);
+
+  abstract Container add(int x);
+
+  abstract Container remove(int x);
+
+  Container flip(int x) {
+    return contains(x) ? remove(x) : add(x);
+  }
+
+  /**
+   * Adds the values from (inclusive) to to (exclusive).
+   */
+  Container add(int from, int to) {
+    long[] words = toWords();
+    setRange(words, from, to);
+    return optimize(words);
+  }
+
+  /**
+   * Removes the values from (inclusive) to to (exclusive).
+   */
+  Container remove(int from, int to) {
+    long[] words = toWords();
+    clearRange(words, from, to);
+    return optimize(words);
+  }
+
+  /**
+   * Flips the values from (inclusive) to to (exclusive).
+   */
+  Container flip(int from, int to) {
+    long[] words = toWords();
+    flipRange(words, from, to);
+    return optimize(words);
+  }
+
+  abstract int cardinality();
+
+  boolean isEmpty() {
+    return cardinality() == 0;
+  }
+
+  /**
+   * Returns the least value that is greater than or equal to from, or -1 if none exists.
+   */
+  abstract int nextSetBit(int from);
+
+  /**
+   * Returns the least value greater than or equal to from that is not in the container,
+   * or CHUNK if all of them are.
+   */
+  abstract int nextClearBit(int from);
+
+  /**
+   * Returns the greatest value in the container, or -1 if it is empty.
+   */
+  abstract int last();
+
+  /**
+   * Returns the 64 bits of word k (values 64 * k to 64 * k + 63) of the container's bitmap.
+   */
+  long word(int k) {
+    long w = 0L;
+    int base = k << 6;
+    for (int i = nextSetBit(base); i >= 0 && i < base + 64; i = nextSetBit(i + 1)) {
+      w |= 1L << (i - base);
+    }
+    return w;
+  }
+
+  /**
+   * Returns a new bitmap of the container's values.
+   */
+  abstract long[] toWords();
+
+  /**
+   * Sets the container's values in words.
+   */
+  abstract void orInto(long[] words);
+
+  /**
+   * Clears the container's values from words.
+   */
+  abstract void andNotInto(long[] words);
+
+  /**
+   * Flips the container's values in words.
+   */
+  abstract void xorInto(long[] words);
+
+  /**
+   * Returns an estimate of the heap used by the container.
+   */
+  abstract int sizeInBytes();
+
+  abstract Container copy();
+
+  Container and(Container other) {
+    if (this instanceof ArrayContainer) {
+      return ((ArrayContainer) this).filter(other, true);
+    }
+    if (other instanceof ArrayContainer) {
+      return ((ArrayContainer) other).filter(this, true);
+    }
+    long[] words = toWords();
+    if (other instanceof BitmapContainer) {
+      long[] otherWords = ((BitmapContainer) other).words;
+      for (int i = 0; i < WORDS; i++) {
+        words[i] &= otherWords[i];
+      }
+    } else {
+      long[] otherWords = other.toWords();
+      for (int i = 0; i < WORDS; i++) {
+        words[i] &= otherWords[i];
+      }
+    }
+    return optimize(words);
+  }
+
+  Container or(Container other) {
+    if (this instanceof ArrayContainer && other instanceof ArrayContainer
+        && cardinality() + other.cardinality() <= ArrayContainer.MAX_SIZE) {
+      return ((ArrayContainer) this).union((ArrayContainer) other);
+    }
+    long[] words = toWords();
+    other.orInto(words);
+    return optimize(words);
+  }
+
+  Container xor(Container other) {
+    if (this instanceof ArrayContainer && other instanceof ArrayContainer
+        && cardinality() + other.cardinality() <= ArrayContainer.MAX_SIZE) {
+      return ((ArrayContainer) this).symmetricDifference((ArrayContainer) other);
+    }
+    long[] words = toWords();
+    other.xorInto(words);
+    return optimize(words);
+  }
+
+  Container andNot(Container other) {
+    if (this instanceof ArrayContainer) {
+      return ((ArrayContainer) this).filter(other, false);
+    }
+    long[] words = toWords();
+    other.andNotInto(words);
+    return optimize(words);
+  }
+
+  boolean intersects(Container other) {
+    if (this instanceof ArrayContainer) {
+      return ((ArrayContainer) this).anyIn(other);
+    }
+    if (other instanceof ArrayContainer) {
+      return ((ArrayContainer) other).anyIn(this);
+    }
+    if (this instanceof RunContainer) {
+      return ((RunContainer) this).anyIn(other);
+    }
+    if (other instanceof RunContainer) {
+      return ((RunContainer) other).anyIn(this);
+    }
+    long[] a = ((BitmapContainer) this).words;
+    long[] b = ((BitmapContainer) other).words;
+    for (int i = 0; i < WORDS; i++) {
+      if ((a[i] & b[i]) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the cheapest container holding the values set in words.
+   * words may be adopted by the returned container, so callers must not reuse it.
+   */
+  static Container optimize(long[] words) {
+    int card = 0;
+    int runs = 0;
+    long carry = 0L;
+    for (int i = 0; i < WORDS; i++) {
+      long w = words[i];
+      card += Long.bitCount(w);
+      runs += Long.bitCount(w & ~((w << 1) | carry));
+      carry = w >>> 63;
+    }
+    int arrayBytes = card <= ArrayContainer.MAX_SIZE ? 2 * card : Integer.MAX_VALUE;
+    int runBytes = 4 * runs;
+    int bitmapBytes = 8 * WORDS;
+    if (runBytes < arrayBytes && runBytes < bitmapBytes) {
+      return RunContainer.fromWords(words, runs);
+    }
+    if (arrayBytes <= bitmapBytes) {
+      return ArrayContainer.fromWords(words, card);
+    }
+    return new BitmapContainer(words, card);
+  }
+
+  static void setRange(long[] words, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      words[first] |= firstMask & lastMask;
+      return;
+    }
+    words[first] |= firstMask;
+    for (int i = first + 1; i < last; i++) {
+      words[i] = -1L;
+    }
+    words[last] |= lastMask;
+  }
+
+  static void clearRange(long[] words, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      words[first] &= ~(firstMask & lastMask);
+      return;
+    }
+    words[first] &= ~firstMask;
+    for (int i = first + 1; i < last; i++) {
+      words[i] = 0L;
+    }
+    words[last] &= ~lastMask;
+  }
+
+  static void flipRange(long[] words, int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from >>> 6;
+    int last = (to - 1) >>> 6;
+    long firstMask = -1L << from;
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      words[first] ^= firstMask & lastMask;
+      return;
+    }
+    words[first] ^= firstMask;
+    for (int i = first + 1; i < last; i++) {
+      words[i] = ~words[i];
+    }
+    words[last] ^= lastMask;
+  }
+}
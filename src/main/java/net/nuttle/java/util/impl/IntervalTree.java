@@ -0,0 +1,382 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A map from half-open ranges (see Range) to values, which may overlap, with stabbing and
+ * overlap queries: the ranges containing a key, or sharing keys with a given range.
+ * <p>
+ * The ranges are kept in an AVL tree ordered by start (then end), in which every node also holds
+ * the greatest end in its subtree.  A query skips the subtrees whose greatest end is at most its
+ * start, and the right subtrees of nodes that start at or after its end, so it only enters
+ * subtrees holding a range it returns: it visits O(log n) nodes, plus O(log n) per range returned
+ * at worst and close to O(1) in practice, where floor and ceiling on a TreeSet of ranges must
+ * scan back over every range that might reach the query.  overlaps takes O(log n), and so do
+ * put, get and remove of a range.  For disjoint ranges, RangeSet answers in O(log n + k).
+ * Range keys may not be null, but values may.  This class is not thread-safe.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class IntervalTree<K, V> implements Iterable<Map.Entry<Range<K>, V>> {
+
+  private final Comparator<? super K> comparator;
+  private Node<K, V> root;
+  private int size;
+  private int modCount;
+  // The previous value of the range of the last put or remove
+  private V previous;
+
+  /**
+   * Creates an empty tree, ordered by the natural ordering of its keys.
+   */
+  public IntervalTree() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty tree, ordered by comparator.
+   * @param comparator
+   */
+  public IntervalTree(Comparator<? super K> comparator) {
+    this.comparator = comparator;
+  }
+
+  /**
+   * Maps the range from start, inclusive, to end, exclusive, to value, and returns
+   * the previous value of the range, or null.
+   * @param start
+   * @param end
+   * @param value
+   * @return
+   * @throws IllegalArgumentException if start is not less than end
+   */
+  public V put(K start, K end, V value) {
+    if (compare(start, end) >= 0) {
+      throw new IllegalArgumentException("start >= end: " + start + " >= " + end);
+    }
+    previous = null;
+    root = insert(root, start, end, value);
+    return previous;
+  }
+
+  /**
+   * Returns the value of the range from start to end, or null.
+   * @param start
+   * @param end
+   * @return
+   */
+  public V get(K start, K end) {
+    Node<K, V> node = root;
+    while (node != null) {
+      int c = compare(start, end, node);
+      if (c == 0) {
+        return node.value;
+      }
+      node = c < 0 ? node.left : node.right;
+    }
+    return null;
+  }
+
+  /**
+   * Removes the range from start to end, and returns its value, or null.
+   * @param start
+   * @param end
+   * @return
+   */
+  public V remove(K start, K end) {
+    previous = null;
+    root = delete(root, start, end);
+    return previous;
+  }
+
+  /**
+   * Returns the ranges containing key, with their values, in ascending order of start.
+   * @param key
+   * @return
+   */
+  public List<Map.Entry<Range<K>, V>> stab(K key) {
+    List<Map.Entry<Range<K>, V>> result = new ArrayList<Map.Entry<Range<K>, V>>();
+    collect(root, key, key, true, result);
+    return result;
+  }
+
+  /**
+   * Returns the ranges that share keys with [start, end), with their values,
+   * in ascending order of start.
+   * @param start
+   * @param end
+   * @return
+   */
+  public List<Map.Entry<Range<K>, V>> overlapping(K start, K end) {
+    List<Map.Entry<Range<K>, V>> result = new ArrayList<Map.Entry<Range<K>, V>>();
+    if (compare(start, end) < 0) {
+      collect(root, start, end, false, result);
+    }
+    return result;
+  }
+
+  /**
+   * Returns true if any range shares keys with [start, end), in O(log n).
+   * @param start
+   * @param end
+   * @return
+   */
+  public boolean overlaps(K start, K end) {
+    if (compare(start, end) >= 0) {
+      return false;
+    }
+    Node<K, V> node = root;
+    while (node != null) {
+      if (compare(node.range.start(), end) < 0 && compare(node.range.end(), start) > 0) {
+        return true;
+      }
+      // If the left subtree reaches start, it holds an overlapping range, or none does
+      node = node.left != null && compare(node.left.max, start) > 0 ? node.left : node.right;
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public void clear() {
+    root = null;
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns the ranges, with their values, in ascending order of start.
+   * The iterator does not support remove.
+   */
+  @Override
+  public Iterator<Map.Entry<Range<K>, V>> iterator() {
+    return new TreeIterator();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Map.Entry<Range<K>, V> e : this) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(e.getKey()).append('=').append(e.getValue());
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Adds to result the ranges under node that end after lo and start before hi (or at hi, if inclusive).
+   */
+  private void collect(Node<K, V> node, K lo, K hi, boolean inclusive, List<Map.Entry<Range<K>, V>> result) {
+    while (node != null && compare(node.max, lo) > 0) {
+      collect(node.left, lo, hi, inclusive, result);
+      int c = compare(node.range.start(), hi);
+      if (c > 0 || (c == 0 && !inclusive)) {
+        // This range and all those to its right start too late
+        return;
+      }
+      if (compare(node.range.end(), lo) > 0) {
+        result.add(new AbstractMap.SimpleImmutableEntry<Range<K>, V>(node.range, node.value));
+      }
+      node = node.right;
+    }
+  }
+
+  private Node<K, V> insert(Node<K, V> node, K start, K end, V value) {
+    if (node == null) {
+      size++;
+      modCount++;
+      return new Node<K, V>(new Range<K>(start, end), value);
+    }
+    int c = compare(start, end, node);
+    if (c == 0) {
+      previous = node.value;
+      node.value = value;
+      return node;
+    }
+    if (c < 0) {
+      node.left = insert(node.left, start, end, value);
+    } else {
+      node.right = insert(node.right, start, end, value);
+    }
+    return balance(node);
+  }
+
+  private Node<K, V> delete(Node<K, V> node, K start, K end) {
+    if (node == null) {
+      return null;
+    }
+    int c = compare(start, end, node);
+    if (c < 0) {
+      node.left = delete(node.left, start, end);
+    } else if (c > 0) {
+      node.right = delete(node.right, start, end);
+    } else {
+      previous = node.value;
+      size--;
+      modCount++;
+      if (node.left == null) {
+        return node.right;
+      }
+      if (node.right == null) {
+        return node.left;
+      }
+      Node<K, V> successor = node.right;
+      while (successor.left != null) {
+        successor = successor.left;
+      }
+      successor.right = deleteFirst(node.right);
+      successor.left = node.left;
+      node = successor;
+    }
+    return balance(node);
+  }
+
+  private Node<K, V> deleteFirst(Node<K, V> node) {
+    if (node.left == null) {
+      return node.right;
+    }
+    node.left = deleteFirst(node.left);
+    return balance(node);
+  }
+
+  private Node<K, V> balance(Node<K, V> node) {
+    int diff = height(node.left) - height(node.right);
+    if (diff > 1) {
+      if (height(node.left.left) < height(node.left.right)) {
+        node.left = rotateLeft(node.left);
+      }
+      return rotateRight(node);
+    }
+    if (diff < -1) {
+      if (height(node.right.right) < height(node.right.left)) {
+        node.right = rotateRight(node.right);
+      }
+      return rotateLeft(node);
+    }
+    update(node);
+    return node;
+  }
+
+  private Node<K, V> rotateRight(Node<K, V> node) {
+    Node<K, V> left = node.left;
+    node.left = left.right;
+    left.right = node;
+    update(node);
+    update(left);
+    return left;
+  }
+
+  private Node<K, V> rotateLeft(Node<K, V> node) {
+    Node<K, V> right = node.right;
+    node.right = right.left;
+    right.left = node;
+    update(node);
+    update(right);
+    return right;
+  }
+
+  /**
+   * Recomputes the height and greatest end of node from its children.
+   */
+  private void update(Node<K, V> node) {
+    node.height = 1 + Math.max(height(node.left), height(node.right));
+    K max = node.range.end();
+    if (node.left != null && compare(node.left.max, max) > 0) {
+      max = node.left.max;
+    }
+    if (node.right != null && compare(node.right.max, max) > 0) {
+      max = node.right.max;
+    }
+    node.max = max;
+  }
+
+  private static int height(Node<?, ?> node) {
+    return node == null ? 0 : node.height;
+  }
+
+  private int compare(K start, K end, Node<K, V> node) {
+    int c = compare(start, node.range.start());
+    return c != 0 ? c : compare(end, node.range.end());
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compare(K a, K b) {
+    return comparator == null ? ((Comparable<? super K>) a).compareTo(b) : comparator.compare(a, b);
+  }
+
+  private static final class Node<K, V> {
+    final Range<K> range;
+    V value;
+    K max;
+    int height = 1;
+    Node<K, V> left;
+    Node<K, V> right;
+
+    Node(Range<K> range, V value) {
+      this.range = range;
+      this.value = value;
+      this.max = range.end();
+    }
+  }
+
+  /**
+   * Walks the tree in order, with a stack of the nodes whose right subtrees are still to be walked.
+   */
+  private final class TreeIterator implements Iterator<Map.Entry<Range<K>, V>> {
+
+    private final Deque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+    private final int expectedModCount = modCount;
+
+    TreeIterator() {
+      pushLeft(root);
+    }
+
+    private void pushLeft(Node<K, V> node) {
+      for (; node != null; node = node.left) {
+        stack.push(node);
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !stack.isEmpty();
+    }
+
+    @Override
+    public Map.Entry<Range<K>, V> next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (stack.isEmpty()) {
+        throw new NoSuchElementException();
+      }
+      Node<K, V> node = stack.pop();
+      pushLeft(node.right);
+      return new AbstractMap.SimpleImmutableEntry<Range<K>, V>(node.range, node.value);
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
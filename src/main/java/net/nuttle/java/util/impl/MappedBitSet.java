@@ -0,0 +1,487 @@
+package net.nuttle.java.util.impl;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+/**
+ * A bit set stored in a memory-mapped file, with the operations of java.util.BitSet.
+ * The file holds nothing but the words of the bitmap, as little-endian longs
+ * (the layout of BitSet.toLongArray()), so reopening it after a restart only pages the words back in.
+ * Reads and writes go straight to the mapping; call force() to flush them to disk.
+ * The file grows (doubling) when a bit beyond its end is set, up to the 256 MB needed
+ * for Integer.MAX_VALUE bits.
+ * Like BitSet, this class is not thread-safe.
+ * @author dan
+ *
+ */
+public class MappedBitSet implements Closeable {
+
+  private static final int MAX_WORDS = 1 << 25;
+
+  private final FileChannel channel;
+  private MappedByteBuffer buffer;
+  private int words;
+
+  /**
+   * Opens (or creates) the bit set stored in file.
+   * @param file
+   * @throws IOException
+   */
+  public MappedBitSet(File file) throws IOException {
+    this(file, 0);
+  }
+
+  /**
+   * Opens (or creates) the bit set stored in file, growing the file so that it holds at least nbits bits.
+   * @param file
+   * @param nbits
+   * @throws IOException
+   */
+  public MappedBitSet(File file, int nbits) throws IOException {
+    if (nbits < 0) {
+      throw new NegativeArraySizeException("nbits < 0: " + nbits);
+    }
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+      StandardOpenOption.READ, StandardOpenOption.WRITE);
+    long length = channel.size();
+    if (length % 8 != 0 || length > 8L * MAX_WORDS) {
+      channel.close();
+      throw new IOException("Not a bit set file: " + file + " has length " + length);
+    }
+    map(Math.max((int) (length / 8), wordsFor(nbits)));
+  }
+
+  /**
+   * Returns the value of bit index.
+   * @param index
+   * @return
+   */
+  public boolean get(int index) {
+    checkIndex(index);
+    int w = wordIndex(index);
+    return w < words && (word(w) & (1L << index)) != 0;
+  }
+
+  /**
+   * Returns a new on-heap BitSet made of the bits from fromIndex (inclusive) to toIndex (exclusive),
+   * shifted so that bit fromIndex becomes bit 0.
+   * @param fromIndex
+   * @param toIndex
+   * @return
+   */
+  public BitSet get(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    int len = (int) (Math.min(toIndex, words * 64L) - fromIndex);
+    if (len <= 0) {
+      return new BitSet();
+    }
+    long[] result = new long[wordIndex(len - 1) + 1];
+    int shift = fromIndex & 63;
+    int source = wordIndex(fromIndex);
+    for (int i = 0; i < result.length; i++, source++) {
+      long w = word(source) >>> shift;
+      if (shift != 0 && source + 1 < words) {
+        w |= word(source + 1) << (64 - shift);
+      }
+      result[i] = w;
+    }
+    result[result.length - 1] &= -1L >>> -len;
+    return BitSet.valueOf(result);
+  }
+
+  /**
+   * Sets bit index to true.
+   * @param index
+   */
+  public void set(int index) {
+    checkIndex(index);
+    int w = wordIndex(index);
+    ensureWords(w + 1);
+    putWord(w, word(w) | (1L << index));
+  }
+
+  /**
+   * Sets bit index to value.
+   * @param index
+   * @param value
+   */
+  public void set(int index, boolean value) {
+    if (value) {
+      set(index);
+    } else {
+      clear(index);
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to true.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void set(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    int first = wordIndex(fromIndex);
+    int last = wordIndex(toIndex - 1);
+    ensureWords(last + 1);
+    long firstMask = -1L << fromIndex;
+    long lastMask = -1L >>> -toIndex;
+    if (first == last) {
+      putWord(first, word(first) | (firstMask & lastMask));
+      return;
+    }
+    putWord(first, word(first) | firstMask);
+    for (int i = first + 1; i < last; i++) {
+      putWord(i, -1L);
+    }
+    putWord(last, word(last) | lastMask);
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to value.
+   * @param fromIndex
+   * @param toIndex
+   * @param value
+   */
+  public void set(int fromIndex, int toIndex, boolean value) {
+    if (value) {
+      set(fromIndex, toIndex);
+    } else {
+      clear(fromIndex, toIndex);
+    }
+  }
+
+  /**
+   * Sets bit index to false.
+   * @param index
+   */
+  public void clear(int index) {
+    checkIndex(index);
+    int w = wordIndex(index);
+    if (w < words) {
+      putWord(w, word(w) & ~(1L << index));
+    }
+  }
+
+  /**
+   * Sets the bits from fromIndex (inclusive) to toIndex (exclusive) to false.
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void clear(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex || wordIndex(fromIndex) >= words) {
+      return;
+    }
+    int first = wordIndex(fromIndex);
+    int last = wordIndex(toIndex - 1);
+    long firstMask = -1L << fromIndex;
+    long lastMask = -1L >>> -toIndex;
+    if (last >= words) {
+      last = words - 1;
+      lastMask = -1L;
+    }
+    if (first == last) {
+      putWord(first, word(first) & ~(firstMask & lastMask));
+      return;
+    }
+    putWord(first, word(first) & ~firstMask);
+    for (int i = first + 1; i < last; i++) {
+      putWord(i, 0L);
+    }
+    putWord(last, word(last) & ~lastMask);
+  }
+
+  /**
+   * Sets all bits to false.  The file keeps its length.
+   */
+  public void clear() {
+    for (int i = 0; i < words; i++) {
+      putWord(i, 0L);
+    }
+  }
+
+  /**
+   * Flips bit index.
+   * @param index
+   */
+  public void flip(int index) {
+    checkIndex(index);
+    int w = wordIndex(index);
+    ensureWords(w + 1);
+    putWord(w, word(w) ^ (1L << index));
+  }
+
+  /**
+   * Flips the bits from fromIndex (inclusive) to toIndex (exclusive).
+   * @param fromIndex
+   * @param toIndex
+   */
+  public void flip(int fromIndex, int toIndex) {
+    checkRange(fromIndex, toIndex);
+    if (fromIndex == toIndex) {
+      return;
+    }
+    int first = wordIndex(fromIndex);
+    int last = wordIndex(toIndex - 1);
+    ensureWords(last + 1);
+    long firstMask = -1L << fromIndex;
+    long lastMask = -1L >>> -toIndex;
+    if (first == last) {
+      putWord(first, word(first) ^ (firstMask & lastMask));
+      return;
+    }
+    putWord(first, word(first) ^ firstMask);
+    for (int i = first + 1; i < last; i++) {
+      putWord(i, ~word(i));
+    }
+    putWord(last, word(last) ^ lastMask);
+  }
+
+  /**
+   * Returns the index of the first set bit at or after fromIndex, or -1 if there is none.
+   * @param fromIndex
+   * @return
+   */
+  public int nextSetBit(int fromIndex) {
+    checkIndex(fromIndex);
+    int i = wordIndex(fromIndex);
+    if (i >= words) {
+      return -1;
+    }
+    long w = word(i) & (-1L << fromIndex);
+    while (true) {
+      if (w != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words) {
+        return -1;
+      }
+      w = word(i);
+    }
+  }
+
+  /**
+   * Returns the index of the first clear bit at or after fromIndex.
+   * @param fromIndex
+   * @return
+   */
+  public int nextClearBit(int fromIndex) {
+    checkIndex(fromIndex);
+    int i = wordIndex(fromIndex);
+    if (i >= words) {
+      return fromIndex;
+    }
+    long w = ~word(i) & (-1L << fromIndex);
+    while (true) {
+      if (w != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words) {
+        return (int) Math.min(Integer.MAX_VALUE, i * 64L);
+      }
+      w = ~word(i);
+    }
+  }
+
+  /**
+   * Returns the index of the highest set bit plus one, or 0 if no bits are set.
+   * @return
+   */
+  public int length() {
+    for (int i = words - 1; i >= 0; i--) {
+      long w = word(i);
+      if (w != 0) {
+        return i * 64 + 64 - Long.numberOfLeadingZeros(w);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns true if no bits are set.
+   * @return
+   */
+  public boolean isEmpty() {
+    return length() == 0;
+  }
+
+  /**
+   * Returns the number of set bits.
+   * @return
+   */
+  public int cardinality() {
+    int card = 0;
+    for (int i = 0; i < words; i++) {
+      card += Long.bitCount(word(i));
+    }
+    return card;
+  }
+
+  /**
+   * Returns the number of bits the file currently holds.
+   * @return
+   */
+  public int size() {
+    return (int) Math.min(Integer.MAX_VALUE, words * 64L);
+  }
+
+  /**
+   * Returns true if bs has any set bit that is also set in this set.
+   * @param bs
+   * @return
+   */
+  public boolean intersects(MappedBitSet bs) {
+    int n = Math.min(words, bs.words);
+    for (int i = 0; i < n; i++) {
+      if ((word(i) & bs.word(i)) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Keeps only the bits that are also set in bs.
+   * @param bs
+   */
+  public void and(MappedBitSet bs) {
+    for (int i = 0; i < words; i++) {
+      putWord(i, i < bs.words ? word(i) & bs.word(i) : 0L);
+    }
+  }
+
+  /**
+   * Sets the bits that are set in bs.
+   * @param bs
+   */
+  public void or(MappedBitSet bs) {
+    int n = bs.wordsInUse();
+    ensureWords(n);
+    for (int i = 0; i < n; i++) {
+      putWord(i, word(i) | bs.word(i));
+    }
+  }
+
+  /**
+   * Flips the bits that are set in bs.
+   * @param bs
+   */
+  public void xor(MappedBitSet bs) {
+    int n = bs.wordsInUse();
+    ensureWords(n);
+    for (int i = 0; i < n; i++) {
+      putWord(i, word(i) ^ bs.word(i));
+    }
+  }
+
+  /**
+   * Clears the bits that are set in bs.
+   * @param bs
+   */
+  public void andNot(MappedBitSet bs) {
+    int n = Math.min(words, bs.words);
+    for (int i = 0; i < n; i++) {
+      putWord(i, word(i) & ~bs.word(i));
+    }
+  }
+
+  /**
+   * Returns an on-heap copy of this set.
+   * @return
+   */
+  public BitSet toBitSet() {
+    long[] result = new long[wordsInUse()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = word(i);
+    }
+    return BitSet.valueOf(result);
+  }
+
+  /**
+   * Writes the changes made to the mapping to the file.
+   */
+  public void force() {
+    buffer.force();
+  }
+
+  /**
+   * Flushes and closes the file.
+   * The mapping itself is released when the buffer is garbage collected.
+   */
+  @Override
+  public void close() throws IOException {
+    force();
+    channel.close();
+  }
+
+  @Override
+  public String toString() {
+    return toBitSet().toString();
+  }
+
+  private int wordsInUse() {
+    return wordsFor(length());
+  }
+
+  private long word(int i) {
+    return buffer.getLong(i << 3);
+  }
+
+  private void putWord(int i, long w) {
+    buffer.putLong(i << 3, w);
+  }
+
+  /**
+   * Grows the file, if necessary, so that it holds at least n words.
+   */
+  private void ensureWords(int n) {
+    if (n > words) {
+      try {
+        map((int) Math.min(MAX_WORDS, Math.max(n, 2L * words)));
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot grow mapped bit set to " + n + " words", e);
+      }
+    }
+  }
+
+  private void map(int n) throws IOException {
+    buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, 8L * n);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    words = n;
+  }
+
+  private static int wordIndex(int bitIndex) {
+    return bitIndex >>> 6;
+  }
+
+  private static int wordsFor(long nbits) {
+    return (int) ((nbits + 63) >>> 6);
+  }
+
+  private static void checkIndex(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("index < 0: " + index);
+    }
+  }
+
+  private static void checkRange(int fromIndex, int toIndex) {
+    if (fromIndex < 0) {
+      throw new IndexOutOfBoundsException("fromIndex < 0: " + fromIndex);
+    }
+    if (toIndex < 0) {
+      throw new IndexOutOfBoundsException("toIndex < 0: " + toIndex);
+    }
+    if (fromIndex > toIndex) {
+      throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + " > toIndex: " + toIndex);
+    }
+  }
+}
@@ -0,0 +1,445 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An optionally bounded, lock-free Queue for any number of producer threads and one consumer
+ * thread, such as request threads feeding a writer thread.
+ * <p>
+ * The elements live in chunks: arrays of a power-of-two size used as rings, so that while
+ * the consumer keeps up, the producers keep reusing the same chunk and the queue allocates
+ * nothing.  When a producer finds the current chunk full, it links a new chunk of the same size
+ * after it and goes on there, and the consumer follows the link when it reaches the end of
+ * the old one, which is then garbage.  A producer claims a slot by a compare-and-set of
+ * the producer index, and publishes the element with an ordered store into the slot; the consumer
+ * frees slots by an ordered store of the consumer index, which producers only read when the chunk
+ * looks full.  The index is counted in steps of two, and a producer linking a new chunk holds
+ * the odd value in between, which makes the others wait for the link.  One slot of every chunk
+ * is kept free, for the marker that tells the consumer to follow the link.
+ * The indices are padded apart, as in SpscRingBuffer.
+ * <p>
+ * poll, peek, take, drain, drainTo, iterator and the removal methods may only be called by
+ * the consumer; offer, put, add and addAll by any thread.  The iterator is weakly consistent and
+ * does not support remove, nor therefore does remove(Object).  Null elements are not allowed.
+ * @author dan
+ *
+ * @param <E>
+ */
+public class MpscQueue<E> extends MpscConsumerFields<E> {
+
+  long p30, p31, p32, p33, p34, p35, p36, p37;
+
+  /**
+   * Creates an unbounded queue, with chunks of chunkSize rounded up to a power of two,
+   * each holding one element less, which waits by backing off from spinning to parking.
+   * @param chunkSize
+   */
+  public MpscQueue(int chunkSize) {
+    this(chunkSize, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Creates a queue that holds up to maxCapacity elements, or is unbounded if that is Integer.MAX_VALUE.
+   * @param chunkSize
+   * @param maxCapacity
+   */
+  public MpscQueue(int chunkSize, int maxCapacity) {
+    this(chunkSize, maxCapacity, WaitStrategies.backoff(100, 100, 1000));
+  }
+
+  /**
+   * Creates a queue whose take and put wait with waitStrategy.
+   * @param chunkSize
+   * @param maxCapacity
+   * @param waitStrategy
+   */
+  public MpscQueue(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    super(chunkSize, maxCapacity, waitStrategy);
+  }
+
+  /**
+   * Adds e, unless the queue holds maxCapacity elements.
+   */
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    while (true) {
+      // Read the limit before the index, so that a limit that is stale is too low, not too high
+      long limit = producerLimit;
+      long index = producerIndex;
+      if ((index & 1) == 1) {
+        // Another producer is linking a new chunk
+        continue;
+      }
+      AtomicReferenceArray<Object> buffer = producerBuffer;
+      if (index >= limit) {
+        long consumed = consumerIndex;
+        if (index - consumed >= maxUnits) {
+          return false;
+        }
+        if (consumed + chunkUnits > index) {
+          // The consumer has freed slots in the chunk since the limit was set
+          LIMIT.compareAndSet(this, limit, consumed + Math.min(chunkUnits, maxUnits));
+          continue;
+        }
+        if (PRODUCER_INDEX.compareAndSet(this, index, index + 1)) {
+          link(buffer, index, consumed, e);
+          return true;
+        }
+        continue;
+      }
+      if (PRODUCER_INDEX.compareAndSet(this, index, index + 2)) {
+        buffer.lazySet(offset(index), e);
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Adds e, waiting while the queue is full.
+   * @param e
+   * @throws InterruptedException
+   */
+  public void put(E e) throws InterruptedException {
+    int count = 0;
+    while (!offer(e)) {
+      count = idle(count);
+    }
+  }
+
+  /**
+   * Removes and returns the head of the queue, or null if it is empty.  If a producer has
+   * claimed the head slot but not yet written it, waits for it.  Consumer only.
+   */
+  @Override
+  public E poll() {
+    AtomicReferenceArray<Object> buffer = consumerBuffer;
+    long index = consumerIndex;
+    int offset = offset(index);
+    Object e = buffer.get(offset);
+    if (e == null) {
+      if (index == producerIndex) {
+        return null;
+      }
+      do {
+        e = buffer.get(offset);
+      } while (e == null);
+    }
+    if (e == JUMP) {
+      buffer = next(buffer);
+      e = buffer.get(offset);
+    }
+    buffer.lazySet(offset, null);
+    CONSUMER_INDEX.lazySet(this, index + 2);
+    @SuppressWarnings("unchecked")
+    E result = (E) e;
+    return result;
+  }
+
+  /**
+   * Returns the head of the queue, or null if it is empty.  Consumer only.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    AtomicReferenceArray<Object> buffer = consumerBuffer;
+    long index = consumerIndex;
+    int offset = offset(index);
+    Object e = buffer.get(offset);
+    if (e == null) {
+      if (index == producerIndex) {
+        return null;
+      }
+      do {
+        e = buffer.get(offset);
+      } while (e == null);
+    }
+    if (e == JUMP) {
+      e = next(buffer).get(offset);
+    }
+    return (E) e;
+  }
+
+  /**
+   * Removes and returns the head of the queue, waiting while it is empty.  Consumer only.
+   * @return
+   * @throws InterruptedException
+   */
+  public E take() throws InterruptedException {
+    int count = 0;
+    E e;
+    while ((e = poll()) == null) {
+      count = idle(count);
+    }
+    return e;
+  }
+
+  /**
+   * Removes up to limit elements, passing each to consumer, and returns their number.  Unlike poll,
+   * stops at a slot a producer has claimed but not yet written.  The slots are released together,
+   * with one ordered store.  Consumer only.
+   * @param consumer
+   * @param limit
+   * @return
+   */
+  public int drain(Consumer<? super E> consumer, int limit) {
+    AtomicReferenceArray<Object> buffer = consumerBuffer;
+    long index = consumerIndex;
+    int n = 0;
+    try {
+      while (n < limit) {
+        int offset = offset(index);
+        Object e = buffer.get(offset);
+        if (e == null) {
+          break;
+        }
+        if (e == JUMP) {
+          buffer = next(buffer);
+          e = buffer.get(offset);
+        }
+        buffer.lazySet(offset, null);
+        index += 2;
+        n++;
+        @SuppressWarnings("unchecked")
+        E element = (E) e;
+        consumer.accept(element);
+      }
+    } finally {
+      // Release the slots consumed so far, even if accept threw
+      CONSUMER_INDEX.lazySet(this, index);
+    }
+    return n;
+  }
+
+  /**
+   * Removes up to limit elements, adding them to c, and returns their number, as drain does.  Consumer only.
+   * @param c
+   * @param limit
+   * @return
+   */
+  public int drainTo(final Collection<? super E> c, int limit) {
+    if (c == this) {
+      throw new IllegalArgumentException();
+    }
+    return drain(new Consumer<E>() {
+      @Override
+      public void accept(E e) {
+        c.add(e);
+      }
+    }, limit);
+  }
+
+  /**
+   * Returns the number of elements the queue can hold, or Integer.MAX_VALUE if it is unbounded.
+   * @return
+   */
+  public int capacity() {
+    return maxUnits == Long.MAX_VALUE ? Integer.MAX_VALUE : (int) (maxUnits >> 1);
+  }
+
+  @Override
+  public int size() {
+    while (true) {
+      long consumed = consumerIndex;
+      long produced = producerIndex;
+      if (consumed == consumerIndex) {
+        return (int) Math.min((produced >> 1) - (consumed >> 1), Integer.MAX_VALUE);
+      }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return consumerIndex == producerIndex;
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the elements, from head to tail,
+   * which does not support remove.  Consumer only.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private AtomicReferenceArray<Object> buffer = consumerBuffer;
+      private long index = consumerIndex;
+      private final long end = producerIndex;
+      private E next = advance();
+
+      @SuppressWarnings("unchecked")
+      private E advance() {
+        while (index < end) {
+          int offset = offset(index);
+          index += 2;
+          Object e = buffer.get(offset);
+          if (e == JUMP) {
+            buffer = (AtomicReferenceArray<Object>) buffer.get(mask + 1);
+            e = buffer.get(offset);
+          }
+          // A null slot was claimed but not yet written when the iterator started
+          if (e != null) {
+            return (E) e;
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public E next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        E e = next;
+        next = advance();
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Links a new chunk after buffer, in which it adds e at index, and releases the producer index.
+   */
+  private void link(AtomicReferenceArray<Object> buffer, long index, long consumed, E e) {
+    AtomicReferenceArray<Object> next = new AtomicReferenceArray<Object>(mask + 2);
+    producerBuffer = next;
+    int offset = offset(index);
+    next.lazySet(offset, e);
+    buffer.lazySet(mask + 1, next);
+    producerLimit = index + Math.min(chunkUnits, maxUnits - (index - consumed));
+    // The volatile store publishes the new chunk to the producers that read the index
+    producerIndex = index + 2;
+    buffer.lazySet(offset, JUMP);
+  }
+
+  /**
+   * Moves the consumer to the chunk linked after buffer, and returns it.
+   */
+  @SuppressWarnings("unchecked")
+  private AtomicReferenceArray<Object> next(AtomicReferenceArray<Object> buffer) {
+    AtomicReferenceArray<Object> next = (AtomicReferenceArray<Object>) buffer.get(mask + 1);
+    consumerBuffer = next;
+    return next;
+  }
+
+  private int offset(long index) {
+    return (int) (index >> 1) & mask;
+  }
+
+  private int idle(int count) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    waitStrategy.idle(count);
+    return count == Integer.MAX_VALUE ? count : count + 1;
+  }
+}
+
+/**
+ * The fields of MpscQueue, laid out as those of SpscRingBuffer are.  Indices count two per element.
+ */
+abstract class MpscFields<E> extends AbstractQueue<E> {
+
+  /**
+   * Marks the slot at which the consumer must follow the link to the next chunk.
+   */
+  static final Object JUMP = new Object();
+
+  final int mask;
+  /**
+   * The indices one chunk holds: all its slots but one.
+   */
+  final long chunkUnits;
+  final long maxUnits;
+  final WaitStrategy waitStrategy;
+
+  MpscFields(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    if (chunkSize < 2 || chunkSize > 1 << 30) {
+      throw new IllegalArgumentException("chunkSize out of range: " + chunkSize);
+    }
+    if (maxCapacity <= 0) {
+      throw new IllegalArgumentException("maxCapacity out of range: " + maxCapacity);
+    }
+    if (waitStrategy == null) {
+      throw new NullPointerException();
+    }
+    mask = Integer.highestOneBit(chunkSize - 1) * 2 - 1;
+    chunkUnits = 2L * mask;
+    maxUnits = maxCapacity == Integer.MAX_VALUE ? Long.MAX_VALUE : 2L * maxCapacity;
+    this.waitStrategy = waitStrategy;
+  }
+}
+
+abstract class MpscPad1<E> extends MpscFields<E> {
+
+  long p10, p11, p12, p13, p14, p15, p16, p17;
+
+  MpscPad1(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    super(chunkSize, maxCapacity, waitStrategy);
+  }
+}
+
+abstract class MpscProducerFields<E> extends MpscPad1<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<MpscProducerFields> PRODUCER_INDEX =
+    AtomicLongFieldUpdater.newUpdater(MpscProducerFields.class, "producerIndex");
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<MpscProducerFields> LIMIT =
+    AtomicLongFieldUpdater.newUpdater(MpscProducerFields.class, "producerLimit");
+
+  volatile long producerIndex;
+  /**
+   * The index up to which producers may add to the current chunk without reading the consumer index.
+   */
+  volatile long producerLimit;
+  /**
+   * The chunk producers add to, written before the producer index is released.
+   */
+  AtomicReferenceArray<Object> producerBuffer;
+
+  MpscProducerFields(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    super(chunkSize, maxCapacity, waitStrategy);
+    producerBuffer = new AtomicReferenceArray<Object>(mask + 2);
+    producerLimit = Math.min(chunkUnits, maxUnits);
+  }
+}
+
+abstract class MpscPad2<E> extends MpscProducerFields<E> {
+
+  long p20, p21, p22, p23, p24, p25, p26, p27;
+
+  MpscPad2(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    super(chunkSize, maxCapacity, waitStrategy);
+  }
+}
+
+abstract class MpscConsumerFields<E> extends MpscPad2<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<MpscConsumerFields> CONSUMER_INDEX =
+    AtomicLongFieldUpdater.newUpdater(MpscConsumerFields.class, "consumerIndex");
+
+  volatile long consumerIndex;
+  AtomicReferenceArray<Object> consumerBuffer;
+
+  MpscConsumerFields(int chunkSize, int maxCapacity, WaitStrategy waitStrategy) {
+    super(chunkSize, maxCapacity, waitStrategy);
+    consumerBuffer = producerBuffer;
+  }
+}
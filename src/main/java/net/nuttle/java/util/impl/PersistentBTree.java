@@ -0,0 +1,534 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable B+tree, whose updates copy the path from the root to the changed leaf and share
+ * every other node with the tree they were made from.  A root therefore stands for a snapshot of
+ * the map that never changes, which readers and iterators may walk without locks while writers
+ * build new roots.
+ * The operations are static and take the root and the comparator of the map;
+ * keys and values are not null.
+ * Nodes hold up to 32 keys, fewer than BTreeMap's 64, since each update copies a node per level.
+ * Leaves cannot be linked, as a link would have to be copied with its neighbor,
+ * so iterators keep the path from the root instead.
+ * @author dan
+ *
+ */
+final class PersistentBTree {
+
+  /**
+   * Maximum number of keys in a node.  Must be even.
+   */
+  static final int MAX = 32;
+  static final int MIN = MAX / 2;
+
+  static final Leaf EMPTY = new Leaf(new Object[0], new Object[0]);
+
+  static final Comparator<Object> NATURAL = new Comparator<Object>() {
+    @Override
+    @SuppressWarnings("unchecked")
+    public int compare(Object a, Object b) {
+      return ((Comparable<Object>) a).compareTo(b);
+    }
+  };
+
+  private PersistentBTree() {
+  }
+
+  /**
+   * Returns comparator as a comparator of objects, or the natural ordering if it is null.
+   */
+  @SuppressWarnings("unchecked")
+  static Comparator<Object> comparator(Comparator<?> comparator) {
+    return comparator == null ? NATURAL : (Comparator<Object>) comparator;
+  }
+
+  static void checkValue(Object value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  /**
+   * Returns the value of key, or null.
+   */
+  static Object get(Node root, Object key, Comparator<Object> cmp) {
+    Node node = root;
+    while (node instanceof Inner) {
+      node = ((Inner) node).children[childIndex(node.keys, key, cmp)];
+    }
+    int index = search(node.keys, key, cmp);
+    return index >= 0 ? ((Leaf) node).values[index] : null;
+  }
+
+  /**
+   * Returns the entry whose key has relation rel (as in AbstractNavigableMap) to key, or null.
+   */
+  static <K, V> Map.Entry<K, V> findEntry(Node node, Object key, int rel, Comparator<Object> cmp) {
+    if (node instanceof Leaf) {
+      int index = search(node.keys, key, cmp);
+      if (index >= 0 && (rel & AbstractNavigableMap.EQ) != 0) {
+        return entry((Leaf) node, index);
+      }
+      if ((rel & AbstractNavigableMap.LT) != 0) {
+        index = index >= 0 ? index - 1 : -index - 2;
+      } else if ((rel & AbstractNavigableMap.GT) != 0) {
+        index = index >= 0 ? index + 1 : -index - 1;
+      } else {
+        return null;
+      }
+      return index >= 0 && index < node.keys.length ? PersistentBTree.<K, V>entry((Leaf) node, index) : null;
+    }
+    Node[] children = ((Inner) node).children;
+    int index = childIndex(node.keys, key, cmp);
+    Map.Entry<K, V> e = findEntry(children[index], key, rel, cmp);
+    if (e != null) {
+      return e;
+    }
+    // Only the root may be empty, so the neighbor of the child holds the answer
+    if ((rel & AbstractNavigableMap.LT) != 0) {
+      return index > 0 ? PersistentBTree.<K, V>lastEntry(children[index - 1]) : null;
+    }
+    if ((rel & AbstractNavigableMap.GT) != 0) {
+      return index < children.length - 1 ? PersistentBTree.<K, V>firstEntry(children[index + 1]) : null;
+    }
+    return null;
+  }
+
+  static <K, V> Map.Entry<K, V> firstEntry(Node node) {
+    while (node instanceof Inner) {
+      node = ((Inner) node).children[0];
+    }
+    return node.keys.length == 0 ? null : PersistentBTree.<K, V>entry((Leaf) node, 0);
+  }
+
+  static <K, V> Map.Entry<K, V> lastEntry(Node node) {
+    while (node instanceof Inner) {
+      Node[] children = ((Inner) node).children;
+      node = children[children.length - 1];
+    }
+    return node.keys.length == 0 ? null : PersistentBTree.<K, V>entry((Leaf) node, node.keys.length - 1);
+  }
+
+  /**
+   * Returns the root of a tree with key mapped to value, or root itself if key is already
+   * mapped to value.  The previous value, if any, is left in result.
+   */
+  static Node put(Node root, Object key, Object value, Comparator<Object> cmp, Result result) {
+    Node node = insert(root, key, value, cmp, result);
+    if (result.split != null) {
+      node = new Inner(new Object[] {result.separator}, new Node[] {node, result.split});
+      result.split = null;
+    }
+    return node;
+  }
+
+  /**
+   * Returns the root of a tree without key, or root itself if key is absent.
+   * The removed value, if any, is left in result.
+   */
+  static Node remove(Node root, Object key, Comparator<Object> cmp, Result result) {
+    Node node = delete(root, key, cmp, result);
+    if (!result.found) {
+      return root;
+    }
+    if (node instanceof Inner && node.keys.length == 0) {
+      return ((Inner) node).children[0];
+    }
+    return node;
+  }
+
+  /**
+   * Returns an iterator over the entries of the tree rooted at root, as AbstractNavigableMap.entryIterator.
+   */
+  static <K, V> Iterator<Map.Entry<K, V>> iterator(Node root, Object from, boolean inclusive, boolean descending,
+      Comparator<Object> cmp) {
+    return new TreeIterator<K, V>(root, from, inclusive, descending, cmp);
+  }
+
+  /**
+   * Inserts into the subtree node and returns its copy.  If the copy overflowed,
+   * it is split: the left half is returned, and the right half and its separator are left in result.
+   */
+  private static Node insert(Node node, Object key, Object value, Comparator<Object> cmp, Result result) {
+    Object[] keys = node.keys;
+    if (node instanceof Leaf) {
+      Object[] values = ((Leaf) node).values;
+      int index = search(keys, key, cmp);
+      if (index >= 0) {
+        result.found = true;
+        result.previous = values[index];
+        if (values[index] == value) {
+          return node;
+        }
+        Object[] copy = values.clone();
+        copy[index] = value;
+        return new Leaf(keys, copy);
+      }
+      index = -index - 1;
+      keys = insertAt(keys, index, key);
+      values = insertAt(values, index, value);
+      if (keys.length <= MAX) {
+        return new Leaf(keys, values);
+      }
+      int half = keys.length / 2;
+      result.split = new Leaf(Arrays.copyOfRange(keys, half, keys.length), Arrays.copyOfRange(values, half, keys.length));
+      result.separator = keys[half];
+      return new Leaf(Arrays.copyOf(keys, half), Arrays.copyOf(values, half));
+    }
+    Inner inner = (Inner) node;
+    int index = childIndex(keys, key, cmp);
+    Node child = inner.children[index];
+    Node copy = insert(child, key, value, cmp, result);
+    if (copy == child) {
+      return node;
+    }
+    if (result.split == null) {
+      Node[] children = inner.children.clone();
+      children[index] = copy;
+      return new Inner(keys, children, inner.count - child.count() + copy.count());
+    }
+    keys = insertAt(keys, index, result.separator);
+    Node[] children = new Node[inner.children.length + 1];
+    System.arraycopy(inner.children, 0, children, 0, index);
+    children[index] = copy;
+    children[index + 1] = result.split;
+    System.arraycopy(inner.children, index + 1, children, index + 2, inner.children.length - index - 1);
+    if (keys.length <= MAX) {
+      result.split = null;
+      return new Inner(keys, children, inner.count + 1);
+    }
+    return splitInner(keys, children, result);
+  }
+
+  /**
+   * Deletes from the subtree node and returns its copy, which may be underfull.
+   */
+  private static Node delete(Node node, Object key, Comparator<Object> cmp, Result result) {
+    Object[] keys = node.keys;
+    if (node instanceof Leaf) {
+      int index = search(keys, key, cmp);
+      if (index < 0) {
+        return node;
+      }
+      Object[] values = ((Leaf) node).values;
+      result.found = true;
+      result.previous = values[index];
+      return new Leaf(deleteAt(keys, index), deleteAt(values, index));
+    }
+    Inner inner = (Inner) node;
+    int index = childIndex(keys, key, cmp);
+    Node copy = delete(inner.children[index], key, cmp, result);
+    if (!result.found) {
+      return node;
+    }
+    if (copy.keys.length >= MIN) {
+      Node[] children = inner.children.clone();
+      children[index] = copy;
+      return new Inner(keys, children, inner.count - 1);
+    }
+    // Join the underfull child with a sibling, and split the pair again if it overflows
+    int left = index > 0 ? index - 1 : index;
+    Node joined = left == index
+      ? join(copy, keys[left], inner.children[left + 1], result)
+      : join(inner.children[left], keys[left], copy, result);
+    Node[] children;
+    if (result.split == null) {
+      keys = deleteAt(keys, left);
+      children = new Node[inner.children.length - 1];
+      System.arraycopy(inner.children, 0, children, 0, left);
+      children[left] = joined;
+      System.arraycopy(inner.children, left + 2, children, left + 1, inner.children.length - left - 2);
+    } else {
+      keys = keys.clone();
+      keys[left] = result.separator;
+      children = inner.children.clone();
+      children[left] = joined;
+      children[left + 1] = result.split;
+      result.split = null;
+    }
+    return new Inner(keys, children, inner.count - 1);
+  }
+
+  /**
+   * Joins two sibling nodes and the separator between them.  The joined node is returned,
+   * unless it overflows, in which case it is split as in insert.
+   */
+  private static Node join(Node left, Object separator, Node right, Result result) {
+    if (left instanceof Leaf) {
+      Object[] keys = concat(left.keys, right.keys);
+      Object[] values = concat(((Leaf) left).values, ((Leaf) right).values);
+      if (keys.length <= MAX) {
+        return new Leaf(keys, values);
+      }
+      int half = keys.length / 2;
+      result.split = new Leaf(Arrays.copyOfRange(keys, half, keys.length), Arrays.copyOfRange(values, half, keys.length));
+      result.separator = keys[half];
+      return new Leaf(Arrays.copyOf(keys, half), Arrays.copyOf(values, half));
+    }
+    Object[] keys = new Object[left.keys.length + 1 + right.keys.length];
+    System.arraycopy(left.keys, 0, keys, 0, left.keys.length);
+    keys[left.keys.length] = separator;
+    System.arraycopy(right.keys, 0, keys, left.keys.length + 1, right.keys.length);
+    Node[] children = concat(((Inner) left).children, ((Inner) right).children);
+    if (keys.length <= MAX) {
+      return new Inner(keys, children, left.count() + right.count());
+    }
+    return splitInner(keys, children, result);
+  }
+
+  /**
+   * Splits an overfull inner node around its middle key, which moves up to the parent.
+   */
+  private static Node splitInner(Object[] keys, Node[] children, Result result) {
+    int mid = keys.length / 2;
+    result.separator = keys[mid];
+    result.split = new Inner(Arrays.copyOfRange(keys, mid + 1, keys.length),
+      Arrays.copyOfRange(children, mid + 1, children.length));
+    return new Inner(Arrays.copyOf(keys, mid), Arrays.copyOf(children, mid + 1));
+  }
+
+  /**
+   * Returns the index of key in keys, or (-(insertion point) - 1) if it is absent.
+   */
+  static int search(Object[] keys, Object key, Comparator<Object> cmp) {
+    int low = 0;
+    int high = keys.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int c = cmp.compare(keys[mid], key);
+      if (c < 0) {
+        low = mid + 1;
+      } else if (c > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  /**
+   * Returns the index of the child of an inner node whose keys may include key.
+   * Separator i is at most the lowest key of child i + 1, and above the keys of child i.
+   */
+  private static int childIndex(Object[] keys, Object key, Comparator<Object> cmp) {
+    int index = search(keys, key, cmp);
+    return index >= 0 ? index + 1 : -index - 1;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K, V> Map.Entry<K, V> entry(Leaf leaf, int index) {
+    return AbstractNavigableMap.snapshot((K) leaf.keys[index], (V) leaf.values[index]);
+  }
+
+  private static Object[] insertAt(Object[] a, int index, Object o) {
+    Object[] copy = new Object[a.length + 1];
+    System.arraycopy(a, 0, copy, 0, index);
+    copy[index] = o;
+    System.arraycopy(a, index, copy, index + 1, a.length - index);
+    return copy;
+  }
+
+  private static Object[] deleteAt(Object[] a, int index) {
+    Object[] copy = new Object[a.length - 1];
+    System.arraycopy(a, 0, copy, 0, index);
+    System.arraycopy(a, index + 1, copy, index, a.length - index - 1);
+    return copy;
+  }
+
+  private static <T> T[] concat(T[] a, T[] b) {
+    T[] copy = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, copy, a.length, b.length);
+    return copy;
+  }
+
+  /**
+   * The outcome of put and remove.  split and separator carry a split node up the recursion.
+   */
+  static final class Result {
+    boolean found;
+    Object previous;
+    Node split;
+    Object separator;
+  }
+
+  /**
+   * A node, which is never modified once it is reachable from a root.
+   */
+  abstract static class Node {
+
+    final Object[] keys;
+
+    Node(Object[] keys) {
+      this.keys = keys;
+    }
+
+    /**
+     * Returns the number of entries in the subtree.
+     */
+    abstract int count();
+  }
+
+  static final class Leaf extends Node {
+
+    final Object[] values;
+
+    Leaf(Object[] keys, Object[] values) {
+      super(keys);
+      this.values = values;
+    }
+
+    @Override
+    int count() {
+      return keys.length;
+    }
+  }
+
+  static final class Inner extends Node {
+
+    final Node[] children;
+    final int count;
+
+    Inner(Object[] keys, Node[] children, int count) {
+      super(keys);
+      this.children = children;
+      this.count = count;
+    }
+
+    Inner(Object[] keys, Node[] children) {
+      this(keys, children, count(children));
+    }
+
+    private static int count(Node[] children) {
+      int count = 0;
+      for (Node child : children) {
+        count += child.count();
+      }
+      return count;
+    }
+
+    @Override
+    int count() {
+      return count;
+    }
+  }
+
+  /**
+   * Walks the leaves of a tree, keeping the nodes and indexes of the path from the root.
+   */
+  private static final class TreeIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+    private final boolean descending;
+    private final Node[] nodes;
+    private final int[] indexes;
+    private final int leaf;
+    private boolean done;
+
+    TreeIterator(Node root, Object from, boolean inclusive, boolean descending, Comparator<Object> cmp) {
+      this.descending = descending;
+      int height = 0;
+      for (Node node = root; node instanceof Inner; node = ((Inner) node).children[0]) {
+        height++;
+      }
+      leaf = height;
+      nodes = new Node[height + 1];
+      indexes = new int[height + 1];
+      Node node = root;
+      for (int level = 0; level < height; level++) {
+        Node[] children = ((Inner) node).children;
+        int index;
+        if (from == null) {
+          index = descending ? children.length - 1 : 0;
+        } else {
+          index = childIndex(node.keys, from, cmp);
+        }
+        nodes[level] = node;
+        indexes[level] = index;
+        node = children[index];
+      }
+      int index;
+      if (from == null) {
+        index = descending ? node.keys.length - 1 : 0;
+      } else {
+        index = search(node.keys, from, cmp);
+        if (index >= 0) {
+          if (!inclusive) {
+            index += descending ? -1 : 1;
+          }
+        } else {
+          index = descending ? -index - 2 : -index - 1;
+        }
+      }
+      nodes[leaf] = node;
+      indexes[leaf] = index;
+      skipEmpty();
+    }
+
+    /**
+     * Moves from the end of a leaf to the next (or previous) leaf.
+     */
+    private void skipEmpty() {
+      if (descending) {
+        while (indexes[leaf] < 0) {
+          int level = leaf - 1;
+          while (level >= 0 && indexes[level] == 0) {
+            level--;
+          }
+          if (level < 0) {
+            done = true;
+            return;
+          }
+          indexes[level]--;
+          for (; level < leaf; level++) {
+            Node child = ((Inner) nodes[level]).children[indexes[level]];
+            nodes[level + 1] = child;
+            indexes[level + 1] = child instanceof Inner ? child.keys.length : child.keys.length - 1;
+          }
+        }
+      } else {
+        while (indexes[leaf] >= nodes[leaf].keys.length) {
+          int level = leaf - 1;
+          while (level >= 0 && indexes[level] == nodes[level].keys.length) {
+            level--;
+          }
+          if (level < 0) {
+            done = true;
+            return;
+          }
+          indexes[level]++;
+          for (; level < leaf; level++) {
+            nodes[level + 1] = ((Inner) nodes[level]).children[indexes[level]];
+            indexes[level + 1] = 0;
+          }
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return !done;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (done) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<K, V> e = entry((Leaf) nodes[leaf], indexes[leaf]);
+      indexes[leaf] += descending ? -1 : 1;
+      skipEmpty();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+
+import net.nuttle.java.util.impl.PersistentBTree.Node;
+import net.nuttle.java.util.impl.PersistentBTree.Result;
+
+/**
+ * An immutable NavigableMap whose updates return new versions of the map.
+ * plus and minus copy only the path from the root of the B+tree (see PersistentBTree) to the
+ * changed leaf, some 5 nodes of 32 keys for a million entries, and share all the others with
+ * the version they were made from.  A version is thus a snapshot that costs nothing to hand to
+ * other threads: it never changes, so they read and iterate it without locks or copies, while
+ * the owner of the map goes on making new versions.
+ * <p>
+ * The NavigableMap methods read the version; put, remove, clear and the other
+ * mutators of Map, of the views and of their iterators throw UnsupportedOperationException.
+ * Neither keys nor values may be null.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class PersistentTreeMap<K, V> extends AbstractNavigableMap<K, V> {
+
+  private final Node root;
+  private final Comparator<? super K> comparator;
+  private final Comparator<Object> cmp;
+
+  /**
+   * Creates an empty map, ordered by the natural ordering of its keys.
+   */
+  public PersistentTreeMap() {
+    this((Comparator<? super K>) null);
+  }
+
+  /**
+   * Creates an empty map, ordered by comparator.
+   * @param comparator
+   */
+  public PersistentTreeMap(Comparator<? super K> comparator) {
+    this(PersistentBTree.EMPTY, comparator);
+  }
+
+  /**
+   * Creates a map with the entries of m, ordered by the natural ordering of their keys.
+   * @param m
+   */
+  public PersistentTreeMap(Map<? extends K, ? extends V> m) {
+    this(build(PersistentBTree.EMPTY, m, PersistentBTree.NATURAL), null);
+  }
+
+  /**
+   * Creates a map with the entries and ordering of m.
+   * @param m
+   */
+  public PersistentTreeMap(SortedMap<K, ? extends V> m) {
+    this(build(PersistentBTree.EMPTY, m, PersistentBTree.comparator(m.comparator())), m.comparator());
+  }
+
+  PersistentTreeMap(Node root, Comparator<? super K> comparator) {
+    this.root = root;
+    this.comparator = comparator;
+    this.cmp = PersistentBTree.comparator(comparator);
+  }
+
+  /**
+   * Returns a version of this map with key mapped to value, or this map if it already is.
+   * @param key
+   * @param value
+   * @return
+   */
+  public PersistentTreeMap<K, V> plus(K key, V value) {
+    checkKey(key);
+    PersistentBTree.checkValue(value);
+    return version(PersistentBTree.put(root, key, value, cmp, new Result()));
+  }
+
+  /**
+   * Returns a version of this map with the entries of m added, or this map if it already has them.
+   * @param m
+   * @return
+   */
+  public PersistentTreeMap<K, V> plusAll(Map<? extends K, ? extends V> m) {
+    return version(build(root, m, cmp));
+  }
+
+  /**
+   * Returns a version of this map without key, or this map if key is absent.
+   * @param key
+   * @return
+   */
+  public PersistentTreeMap<K, V> minus(Object key) {
+    checkKey(key);
+    return version(PersistentBTree.remove(root, key, cmp, new Result()));
+  }
+
+  /**
+   * Returns an empty map with the ordering of this one.
+   * @return
+   */
+  public PersistentTreeMap<K, V> empty() {
+    return version(PersistentBTree.EMPTY);
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public int size() {
+    return root.count();
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    checkKey(key);
+    return (V) PersistentBTree.get(root, key, cmp);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public V remove(Object key) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    return PersistentBTree.firstEntry(root);
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    return PersistentBTree.lastEntry(root);
+  }
+
+  @Override
+  Map.Entry<K, V> findEntry(Object key, int rel) {
+    return PersistentBTree.findEntry(root, key, rel, cmp);
+  }
+
+  @Override
+  Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending) {
+    return PersistentBTree.iterator(root, from, inclusive, descending, cmp);
+  }
+
+  private PersistentTreeMap<K, V> version(Node node) {
+    return node == root ? this : new PersistentTreeMap<K, V>(node, comparator);
+  }
+
+  private static Node build(Node root, Map<?, ?> m, Comparator<Object> cmp) {
+    for (Map.Entry<?, ?> e : m.entrySet()) {
+      checkKey(e.getKey());
+      PersistentBTree.checkValue(e.getValue());
+      root = PersistentBTree.put(root, e.getKey(), e.getValue(), cmp, new Result());
+    }
+    return root;
+  }
+}
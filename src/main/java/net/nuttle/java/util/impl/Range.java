@@ -0,0 +1,61 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * A half-open range [start, end) of keys, as held by RangeSet and IntervalTree.
+ * Ranges are half-open so that ranges meeting end to start, such as [10, 20) and [20, 30),
+ * cover the keys between them without a gap or an overlap, whatever the type of key.
+ * @author dan
+ *
+ * @param <K>
+ */
+public final class Range<K> {
+
+  private final K start;
+  private final K end;
+
+  public Range(K start, K end) {
+    if (start == null || end == null) {
+      throw new NullPointerException();
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * Returns the lowest key of the range.
+   * @return
+   */
+  public K start() {
+    return start;
+  }
+
+  /**
+   * Returns the key just after the range.
+   * @return
+   */
+  public K end() {
+    return end;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof Range)) {
+      return false;
+    }
+    Range<?> other = (Range<?>) obj;
+    return start.equals(other.start) && end.equals(other.end);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * start.hashCode() + end.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + ", " + end + ")";
+  }
+}
@@ -0,0 +1,270 @@
+package net.nuttle.java.util.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of keys stored as disjoint half-open ranges (see Range), such as the allocated blocks of an
+ * address space.  Added ranges are coalesced with the ranges they overlap or meet, and removing a
+ * range splits the range around it, so the set always holds the fewest ranges that cover its keys.
+ * <p>
+ * The ranges are the entries of a TreeMap from start to end.  As they are disjoint, the range
+ * containing a key is the floor entry of the key, so contains, encloses and intersects take
+ * O(log n), and overlapping(start, end) returns its k ranges in O(log n + k), where scanning
+ * a TreeSet of ranges would go back over every range that might reach the query.
+ * add and remove take O(log n) plus O(log n) per range they merge or remove.
+ * This class is not thread-safe.
+ * @author dan
+ *
+ * @param <K>
+ */
+public class RangeSet<K> implements Iterable<Range<K>> {
+
+  private final TreeMap<K, K> ranges;
+
+  /**
+   * Creates an empty set, ordered by the natural ordering of its keys.
+   */
+  public RangeSet() {
+    this(null);
+  }
+
+  /**
+   * Creates an empty set, ordered by comparator.
+   * @param comparator
+   */
+  public RangeSet(Comparator<? super K> comparator) {
+    ranges = new TreeMap<K, K>(comparator);
+  }
+
+  /**
+   * Adds the keys from start, inclusive, to end, exclusive, and returns false if they were all present.
+   * @param start
+   * @param end
+   * @return
+   * @throws IllegalArgumentException if start is greater than end
+   */
+  public boolean add(K start, K end) {
+    if (checkRange(start, end) == 0) {
+      return false;
+    }
+    Map.Entry<K, K> floor = ranges.floorEntry(start);
+    if (floor != null && compare(floor.getValue(), start) >= 0) {
+      if (compare(floor.getValue(), end) >= 0) {
+        return false;
+      }
+      start = floor.getKey();
+    }
+    // Absorb the ranges that start within [start, end], including one that starts at end
+    Iterator<K> it = ranges.subMap(start, true, end, true).values().iterator();
+    while (it.hasNext()) {
+      K e = it.next();
+      if (compare(e, end) > 0) {
+        end = e;
+      }
+      it.remove();
+    }
+    ranges.put(start, end);
+    return true;
+  }
+
+  public boolean add(Range<K> range) {
+    return add(range.start(), range.end());
+  }
+
+  /**
+   * Removes the keys from start, inclusive, to end, exclusive, and returns false if none were present.
+   * @param start
+   * @param end
+   * @return
+   * @throws IllegalArgumentException if start is greater than end
+   */
+  public boolean remove(K start, K end) {
+    if (checkRange(start, end) == 0) {
+      return false;
+    }
+    boolean changed = false;
+    K tail = null;
+    Map.Entry<K, K> lower = ranges.lowerEntry(start);
+    if (lower != null && compare(lower.getValue(), start) > 0) {
+      ranges.put(lower.getKey(), start);
+      if (compare(lower.getValue(), end) > 0) {
+        tail = lower.getValue();
+      }
+      changed = true;
+    }
+    Iterator<K> it = ranges.subMap(start, true, end, false).values().iterator();
+    while (it.hasNext()) {
+      K e = it.next();
+      if (compare(e, end) > 0) {
+        tail = e;
+      }
+      it.remove();
+      changed = true;
+    }
+    if (tail != null) {
+      ranges.put(end, tail);
+    }
+    return changed;
+  }
+
+  public boolean remove(Range<K> range) {
+    return remove(range.start(), range.end());
+  }
+
+  /**
+   * Returns true if key is in one of the ranges.
+   * @param key
+   * @return
+   */
+  public boolean contains(K key) {
+    Map.Entry<K, K> floor = ranges.floorEntry(key);
+    return floor != null && compare(floor.getValue(), key) > 0;
+  }
+
+  /**
+   * Returns the range containing key, or null.
+   * @param key
+   * @return
+   */
+  public Range<K> rangeContaining(K key) {
+    Map.Entry<K, K> floor = ranges.floorEntry(key);
+    return floor != null && compare(floor.getValue(), key) > 0 ? range(floor) : null;
+  }
+
+  /**
+   * Returns true if all the keys from start to end are in one range.
+   * @param start
+   * @param end
+   * @return
+   */
+  public boolean encloses(K start, K end) {
+    if (checkRange(start, end) == 0) {
+      return true;
+    }
+    Map.Entry<K, K> floor = ranges.floorEntry(start);
+    return floor != null && compare(floor.getValue(), end) >= 0;
+  }
+
+  /**
+   * Returns true if any key from start to end is in one of the ranges.
+   * @param start
+   * @param end
+   * @return
+   */
+  public boolean intersects(K start, K end) {
+    if (checkRange(start, end) == 0) {
+      return false;
+    }
+    Map.Entry<K, K> lower = ranges.lowerEntry(end);
+    return lower != null && compare(lower.getValue(), start) > 0;
+  }
+
+  /**
+   * Returns the ranges that share keys with [start, end), in ascending order.
+   * @param start
+   * @param end
+   * @return
+   */
+  public List<Range<K>> overlapping(K start, K end) {
+    List<Range<K>> result = new ArrayList<Range<K>>();
+    if (checkRange(start, end) == 0) {
+      return result;
+    }
+    Map.Entry<K, K> floor = ranges.floorEntry(start);
+    if (floor != null && compare(floor.getValue(), start) > 0) {
+      result.add(range(floor));
+    }
+    for (Map.Entry<K, K> e : ranges.subMap(start, false, end, false).entrySet()) {
+      result.add(range(e));
+    }
+    return result;
+  }
+
+  /**
+   * Returns the number of ranges.
+   * @return
+   */
+  public int size() {
+    return ranges.size();
+  }
+
+  public boolean isEmpty() {
+    return ranges.isEmpty();
+  }
+
+  public void clear() {
+    ranges.clear();
+  }
+
+  /**
+   * Returns the ranges in ascending order.  The iterator supports remove.
+   */
+  @Override
+  public Iterator<Range<K>> iterator() {
+    final Iterator<Map.Entry<K, K>> it = ranges.entrySet().iterator();
+    return new Iterator<Range<K>>() {
+      @Override
+      public boolean hasNext() {
+        return it.hasNext();
+      }
+
+      @Override
+      public Range<K> next() {
+        return range(it.next());
+      }
+
+      @Override
+      public void remove() {
+        it.remove();
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    return obj == this || obj instanceof RangeSet && ranges.equals(((RangeSet<?>) obj).ranges);
+  }
+
+  @Override
+  public int hashCode() {
+    return ranges.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (Map.Entry<K, K> e : ranges.entrySet()) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append('[').append(e.getKey()).append(", ").append(e.getValue()).append(')');
+    }
+    return sb.append(']').toString();
+  }
+
+  private Range<K> range(Map.Entry<K, K> e) {
+    return new Range<K>(e.getKey(), e.getValue());
+  }
+
+  /**
+   * Checks that start is at most end, and returns their comparison.
+   */
+  private int checkRange(K start, K end) {
+    int c = compare(start, end);
+    if (c > 0) {
+      throw new IllegalArgumentException("start > end: " + start + " > " + end);
+    }
+    return c;
+  }
+
+  @SuppressWarnings("unchecked")
+  private int compare(K a, K b) {
+    Comparator<? super K> cmp = ranges.comparator();
+    return cmp == null ? ((Comparable<? super K>) a).compareTo(b) : cmp.compare(a, b);
+  }
+}
@@ -0,0 +1,300 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A bit set with a succinct index for rank and select queries.
+ * rank(i) counts the set bits before index i, and select(k) finds the index of the k-th set bit,
+ * both of which take a loop over nextSetBit with a plain BitSet.
+ * The index holds the number of set bits before each block of 512 bits (one int per 8 words,
+ * 6.25% of the bitmap), plus the block of every 8192nd set bit to start the search for select.
+ * rank is then a lookup and at most 7 popcounts, and select a short binary search between two samples.
+ * Updates only mark the first changed block; the index is rebuilt from there on the next query,
+ * so a batch of updates near the end of the set costs little.
+ * Like BitSet, this class is not thread-safe.
+ * @author dan
+ *
+ */
+public class RankSelectBitSet {
+
+  private static final int WORDS_PER_BLOCK = 8;
+  private static final int BLOCK_SHIFT = 3;
+  private static final int SAMPLE_RATE = 8192;
+
+  private long[] words;
+  private int[] blockRanks = new int[1];
+  private int[] samples = new int[0];
+  private int nsamples;
+  private int cardinality;
+  private int dirtyBlock;
+
+  /**
+   * Creates an empty set.
+   */
+  public RankSelectBitSet() {
+    this(new long[WORDS_PER_BLOCK]);
+  }
+
+  /**
+   * Creates a set with the same bits as bs.
+   * @param bs
+   */
+  public RankSelectBitSet(BitSet bs) {
+    this(bs.toLongArray());
+  }
+
+  private RankSelectBitSet(long[] words) {
+    this.words = Arrays.copyOf(words, Math.max(WORDS_PER_BLOCK,
+      (words.length + WORDS_PER_BLOCK - 1) & -WORDS_PER_BLOCK));
+    this.dirtyBlock = 0;
+  }
+
+  /**
+   * Returns the value of bit index.
+   * @param index
+   * @return
+   */
+  public boolean get(int index) {
+    checkIndex(index);
+    int w = index >>> 6;
+    return w < words.length && (words[w] & (1L << index)) != 0;
+  }
+
+  /**
+   * Sets bit index to true.
+   * @param index
+   */
+  public void set(int index) {
+    checkIndex(index);
+    int w = index >>> 6;
+    ensureWords(w + 1);
+    words[w] |= 1L << index;
+    touch(w);
+  }
+
+  /**
+   * Sets bit index to value.
+   * @param index
+   * @param value
+   */
+  public void set(int index, boolean value) {
+    if (value) {
+      set(index);
+    } else {
+      clear(index);
+    }
+  }
+
+  /**
+   * Sets bit index to false.
+   * @param index
+   */
+  public void clear(int index) {
+    checkIndex(index);
+    int w = index >>> 6;
+    if (w < words.length) {
+      words[w] &= ~(1L << index);
+      touch(w);
+    }
+  }
+
+  /**
+   * Flips bit index.
+   * @param index
+   */
+  public void flip(int index) {
+    checkIndex(index);
+    int w = index >>> 6;
+    ensureWords(w + 1);
+    words[w] ^= 1L << index;
+    touch(w);
+  }
+
+  /**
+   * Returns the number of set bits at indexes less than index.
+   * @param index
+   * @return
+   */
+  public int rank(int index) {
+    checkIndex(index);
+    refresh();
+    int w = index >>> 6;
+    if (w >= words.length) {
+      return cardinality;
+    }
+    int block = w >>> BLOCK_SHIFT;
+    int rank = blockRanks[block];
+    for (int i = block << BLOCK_SHIFT; i < w; i++) {
+      rank += Long.bitCount(words[i]);
+    }
+    return rank + Long.bitCount(words[w] & ((1L << index) - 1));
+  }
+
+  /**
+   * Returns the index of the set bit of rank k (the first set bit has rank 0),
+   * or -1 if fewer than k + 1 bits are set.
+   * rank(select(k)) == k for every k less than cardinality().
+   * @param k
+   * @return
+   */
+  public int select(int k) {
+    if (k < 0) {
+      throw new IndexOutOfBoundsException("k < 0: " + k);
+    }
+    refresh();
+    if (k >= cardinality) {
+      return -1;
+    }
+    int sample = k / SAMPLE_RATE;
+    int lo = samples[sample];
+    int hi = sample + 1 < nsamples ? samples[sample + 1] : blockRanks.length - 2;
+    //Last block whose rank is <= k
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (blockRanks[mid] <= k) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    int remaining = k - blockRanks[lo];
+    int w = lo << BLOCK_SHIFT;
+    int count = Long.bitCount(words[w]);
+    while (count <= remaining) {
+      remaining -= count;
+      count = Long.bitCount(words[++w]);
+    }
+    long word = words[w];
+    for (int i = 0; i < remaining; i++) {
+      word &= word - 1;
+    }
+    return w * 64 + Long.numberOfTrailingZeros(word);
+  }
+
+  /**
+   * Returns the number of set bits.
+   * @return
+   */
+  public int cardinality() {
+    refresh();
+    return cardinality;
+  }
+
+  /**
+   * Returns the index of the first set bit at or after fromIndex, or -1 if there is none.
+   * @param fromIndex
+   * @return
+   */
+  public int nextSetBit(int fromIndex) {
+    checkIndex(fromIndex);
+    int i = fromIndex >>> 6;
+    if (i >= words.length) {
+      return -1;
+    }
+    long w = words[i] & (-1L << fromIndex);
+    while (true) {
+      if (w != 0) {
+        return i * 64 + Long.numberOfTrailingZeros(w);
+      }
+      if (++i == words.length) {
+        return -1;
+      }
+      w = words[i];
+    }
+  }
+
+  /**
+   * Returns the index of the highest set bit plus one, or 0 if no bits are set.
+   * @return
+   */
+  public int length() {
+    for (int i = words.length - 1; i >= 0; i--) {
+      if (words[i] != 0) {
+        return i * 64 + 64 - Long.numberOfLeadingZeros(words[i]);
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Returns true if no bits are set.
+   * @return
+   */
+  public boolean isEmpty() {
+    return cardinality() == 0;
+  }
+
+  /**
+   * Returns a BitSet copy of this set.
+   * @return
+   */
+  public BitSet toBitSet() {
+    return BitSet.valueOf(words);
+  }
+
+  @Override
+  public String toString() {
+    return toBitSet().toString();
+  }
+
+  /**
+   * Records that word w has changed, so the index must be rebuilt from its block on.
+   */
+  private void touch(int w) {
+    dirtyBlock = Math.min(dirtyBlock, w >>> BLOCK_SHIFT);
+  }
+
+  /**
+   * Rebuilds the part of the index that follows the first changed block.
+   */
+  private void refresh() {
+    int nblocks = words.length >>> BLOCK_SHIFT;
+    if (dirtyBlock >= nblocks && blockRanks.length == nblocks + 1) {
+      return;
+    }
+    if (blockRanks.length != nblocks + 1) {
+      blockRanks = Arrays.copyOf(blockRanks, nblocks + 1);
+    }
+    int from = Math.min(dirtyBlock, nblocks);
+    int rank = blockRanks[from];
+    for (int b = from; b < nblocks; b++) {
+      blockRanks[b] = rank;
+      for (int i = b << BLOCK_SHIFT, end = i + WORDS_PER_BLOCK; i < end; i++) {
+        rank += Long.bitCount(words[i]);
+      }
+    }
+    blockRanks[nblocks] = rank;
+    cardinality = rank;
+    //Samples of ranks below blockRanks[from] still point into unchanged blocks
+    int sample = (blockRanks[from] + SAMPLE_RATE - 1) / SAMPLE_RATE;
+    nsamples = (cardinality + SAMPLE_RATE - 1) / SAMPLE_RATE;
+    if (samples.length < nsamples) {
+      samples = Arrays.copyOf(samples, nsamples + (nsamples >> 1) + 1);
+    }
+    int b = from;
+    for (; sample < nsamples; sample++) {
+      int k = sample * SAMPLE_RATE;
+      while (blockRanks[b + 1] <= k) {
+        b++;
+      }
+      samples[sample] = b;
+    }
+    dirtyBlock = Integer.MAX_VALUE;
+  }
+
+  private void ensureWords(int n) {
+    if (n > words.length) {
+      int capacity = (int) Math.min(1 << 25, Math.max(n, 2L * words.length));
+      capacity = (capacity + WORDS_PER_BLOCK - 1) & -WORDS_PER_BLOCK;
+      touch(words.length);
+      words = Arrays.copyOf(words, capacity);
+    }
+  }
+
+  private static void checkIndex(int index) {
+    if (index < 0) {
+      throw new IndexOutOfBoundsException("index < 0: " + index);
+    }
+  }
+}
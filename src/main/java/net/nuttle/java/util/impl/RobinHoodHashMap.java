@@ -0,0 +1,569 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A java.util.Map using open addressing with Robin Hood displacement.
+ * Entries live in three parallel arrays (hashes, keys and values) instead of one node per entry,
+ * which saves about 30 bytes per entry over HashMap and turns a lookup into a linear scan
+ * of adjacent slots rather than a chain of pointers.
+ * The full hash of each key is stored, so a probe only calls equals when the hashes match,
+ * and a resize never calls hashCode.
+ * On insertion an entry takes the slot of any entry closer to its own home slot
+ * ("takes from the rich"), which keeps probe sequences short and uniform even at a 7/8 load factor,
+ * and lets a lookup for an absent key stop as soon as it meets an entry closer to home than itself.
+ * Removal shifts the following entries back instead of leaving tombstones.
+ * Null keys and values are allowed.  Like HashMap, this class is not thread-safe,
+ * and its iterators are fail-fast.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class RobinHoodHashMap<K, V> extends AbstractMap<K, V> {
+
+  private static final float DEFAULT_LOAD_FACTOR = 0.875f;
+  private static final int MAX_CAPACITY = 1 << 30;
+
+  /**
+   * Stands for the null key in the keys array.
+   */
+  private static final Object NULL_KEY = new Object();
+
+  /**
+   * 0 marks a free slot; stored hashes always have their high bit set.
+   */
+  private int[] hashes;
+  private Object[] keys;
+  private Object[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  private int modCount;
+  private final float loadFactor;
+
+  private Set<K> keySet;
+  private Collection<V> valuesView;
+  private Set<Map.Entry<K, V>> entrySet;
+
+  /**
+   * Creates an empty map.
+   */
+  public RobinHoodHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map that holds expected entries without growing.
+   * @param expected
+   */
+  public RobinHoodHashMap(int expected) {
+    this(expected, DEFAULT_LOAD_FACTOR);
+  }
+
+  /**
+   * Creates an empty map.
+   * @param expected number of entries the map holds without growing
+   * @param loadFactor fraction of the table that may be filled, between 0 and 1
+   */
+  public RobinHoodHashMap(int expected, float loadFactor) {
+    if (expected < 0) {
+      throw new IllegalArgumentException("Illegal expected size: " + expected);
+    }
+    if (!(loadFactor > 0 && loadFactor < 1)) {
+      throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+    }
+    this.loadFactor = loadFactor;
+    long needed = (long) Math.ceil(expected / (double) loadFactor) + 1;
+    int capacity = 4;
+    while (capacity < needed && capacity < MAX_CAPACITY) {
+      capacity <<= 1;
+    }
+    allocate(capacity);
+  }
+
+  /**
+   * Creates a map with the same entries as m.
+   * @param m
+   */
+  public RobinHoodHashMap(Map<? extends K, ? extends V> m) {
+    this(m.size());
+    putAll(m);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return find(key) >= 0;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    for (int i = 0; i < hashes.length; i++) {
+      if (hashes[i] != 0 && eq(value, values[i])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    int pos = find(key);
+    return pos >= 0 ? (V) values[pos] : null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    Object k = mask(key);
+    int hash = hash(k);
+    int pos = find(k, hash);
+    if (pos >= 0) {
+      V previous = (V) values[pos];
+      values[pos] = value;
+      return previous;
+    }
+    if (size >= resizeAt) {
+      rehash(hashes.length << 1);
+    }
+    insert(hash, k, value);
+    size++;
+    modCount++;
+    return null;
+  }
+
+  @Override
+  public void putAll(Map<? extends K, ? extends V> m) {
+    int needed = size + m.size();
+    while (needed > resizeAt && hashes.length < MAX_CAPACITY) {
+      rehash(hashes.length << 1);
+    }
+    super.putAll(m);
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    int pos = find(key);
+    if (pos < 0) {
+      return null;
+    }
+    V previous = (V) values[pos];
+    removeAt(pos, null);
+    return previous;
+  }
+
+  @Override
+  public void clear() {
+    if (size > 0) {
+      Arrays.fill(hashes, 0);
+      Arrays.fill(keys, null);
+      Arrays.fill(values, null);
+      size = 0;
+      modCount++;
+    }
+  }
+
+  @Override
+  public Set<K> keySet() {
+    if (keySet == null) {
+      keySet = new KeySet();
+    }
+    return keySet;
+  }
+
+  @Override
+  public Collection<V> values() {
+    if (valuesView == null) {
+      valuesView = new Values();
+    }
+    return valuesView;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private static Object mask(Object key) {
+    return key == null ? NULL_KEY : key;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <K> K unmask(Object key) {
+    return key == NULL_KEY ? null : (K) key;
+  }
+
+  private static boolean eq(Object a, Object b) {
+    return a == null ? b == null : a == b || a.equals(b);
+  }
+
+  /**
+   * Returns the stored hash of a masked key: mixed, so that the low bits can index the table,
+   * and never 0.
+   */
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return (h ^ (h >>> 16)) | 0x80000000;
+  }
+
+  /**
+   * Returns the distance of the entry at pos from its home slot.
+   */
+  private int distance(int pos) {
+    return (pos - hashes[pos]) & mask;
+  }
+
+  /**
+   * Returns the slot of key, or -1 if it is absent.
+   */
+  private int find(Object key) {
+    Object k = mask(key);
+    return find(k, hash(k));
+  }
+
+  private int find(Object key, int hash) {
+    int[] hashes = this.hashes;
+    int pos = hash & mask;
+    for (int dist = 0;; dist++) {
+      int h = hashes[pos];
+      //Stop at a free slot, or at an entry that is closer to home than key would be
+      if (h == 0 || ((pos - h) & mask) < dist) {
+        return -1;
+      }
+      if (h == hash) {
+        Object k = keys[pos];
+        if (k == key || k.equals(key)) {
+          return pos;
+        }
+      }
+      pos = (pos + 1) & mask;
+    }
+  }
+
+  /**
+   * Inserts an entry known to be absent, displacing entries that are closer to home.
+   */
+  private void insert(int hash, Object key, Object value) {
+    int[] hashes = this.hashes;
+    int pos = hash & mask;
+    for (int dist = 0;; dist++) {
+      int h = hashes[pos];
+      if (h == 0) {
+        hashes[pos] = hash;
+        keys[pos] = key;
+        values[pos] = value;
+        return;
+      }
+      int existing = (pos - h) & mask;
+      if (existing < dist) {
+        Object k = keys[pos];
+        Object v = values[pos];
+        hashes[pos] = hash;
+        keys[pos] = key;
+        values[pos] = value;
+        hash = h;
+        key = k;
+        value = v;
+        dist = existing;
+      }
+      pos = (pos + 1) & mask;
+    }
+  }
+
+  /**
+   * Removes the entry at pos, and shifts back the entries that follow it until one is at home.
+   * If an entry moves from the first slot to the last one, and wrapped is not null,
+   * its key is added to wrapped (this is how an iterator learns that it would miss it).
+   */
+  private void removeAt(int pos, List<Object> wrapped) {
+    int[] hashes = this.hashes;
+    int next = (pos + 1) & mask;
+    while (hashes[next] != 0 && distance(next) > 0) {
+      if (next == 0 && wrapped != null) {
+        wrapped.add(keys[next]);
+      }
+      hashes[pos] = hashes[next];
+      keys[pos] = keys[next];
+      values[pos] = values[next];
+      pos = next;
+      next = (next + 1) & mask;
+    }
+    hashes[pos] = 0;
+    keys[pos] = null;
+    values[pos] = null;
+    size--;
+    modCount++;
+  }
+
+  private void allocate(int capacity) {
+    hashes = new int[capacity];
+    keys = new Object[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    resizeAt = Math.min(capacity - 1, (int) (capacity * loadFactor));
+  }
+
+  private void rehash(int capacity) {
+    if (capacity > MAX_CAPACITY) {
+      throw new IllegalStateException("Map is full: " + size + " entries");
+    }
+    int[] oldHashes = hashes;
+    Object[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldHashes[i] != 0) {
+        insert(oldHashes[i], oldKeys[i], oldValues[i]);
+      }
+    }
+  }
+
+  /**
+   * Walks the table from the last slot down to the first, so that removing the current entry
+   * only shifts entries that were already returned into its slot.  The one exception is an entry
+   * that wraps from the first slot to the last; those are kept aside and returned at the end,
+ * and the entries after it shift down, so the next slot is looked for again after a removal.
+   */
+  private abstract class HashIterator<E> implements Iterator<E> {
+
+    private int index = hashes.length;
+    private int next = -1;
+    private int last = -1;
+    private List<Object> wrapped;
+    private int wrappedIndex;
+    private Object lastWrapped;
+    private int expectedModCount = modCount;
+
+    HashIterator() {
+      advance();
+    }
+
+    private void advance() {
+      while (--index >= 0) {
+        if (hashes[index] != 0) {
+          next = index;
+          return;
+        }
+      }
+      next = -1;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next >= 0 || (wrapped != null && wrappedIndex < wrapped.size());
+    }
+
+    @Override
+    public E next() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (next >= 0) {
+        last = next;
+        lastWrapped = null;
+        advance();
+        return element(keys[last], values[last]);
+      }
+      if (wrapped != null && wrappedIndex < wrapped.size()) {
+        last = -1;
+        lastWrapped = wrapped.get(wrappedIndex++);
+        return element(lastWrapped, values[find(lastWrapped, hash(lastWrapped))]);
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (last >= 0) {
+        if (wrapped == null) {
+          wrapped = new ArrayList<>(2);
+        }
+        removeAt(last, wrapped);
+        last = -1;
+        if (next >= 0) {
+          // The shift may have wrapped past the first slot and moved the entry at next down;
+          // the slots from next down still hold only entries not yet returned
+          index = next + 1;
+          advance();
+        }
+      } else if (lastWrapped != null) {
+        removeAt(find(lastWrapped, hash(lastWrapped)), null);
+        lastWrapped = null;
+      } else {
+        throw new IllegalStateException();
+      }
+      expectedModCount = modCount;
+    }
+
+    /**
+     * Returns the element for the entry with the given (masked) key and value.
+     */
+    abstract E element(Object key, Object value);
+  }
+
+  private final class KeyIterator extends HashIterator<K> {
+    @Override
+    K element(Object key, Object value) {
+      return unmask(key);
+    }
+  }
+
+  private final class ValueIterator extends HashIterator<V> {
+    @Override
+    @SuppressWarnings("unchecked")
+    V element(Object key, Object value) {
+      return (V) value;
+    }
+  }
+
+  private final class EntryIterator extends HashIterator<Map.Entry<K, V>> {
+    @Override
+    @SuppressWarnings("unchecked")
+    Map.Entry<K, V> element(Object key, Object value) {
+      return new Entry(RobinHoodHashMap.<K>unmask(key), (V) value);
+    }
+  }
+
+  /**
+   * An entry returned by the entry set iterator.  setValue writes through to the map.
+   */
+  private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      int pos = find(getKey());
+      if (pos >= 0) {
+        values[pos] = value;
+      }
+      return super.setValue(value);
+    }
+  }
+
+  private final class KeySet extends AbstractSet<K> {
+
+    @Override
+    public Iterator<K> iterator() {
+      return new KeyIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      int pos = find(o);
+      if (pos < 0) {
+        return false;
+      }
+      removeAt(pos, null);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      RobinHoodHashMap.this.clear();
+    }
+  }
+
+  private final class Values extends AbstractCollection<V> {
+
+    @Override
+    public Iterator<V> iterator() {
+      return new ValueIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsValue(o);
+    }
+
+    @Override
+    public void clear() {
+      RobinHoodHashMap.this.clear();
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      int pos = find(e.getKey());
+      return pos >= 0 && eq(e.getValue(), values[pos]);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!contains(o)) {
+        return false;
+      }
+      removeAt(find(((Map.Entry<?, ?>) o).getKey()), null);
+      return true;
+    }
+
+    @Override
+    public void clear() {
+      RobinHoodHashMap.this.clear();
+    }
+  }
+}
@@ -0,0 +1,251 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Arrays;
+
+/**
+ * Container for chunks made of long stretches of set bits: the values are kept as sorted,
+ * non-adjacent runs, each stored as two chars (start, length - 1).
+ * A full chunk costs 4 bytes instead of 8K.
+ * @author dan
+ *
+ */
+final class RunContainer extends Container {
+
+  char[] runs;
+  int nruns;
+
+  RunContainer(char[] runs, int nruns) {
+    this.runs = runs;
+    this.nruns = nruns;
+  }
+
+  /**
+   * Returns a container holding the values from (inclusive) to to (exclusive).
+   */
+  static RunContainer range(int from, int to) {
+    return new RunContainer(new char[] {(char) from, (char) (to - from - 1)}, 1);
+  }
+
+  static RunContainer fromWords(long[] words, int nruns) {
+    BitmapContainer bitmap = new BitmapContainer(words, 0);
+    char[] runs = new char[2 * Math.max(nruns, 1)];
+    int n = 0;
+    for (int s = bitmap.nextSetBit(0); s >= 0; s = bitmap.nextSetBit(s)) {
+      int e = bitmap.nextClearBit(s);
+      runs[2 * n] = (char) s;
+      runs[2 * n + 1] = (char) (e - s - 1);
+      n++;
+      s = e;
+    }
+    return new RunContainer(runs, n);
+  }
+
+  private int start(int i) {
+    return runs[2 * i];
+  }
+
+  private int end(int i) {
+    return runs[2 * i] + runs[2 * i + 1];
+  }
+
+  /**
+   * Returns the index of the last run whose start is less than or equal to x, or -1 if none.
+   */
+  private int floorRun(int x) {
+    int lo = 0;
+    int hi = nruns - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      if (start(mid) <= x) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return hi;
+  }
+
+  @Override
+  boolean contains(int x) {
+    int i = floorRun(x);
+    return i >= 0 && x <= end(i);
+  }
+
+  @Override
+  Container add(int x) {
+    return contains(x) ? this : add(x, x + 1);
+  }
+
+  @Override
+  Container remove(int x) {
+    return contains(x) ? remove(x, x + 1) : this;
+  }
+
+  @Override
+  Container add(int from, int to) {
+    if (from >= to) {
+      return this;
+    }
+    int last = to - 1;
+    char[] result = new char[2 * (nruns + 1)];
+    int n = 0;
+    int i = 0;
+    while (i < nruns && end(i) + 1 < from) {
+      result[2 * n] = runs[2 * i];
+      result[2 * n + 1] = runs[2 * i + 1];
+      n++;
+      i++;
+    }
+    int s = from;
+    int e = last;
+    while (i < nruns && start(i) <= last + 1) {
+      s = Math.min(s, start(i));
+      e = Math.max(e, end(i));
+      i++;
+    }
+    result[2 * n] = (char) s;
+    result[2 * n + 1] = (char) (e - s);
+    n++;
+    while (i < nruns) {
+      result[2 * n] = runs[2 * i];
+      result[2 * n + 1] = runs[2 * i + 1];
+      n++;
+      i++;
+    }
+    runs = result;
+    nruns = n;
+    return check();
+  }
+
+  @Override
+  Container remove(int from, int to) {
+    if (from >= to) {
+      return this;
+    }
+    char[] result = new char[2 * (nruns + 1)];
+    int n = 0;
+    for (int i = 0; i < nruns; i++) {
+      int s = start(i);
+      int e = end(i);
+      if (e < from || s >= to) {
+        result[2 * n] = (char) s;
+        result[2 * n + 1] = (char) (e - s);
+        n++;
+        continue;
+      }
+      if (s < from) {
+        result[2 * n] = (char) s;
+        result[2 * n + 1] = (char) (from - 1 - s);
+        n++;
+      }
+      if (e >= to) {
+        result[2 * n] = (char) to;
+        result[2 * n + 1] = (char) (e - to);
+        n++;
+      }
+    }
+    runs = result;
+    nruns = n;
+    return check();
+  }
+
+  /**
+   * Returns this container if runs are still the cheapest representation, else the cheapest one.
+   */
+  private Container check() {
+    int card = cardinality();
+    int arrayBytes = card <= ArrayContainer.MAX_SIZE ? 2 * card : Integer.MAX_VALUE;
+    if (4 * nruns >= Math.min(8 * WORDS, arrayBytes)) {
+      return optimize(toWords());
+    }
+    return this;
+  }
+
+  @Override
+  int cardinality() {
+    int card = 0;
+    for (int i = 0; i < nruns; i++) {
+      card += runs[2 * i + 1] + 1;
+    }
+    return card;
+  }
+
+  @Override
+  boolean isEmpty() {
+    return nruns == 0;
+  }
+
+  @Override
+  int nextSetBit(int from) {
+    if (from >= CHUNK) {
+      return -1;
+    }
+    int i = floorRun(from);
+    if (i >= 0 && from <= end(i)) {
+      return from;
+    }
+    return i + 1 < nruns ? start(i + 1) : -1;
+  }
+
+  @Override
+  int nextClearBit(int from) {
+    int i = floorRun(from);
+    if (i >= 0 && from <= end(i)) {
+      return end(i) + 1;
+    }
+    return from;
+  }
+
+  @Override
+  int last() {
+    return nruns == 0 ? -1 : end(nruns - 1);
+  }
+
+  @Override
+  long[] toWords() {
+    long[] words = new long[WORDS];
+    orInto(words);
+    return words;
+  }
+
+  @Override
+  void orInto(long[] words) {
+    for (int i = 0; i < nruns; i++) {
+      setRange(words, start(i), end(i) + 1);
+    }
+  }
+
+  @Override
+  void andNotInto(long[] words) {
+    for (int i = 0; i < nruns; i++) {
+      clearRange(words, start(i), end(i) + 1);
+    }
+  }
+
+  @Override
+  void xorInto(long[] words) {
+    for (int i = 0; i < nruns; i++) {
+      flipRange(words, start(i), end(i) + 1);
+    }
+  }
+
+  @Override
+  int sizeInBytes() {
+    return 2 * runs.length + 16;
+  }
+
+  @Override
+  Container copy() {
+    return new RunContainer(Arrays.copyOf(runs, Math.max(2 * nruns, 2)), nruns);
+  }
+
+  boolean anyIn(Container other) {
+    for (int i = 0; i < nruns; i++) {
+      int n = other.nextSetBit(start(i));
+      if (n >= 0 && n <= end(i)) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,381 @@
+package net.nuttle.java.util.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable sorted file of entries, read through memory mappings, as used by SSTableMap.
+ * <p>
+ * The file holds the records in key order, each a marker byte (ENTRY or DELETED, for the
+ * tombstone of a removed key), the key, and for an ENTRY the length of the value and the value.
+ * Then comes a sparse index: the offset of every interval-th record, which starts a block,
+ * and last a footer.  Lookups binary-search the index, reading the first key of each block
+ * they probe from the mapping, and scan one block; nothing is loaded on the heap when
+ * the file is opened.
+ * <p>
+ * A mapping cannot exceed 2 GB, so the file is mapped in segments, and a record that would
+ * straddle two segments is moved to the start of the second, after PADDING bytes.
+ * @author dan
+ *
+ */
+final class SSTable implements Closeable {
+
+  /**
+   * The value of a removed key, which hides the entries of older tables.
+   */
+  static final Object TOMBSTONE = new Object();
+
+  static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+  private static final long MAGIC = 0x53535461626c6531L;
+  private static final int FOOTER = 6 * 8;
+  private static final byte PADDING = 0;
+  private static final byte ENTRY = 1;
+  private static final byte DELETED = 2;
+
+  final File file;
+  private final Serializer<Object> keys;
+  private final Serializer<Object> values;
+  private final Comparator<Object> cmp;
+  private final FileChannel channel;
+  private final MappedByteBuffer[] segments;
+  private final long segmentSize;
+  private final long indexOffset;
+  private final int blocks;
+  private final long count;
+  private final int interval;
+
+  /**
+   * Opens the table stored in file.
+   */
+  SSTable(File file, Serializer<Object> keys, Serializer<Object> values, Comparator<Object> cmp) throws IOException {
+    this.file = file;
+    this.keys = keys;
+    this.values = values;
+    this.cmp = cmp;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long length = channel.size();
+      ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+      if (length < FOOTER || channel.read(footer, length - FOOTER) != FOOTER || footer.getLong(FOOTER - 8) != MAGIC) {
+        throw new IOException("Not a table file: " + file);
+      }
+      indexOffset = footer.getLong(0);
+      blocks = (int) footer.getLong(8);
+      count = footer.getLong(16);
+      interval = (int) footer.getLong(24);
+      segmentSize = footer.getLong(32);
+      segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) / segmentSize)];
+      for (int i = 0; i < segments.length; i++) {
+        long start = i * segmentSize;
+        segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, length - start));
+      }
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes entries, in ascending key order, to file, and returns the number written.
+   * A value of TOMBSTONE is written as the tombstone of its key.
+   * @param segmentSize a multiple of 8, no smaller than the largest record
+   */
+  static long write(File file, Iterator<? extends Map.Entry<?, ?>> entries, Serializer<Object> keys,
+      Serializer<Object> values, int interval, int segmentSize) throws IOException {
+    long[] index = new long[16];
+    int blocks = 0;
+    long count = 0;
+    long position = 0;
+    ByteArrayOutputStream record = new ByteArrayOutputStream();
+    DataOutputStream recordOut = new DataOutputStream(record);
+    ByteArrayOutputStream value = new ByteArrayOutputStream();
+    DataOutputStream valueOut = new DataOutputStream(value);
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      while (entries.hasNext()) {
+        Map.Entry<?, ?> e = entries.next();
+        record.reset();
+        if (e.getValue() == TOMBSTONE) {
+          recordOut.writeByte(DELETED);
+          keys.write(e.getKey(), recordOut);
+        } else {
+          recordOut.writeByte(ENTRY);
+          keys.write(e.getKey(), recordOut);
+          value.reset();
+          values.write(e.getValue(), valueOut);
+          recordOut.writeInt(value.size());
+          value.writeTo(recordOut);
+        }
+        if (record.size() > segmentSize) {
+          throw new IOException("Record of " + record.size() + " bytes exceeds segment size " + segmentSize);
+        }
+        long room = segmentSize - position % segmentSize;
+        if (record.size() > room) {
+          position += pad(out, room);
+        }
+        if (count % interval == 0) {
+          if (blocks == index.length) {
+            index = Arrays.copyOf(index, blocks * 2);
+          }
+          index[blocks++] = position;
+        }
+        record.writeTo(out);
+        position += record.size();
+        count++;
+      }
+      // Align the index and the footer, so that no long of theirs straddles two segments
+      position += pad(out, -position & 7);
+      long indexOffset = position;
+      for (int i = 0; i < blocks; i++) {
+        out.writeLong(index[i]);
+      }
+      out.writeLong(indexOffset);
+      out.writeLong(blocks);
+      out.writeLong(count);
+      out.writeLong(interval);
+      out.writeLong(segmentSize);
+      out.writeLong(MAGIC);
+    }
+    return count;
+  }
+
+  private static long pad(DataOutputStream out, long n) throws IOException {
+    for (long i = 0; i < n; i++) {
+      out.writeByte(PADDING);
+    }
+    return n;
+  }
+
+  long count() {
+    return count;
+  }
+
+  /**
+   * Returns the value of key, TOMBSTONE if it was removed, or null if the table does not hold it.
+   */
+  Object get(Object key) {
+    int block = findBlock(key);
+    if (block < 0) {
+      return null;
+    }
+    Reader reader = new Reader(blockStart(block));
+    for (int i = blockSize(block); i > 0; i--) {
+      int c = cmp.compare(reader.readKey(), key);
+      if (c == 0) {
+        return reader.readValue();
+      }
+      if (c > 0) {
+        return null;
+      }
+      reader.skipValue();
+    }
+    return null;
+  }
+
+  /**
+   * Returns an iterator over the entries (and tombstones) of the table,
+   * as AbstractNavigableMap.entryIterator.
+   */
+  Iterator<Map.Entry<Object, Object>> iterator(Object from, boolean inclusive, boolean descending) {
+    return new Cursor(from, inclusive, descending);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  /**
+   * Returns the last block whose first key is at most key, or -1 if key is below them all.
+   */
+  private int findBlock(Object key) {
+    int low = 0;
+    int high = blocks - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (cmp.compare(new Reader(blockStart(mid)).readKey(), key) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low - 1;
+  }
+
+  private long blockStart(int block) {
+    long offset = indexOffset + 8L * block;
+    return segments[(int) (offset / segmentSize)].getLong((int) (offset % segmentSize));
+  }
+
+  private int blockSize(int block) {
+    return (int) Math.min(interval, count - (long) block * interval);
+  }
+
+  /**
+   * Reads records forward from an offset, moving over padding to the next segment.
+   */
+  private final class Reader {
+
+    private int segment;
+    private ByteBuffer buffer;
+    private byte marker;
+
+    Reader(long offset) {
+      segment = (int) (offset / segmentSize);
+      buffer = segments[segment].duplicate();
+      buffer.position((int) (offset % segmentSize));
+    }
+
+    Object readKey() {
+      if (!buffer.hasRemaining() || buffer.get(buffer.position()) == PADDING) {
+        buffer = segments[++segment].duplicate();
+      }
+      marker = buffer.get();
+      return keys.read(buffer);
+    }
+
+    /**
+     * Returns the value of the record whose key was just read, or TOMBSTONE.
+     */
+    Object readValue() {
+      if (marker == DELETED) {
+        return TOMBSTONE;
+      }
+      buffer.getInt();
+      return values.read(buffer);
+    }
+
+    /**
+     * Returns the offset of the value of the record whose key was just read, or -1 for a tombstone,
+     * and moves on to the next record.
+     */
+    long skipValue() {
+      if (marker == DELETED) {
+        return -1;
+      }
+      int length = buffer.getInt();
+      long offset = segment * segmentSize + buffer.position();
+      buffer.position(buffer.position() + length);
+      return offset;
+    }
+  }
+
+  private Object valueAt(long offset) {
+    if (offset < 0) {
+      return TOMBSTONE;
+    }
+    ByteBuffer buffer = segments[(int) (offset / segmentSize)].duplicate();
+    buffer.position((int) (offset % segmentSize));
+    return values.read(buffer);
+  }
+
+  /**
+   * Walks the table a block at a time: the keys of a block, and the offsets of its values,
+   * are read into arrays, which are then walked forwards or backwards.
+   * Values are only read when their entry is returned.
+   */
+  private final class Cursor implements Iterator<Map.Entry<Object, Object>> {
+
+    private final boolean descending;
+    private final Object[] blockKeys = new Object[interval];
+    private final long[] valueOffsets = new long[interval];
+    private int block;
+    private int size;
+    private int index;
+
+    Cursor(Object from, boolean inclusive, boolean descending) {
+      this.descending = descending;
+      if (from == null) {
+        load(descending ? blocks - 1 : 0);
+        index = descending ? size - 1 : 0;
+      } else if (descending) {
+        load(findBlock(from));
+        index = size - 1;
+        while (index >= 0) {
+          int c = cmp.compare(blockKeys[index], from);
+          if (c < 0 || (c == 0 && inclusive)) {
+            break;
+          }
+          index--;
+        }
+      } else {
+        load(Math.max(findBlock(from), 0));
+        index = 0;
+        while (index < size) {
+          int c = cmp.compare(blockKeys[index], from);
+          if (c > 0 || (c == 0 && inclusive)) {
+            break;
+          }
+          index++;
+        }
+      }
+      skipBlock();
+    }
+
+    private void load(int b) {
+      block = b;
+      if (b < 0 || b >= blocks) {
+        size = 0;
+        return;
+      }
+      size = blockSize(b);
+      Reader reader = new Reader(blockStart(b));
+      for (int i = 0; i < size; i++) {
+        blockKeys[i] = reader.readKey();
+        valueOffsets[i] = reader.skipValue();
+      }
+    }
+
+    /**
+     * Moves past the end of the block to the next (or previous) block.
+     */
+    private void skipBlock() {
+      if (descending) {
+        if (index < 0 && block > 0) {
+          load(block - 1);
+          index = size - 1;
+        }
+      } else if (index >= size && block < blocks - 1) {
+        load(block + 1);
+        index = 0;
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return index >= 0 && index < size;
+    }
+
+    @Override
+    public Map.Entry<Object, Object> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<Object, Object> e = new AbstractMap.SimpleImmutableEntry<Object, Object>(
+        blockKeys[index], valueAt(valueOffsets[index]));
+      index += descending ? -1 : 1;
+      skipBlock();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
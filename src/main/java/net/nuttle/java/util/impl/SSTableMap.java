@@ -0,0 +1,561 @@
+package net.nuttle.java.util.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A NavigableMap stored on disk, for sorted tables larger than the heap.
+ * Writes go to a memtable, a TreeMap of at most memtableSize entries, which is flushed to a new
+ * immutable table file (see SSTable) when it fills up.  A removed key is recorded as a tombstone,
+ * which hides the older entries of the key until compaction drops both.
+ * Reads look in the memtable, then in the tables from the newest to the oldest; iteration merges
+ * them all.  The tables are read through memory mappings, and each holds a sparse index of the
+ * first key of every 64 entries, searched in the mapping too, so that lookups such as floorKey
+ * read a few pages of the file, which the page cache keeps in memory for the keys that are hot,
+ * and the heap holds nothing but the memtable.
+ * <p>
+ * Every flush adds a table that reads must search, so once there are 4 of them they are merged
+ * into one on a background thread, while the map goes on serving reads and writes; the merged
+ * table replaces them at the next operation after the merge is done.  compact() merges all the
+ * tables in the foreground.
+ * <p>
+ * The list of tables is kept in a MANIFEST file, which is replaced atomically, so reopening the
+ * directory finds the map as of the last flush.  There is no write-ahead log: writes still in the
+ * memtable are lost if the process dies before flush() or close().
+ * put and remove look up the previous value, to return it and keep size() exact, which costs
+ * a lookup in the tables for a key that is not in the memtable.
+ * Neither keys nor values may be null.  This class is not thread-safe.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class SSTableMap<K, V> extends AbstractNavigableMap<K, V> implements Closeable {
+
+  private static final int MANIFEST_MAGIC = 0x53534d31;
+  private static final String MANIFEST = "MANIFEST";
+  private static final String SUFFIX = ".sst";
+  private static final int DEFAULT_MEMTABLE_SIZE = 1 << 16;
+  private static final int INTERVAL = 64;
+  private static final int COMPACT_TABLES = 4;
+
+  private final File dir;
+  private final Serializer<Object> keys;
+  private final Serializer<Object> values;
+  private final Comparator<? super K> comparator;
+  private final Comparator<Object> cmp;
+  private final int memtableSize;
+  private final int segmentSize;
+  private TreeMap<Object, Object> memtable;
+  /**
+   * The tables, newest first.  The list is replaced rather than changed, so iterators can keep it.
+   */
+  private List<SSTable> tables = Collections.emptyList();
+  private int size;
+  private int flushedSize;
+  private long nextGeneration;
+  private ExecutorService executor;
+  private Future<SSTable> compaction;
+  private List<SSTable> compacting;
+  private boolean closed;
+
+  /**
+   * Opens (or creates) the map stored in dir, ordered by the natural ordering of its keys.
+   * @param dir
+   * @param keys
+   * @param values
+   * @throws IOException
+   */
+  public SSTableMap(File dir, Serializer<K> keys, Serializer<V> values) throws IOException {
+    this(dir, keys, values, null, DEFAULT_MEMTABLE_SIZE);
+  }
+
+  /**
+   * Opens (or creates) the map stored in dir, ordered by comparator, which must be the ordering
+   * the map was created with.
+   * @param dir
+   * @param keys
+   * @param values
+   * @param comparator
+   * @param memtableSize the number of entries held in memory before they are flushed to a table
+   * @throws IOException
+   */
+  public SSTableMap(File dir, Serializer<K> keys, Serializer<V> values, Comparator<? super K> comparator,
+      int memtableSize) throws IOException {
+    this(dir, keys, values, comparator, memtableSize, SSTable.DEFAULT_SEGMENT_SIZE);
+  }
+
+  @SuppressWarnings("unchecked")
+  SSTableMap(File dir, Serializer<K> keys, Serializer<V> values, Comparator<? super K> comparator,
+      int memtableSize, int segmentSize) throws IOException {
+    if (memtableSize <= 0) {
+      throw new IllegalArgumentException("memtableSize must be positive: " + memtableSize);
+    }
+    this.dir = dir;
+    this.keys = (Serializer<Object>) keys;
+    this.values = (Serializer<Object>) values;
+    this.comparator = comparator;
+    this.cmp = PersistentBTree.comparator(comparator);
+    this.memtableSize = memtableSize;
+    this.segmentSize = segmentSize;
+    this.memtable = new TreeMap<Object, Object>(cmp);
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Cannot create directory " + dir);
+    }
+    open();
+  }
+
+  /**
+   * Writes the memtable to a new table.
+   */
+  public void flush() {
+    ensureOpen();
+    maybeInstall();
+    if (memtable.isEmpty()) {
+      return;
+    }
+    try {
+      File file = file(nextGeneration++);
+      SSTable.write(file, memtable.entrySet().iterator(), keys, values, INTERVAL, segmentSize);
+      List<SSTable> list = new ArrayList<SSTable>(tables.size() + 1);
+      list.add(new SSTable(file, keys, values, cmp));
+      list.addAll(tables);
+      tables = list;
+      // Iterators may still walk the old memtable, so it is replaced rather than cleared
+      memtable = new TreeMap<Object, Object>(cmp);
+      flushedSize = size;
+      writeManifest();
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot flush to " + dir, e);
+    }
+    if (compaction == null && tables.size() >= COMPACT_TABLES) {
+      startCompaction();
+    }
+  }
+
+  /**
+   * Flushes the memtable and merges all the tables into one, dropping the tombstones and
+   * the entries they hide.
+   */
+  public void compact() {
+    flush();
+    finishCompaction();
+    if (tables.size() > 1) {
+      startCompaction();
+      finishCompaction();
+    }
+  }
+
+  /**
+   * Flushes the memtable, waits for a running compaction and closes the tables.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    flush();
+    finishCompaction();
+    if (executor != null) {
+      executor.shutdown();
+    }
+    for (SSTable table : tables) {
+      table.close();
+    }
+    closed = true;
+  }
+
+  @Override
+  public Comparator<? super K> comparator() {
+    return comparator;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V get(Object key) {
+    checkKey(key);
+    ensureOpen();
+    maybeInstall();
+    return (V) lookup(key);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V put(K key, V value) {
+    checkKey(key);
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    ensureOpen();
+    maybeInstall();
+    Object previous = memtable.put(key, value);
+    if (previous == null) {
+      previous = lookupTables(key);
+    }
+    if (previous == null || previous == SSTable.TOMBSTONE) {
+      previous = null;
+      size++;
+    }
+    if (memtable.size() >= memtableSize) {
+      flush();
+    }
+    return (V) previous;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public V remove(Object key) {
+    checkKey(key);
+    ensureOpen();
+    maybeInstall();
+    Object previous = lookup(key);
+    if (previous == null) {
+      return null;
+    }
+    size--;
+    if (tables.isEmpty()) {
+      memtable.remove(key);
+    } else {
+      memtable.put(key, SSTable.TOMBSTONE);
+      if (memtable.size() >= memtableSize) {
+        flush();
+      }
+    }
+    return (V) previous;
+  }
+
+  @Override
+  public void clear() {
+    ensureOpen();
+    finishCompaction();
+    List<SSTable> old = tables;
+    tables = Collections.emptyList();
+    memtable = new TreeMap<Object, Object>(cmp);
+    size = 0;
+    flushedSize = 0;
+    try {
+      writeManifest();
+      delete(old);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot clear " + dir, e);
+    }
+  }
+
+  @Override
+  public Map.Entry<K, V> firstEntry() {
+    return first(entryIterator(null, true, false));
+  }
+
+  @Override
+  public Map.Entry<K, V> lastEntry() {
+    return first(entryIterator(null, true, true));
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  Map.Entry<K, V> findEntry(Object key, int rel) {
+    Map.Entry<K, V> e = first(entryIterator((K) key, (rel & EQ) != 0, (rel & LT) != 0));
+    if (rel == EQ && e != null && cmp.compare(e.getKey(), key) != 0) {
+      return null;
+    }
+    return e;
+  }
+
+  @Override
+  Iterator<Map.Entry<K, V>> entryIterator(K from, boolean inclusive, boolean descending) {
+    ensureOpen();
+    maybeInstall();
+    List<Iterator<Map.Entry<Object, Object>>> sources = new ArrayList<>(tables.size() + 1);
+    NavigableMap<Object, Object> m = memtable;
+    if (from != null) {
+      m = descending ? m.headMap(from, inclusive) : m.tailMap(from, inclusive);
+    }
+    sources.add((descending ? m.descendingMap() : m).entrySet().iterator());
+    for (SSTable table : tables) {
+      sources.add(table.iterator(from, inclusive, descending));
+    }
+    return new MergeIterator<K, V>(sources, descending ? Collections.reverseOrder(cmp) : cmp);
+  }
+
+  /**
+   * Returns the value of key, or null if it is absent or removed.
+   */
+  private Object lookup(Object key) {
+    Object value = memtable.get(key);
+    if (value == null) {
+      value = lookupTables(key);
+    }
+    return value == SSTable.TOMBSTONE ? null : value;
+  }
+
+  /**
+   * Returns the value of key in the newest table that has it, TOMBSTONE, or null.
+   */
+  private Object lookupTables(Object key) {
+    for (SSTable table : tables) {
+      Object value = table.get(key);
+      if (value != null) {
+        return value;
+      }
+    }
+    return null;
+  }
+
+  private static <K, V> Map.Entry<K, V> first(Iterator<Map.Entry<K, V>> it) {
+    return it.hasNext() ? it.next() : null;
+  }
+
+  private void ensureOpen() {
+    if (closed) {
+      throw new IllegalStateException("Map is closed");
+    }
+  }
+
+  private File file(long generation) {
+    return new File(dir, generation + SUFFIX);
+  }
+
+  /**
+   * Merges the current tables into a new one on the background thread.  As the tables are
+   * the oldest ones, the merged table needs no tombstones.
+   */
+  private void startCompaction() {
+    if (executor == null) {
+      executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "SSTableMap compaction " + dir.getName());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    final List<SSTable> inputs = tables;
+    final File file = file(nextGeneration++);
+    compacting = inputs;
+    compaction = executor.submit(new Callable<SSTable>() {
+      @Override
+      public SSTable call() throws IOException {
+        List<Iterator<Map.Entry<Object, Object>>> sources = new ArrayList<>(inputs.size());
+        for (SSTable table : inputs) {
+          sources.add(table.iterator(null, true, false));
+        }
+        if (SSTable.write(file, new MergeIterator<Object, Object>(sources, cmp), keys, values,
+            INTERVAL, segmentSize) == 0) {
+          Files.delete(file.toPath());
+          return null;
+        }
+        return new SSTable(file, keys, values, cmp);
+      }
+    });
+  }
+
+  private void maybeInstall() {
+    if (compaction != null && compaction.isDone()) {
+      finishCompaction();
+    }
+  }
+
+  /**
+   * Waits for the running compaction, if any, and replaces its input tables with its output.
+   */
+  private void finishCompaction() {
+    if (compaction == null) {
+      return;
+    }
+    SSTable merged;
+    try {
+      merged = compaction.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted waiting for compaction", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Cannot compact " + dir, e.getCause());
+    } finally {
+      compaction = null;
+    }
+    List<SSTable> list = new ArrayList<SSTable>(tables.subList(0, tables.size() - compacting.size()));
+    if (merged != null) {
+      list.add(merged);
+    }
+    List<SSTable> old = compacting;
+    tables = list;
+    compacting = null;
+    try {
+      writeManifest();
+      // The mappings of the old tables outlive their files, for the iterators still reading them
+      delete(old);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot install compacted table in " + dir, e);
+    }
+  }
+
+  private static void delete(List<SSTable> old) throws IOException {
+    for (SSTable table : old) {
+      table.close();
+      Files.deleteIfExists(table.file.toPath());
+    }
+  }
+
+  /**
+   * Reads the manifest, opens the tables it lists, and deletes the files it does not list,
+   * left by a flush or compaction that did not finish.
+   */
+  private void open() throws IOException {
+    File manifest = new File(dir, MANIFEST);
+    List<String> names = new ArrayList<String>();
+    names.add(MANIFEST);
+    List<SSTable> list = new ArrayList<SSTable>();
+    if (manifest.exists()) {
+      try (DataInputStream in = new DataInputStream(new FileInputStream(manifest))) {
+        if (in.readInt() != MANIFEST_MAGIC) {
+          throw new IOException("Not a manifest: " + manifest);
+        }
+        size = in.readInt();
+        nextGeneration = in.readLong();
+        for (int n = in.readInt(); n > 0; n--) {
+          File file = file(in.readLong());
+          names.add(file.getName());
+          list.add(new SSTable(file, keys, values, cmp));
+        }
+      } catch (IOException e) {
+        for (SSTable table : list) {
+          table.close();
+        }
+        throw e;
+      }
+    }
+    tables = list;
+    flushedSize = size;
+    File[] files = dir.listFiles();
+    for (File file : files) {
+      if (!names.contains(file.getName()) && (file.getName().endsWith(SUFFIX) || file.getName().startsWith(MANIFEST))) {
+        Files.delete(file.toPath());
+      }
+    }
+  }
+
+  private void writeManifest() throws IOException {
+    File tmp = new File(dir, MANIFEST + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(tmp)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+      out.writeInt(MANIFEST_MAGIC);
+      out.writeInt(flushedSize);
+      out.writeLong(nextGeneration);
+      out.writeInt(tables.size());
+      for (SSTable table : tables) {
+        String name = table.file.getName();
+        out.writeLong(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+      }
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(tmp.toPath(), new File(dir, MANIFEST).toPath(), StandardCopyOption.ATOMIC_MOVE,
+      StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Merges sources, each sorted by cmp, of which the first is the newest: of the entries with
+   * the same key, the one of the newest source wins, and tombstones are skipped.
+   */
+  private static final class MergeIterator<K, V> implements Iterator<Map.Entry<K, V>> {
+
+    private final List<Iterator<Map.Entry<Object, Object>>> sources;
+    private final Comparator<Object> cmp;
+    private final Map.Entry<?, ?>[] heads;
+    private Map.Entry<K, V> next;
+
+    MergeIterator(List<Iterator<Map.Entry<Object, Object>>> sources, Comparator<Object> cmp) {
+      this.sources = sources;
+      this.cmp = cmp;
+      heads = new Map.Entry<?, ?>[sources.size()];
+      for (int i = 0; i < heads.length; i++) {
+        advance(i);
+      }
+      next = fetch();
+    }
+
+    private void advance(int i) {
+      Iterator<Map.Entry<Object, Object>> it = sources.get(i);
+      heads[i] = it.hasNext() ? it.next() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map.Entry<K, V> fetch() {
+      while (true) {
+        Map.Entry<?, ?> min = null;
+        for (Map.Entry<?, ?> head : heads) {
+          if (head != null && (min == null || cmp.compare(head.getKey(), min.getKey()) < 0)) {
+            min = head;
+          }
+        }
+        if (min == null) {
+          return null;
+        }
+        Object key = min.getKey();
+        Object value = min.getValue();
+        for (int i = 0; i < heads.length; i++) {
+          if (heads[i] != null && cmp.compare(heads[i].getKey(), key) == 0) {
+            advance(i);
+          }
+        }
+        if (value != SSTable.TOMBSTONE) {
+          return snapshot((K) key, (V) value);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public Map.Entry<K, V> next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      Map.Entry<K, V> e = next;
+      next = fetch();
+      return e;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
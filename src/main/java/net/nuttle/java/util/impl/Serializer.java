@@ -0,0 +1,30 @@
+package net.nuttle.java.util.impl;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes objects of type T as bytes, and reads them back from a buffer, such as a mapping of the
+ * file they were written to.  Serializers for common types are in Serializers.
+ * @author dan
+ *
+ * @param <T>
+ */
+public interface Serializer<T> {
+
+  /**
+   * Writes value to out.
+   * @param value
+   * @param out
+   * @throws IOException
+   */
+  void write(T value, DataOutput out) throws IOException;
+
+  /**
+   * Reads a value written by write, starting at the position of in, and leaves the position after it.
+   * @param in
+   * @return
+   */
+  T read(ByteBuffer in);
+}
@@ -0,0 +1,108 @@
+package net.nuttle.java.util.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializers for common types.
+ * @author dan
+ *
+ */
+public final class Serializers {
+
+  /**
+   * Strings, as their length in UTF-8 bytes followed by the bytes.
+   */
+  public static final Serializer<String> STRING = new Serializer<String>() {
+    @Override
+    public void write(String value, DataOutput out) throws IOException {
+      BYTES.write(value.getBytes(StandardCharsets.UTF_8), out);
+    }
+
+    @Override
+    public String read(ByteBuffer in) {
+      return new String(BYTES.read(in), StandardCharsets.UTF_8);
+    }
+  };
+
+  /**
+   * Byte arrays, as their length followed by the bytes.
+   */
+  public static final Serializer<byte[]> BYTES = new Serializer<byte[]>() {
+    @Override
+    public void write(byte[] value, DataOutput out) throws IOException {
+      out.writeInt(value.length);
+      out.write(value);
+    }
+
+    @Override
+    public byte[] read(ByteBuffer in) {
+      byte[] bytes = new byte[in.getInt()];
+      in.get(bytes);
+      return bytes;
+    }
+  };
+
+  public static final Serializer<Integer> INTEGER = new Serializer<Integer>() {
+    @Override
+    public void write(Integer value, DataOutput out) throws IOException {
+      out.writeInt(value);
+    }
+
+    @Override
+    public Integer read(ByteBuffer in) {
+      return in.getInt();
+    }
+  };
+
+  public static final Serializer<Long> LONG = new Serializer<Long>() {
+    @Override
+    public void write(Long value, DataOutput out) throws IOException {
+      out.writeLong(value);
+    }
+
+    @Override
+    public Long read(ByteBuffer in) {
+      return in.getLong();
+    }
+  };
+
+  private static final Serializer<Object> JAVA = new Serializer<Object>() {
+    @Override
+    public void write(Object value, DataOutput out) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      try (ObjectOutputStream objects = new ObjectOutputStream(bytes)) {
+        objects.writeObject(value);
+      }
+      BYTES.write(bytes.toByteArray(), out);
+    }
+
+    @Override
+    public Object read(ByteBuffer in) {
+      try (ObjectInputStream objects = new ObjectInputStream(new ByteArrayInputStream(BYTES.read(in)))) {
+        return objects.readObject();
+      } catch (IOException | ClassNotFoundException e) {
+        throw new IllegalStateException("Cannot deserialize value", e);
+      }
+    }
+  };
+
+  private Serializers() {
+  }
+
+  /**
+   * Returns a serializer of Serializable objects that uses Java serialization, which is compact
+   * neither in time nor in space, but works for any such type.
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public static <T> Serializer<T> java() {
+    return (Serializer<T>) JAVA;
+  }
+}
@@ -0,0 +1,310 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * A bounded, lock-free Queue for exactly one producer thread and one consumer thread, such as two
+ * stages of a pipeline.  The elements live in an array whose capacity is a power of two, indexed
+ * by two counters: the producer alone writes the tail, and the consumer alone the head.
+ * Each publishes its counter with an ordered store (lazySet), after writing (or clearing) the slot,
+ * which is cheaper than the full fence of a volatile store, and caches the last value it read of
+ * the other's counter, so that it reads the other's cache line only when the queue looks full
+ * (or empty).  The counters and the caches are padded apart, so the two threads never write
+ * the same cache line.
+ * <p>
+ * offer, fill and the insertion methods of Queue may only be called by the producer, and poll,
+ * peek, drain and the removal methods only by the consumer.  size, isEmpty and iterator may be
+ * called from any thread; the iterator is weakly consistent and does not support remove, nor
+ * therefore does remove(Object).
+ * Null elements are not allowed.
+ * @author dan
+ *
+ * @param <E>
+ */
+public class SpscRingBuffer<E> extends SpscConsumerFields<E> {
+
+  long p30, p31, p32, p33, p34, p35, p36, p37;
+
+  /**
+   * Creates a buffer that holds capacity elements, rounded up to a power of two.
+   * @param capacity
+   */
+  public SpscRingBuffer(int capacity) {
+    super(capacity);
+  }
+
+  /**
+   * Returns the number of elements the buffer holds.
+   * @return
+   */
+  public int capacity() {
+    return buffer.length;
+  }
+
+  /**
+   * Adds e, unless the buffer is full.  Producer only.
+   */
+  @Override
+  public boolean offer(E e) {
+    if (e == null) {
+      throw new NullPointerException();
+    }
+    long t = tail;
+    if (t - headCache >= buffer.length) {
+      headCache = head;
+      if (t - headCache >= buffer.length) {
+        return false;
+      }
+    }
+    buffer[(int) t & mask] = e;
+    TAIL.lazySet(this, t + 1);
+    return true;
+  }
+
+  /**
+   * Adds up to limit elements from supplier, as many as there is room for, and returns their number.
+   * The elements are published together, with one ordered store.  Producer only.
+   * @param supplier
+   * @param limit
+   * @return
+   * @throws IllegalArgumentException if limit is negative
+   */
+  public int fill(Supplier<? extends E> supplier, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("negative limit: " + limit);
+    }
+    long t = tail;
+    long free = buffer.length - (t - headCache);
+    if (free < limit) {
+      headCache = head;
+      free = buffer.length - (t - headCache);
+    }
+    int n = (int) Math.min(free, limit);
+    for (int i = 0; i < n; i++) {
+      E e = supplier.get();
+      if (e == null) {
+        TAIL.lazySet(this, t + i);
+        throw new NullPointerException();
+      }
+      buffer[(int) (t + i) & mask] = e;
+    }
+    TAIL.lazySet(this, t + n);
+    return n;
+  }
+
+  /**
+   * Removes and returns the head of the buffer, or null if it is empty.  Consumer only.
+   */
+  @Override
+  public E poll() {
+    long h = head;
+    if (h >= tailCache) {
+      tailCache = tail;
+      if (h >= tailCache) {
+        return null;
+      }
+    }
+    int index = (int) h & mask;
+    @SuppressWarnings("unchecked")
+    E e = (E) buffer[index];
+    buffer[index] = null;
+    HEAD.lazySet(this, h + 1);
+    return e;
+  }
+
+  /**
+   * Returns the head of the buffer, or null if it is empty.  Consumer only.
+   */
+  @Override
+  @SuppressWarnings("unchecked")
+  public E peek() {
+    long h = head;
+    if (h >= tailCache) {
+      tailCache = tail;
+      if (h >= tailCache) {
+        return null;
+      }
+    }
+    return (E) buffer[(int) h & mask];
+  }
+
+  /**
+   * Removes up to limit elements, passing each to consumer, and returns their number.
+   * The slots are released together, with one ordered store.  Consumer only.
+   * @param consumer
+   * @param limit
+   * @return
+   * @throws IllegalArgumentException if limit is negative
+   */
+  public int drain(Consumer<? super E> consumer, int limit) {
+    if (limit < 0) {
+      throw new IllegalArgumentException("negative limit: " + limit);
+    }
+    long h = head;
+    long available = tailCache - h;
+    if (available < limit) {
+      tailCache = tail;
+      available = tailCache - h;
+    }
+    int n = (int) Math.min(available, limit);
+    int i = 0;
+    try {
+      while (i < n) {
+        int index = (int) (h + i) & mask;
+        @SuppressWarnings("unchecked")
+        E e = (E) buffer[index];
+        buffer[index] = null;
+        i++;
+        consumer.accept(e);
+      }
+    } finally {
+      // Release the slots consumed so far, even if accept threw
+      HEAD.lazySet(this, h + i);
+    }
+    return n;
+  }
+
+  /**
+   * Removes all the elements available, passing each to consumer, and returns their number.  Consumer only.
+   * @param consumer
+   * @return
+   */
+  public int drain(Consumer<? super E> consumer) {
+    return drain(consumer, buffer.length);
+  }
+
+  @Override
+  public int size() {
+    while (true) {
+      long h = head;
+      long t = tail;
+      if (h == head) {
+        return (int) Math.max(0, Math.min(t - h, buffer.length));
+      }
+    }
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return head >= tail;
+  }
+
+  /**
+   * Returns a weakly consistent iterator over the elements, from head to tail,
+   * which does not support remove.
+   */
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      private long index = head;
+      private final long end = tail;
+      private E next = advance();
+
+      @SuppressWarnings("unchecked")
+      private E advance() {
+        while (index < end) {
+          Object e = buffer[(int) index++ & mask];
+          // A null slot was consumed since the iterator started
+          if (e != null) {
+            return (E) e;
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public boolean hasNext() {
+        return next != null;
+      }
+
+      @Override
+      public E next() {
+        if (next == null) {
+          throw new NoSuchElementException();
+        }
+        E e = next;
+        next = advance();
+        return e;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+}
+
+/**
+ * The fields of SpscRingBuffer, spread over a class hierarchy with padding classes between them,
+ * as the JVM lays out the fields of a superclass before those of its subclasses: the fields written
+ * by the producer and those written by the consumer each have 64 bytes of padding on both sides.
+ */
+abstract class SpscFields<E> extends AbstractQueue<E> {
+
+  final Object[] buffer;
+  final int mask;
+
+  SpscFields(int capacity) {
+    if (capacity <= 0 || capacity > 1 << 30) {
+      throw new IllegalArgumentException("capacity out of range: " + capacity);
+    }
+    buffer = new Object[capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1];
+    mask = buffer.length - 1;
+  }
+}
+
+abstract class SpscPad1<E> extends SpscFields<E> {
+
+  long p10, p11, p12, p13, p14, p15, p16, p17;
+
+  SpscPad1(int capacity) {
+    super(capacity);
+  }
+}
+
+abstract class SpscProducerFields<E> extends SpscPad1<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<SpscProducerFields> TAIL =
+    AtomicLongFieldUpdater.newUpdater(SpscProducerFields.class, "tail");
+
+  volatile long tail;
+  /**
+   * The head, as last read by the producer.
+   */
+  long headCache;
+
+  SpscProducerFields(int capacity) {
+    super(capacity);
+  }
+}
+
+abstract class SpscPad2<E> extends SpscProducerFields<E> {
+
+  long p20, p21, p22, p23, p24, p25, p26, p27;
+
+  SpscPad2(int capacity) {
+    super(capacity);
+  }
+}
+
+abstract class SpscConsumerFields<E> extends SpscPad2<E> {
+
+  @SuppressWarnings("rawtypes")
+  static final AtomicLongFieldUpdater<SpscConsumerFields> HEAD =
+    AtomicLongFieldUpdater.newUpdater(SpscConsumerFields.class, "head");
+
+  volatile long head;
+  /**
+   * The tail, as last read by the consumer.
+   */
+  long tailCache;
+
+  SpscConsumerFields(int capacity) {
+    super(capacity);
+  }
+}
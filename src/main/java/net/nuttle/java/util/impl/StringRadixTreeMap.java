@@ -0,0 +1,73 @@
+package net.nuttle.java.util.impl;
+
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * A NavigableMap of String keys stored as an adaptive radix tree (see AbstractRadixTreeMap).
+ * Suits long keys with shared prefixes, such as URLs and paths: a lookup costs one step per
+ * branching character instead of a compareTo of the whole key per level of a TreeMap, and
+ * prefixMap("/api/v2/") scans just the keys under that prefix.
+ * <p>
+ * Keys are ordered as by String.compareTo.  To keep that order in bytes, a char below 0x7F is
+ * encoded as one byte, and any other char as 3 bytes, the first of them 0x7F or above,
+ * so that ASCII keys take a byte per char.
+ * @author dan
+ *
+ * @param <V>
+ */
+public class StringRadixTreeMap<V> extends AbstractRadixTreeMap<String, V> {
+
+  /**
+   * Creates an empty map.
+   */
+  public StringRadixTreeMap() {
+  }
+
+  /**
+   * Creates a map with the entries of m.
+   * @param m
+   */
+  public StringRadixTreeMap(Map<String, ? extends V> m) {
+    putAll(m);
+  }
+
+  @Override
+  public Comparator<? super String> comparator() {
+    return null;
+  }
+
+  @Override
+  byte[] encode(Object key) {
+    String s = (String) key;
+    int n = s.length();
+    int length = n;
+    for (int i = 0; i < n; i++) {
+      if (s.charAt(i) >= 0x7F) {
+        length += 2;
+      }
+    }
+    byte[] bytes = new byte[length];
+    int j = 0;
+    for (int i = 0; i < n; i++) {
+      char c = s.charAt(i);
+      if (c < 0x7F) {
+        bytes[j++] = (byte) c;
+      } else {
+        bytes[j++] = (byte) (0x7F + (c >>> 14));
+        bytes[j++] = (byte) ((c >>> 7) & 0x7F);
+        bytes[j++] = (byte) (c & 0x7F);
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  String successor(String prefix) {
+    int i = prefix.length() - 1;
+    while (i >= 0 && prefix.charAt(i) == Character.MAX_VALUE) {
+      i--;
+    }
+    return i < 0 ? null : prefix.substring(0, i) + (char) (prefix.charAt(i) + 1);
+  }
+}
@@ -0,0 +1,616 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent hash map with lock-striped writes and lock-free reads.
+ * The keys are split by hash into a fixed number of stripes, each with its own lock, table and count.
+ * Writers lock only their stripe, so writers of different stripes never contend,
+ * and a stripe grows on its own without stopping the others.
+ * Readers take no lock at all: chains are made of nodes with a final key and volatile value and next,
+ * and a writer publishes a new node, or a grown table, only once it is complete.
+ * Each stripe counts its own entries under its lock, so size() just sums the counts
+ * (like a LongAdder, whose cells are the stripes), and no write touches a shared counter.
+ * As in a LongAdder, the cells are padded, so that writers of different stripes share no cache line
+ * either, at a cost of 128 bytes per stripe.
+ * As with ConcurrentHashMap, null keys and values are not allowed,
+ * iterators are weakly consistent (they never throw ConcurrentModificationException),
+ * and size() is only exact when no writes are in progress.
+ * @author dan
+ *
+ * @param <K>
+ * @param <V>
+ */
+public class StripedHashMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+  private static final int DEFAULT_STRIPES = 64;
+  private static final int MAX_STRIPES = 1 << 16;
+  private static final int MAX_TABLE = 1 << 30;
+  private static final float LOAD_FACTOR = 0.75f;
+
+  private final Stripe<K, V>[] stripes;
+  private final int stripeShift;
+
+  private Set<K> keySet;
+  private Collection<V> valuesView;
+  private Set<Map.Entry<K, V>> entrySet;
+
+  /**
+   * Creates an empty map with 64 stripes.
+   */
+  public StripedHashMap() {
+    this(16, DEFAULT_STRIPES);
+  }
+
+  /**
+   * Creates an empty map.
+   * @param expected number of entries the map holds without growing (if spread evenly over the stripes)
+   * @param concurrency number of stripes, rounded up to a power of two; the number of writers that
+   * can proceed in parallel
+   */
+  @SuppressWarnings("unchecked")
+  public StripedHashMap(int expected, int concurrency) {
+    if (expected < 0 || concurrency <= 0) {
+      throw new IllegalArgumentException("Illegal size or concurrency: " + expected + ", " + concurrency);
+    }
+    int n = 1;
+    int bits = 0;
+    while (n < concurrency && n < MAX_STRIPES) {
+      n <<= 1;
+      bits++;
+    }
+    stripeShift = 32 - bits;
+    stripes = (Stripe<K, V>[]) new Stripe<?, ?>[n];
+    int perStripe = (int) Math.ceil(expected / (double) n / LOAD_FACTOR);
+    int capacity = 2;
+    while (capacity < perStripe && capacity < MAX_TABLE) {
+      capacity <<= 1;
+    }
+    for (int i = 0; i < n; i++) {
+      stripes[i] = new Stripe<K, V>(capacity);
+    }
+  }
+
+  /**
+   * Creates a map with the same entries as m.
+   * @param m
+   */
+  public StripedHashMap(Map<? extends K, ? extends V> m) {
+    this(m.size(), DEFAULT_STRIPES);
+    putAll(m);
+  }
+
+  /**
+   * Returns the sum of the stripe counts, saturated at Integer.MAX_VALUE.
+   */
+  @Override
+  public int size() {
+    long sum = 0;
+    for (Stripe<K, V> stripe : stripes) {
+      sum += stripe.count;
+    }
+    return sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (Stripe<K, V> stripe : stripes) {
+      if (stripe.count != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    int hash = hash(key);
+    return stripeFor(hash).find(key, hash) != null;
+  }
+
+  @Override
+  public boolean containsValue(Object value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+    for (Stripe<K, V> stripe : stripes) {
+      AtomicReferenceArray<Node<K, V>> table = stripe.table;
+      for (int i = 0; i < table.length(); i++) {
+        for (Node<K, V> node = table.get(i); node != null; node = node.next) {
+          if (value.equals(node.value)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public V get(Object key) {
+    int hash = hash(key);
+    Node<K, V> node = stripeFor(hash).find(key, hash);
+    return node == null ? null : node.value;
+  }
+
+  @Override
+  public V put(K key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).put(key, hash, value, false);
+  }
+
+  @Override
+  public V putIfAbsent(K key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).put(key, hash, value, true);
+  }
+
+  @Override
+  public V remove(Object key) {
+    int hash = hash(key);
+    return stripeFor(hash).remove(key, hash, null);
+  }
+
+  @Override
+  public boolean remove(Object key, Object value) {
+    int hash = hash(key);
+    return value != null && stripeFor(hash).remove(key, hash, value) != null;
+  }
+
+  @Override
+  public boolean replace(K key, V oldValue, V newValue) {
+    checkValue(oldValue);
+    checkValue(newValue);
+    int hash = hash(key);
+    return stripeFor(hash).replace(key, hash, oldValue, newValue) != null;
+  }
+
+  @Override
+  public V replace(K key, V value) {
+    checkValue(value);
+    int hash = hash(key);
+    return stripeFor(hash).replace(key, hash, null, value);
+  }
+
+  /**
+   * Removes all entries, one stripe at a time (so concurrent puts to other stripes may survive).
+   */
+  @Override
+  public void clear() {
+    for (Stripe<K, V> stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  @Override
+  public Set<K> keySet() {
+    if (keySet == null) {
+      keySet = new KeySet();
+    }
+    return keySet;
+  }
+
+  @Override
+  public Collection<V> values() {
+    if (valuesView == null) {
+      valuesView = new Values();
+    }
+    return valuesView;
+  }
+
+  @Override
+  public Set<Map.Entry<K, V>> entrySet() {
+    if (entrySet == null) {
+      entrySet = new EntrySet();
+    }
+    return entrySet;
+  }
+
+  private static void checkValue(Object value) {
+    if (value == null) {
+      throw new NullPointerException();
+    }
+  }
+
+  /**
+   * Returns the mixed hash of key.  The high bits select the stripe, and the low bits the bucket.
+   * @throws NullPointerException if key is null
+   */
+  private static int hash(Object key) {
+    int h = key.hashCode() * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private Stripe<K, V> stripeFor(int hash) {
+    //An int shift by 32 is a shift by 0, so a single stripe needs its own case
+    return stripes.length == 1 ? stripes[0] : stripes[hash >>> stripeShift];
+  }
+
+  /**
+   * A node of a bucket chain.  Only value and next change, and both are volatile,
+   * so a reader always sees a complete node.
+   */
+  static final class Node<K, V> {
+
+    final int hash;
+    final K key;
+    volatile V value;
+    volatile Node<K, V> next;
+
+    Node(int hash, K key, V value, Node<K, V> next) {
+      this.hash = hash;
+      this.key = key;
+      this.value = value;
+      this.next = next;
+    }
+  }
+
+  /**
+   * Padding laid out before the fields of a stripe.  The JVM lays out the fields of a superclass
+   * before those of its subclasses, so StripePad, StripeFields and Stripe put 64 bytes on either
+   * side of a stripe's count and table, and the writers of two stripes, allocated one after another,
+   * do not write the same cache line.  The lock state, in the ReentrantLock's own Sync object,
+   * is allocated right after its stripe, so it is kept apart from the next stripe's fields too.
+   */
+  @SuppressWarnings("serial")
+  abstract static class StripePad extends ReentrantLock {
+
+    long p00, p01, p02, p03, p04, p05, p06, p07;
+  }
+
+  @SuppressWarnings("serial")
+  abstract static class StripeFields<K, V> extends StripePad {
+
+    volatile AtomicReferenceArray<Node<K, V>> table;
+    volatile int count;
+    int threshold;
+  }
+
+  /**
+   * One stripe: a chained hash table whose writers hold the stripe lock.
+   */
+  @SuppressWarnings("serial")
+  static final class Stripe<K, V> extends StripeFields<K, V> {
+
+    long p10, p11, p12, p13, p14, p15, p16, p17;
+
+    Stripe(int capacity) {
+      table = new AtomicReferenceArray<Node<K, V>>(capacity);
+      threshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    Node<K, V> find(Object key, int hash) {
+      AtomicReferenceArray<Node<K, V>> table = this.table;
+      for (Node<K, V> node = table.get(hash & (table.length() - 1)); node != null; node = node.next) {
+        if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+          return node;
+        }
+      }
+      return null;
+    }
+
+    V put(K key, int hash, V value, boolean onlyIfAbsent) {
+      lock();
+      try {
+        Node<K, V> node = find(key, hash);
+        if (node != null) {
+          V previous = node.value;
+          if (!onlyIfAbsent) {
+            node.value = value;
+          }
+          return previous;
+        }
+        if (count >= threshold) {
+          grow();
+        }
+        AtomicReferenceArray<Node<K, V>> table = this.table;
+        int index = hash & (table.length() - 1);
+        table.set(index, new Node<K, V>(hash, key, value, table.get(index)));
+        count++;
+        return null;
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Removes key, if its value equals expected (or always, if expected is null),
+     * and returns the removed value, or null.
+     */
+    V remove(Object key, int hash, Object expected) {
+      lock();
+      try {
+        AtomicReferenceArray<Node<K, V>> table = this.table;
+        int index = hash & (table.length() - 1);
+        Node<K, V> pred = null;
+        for (Node<K, V> node = table.get(index); node != null; pred = node, node = node.next) {
+          if (node.hash == hash && (node.key == key || key.equals(node.key))) {
+            V value = node.value;
+            if (expected != null && !expected.equals(value)) {
+              return null;
+            }
+            //A reader standing on node still finds the rest of the chain through node.next
+            if (pred == null) {
+              table.set(index, node.next);
+            } else {
+              pred.next = node.next;
+            }
+            count--;
+            return value;
+          }
+        }
+        return null;
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Replaces the value of key, if present and equal to expected (or always, if expected is null),
+     * and returns the previous value, or null.
+     */
+    V replace(K key, int hash, V expected, V value) {
+      lock();
+      try {
+        Node<K, V> node = find(key, hash);
+        if (node == null || (expected != null && !expected.equals(node.value))) {
+          return null;
+        }
+        V previous = node.value;
+        node.value = value;
+        return previous;
+      } finally {
+        unlock();
+      }
+    }
+
+    void clear() {
+      lock();
+      try {
+        if (count > 0) {
+          table = new AtomicReferenceArray<Node<K, V>>(table.length());
+          count = 0;
+        }
+      } finally {
+        unlock();
+      }
+    }
+
+    /**
+     * Doubles the table.  The nodes are copied, not relinked, so that readers of the old table
+     * are not disturbed, and the new table is published only when it is complete.
+     */
+    private void grow() {
+      AtomicReferenceArray<Node<K, V>> old = table;
+      int capacity = old.length();
+      if (capacity >= MAX_TABLE) {
+        return;
+      }
+      AtomicReferenceArray<Node<K, V>> grown = new AtomicReferenceArray<Node<K, V>>(capacity << 1);
+      int mask = (capacity << 1) - 1;
+      for (int i = 0; i < capacity; i++) {
+        for (Node<K, V> node = old.get(i); node != null; node = node.next) {
+          int index = node.hash & mask;
+          grown.set(index, new Node<K, V>(node.hash, node.key, node.value, grown.get(index)));
+        }
+      }
+      threshold = (int) ((capacity << 1) * LOAD_FACTOR);
+      table = grown;
+    }
+  }
+
+  /**
+   * Walks the stripes and buckets of the tables current at the time each stripe is reached.
+   * It sees every entry present for the whole iteration, and may or may not see the others.
+   */
+  private abstract class StripeIterator<E> implements Iterator<E> {
+
+    private int stripe = -1;
+    private AtomicReferenceArray<Node<K, V>> table;
+    private int bucket;
+    private Node<K, V> next;
+    private Node<K, V> last;
+
+    StripeIterator() {
+      advance();
+    }
+
+    private void advance() {
+      if (next != null) {
+        next = next.next;
+      }
+      while (next == null) {
+        if (table == null || bucket >= table.length()) {
+          if (++stripe >= stripes.length) {
+            return;
+          }
+          table = stripes[stripe].table;
+          bucket = 0;
+        } else {
+          next = table.get(bucket++);
+        }
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public E next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      advance();
+      return element(last);
+    }
+
+    @Override
+    public void remove() {
+      if (last == null) {
+        throw new IllegalStateException();
+      }
+      StripedHashMap.this.remove(last.key);
+      last = null;
+    }
+
+    abstract E element(Node<K, V> node);
+  }
+
+  private final class KeyIterator extends StripeIterator<K> {
+    @Override
+    K element(Node<K, V> node) {
+      return node.key;
+    }
+  }
+
+  private final class ValueIterator extends StripeIterator<V> {
+    @Override
+    V element(Node<K, V> node) {
+      return node.value;
+    }
+  }
+
+  private final class EntryIterator extends StripeIterator<Map.Entry<K, V>> {
+    @Override
+    Map.Entry<K, V> element(Node<K, V> node) {
+      return new Entry(node.key, node.value);
+    }
+  }
+
+  /**
+   * An entry returned by the entry set iterator.  setValue writes through to the map.
+   */
+  private final class Entry extends AbstractMap.SimpleEntry<K, V> {
+
+    private static final long serialVersionUID = 1L;
+
+    Entry(K key, V value) {
+      super(key, value);
+    }
+
+    @Override
+    public V setValue(V value) {
+      checkValue(value);
+      put(getKey(), value);
+      return super.setValue(value);
+    }
+  }
+
+  private final class KeySet extends AbstractSet<K> {
+
+    @Override
+    public Iterator<K> iterator() {
+      return new KeyIterator();
+    }
+
+    @Override
+    public int size() {
+      return StripedHashMap.this.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return StripedHashMap.this.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsKey(o);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      return StripedHashMap.this.remove(o) != null;
+    }
+
+    @Override
+    public void clear() {
+      StripedHashMap.this.clear();
+    }
+  }
+
+  private final class Values extends AbstractCollection<V> {
+
+    @Override
+    public Iterator<V> iterator() {
+      return new ValueIterator();
+    }
+
+    @Override
+    public int size() {
+      return StripedHashMap.this.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return StripedHashMap.this.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      return containsValue(o);
+    }
+
+    @Override
+    public void clear() {
+      StripedHashMap.this.clear();
+    }
+  }
+
+  private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+    @Override
+    public Iterator<Map.Entry<K, V>> iterator() {
+      return new EntryIterator();
+    }
+
+    @Override
+    public int size() {
+      return StripedHashMap.this.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return StripedHashMap.this.isEmpty();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      V value = e.getKey() == null ? null : get(e.getKey());
+      return value != null && value.equals(e.getValue());
+    }
+
+    @Override
+    public boolean remove(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+      return e.getKey() != null && StripedHashMap.this.remove(e.getKey(), e.getValue());
+    }
+
+    @Override
+    public void clear() {
+      StripedHashMap.this.clear();
+    }
+  }
+}
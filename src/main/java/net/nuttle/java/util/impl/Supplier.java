@@ -0,0 +1,16 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * Supplies the elements that fill a queue, as java.util.function.Supplier does from Java 8.
+ * @author dan
+ *
+ * @param <E>
+ */
+public interface Supplier<E> {
+
+  /**
+   * Returns the next element, which must not be null.
+   * @return
+   */
+  E get();
+}
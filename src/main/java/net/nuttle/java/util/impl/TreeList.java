@@ -0,0 +1,528 @@
+package net.nuttle.java.util.impl;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A List stored as a B+tree indexed by position, so that get, set, add(int, E) and remove(int)
+ * take O(log n) time anywhere in the list, where ArrayList shifts the elements after the index
+ * and LinkedList walks to it.
+ * Elements live in leaves of up to 64, held in arrays and linked both ways, so that iteration
+ * reads consecutive array slots.  Inner nodes hold up to 64 children and the number of elements
+ * under each, and a lookup subtracts those counts on its way down, so a million elements take
+ * 4 levels.  Nodes are kept at least half full, as in BTreeMap, except that elements appended
+ * at the end fill their leaf before starting a new one, so a list built by add(E) has full leaves;
+ * a short last leaf is topped up from its neighbor, or merged with it, once it loses an element.
+ * <p>
+ * The list iterator moves along the leaves in either direction in constant time, and its add,
+ * set and remove take O(log n) time.  Like ArrayList, this class allows null elements, is not
+ * thread-safe, and its iterators are fail-fast.
+ * @author dan
+ *
+ * @param <E>
+ */
+public class TreeList<E> extends AbstractList<E> {
+
+  /**
+   * Maximum number of elements in a leaf, and of children in an inner node.  Must be even.
+   */
+  static final int MAX = 64;
+  static final int MIN = MAX / 2;
+
+  private Node root;
+  private Leaf head;
+  private Leaf tail;
+  private int size;
+
+  /**
+   * Number of inner levels above the leaves.
+   */
+  private int height;
+
+  /**
+   * The inner nodes and child indexes of the last descent, reused by add and remove,
+   * and the index within the leaf it reached.
+   */
+  private Inner[] path = new Inner[8];
+  private int[] pathIndex = new int[8];
+  private int leafIndex;
+
+  /**
+   * Creates an empty list.
+   */
+  public TreeList() {
+    clear();
+  }
+
+  /**
+   * Creates a list with the elements of c, in the order its iterator returns them.
+   * @param c
+   */
+  public TreeList(Collection<? extends E> c) {
+    this();
+    addAll(c);
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public void clear() {
+    Leaf leaf = new Leaf();
+    root = leaf;
+    head = leaf;
+    tail = leaf;
+    size = 0;
+    height = 0;
+    modCount++;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkIndex(index);
+    Node node = root;
+    for (int level = 0; level < height; level++) {
+      Inner inner = (Inner) node;
+      int i = 0;
+      while (index >= inner.counts[i]) {
+        index -= inner.counts[i++];
+      }
+      node = inner.children[i];
+    }
+    return (E) ((Leaf) node).elements[index];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E set(int index, E element) {
+    checkIndex(index);
+    Leaf leaf = descend(index, false);
+    E previous = (E) leaf.elements[leafIndex];
+    leaf.elements[leafIndex] = element;
+    return previous;
+  }
+
+  @Override
+  public boolean add(E element) {
+    add(size, element);
+    return true;
+  }
+
+  @Override
+  public void add(int index, E element) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    Leaf leaf = descend(index, true);
+    leaf.insert(leafIndex, element);
+    for (int level = 0; level < height; level++) {
+      path[level].counts[pathIndex[level]]++;
+    }
+    size++;
+    modCount++;
+    if (leaf.size > MAX) {
+      split(leaf, index == size - 1);
+    }
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E remove(int index) {
+    checkIndex(index);
+    Leaf leaf = descend(index, false);
+    E previous = (E) leaf.elements[leafIndex];
+    leaf.delete(leafIndex);
+    for (int level = 0; level < height; level++) {
+      path[level].counts[pathIndex[level]]--;
+    }
+    size--;
+    modCount++;
+    if (leaf.size < MIN && height > 0) {
+      rebalance(leaf);
+    }
+    return previous;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Itr(0);
+  }
+
+  @Override
+  public ListIterator<E> listIterator() {
+    return new Itr(0);
+  }
+
+  @Override
+  public ListIterator<E> listIterator(int index) {
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    return new Itr(index);
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * Finds the leaf holding position index, records the path to it in path and pathIndex,
+   * and the position within the leaf in leafIndex.  For an insertion, index may equal the number
+   * of elements under a child, which then takes the element at its end.
+   */
+  private Leaf descend(int index, boolean insert) {
+    if (path.length < height) {
+      path = new Inner[height * 2];
+      pathIndex = new int[height * 2];
+    }
+    Node node = root;
+    for (int level = 0; level < height; level++) {
+      Inner inner = (Inner) node;
+      int i = 0;
+      int last = inner.size - 1;
+      while (i < last && (insert ? index > inner.counts[i] : index >= inner.counts[i])) {
+        index -= inner.counts[i++];
+      }
+      path[level] = inner;
+      pathIndex[level] = i;
+      node = inner.children[i];
+    }
+    leafIndex = index;
+    return (Leaf) node;
+  }
+
+  /**
+   * Splits an overfull leaf, and then its ancestors as long as they overflow.
+   * When the element was appended to the list, the leaf is left full.
+   */
+  private void split(Leaf leaf, boolean append) {
+    Leaf right = new Leaf();
+    int keep = append ? MAX : leaf.size / 2;
+    right.size = leaf.size - keep;
+    System.arraycopy(leaf.elements, keep, right.elements, 0, right.size);
+    for (int i = keep; i < leaf.size; i++) {
+      leaf.elements[i] = null;
+    }
+    leaf.size = keep;
+    right.next = leaf.next;
+    right.prev = leaf;
+    if (leaf.next != null) {
+      leaf.next.prev = right;
+    } else {
+      tail = right;
+    }
+    leaf.next = right;
+    Node child = right;
+    int childCount = right.size;
+    for (int level = height - 1; level >= 0; level--) {
+      Inner parent = path[level];
+      int index = pathIndex[level];
+      parent.counts[index] -= childCount;
+      parent.insert(index + 1, child, childCount);
+      if (parent.size <= MAX) {
+        return;
+      }
+      Inner sibling = new Inner();
+      // Inner nodes always split in half, even when appending, so that every node but the root
+      // has at least MIN children, and an underfull child always has a sibling to borrow from
+      int mid = parent.size / 2;
+      sibling.size = parent.size - mid;
+      System.arraycopy(parent.children, mid, sibling.children, 0, sibling.size);
+      System.arraycopy(parent.counts, mid, sibling.counts, 0, sibling.size);
+      for (int i = mid; i < parent.size; i++) {
+        parent.children[i] = null;
+        parent.counts[i] = 0;
+      }
+      parent.size = mid;
+      child = sibling;
+      childCount = sibling.count();
+    }
+    Inner newRoot = new Inner();
+    newRoot.size = 2;
+    newRoot.children[0] = root;
+    newRoot.counts[0] = size - childCount;
+    newRoot.children[1] = child;
+    newRoot.counts[1] = childCount;
+    root = newRoot;
+    height++;
+  }
+
+  /**
+   * Restores the minimum size of an underfull node and then of its ancestors,
+   * by borrowing from a sibling or merging with it.
+   */
+  private void rebalance(Node node) {
+    for (int level = height - 1; level >= 0 && node.size < MIN; level--) {
+      Inner parent = path[level];
+      int index = pathIndex[level];
+      Node left = index > 0 ? parent.children[index - 1] : null;
+      Node right = index < parent.size - 1 ? parent.children[index + 1] : null;
+      if (left != null && left.size > MIN) {
+        moveLast(parent, index - 1, left, node);
+        return;
+      }
+      if (right != null && right.size > MIN) {
+        moveFirst(parent, index + 1, right, node);
+        return;
+      }
+      if (left != null) {
+        merge(parent, index - 1, left, node);
+      } else {
+        merge(parent, index, node, right);
+      }
+      node = parent;
+    }
+    if (height > 0 && root.size == 1) {
+      root = ((Inner) root).children[0];
+      height--;
+    }
+  }
+
+  /**
+   * Moves the last entry of from, child index of parent, to the front of its right sibling to.
+   */
+  private static void moveLast(Inner parent, int index, Node from, Node to) {
+    int moved;
+    if (from instanceof Leaf) {
+      Leaf source = (Leaf) from;
+      ((Leaf) to).insert(0, source.elements[source.size - 1]);
+      source.delete(source.size - 1);
+      moved = 1;
+    } else {
+      Inner source = (Inner) from;
+      moved = source.counts[source.size - 1];
+      ((Inner) to).insert(0, source.children[source.size - 1], moved);
+      source.delete(source.size - 1);
+    }
+    parent.counts[index] -= moved;
+    parent.counts[index + 1] += moved;
+  }
+
+  /**
+   * Moves the first entry of from, child index of parent, to the end of its left sibling to.
+   */
+  private static void moveFirst(Inner parent, int index, Node from, Node to) {
+    int moved;
+    if (from instanceof Leaf) {
+      Leaf source = (Leaf) from;
+      ((Leaf) to).insert(to.size, source.elements[0]);
+      source.delete(0);
+      moved = 1;
+    } else {
+      Inner source = (Inner) from;
+      moved = source.counts[0];
+      ((Inner) to).insert(to.size, source.children[0], moved);
+      source.delete(0);
+    }
+    parent.counts[index] -= moved;
+    parent.counts[index - 1] += moved;
+  }
+
+  /**
+   * Moves the contents of right into left, child index of parent, and removes right from parent.
+   */
+  private void merge(Inner parent, int index, Node left, Node right) {
+    if (left instanceof Leaf) {
+      Leaf to = (Leaf) left;
+      Leaf from = (Leaf) right;
+      System.arraycopy(from.elements, 0, to.elements, to.size, from.size);
+      to.size += from.size;
+      to.next = from.next;
+      if (from.next != null) {
+        from.next.prev = to;
+      } else {
+        tail = to;
+      }
+    } else {
+      Inner to = (Inner) left;
+      Inner from = (Inner) right;
+      System.arraycopy(from.children, 0, to.children, to.size, from.size);
+      System.arraycopy(from.counts, 0, to.counts, to.size, from.size);
+      to.size += from.size;
+    }
+    parent.counts[index] += parent.counts[index + 1];
+    parent.delete(index + 1);
+  }
+
+  /**
+   * A node holds up to MAX entries, with room for one more before it is split.
+   */
+  abstract static class Node {
+    int size;
+  }
+
+  static final class Leaf extends Node {
+
+    final Object[] elements = new Object[MAX + 1];
+    Leaf prev;
+    Leaf next;
+
+    void insert(int index, Object element) {
+      System.arraycopy(elements, index, elements, index + 1, size - index);
+      elements[index] = element;
+      size++;
+    }
+
+    void delete(int index) {
+      System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+      elements[--size] = null;
+    }
+  }
+
+  static final class Inner extends Node {
+
+    final Node[] children = new Node[MAX + 1];
+    // The number of elements under each child
+    final int[] counts = new int[MAX + 1];
+
+    void insert(int index, Node child, int count) {
+      System.arraycopy(children, index, children, index + 1, size - index);
+      System.arraycopy(counts, index, counts, index + 1, size - index);
+      children[index] = child;
+      counts[index] = count;
+      size++;
+    }
+
+    void delete(int index) {
+      System.arraycopy(children, index + 1, children, index, size - index - 1);
+      System.arraycopy(counts, index + 1, counts, index, size - index - 1);
+      size--;
+      children[size] = null;
+      counts[size] = 0;
+    }
+
+    int count() {
+      int count = 0;
+      for (int i = 0; i < size; i++) {
+        count += counts[i];
+      }
+      return count;
+    }
+  }
+
+  /**
+   * Walks the linked leaves in either direction, and finds its place in the tree again
+   * after it adds or removes an element.
+   */
+  private final class Itr implements ListIterator<E> {
+
+    // The leaf and the index in it of the element that next returns
+    private Leaf leaf;
+    private int index;
+    // The position in the list of the element that next returns
+    private int cursor;
+    // The position of the element last returned, or -1 after add or remove
+    private int lastRet = -1;
+    private int expectedModCount = modCount;
+
+    Itr(int cursor) {
+      moveTo(cursor);
+    }
+
+    private void moveTo(int position) {
+      cursor = position;
+      if (position == size) {
+        leaf = tail;
+        index = tail.size;
+      } else {
+        leaf = descend(position, false);
+        index = leafIndex;
+      }
+    }
+
+    private void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return cursor < size;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E next() {
+      checkForComodification();
+      if (cursor >= size) {
+        throw new NoSuchElementException();
+      }
+      if (index == leaf.size) {
+        leaf = leaf.next;
+        index = 0;
+      }
+      lastRet = cursor++;
+      return (E) leaf.elements[index++];
+    }
+
+    @Override
+    public boolean hasPrevious() {
+      return cursor > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E previous() {
+      checkForComodification();
+      if (cursor <= 0) {
+        throw new NoSuchElementException();
+      }
+      if (index == 0) {
+        leaf = leaf.prev;
+        index = leaf.size;
+      }
+      lastRet = --cursor;
+      return (E) leaf.elements[--index];
+    }
+
+    @Override
+    public int nextIndex() {
+      return cursor;
+    }
+
+    @Override
+    public int previousIndex() {
+      return cursor - 1;
+    }
+
+    @Override
+    public void remove() {
+      if (lastRet < 0) {
+        throw new IllegalStateException();
+      }
+      checkForComodification();
+      TreeList.this.remove(lastRet);
+      expectedModCount = modCount;
+      moveTo(lastRet);
+      lastRet = -1;
+    }
+
+    @Override
+    public void set(E e) {
+      if (lastRet < 0) {
+        throw new IllegalStateException();
+      }
+      checkForComodification();
+      TreeList.this.set(lastRet, e);
+    }
+
+    @Override
+    public void add(E e) {
+      checkForComodification();
+      TreeList.this.add(cursor, e);
+      expectedModCount = modCount;
+      moveTo(cursor + 1);
+      lastRet = -1;
+    }
+  }
+}
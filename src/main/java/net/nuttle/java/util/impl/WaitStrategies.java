@@ -0,0 +1,76 @@
+package net.nuttle.java.util.impl;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Wait strategies, from the lowest latency and highest CPU use to the reverse.
+ * @author dan
+ *
+ */
+public final class WaitStrategies {
+
+  /**
+   * Returns at once, so that the caller spins.  Only for threads that have a core to themselves.
+   */
+  public static final WaitStrategy SPIN = new WaitStrategy() {
+    @Override
+    public void idle(int count) {
+    }
+  };
+
+  /**
+   * Yields the processor to other threads.
+   */
+  public static final WaitStrategy YIELD = new WaitStrategy() {
+    @Override
+    public void idle(int count) {
+      Thread.yield();
+    }
+  };
+
+  /**
+   * Parks the thread for a microsecond, which the OS will usually round up to tens of microseconds.
+   */
+  public static final WaitStrategy PARK = park(1000);
+
+  private WaitStrategies() {
+  }
+
+  /**
+   * Returns a strategy that parks the thread for nanos nanoseconds.
+   * @param nanos
+   * @return
+   */
+  public static WaitStrategy park(final long nanos) {
+    return new WaitStrategy() {
+      @Override
+      public void idle(int count) {
+        LockSupport.parkNanos(nanos);
+      }
+    };
+  }
+
+  /**
+   * Returns a strategy that spins for the first spins waits, yields for the next yields,
+   * and then parks for parkNanos nanoseconds.
+   * @param spins
+   * @param yields
+   * @param parkNanos
+   * @return
+   */
+  public static WaitStrategy backoff(final int spins, final int yields, final long parkNanos) {
+    return new WaitStrategy() {
+      @Override
+      public void idle(int count) {
+        if (count < spins) {
+          return;
+        }
+        if (count - spins < yields) {
+          Thread.yield();
+        } else {
+          LockSupport.parkNanos(parkNanos);
+        }
+      }
+    };
+  }
+}
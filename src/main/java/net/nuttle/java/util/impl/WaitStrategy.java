@@ -0,0 +1,17 @@
+package net.nuttle.java.util.impl;
+
+/**
+ * What a thread does while it waits for another to make progress, such as a consumer waiting
+ * for an element.  See WaitStrategies for the common strategies.
+ * @author dan
+ *
+ */
+public interface WaitStrategy {
+
+  /**
+   * Waits once.  count is the number of times the caller has already waited for the same
+   * condition, so that a strategy can back off as the wait grows longer.
+   * @param count
+   */
+  void idle(int count);
+}
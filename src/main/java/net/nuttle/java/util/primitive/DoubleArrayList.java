@@ -0,0 +1,513 @@
+package net.nuttle.java.util.primitive;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A growable list of doubles, without boxing, with the positional methods of java.util.List.
+ * The elements live in one double[], so an element costs 8 bytes (up to 12 while the array has
+ * room to grow) instead of the 4-byte reference and 16-byte or bigger box of an ArrayList&lt;Double&gt;,
+ * and loops over them read a plain array that the JIT can unroll and vectorize.
+ * <p>
+ * subList returns a view backed by this list, as that of ArrayList does: changes to either
+ * show in the other, and a view fails with ConcurrentModificationException once the list has
+ * been structurally modified other than through the view.  remove(int) removes by index,
+ * as List.remove(int) does; removeValue removes by value.  equals, hashCode and toString
+ * agree with those of a java.util.List with the same (boxed) elements, so elements are compared
+ * as Double.equals compares them: NaN equals itself, and 0.0 does not equal -0.0.
+ * This class is not thread-safe.
+ * @author dan
+ *
+ */
+public class DoubleArrayList {
+
+  private static final double[] EMPTY = new double[0];
+  private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+  private final DoubleArrayList root;
+  private final DoubleArrayList parent;
+  private final int offset;
+  // Only the root's values and modCount are used
+  private double[] values;
+  private int modCount;
+  private int size;
+
+  /**
+   * Creates an empty list.
+   */
+  public DoubleArrayList() {
+    this(10);
+  }
+
+  /**
+   * Creates an empty list that holds capacity elements without growing.
+   * @param capacity
+   */
+  public DoubleArrayList(int capacity) {
+    if (capacity < 0) {
+      throw new IllegalArgumentException("Illegal capacity: " + capacity);
+    }
+    this.root = this;
+    this.parent = null;
+    this.offset = 0;
+    this.values = capacity == 0 ? EMPTY : new double[capacity];
+  }
+
+  /**
+   * Creates a list with the elements of values, in order.
+   * @param values
+   */
+  public DoubleArrayList(double[] values) {
+    this(values.length);
+    addAll(values);
+  }
+
+  private DoubleArrayList(DoubleArrayList parent, int offset, int size) {
+    this.root = parent.root;
+    this.parent = parent;
+    this.offset = offset;
+    this.size = size;
+    this.modCount = root.modCount;
+  }
+
+  public int size() {
+    checkForComodification();
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public double get(int index) {
+    checkIndex(index);
+    return root.values[offset + index];
+  }
+
+  /**
+   * Replaces the element at index, and returns the one it replaced.
+   * @param index
+   * @param value
+   * @return
+   */
+  public double set(int index, double value) {
+    checkIndex(index);
+    double[] values = root.values;
+    double old = values[offset + index];
+    values[offset + index] = value;
+    return old;
+  }
+
+  /**
+   * Appends value.
+   * @param value
+   */
+  public void add(double value) {
+    add(size(), value);
+  }
+
+  /**
+   * Inserts value at index, moving the elements from index on up by one.
+   * @param index
+   * @param value
+   */
+  public void add(int index, double value) {
+    checkPositionIndex(index);
+    int at = offset + index;
+    root.makeRoom(at, 1);
+    root.values[at] = value;
+    changed(1);
+  }
+
+  /**
+   * Appends the elements of values, in order.
+   * @param values
+   */
+  public void addAll(double[] values) {
+    addAll(size(), values);
+  }
+
+  /**
+   * Inserts the elements of values at index, in order.
+   * @param index
+   * @param values
+   */
+  public void addAll(int index, double[] values) {
+    checkPositionIndex(index);
+    int at = offset + index;
+    root.makeRoom(at, values.length);
+    System.arraycopy(values, 0, root.values, at, values.length);
+    changed(values.length);
+  }
+
+  /**
+   * Removes the element at index, moving the elements after it down by one, and returns it.
+   * @param index
+   * @return
+   */
+  public double remove(int index) {
+    checkIndex(index);
+    int at = offset + index;
+    double old = root.values[at];
+    root.closeGap(at, 1);
+    changed(-1);
+    return old;
+  }
+
+  /**
+   * Removes the first occurrence of value, and returns false if there was none.
+   * @param value
+   * @return
+   */
+  public boolean removeValue(double value) {
+    int index = indexOf(value);
+    if (index < 0) {
+      return false;
+    }
+    remove(index);
+    return true;
+  }
+
+  /**
+   * Removes all the elements (of this view).
+   */
+  public void clear() {
+    int n = size();
+    root.closeGap(offset, n);
+    changed(-n);
+  }
+
+  public boolean contains(double value) {
+    return indexOf(value) >= 0;
+  }
+
+  /**
+   * Returns the index of the first occurrence of value, or -1.
+   * @param value
+   * @return
+   */
+  public int indexOf(double value) {
+    checkForComodification();
+    double[] values = root.values;
+    long bits = Double.doubleToLongBits(value);
+    for (int i = offset, end = offset + size; i < end; i++) {
+      if (Double.doubleToLongBits(values[i]) == bits) {
+        return i - offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the index of the last occurrence of value, or -1.
+   * @param value
+   * @return
+   */
+  public int lastIndexOf(double value) {
+    checkForComodification();
+    double[] values = root.values;
+    long bits = Double.doubleToLongBits(value);
+    for (int i = offset + size - 1; i >= offset; i--) {
+      if (Double.doubleToLongBits(values[i]) == bits) {
+        return i - offset;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns a view of the elements from from, inclusive, to to, exclusive.
+   * @param from
+   * @param to
+   * @return
+   */
+  public DoubleArrayList subList(int from, int to) {
+    checkForComodification();
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("from: " + from + ", to: " + to + ", size: " + size);
+    }
+    return new DoubleArrayList(this, offset + from, to - from);
+  }
+
+  /**
+   * Sorts the elements in ascending order.
+   */
+  public void sort() {
+    checkForComodification();
+    Arrays.sort(root.values, offset, offset + size);
+  }
+
+  /**
+   * Searches the elements, which must be sorted, for value, as Arrays.binarySearch does.
+   * @param value
+   * @return the index of value, if present, or else (-(insertion point) - 1)
+   */
+  public int binarySearch(double value) {
+    checkForComodification();
+    int index = Arrays.binarySearch(root.values, offset, offset + size, value);
+    return index >= 0 ? index - offset : index + offset;
+  }
+
+  /**
+   * Returns a cursor before the first element.
+   * @return
+   */
+  public ListCursor listCursor() {
+    return listCursor(0);
+  }
+
+  /**
+   * Returns a cursor before the element at index.
+   * @param index
+   * @return
+   */
+  public ListCursor listCursor(int index) {
+    checkPositionIndex(index);
+    return new ListCursor(index);
+  }
+
+  public double[] toArray() {
+    checkForComodification();
+    return Arrays.copyOfRange(root.values, offset, offset + size);
+  }
+
+  /**
+   * Makes room for capacity elements without growing.
+   * @param capacity
+   */
+  public void ensureCapacity(int capacity) {
+    if (capacity > root.values.length) {
+      root.values = Arrays.copyOf(root.values, capacity);
+    }
+  }
+
+  /**
+   * Shrinks the array to the size of the list.
+   */
+  public void trimToSize() {
+    if (root.size < root.values.length) {
+      root.values = Arrays.copyOf(root.values, root.size);
+    }
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof DoubleArrayList)) {
+      return false;
+    }
+    DoubleArrayList other = (DoubleArrayList) obj;
+    int n = size();
+    if (n != other.size()) {
+      return false;
+    }
+    double[] values = root.values;
+    double[] otherValues = other.root.values;
+    for (int i = 0; i < n; i++) {
+      if (Double.doubleToLongBits(values[offset + i])
+        != Double.doubleToLongBits(otherValues[other.offset + i])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as a java.util.List with the same (boxed) elements.
+   */
+  @Override
+  public int hashCode() {
+    checkForComodification();
+    double[] values = root.values;
+    int h = 1;
+    for (int i = offset, end = offset + size; i < end; i++) {
+      h = 31 * h + HashUtil.hash(values[i]);
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    checkForComodification();
+    StringBuilder sb = new StringBuilder("[");
+    double[] values = root.values;
+    for (int i = offset, end = offset + size; i < end; i++) {
+      if (i > offset) {
+        sb.append(", ");
+      }
+      sb.append(values[i]);
+    }
+    return sb.append(']').toString();
+  }
+
+  private void checkForComodification() {
+    if (root.modCount != modCount) {
+      throw new ConcurrentModificationException();
+    }
+  }
+
+  private void checkIndex(int index) {
+    checkForComodification();
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  private void checkPositionIndex(int index) {
+    checkForComodification();
+    if (index < 0 || index > size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+
+  /**
+   * Moves the elements from at on up by n, growing the array if need be.  Called on the root.
+   */
+  private void makeRoom(int at, int n) {
+    int needed = size + n;
+    if (needed < 0 || needed > MAX_CAPACITY) {
+      throw new OutOfMemoryError("list too large");
+    }
+    if (needed > values.length) {
+      int capacity = values.length + (values.length >> 1);
+      if (capacity < needed || capacity > MAX_CAPACITY) {
+        capacity = Math.max(needed, Math.min(capacity, MAX_CAPACITY));
+      }
+      values = Arrays.copyOf(values, capacity);
+    }
+    System.arraycopy(values, at, values, at + n, size - at);
+  }
+
+  /**
+   * Moves the elements from at + n on down by n.  Called on the root.
+   */
+  private void closeGap(int at, int n) {
+    System.arraycopy(values, at + n, values, at, size - at - n);
+  }
+
+  /**
+   * Adds delta to the size of this list and of the lists it is a view of, and records
+   * the structural change.
+   */
+  private void changed(int delta) {
+    root.modCount++;
+    for (DoubleArrayList list = this; list != null; list = list.parent) {
+      list.size += delta;
+      list.modCount = root.modCount;
+    }
+  }
+
+  /**
+   * Moves over the elements of the list (or view) in either direction without boxing,
+   * as a ListIterator does, and can set, add and remove elements on the way:
+   * <pre>
+   * for (DoubleArrayList.ListCursor c = list.listCursor(list.size()); c.hasPrevious();) {
+   *   total += c.previous();
+   * }
+   * </pre>
+   * The cursor fails with ConcurrentModificationException if the list is structurally
+   * modified other than through it.
+   */
+  public final class ListCursor {
+
+    // Index of the element that next returns
+    private int cursor;
+    // Index of the element last returned, or -1 after add or remove
+    private int last = -1;
+    private int expectedModCount = root.modCount;
+
+    private ListCursor(int index) {
+      this.cursor = index;
+    }
+
+    public boolean hasNext() {
+      return cursor < size;
+    }
+
+    /**
+     * Returns the next element and moves past it.
+     * @return
+     * @throws NoSuchElementException if there is none
+     */
+    public double next() {
+      checkCursorModification();
+      if (cursor >= size) {
+        throw new NoSuchElementException();
+      }
+      last = cursor++;
+      return root.values[offset + last];
+    }
+
+    public boolean hasPrevious() {
+      return cursor > 0;
+    }
+
+    /**
+     * Returns the previous element and moves back before it.
+     * @return
+     * @throws NoSuchElementException if there is none
+     */
+    public double previous() {
+      checkCursorModification();
+      if (cursor <= 0) {
+        throw new NoSuchElementException();
+      }
+      last = --cursor;
+      return root.values[offset + last];
+    }
+
+    public int nextIndex() {
+      return cursor;
+    }
+
+    public int previousIndex() {
+      return cursor - 1;
+    }
+
+    /**
+     * Removes the element last returned by next or previous.
+     */
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      checkCursorModification();
+      DoubleArrayList.this.remove(last);
+      expectedModCount = root.modCount;
+      cursor = last;
+      last = -1;
+    }
+
+    /**
+     * Replaces the element last returned by next or previous.
+     * @param value
+     */
+    public void set(double value) {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      checkCursorModification();
+      DoubleArrayList.this.set(last, value);
+    }
+
+    /**
+     * Inserts value before the element that next would return.
+     * @param value
+     */
+    public void add(double value) {
+      checkCursorModification();
+      DoubleArrayList.this.add(cursor++, value);
+      expectedModCount = root.modCount;
+      last = -1;
+    }
+
+    private void checkCursorModification() {
+      if (root.modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+}
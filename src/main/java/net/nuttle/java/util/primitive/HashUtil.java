@@ -0,0 +1,89 @@
+package net.nuttle.java.util.primitive;
+
+/**
+ * Utility methods shared by the open-addressing hash maps of this package.
+ * @author dan
+ *
+ */
+final class HashUtil {
+
+  /**
+   * 2^32 divided by the golden ratio; multiplying by it spreads consecutive keys over the table.
+   */
+  private static final int PHI = 0x9E3779B9;
+
+  /**
+   * Largest power of two that an int can index.
+   */
+  static final int MAX_CAPACITY = 1 << 30;
+
+  static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+  private HashUtil() {
+  }
+
+  /**
+   * Returns a well-mixed hash of key, whose low bits can be used as a table index.
+   */
+  static int mix(int key) {
+    int h = key * PHI;
+    return h ^ (h >>> 16);
+  }
+
+  static int mix(long key) {
+    return mix((int) (key ^ (key >>> 32)));
+  }
+
+  static int mix(Object key) {
+    return mix(key.hashCode());
+  }
+
+  /**
+   * Returns the hash code that java.lang.Integer would return for value.
+   */
+  static int hash(int value) {
+    return value;
+  }
+
+  /**
+   * Returns the hash code that java.lang.Long would return for value.
+   */
+  static int hash(long value) {
+    return (int) (value ^ (value >>> 32));
+  }
+
+  /**
+   * Returns the hash code that java.lang.Double would return for value.
+   */
+  static int hash(double value) {
+    return hash(Double.doubleToLongBits(value));
+  }
+
+  /**
+   * Returns the power-of-two table size that holds expected entries below loadFactor.
+   */
+  static int capacityFor(int expected, float loadFactor) {
+    if (expected < 0) {
+      throw new IllegalArgumentException("Illegal expected size: " + expected);
+    }
+    if (!(loadFactor > 0 && loadFactor < 1)) {
+      throw new IllegalArgumentException("Illegal load factor: " + loadFactor);
+    }
+    long needed = (long) Math.ceil(expected / (double) loadFactor) + 1;
+    if (needed > MAX_CAPACITY) {
+      return MAX_CAPACITY;
+    }
+    int capacity = 4;
+    while (capacity < needed) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the number of entries at which a table of the given capacity must grow.
+   */
+  static int resizeAt(int capacity, float loadFactor) {
+    return Math.min(capacity - 1, (int) (capacity * loadFactor));
+  }
+}
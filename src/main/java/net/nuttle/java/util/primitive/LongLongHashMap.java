@@ -0,0 +1,371 @@
+package net.nuttle.java.util.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to long values, without boxing.
+ * Keys and values live in two parallel arrays, probed linearly, so an entry costs 16 bytes
+ * of table instead of a HashMap node and two boxes (about 80 bytes), and get, put and remove
+ * allocate nothing.  Removal shifts the following entries back instead of leaving tombstones.
+ * The key 0 marks a free slot, so its entry is kept in a separate field.
+ * Absent keys read as the no-entry value given to the constructor (0 by default).
+ * This class is not thread-safe.
+ * @author dan
+ *
+ */
+public class LongLongHashMap {
+
+  private final float loadFactor;
+  private final long noEntryValue;
+  private long[] keys;
+  private long[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  private boolean hasZeroKey;
+  private long zeroValue;
+
+  /**
+   * Creates an empty map, whose absent keys read as 0.
+   */
+  public LongLongHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map that holds expected entries without growing.
+   * @param expected
+   */
+  public LongLongHashMap(int expected) {
+    this(expected, HashUtil.DEFAULT_LOAD_FACTOR, 0);
+  }
+
+  /**
+   * Creates an empty map.
+   * @param expected number of entries the map holds without growing
+   * @param loadFactor fraction of the table that may be filled, between 0 and 1
+   * @param noEntryValue value returned for absent keys
+   */
+  public LongLongHashMap(int expected, float loadFactor, long noEntryValue) {
+    this.loadFactor = loadFactor;
+    this.noEntryValue = noEntryValue;
+    allocate(HashUtil.capacityFor(expected, loadFactor));
+  }
+
+  /**
+   * Returns the value returned by get and remove for absent keys.
+   * @return
+   */
+  public long noEntryValue() {
+    return noEntryValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == 0) {
+      return hasZeroKey;
+    }
+    return keys[find(key)] != 0;
+  }
+
+  /**
+   * Returns the value of key, or the no-entry value if key is absent.
+   * @param key
+   * @return
+   */
+  public long get(long key) {
+    return getOrDefault(key, noEntryValue);
+  }
+
+  /**
+   * Returns the value of key, or defaultValue if key is absent.
+   * @param key
+   * @param defaultValue
+   * @return
+   */
+  public long getOrDefault(long key, long defaultValue) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int pos = find(key);
+    return keys[pos] != 0 ? values[pos] : defaultValue;
+  }
+
+  /**
+   * Maps key to value, and returns the previous value, or the no-entry value if key was absent.
+   * @param key
+   * @param value
+   * @return
+   */
+  public long put(long key, long value) {
+    if (key == 0) {
+      long previous = hasZeroKey ? zeroValue : noEntryValue;
+      if (!hasZeroKey) {
+        hasZeroKey = true;
+        size++;
+      }
+      zeroValue = value;
+      return previous;
+    }
+    int pos = find(key);
+    if (keys[pos] != 0) {
+      long previous = values[pos];
+      values[pos] = value;
+      return previous;
+    }
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return noEntryValue;
+  }
+
+  /**
+   * Adds delta to the value of key (an absent key counts as the no-entry value),
+   * and returns the new value.  This is the usual way to update counters.
+   * @param key
+   * @param delta
+   * @return
+   */
+  public long addTo(long key, long delta) {
+    if (key == 0) {
+      if (!hasZeroKey) {
+        hasZeroKey = true;
+        zeroValue = noEntryValue;
+        size++;
+      }
+      return zeroValue += delta;
+    }
+    int pos = find(key);
+    if (keys[pos] != 0) {
+      return values[pos] += delta;
+    }
+    long value = noEntryValue + delta;
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return value;
+  }
+
+  /**
+   * Removes key, and returns its value, or the no-entry value if key was absent.
+   * @param key
+   * @return
+   */
+  public long remove(long key) {
+    if (key == 0) {
+      if (!hasZeroKey) {
+        return noEntryValue;
+      }
+      hasZeroKey = false;
+      size--;
+      return zeroValue;
+    }
+    int pos = find(key);
+    if (keys[pos] == 0) {
+      return noEntryValue;
+    }
+    long previous = values[pos];
+    size--;
+    shiftKeys(pos);
+    return previous;
+  }
+
+  /**
+   * Removes all entries.  The table keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    hasZeroKey = false;
+    size = 0;
+  }
+
+  /**
+   * Returns a cursor over the entries of the map, in no particular order.
+   * The cursor must not be used after the map is structurally modified
+   * (a put of a new key, or a remove), but setValue is allowed.
+   * @return
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LongLongHashMap)) {
+      return false;
+    }
+    LongLongHashMap other = (LongLongHashMap) obj;
+    if (size != other.size) {
+      return false;
+    }
+    for (Cursor c = cursor(); c.advance();) {
+      if (!other.containsKey(c.key()) || other.get(c.key()) != c.value()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as a java.util.Map with the same (boxed) entries.
+   */
+  @Override
+  public int hashCode() {
+    int h = 0;
+    for (Cursor c = cursor(); c.advance();) {
+      h += HashUtil.hash(c.key()) ^ HashUtil.hash(c.value());
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Cursor c = cursor(); c.advance();) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(c.key()).append('=').append(c.value());
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Returns the slot of key if present, else the free slot where it would go.
+   */
+  private int find(long key) {
+    long[] keys = this.keys;
+    int pos = HashUtil.mix(key) & mask;
+    while (keys[pos] != 0 && keys[pos] != key) {
+      pos = (pos + 1) & mask;
+    }
+    return pos;
+  }
+
+  /**
+   * Empties slot pos by moving back the entries of the same probe sequence that follow it.
+   */
+  private void shiftKeys(int pos) {
+    long[] keys = this.keys;
+    while (true) {
+      int last = pos;
+      long key;
+      while (true) {
+        pos = (pos + 1) & mask;
+        key = keys[pos];
+        if (key == 0) {
+          keys[last] = 0;
+          return;
+        }
+        int slot = HashUtil.mix(key) & mask;
+        //Move the entry at pos back to last, unless its home slot lies cyclically in (last, pos]
+        if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+          break;
+        }
+      }
+      keys[last] = key;
+      values[last] = values[pos];
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new long[capacity];
+    mask = capacity - 1;
+    resizeAt = HashUtil.resizeAt(capacity, loadFactor);
+  }
+
+  private void rehash(int capacity) {
+    if (capacity > HashUtil.MAX_CAPACITY) {
+      throw new IllegalStateException("Map is full: " + size + " entries");
+    }
+    long[] oldKeys = keys;
+    long[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != 0) {
+        int pos = find(key);
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Iterates over the entries of the map without creating an object per entry:
+   * <pre>
+   * for (LongLongHashMap.Cursor c = map.cursor(); c.advance();) {
+   *   total += c.value();
+   * }
+   * </pre>
+   */
+  public final class Cursor {
+
+    private int index = -1;
+    private long key;
+    private long value;
+
+    private Cursor() {
+    }
+
+    /**
+     * Moves to the next entry, and returns false if there are no more.
+     * @return
+     */
+    public boolean advance() {
+      int capacity = keys.length;
+      while (index < capacity) {
+        if (++index < capacity && keys[index] != 0) {
+          key = keys[index];
+          value = values[index];
+          return true;
+        }
+      }
+      if (index == capacity) {
+        index++;
+        if (hasZeroKey) {
+          key = 0;
+          value = zeroValue;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    public long key() {
+      return key;
+    }
+
+    public long value() {
+      return value;
+    }
+
+    /**
+     * Replaces the value of the current entry.
+     * @param newValue
+     */
+    public void setValue(long newValue) {
+      if (index < keys.length) {
+        values[index] = newValue;
+      } else {
+        zeroValue = newValue;
+      }
+      value = newValue;
+    }
+  }
+}
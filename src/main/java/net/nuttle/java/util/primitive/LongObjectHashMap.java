@@ -0,0 +1,368 @@
+package net.nuttle.java.util.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from long keys to object values, without boxing the keys.
+ * Keys and values live in two parallel arrays, probed linearly, and get, put and remove
+ * allocate nothing.  Removal shifts the following entries back instead of leaving tombstones.
+ * The key 0 marks a free slot, so its entry is kept in a separate field.
+ * Values may be null; as with java.util.Map, use containsKey to tell a null value from an absent key.
+ * This class is not thread-safe.
+ * @author dan
+ *
+ * @param <V>
+ */
+public class LongObjectHashMap<V> {
+
+  private final float loadFactor;
+  private long[] keys;
+  private Object[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+  private boolean hasZeroKey;
+  private V zeroValue;
+
+  public LongObjectHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map that holds expected entries without growing.
+   * @param expected
+   */
+  public LongObjectHashMap(int expected) {
+    this(expected, HashUtil.DEFAULT_LOAD_FACTOR);
+  }
+
+  /**
+   * Creates an empty map.
+   * @param expected number of entries the map holds without growing
+   * @param loadFactor fraction of the table that may be filled, between 0 and 1
+   */
+  public LongObjectHashMap(int expected, float loadFactor) {
+    this.loadFactor = loadFactor;
+    allocate(HashUtil.capacityFor(expected, loadFactor));
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(long key) {
+    if (key == 0) {
+      return hasZeroKey;
+    }
+    return keys[find(key)] != 0;
+  }
+
+  /**
+   * Returns the value of key, or null if key is absent.
+   * @param key
+   * @return
+   */
+  public V get(long key) {
+    return getOrDefault(key, null);
+  }
+
+  /**
+   * Returns the value of key, or defaultValue if key is absent.
+   * @param key
+   * @param defaultValue
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public V getOrDefault(long key, V defaultValue) {
+    if (key == 0) {
+      return hasZeroKey ? zeroValue : defaultValue;
+    }
+    int pos = find(key);
+    return keys[pos] != 0 ? (V) values[pos] : defaultValue;
+  }
+
+  /**
+   * Maps key to value, and returns the previous value, or null if key was absent.
+   * @param key
+   * @param value
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public V put(long key, V value) {
+    if (key == 0) {
+      V previous = zeroValue;
+      if (!hasZeroKey) {
+        hasZeroKey = true;
+        size++;
+      }
+      zeroValue = value;
+      return previous;
+    }
+    int pos = find(key);
+    if (keys[pos] != 0) {
+      V previous = (V) values[pos];
+      values[pos] = value;
+      return previous;
+    }
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return null;
+  }
+
+  /**
+   * Maps key to value unless key is present, and returns the current value, or null if key was absent.
+   * @param key
+   * @param value
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public V putIfAbsent(long key, V value) {
+    if (key == 0) {
+      if (hasZeroKey) {
+        return zeroValue;
+      }
+      return put(key, value);
+    }
+    int pos = find(key);
+    if (keys[pos] != 0) {
+      return (V) values[pos];
+    }
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return null;
+  }
+
+  /**
+   * Removes key, and returns its value, or null if key was absent.
+   * @param key
+   * @return
+   */
+  @SuppressWarnings("unchecked")
+  public V remove(long key) {
+    if (key == 0) {
+      if (!hasZeroKey) {
+        return null;
+      }
+      V previous = zeroValue;
+      hasZeroKey = false;
+      zeroValue = null;
+      size--;
+      return previous;
+    }
+    int pos = find(key);
+    if (keys[pos] == 0) {
+      return null;
+    }
+    V previous = (V) values[pos];
+    size--;
+    shiftKeys(pos);
+    return previous;
+  }
+
+  /**
+   * Removes all entries.  The table keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(values, null);
+    hasZeroKey = false;
+    zeroValue = null;
+    size = 0;
+  }
+
+  /**
+   * Returns a cursor over the entries of the map, in no particular order.
+   * The cursor must not be used after the map is structurally modified
+   * (a put of a new key, or a remove), but setValue is allowed.
+   * @return
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LongObjectHashMap)) {
+      return false;
+    }
+    LongObjectHashMap<?> other = (LongObjectHashMap<?>) obj;
+    if (size != other.size) {
+      return false;
+    }
+    for (Cursor c = cursor(); c.advance();) {
+      if (!other.containsKey(c.key())) {
+        return false;
+      }
+      Object value = other.get(c.key());
+      if (value == null ? c.value() != null : !value.equals(c.value())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as a java.util.Map with the same (boxed) entries.
+   */
+  @Override
+  public int hashCode() {
+    int h = 0;
+    for (Cursor c = cursor(); c.advance();) {
+      h += HashUtil.hash(c.key()) ^ (c.value() == null ? 0 : c.value().hashCode());
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Cursor c = cursor(); c.advance();) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(c.key()).append('=').append(c.value() == this ? "(this Map)" : c.value());
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Returns the slot of key if present, else the free slot where it would go.
+   */
+  private int find(long key) {
+    long[] keys = this.keys;
+    int pos = HashUtil.mix(key) & mask;
+    while (keys[pos] != 0 && keys[pos] != key) {
+      pos = (pos + 1) & mask;
+    }
+    return pos;
+  }
+
+  /**
+   * Empties slot pos by moving back the entries of the same probe sequence that follow it.
+   */
+  private void shiftKeys(int pos) {
+    long[] keys = this.keys;
+    while (true) {
+      int last = pos;
+      long key;
+      while (true) {
+        pos = (pos + 1) & mask;
+        key = keys[pos];
+        if (key == 0) {
+          keys[last] = 0;
+          values[last] = null;
+          return;
+        }
+        int slot = HashUtil.mix(key) & mask;
+        //Move the entry at pos back to last, unless its home slot lies cyclically in (last, pos]
+        if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+          break;
+        }
+      }
+      keys[last] = key;
+      values[last] = values[pos];
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    values = new Object[capacity];
+    mask = capacity - 1;
+    resizeAt = HashUtil.resizeAt(capacity, loadFactor);
+  }
+
+  private void rehash(int capacity) {
+    if (capacity > HashUtil.MAX_CAPACITY) {
+      throw new IllegalStateException("Map is full: " + size + " entries");
+    }
+    long[] oldKeys = keys;
+    Object[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      long key = oldKeys[i];
+      if (key != 0) {
+        int pos = find(key);
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Iterates over the entries of the map without creating an object per entry:
+   * <pre>
+   * for (LongObjectHashMap&lt;V&gt;.Cursor c = map.cursor(); c.advance();) {
+   *   process(c.key(), c.value());
+   * }
+   * </pre>
+   */
+  public final class Cursor {
+
+    private int index = -1;
+    private long key;
+    private V value;
+
+    private Cursor() {
+    }
+
+    /**
+     * Moves to the next entry, and returns false if there are no more.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public boolean advance() {
+      int capacity = keys.length;
+      while (index < capacity) {
+        if (++index < capacity && keys[index] != 0) {
+          key = keys[index];
+          value = (V) values[index];
+          return true;
+        }
+      }
+      if (index == capacity) {
+        index++;
+        if (hasZeroKey) {
+          key = 0;
+          value = zeroValue;
+          return true;
+        }
+      }
+      value = null;
+      return false;
+    }
+
+    public long key() {
+      return key;
+    }
+
+    public V value() {
+      return value;
+    }
+
+    /**
+     * Replaces the value of the current entry.
+     * @param newValue
+     */
+    public void setValue(V newValue) {
+      if (index < keys.length) {
+        values[index] = newValue;
+      } else {
+        zeroValue = newValue;
+      }
+      value = newValue;
+    }
+  }
+}
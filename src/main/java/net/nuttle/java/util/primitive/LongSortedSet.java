@@ -0,0 +1,704 @@
+package net.nuttle.java.util.primitive;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.NoSuchElementException;
+
+/**
+ * A sorted set of longs, without boxing, with the navigation methods of java.util.NavigableSet.
+ * The elements live in sorted leaves of up to 1024 longs, found by a binary search over the last
+ * element of each leaf and then within the leaf, so an element costs 8 to 16 bytes instead of the
+ * 40 or so of a TreeSet&lt;Long&gt; node and its box, and lookups allocate nothing.
+ * A leaf that fills up is split in two, except when the new element goes after all the others,
+ * as timestamps do: it then starts a new leaf, so that sets built in order keep their leaves full.
+ * <p>
+ * subSet, headSet and tailSet return views backed by this set, as those of TreeSet do: they
+ * see the changes of the set and write through to it, and adding an element outside the range of
+ * a view throws IllegalArgumentException.  The size of a view is computed in time linear in the
+ * number of leaves, about 1000 times fewer than the elements.
+ * lower, floor, ceiling and higher return the no-entry value given to the constructor
+ * (Long.MIN_VALUE by default) when there is no such element, as pollFirst and pollLast do
+ * when the set is empty.
+ * This class is not thread-safe.
+ * @author dan
+ *
+ */
+public class LongSortedSet {
+
+  private static final int MAX = 1024;
+
+  private final Store store;
+  private final long noEntryValue;
+  private final boolean fromStart;
+  private final long lo;
+  private final boolean loInclusive;
+  private final boolean toEnd;
+  private final long hi;
+  private final boolean hiInclusive;
+
+  /**
+   * Creates an empty set, whose navigation methods return Long.MIN_VALUE for no element.
+   */
+  public LongSortedSet() {
+    this(Long.MIN_VALUE);
+  }
+
+  /**
+   * Creates an empty set.
+   * @param noEntryValue value returned by the navigation methods when there is no such element
+   */
+  public LongSortedSet(long noEntryValue) {
+    this(new Store(), noEntryValue, true, 0, false, true, 0, false);
+  }
+
+  /**
+   * Creates a set with the elements of values, which need not be sorted.
+   * @param values
+   */
+  public LongSortedSet(long[] values) {
+    this();
+    long[] sorted = values.clone();
+    Arrays.sort(sorted);
+    for (long value : sorted) {
+      add(value);
+    }
+  }
+
+  private LongSortedSet(Store store, long noEntryValue, boolean fromStart, long lo, boolean loInclusive,
+      boolean toEnd, long hi, boolean hiInclusive) {
+    this.store = store;
+    this.noEntryValue = noEntryValue;
+    this.fromStart = fromStart;
+    this.lo = lo;
+    this.loInclusive = loInclusive;
+    this.toEnd = toEnd;
+    this.hi = hi;
+    this.hiInclusive = hiInclusive;
+  }
+
+  /**
+   * Returns the value returned by the navigation methods when there is no such element.
+   * @return
+   */
+  public long noEntryValue() {
+    return noEntryValue;
+  }
+
+  public int size() {
+    if (fromStart && toEnd) {
+      return store.size;
+    }
+    long first = firstPos();
+    return first < 0 ? 0 : store.rank(lastPos()) - store.rank(first) + 1;
+  }
+
+  public boolean isEmpty() {
+    return firstPos() < 0;
+  }
+
+  public boolean contains(long value) {
+    return inRange(value) && store.contains(value);
+  }
+
+  /**
+   * Adds value, and returns false if it was already present.
+   * @param value
+   * @return
+   * @throws IllegalArgumentException if value is outside the range of this view
+   */
+  public boolean add(long value) {
+    if (!inRange(value)) {
+      throw new IllegalArgumentException("value out of range: " + value);
+    }
+    return store.add(value);
+  }
+
+  /**
+   * Removes value, and returns false if it was absent.
+   * @param value
+   * @return
+   */
+  public boolean remove(long value) {
+    return inRange(value) && store.remove(value);
+  }
+
+  /**
+   * Removes all the elements (of the range of this view).
+   */
+  public void clear() {
+    if (fromStart && toEnd) {
+      store.clear();
+      return;
+    }
+    for (long pos = firstPos(); pos >= 0; pos = firstPos()) {
+      store.removeAt(pos);
+    }
+  }
+
+  /**
+   * Returns the lowest element.
+   * @return
+   * @throws NoSuchElementException if the set is empty
+   */
+  public long first() {
+    return valueOrThrow(firstPos());
+  }
+
+  /**
+   * Returns the highest element.
+   * @return
+   * @throws NoSuchElementException if the set is empty
+   */
+  public long last() {
+    return valueOrThrow(lastPos());
+  }
+
+  /**
+   * Returns the greatest element strictly less than value, or the no-entry value.
+   */
+  public long lower(long value) {
+    return valueOf(floorPos(value, false));
+  }
+
+  /**
+   * Returns the greatest element less than or equal to value, or the no-entry value.
+   */
+  public long floor(long value) {
+    return valueOf(floorPos(value, true));
+  }
+
+  /**
+   * Returns the least element greater than or equal to value, or the no-entry value.
+   */
+  public long ceiling(long value) {
+    return valueOf(ceilingPos(value, true));
+  }
+
+  /**
+   * Returns the least element strictly greater than value, or the no-entry value.
+   */
+  public long higher(long value) {
+    return valueOf(ceilingPos(value, false));
+  }
+
+  /**
+   * Removes and returns the lowest element, or returns the no-entry value if the set is empty.
+   * @return
+   */
+  public long pollFirst() {
+    return poll(firstPos());
+  }
+
+  /**
+   * Removes and returns the highest element, or returns the no-entry value if the set is empty.
+   * @return
+   */
+  public long pollLast() {
+    return poll(lastPos());
+  }
+
+  /**
+   * Returns a view of the elements from from to to.
+   * @param from
+   * @param fromInclusive
+   * @param to
+   * @param toInclusive
+   * @return
+   * @throws IllegalArgumentException if from is greater than to, or the range exceeds that of this view
+   */
+  public LongSortedSet subSet(long from, boolean fromInclusive, long to, boolean toInclusive) {
+    if (from > to) {
+      throw new IllegalArgumentException("from > to: " + from + " > " + to);
+    }
+    checkRange(from, fromInclusive);
+    checkRange(to, toInclusive);
+    return new LongSortedSet(store, noEntryValue, false, from, fromInclusive, false, to, toInclusive);
+  }
+
+  /**
+   * Returns a view of the elements from from, inclusive, to to, exclusive.
+   */
+  public LongSortedSet subSet(long from, long to) {
+    return subSet(from, true, to, false);
+  }
+
+  /**
+   * Returns a view of the elements less than to (or equal to it, if inclusive).
+   */
+  public LongSortedSet headSet(long to, boolean inclusive) {
+    checkRange(to, inclusive);
+    return new LongSortedSet(store, noEntryValue, fromStart, lo, loInclusive, false, to, inclusive);
+  }
+
+  /**
+   * Returns a view of the elements strictly less than to.
+   */
+  public LongSortedSet headSet(long to) {
+    return headSet(to, false);
+  }
+
+  /**
+   * Returns a view of the elements greater than from (or equal to it, if inclusive).
+   */
+  public LongSortedSet tailSet(long from, boolean inclusive) {
+    checkRange(from, inclusive);
+    return new LongSortedSet(store, noEntryValue, false, from, inclusive, toEnd, hi, hiInclusive);
+  }
+
+  /**
+   * Returns a view of the elements greater than or equal to from.
+   */
+  public LongSortedSet tailSet(long from) {
+    return tailSet(from, true);
+  }
+
+  /**
+   * Returns a cursor over the elements in ascending order.
+   * @return
+   */
+  public Cursor cursor() {
+    return new Cursor(false);
+  }
+
+  /**
+   * Returns a cursor over the elements in descending order.
+   * @return
+   */
+  public Cursor descendingCursor() {
+    return new Cursor(true);
+  }
+
+  /**
+   * Returns the elements in ascending order.
+   * @return
+   */
+  public long[] toArray() {
+    long[] values = new long[size()];
+    int i = 0;
+    for (Cursor c = cursor(); c.advance();) {
+      values[i++] = c.value();
+    }
+    return values;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof LongSortedSet)) {
+      return false;
+    }
+    LongSortedSet other = (LongSortedSet) obj;
+    Cursor c = cursor();
+    Cursor o = other.cursor();
+    while (true) {
+      boolean more = c.advance();
+      if (more != o.advance()) {
+        return false;
+      }
+      if (!more) {
+        return true;
+      }
+      if (c.value() != o.value()) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Returns the same hash code as a java.util.Set with the same (boxed) elements.
+   */
+  @Override
+  public int hashCode() {
+    int h = 0;
+    for (Cursor c = cursor(); c.advance();) {
+      h += HashUtil.hash(c.value());
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    for (Cursor c = cursor(); c.advance();) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(c.value());
+    }
+    return sb.append(']').toString();
+  }
+
+  private boolean tooLow(long value) {
+    return !fromStart && (value < lo || (value == lo && !loInclusive));
+  }
+
+  private boolean tooHigh(long value) {
+    return !toEnd && (value > hi || (value == hi && !hiInclusive));
+  }
+
+  private boolean inRange(long value) {
+    return !tooLow(value) && !tooHigh(value);
+  }
+
+  /**
+   * Checks that a bound of a new view lies within the range of this one.
+   */
+  private void checkRange(long value, boolean inclusive) {
+    if (tooLow(value) && !(value == lo && !inclusive) || tooHigh(value) && !(value == hi && !inclusive)) {
+      throw new IllegalArgumentException("bound out of range: " + value);
+    }
+  }
+
+  private long firstPos() {
+    long pos = fromStart ? store.firstPos() : store.ceilingPos(lo, loInclusive);
+    return pos >= 0 && tooHigh(store.value(pos)) ? -1 : pos;
+  }
+
+  private long lastPos() {
+    long pos = toEnd ? store.lastPos() : store.floorPos(hi, hiInclusive);
+    return pos >= 0 && tooLow(store.value(pos)) ? -1 : pos;
+  }
+
+  private long ceilingPos(long value, boolean inclusive) {
+    if (tooLow(value)) {
+      return firstPos();
+    }
+    long pos = store.ceilingPos(value, inclusive);
+    return pos >= 0 && tooHigh(store.value(pos)) ? -1 : pos;
+  }
+
+  private long floorPos(long value, boolean inclusive) {
+    if (tooHigh(value)) {
+      return lastPos();
+    }
+    long pos = store.floorPos(value, inclusive);
+    return pos >= 0 && tooLow(store.value(pos)) ? -1 : pos;
+  }
+
+  private long valueOf(long pos) {
+    return pos < 0 ? noEntryValue : store.value(pos);
+  }
+
+  private long valueOrThrow(long pos) {
+    if (pos < 0) {
+      throw new NoSuchElementException();
+    }
+    return store.value(pos);
+  }
+
+  private long poll(long pos) {
+    if (pos < 0) {
+      return noEntryValue;
+    }
+    long value = store.value(pos);
+    store.removeAt(pos);
+    return value;
+  }
+
+  /**
+   * The leaves of a set, shared with its views.  A position is the index of a leaf in the
+   * upper 32 bits and the index of an element in the leaf in the lower ones, or -1 for none.
+   */
+  private static final class Store {
+
+    private long[][] leaves = new long[4][];
+    private int[] sizes = new int[4];
+    private int count;
+    private int size;
+    private int modCount;
+
+    static long pos(int leaf, int index) {
+      return (long) leaf << 32 | index;
+    }
+
+    static int leaf(long pos) {
+      return (int) (pos >>> 32);
+    }
+
+    static int index(long pos) {
+      return (int) pos;
+    }
+
+    long value(long pos) {
+      return leaves[leaf(pos)][index(pos)];
+    }
+
+    long firstPos() {
+      return count == 0 ? -1 : pos(0, 0);
+    }
+
+    long lastPos() {
+      return count == 0 ? -1 : pos(count - 1, sizes[count - 1] - 1);
+    }
+
+    /**
+     * Returns the number of elements before pos.
+     */
+    int rank(long pos) {
+      int rank = index(pos);
+      for (int i = leaf(pos) - 1; i >= 0; i--) {
+        rank += sizes[i];
+      }
+      return rank;
+    }
+
+    /**
+     * Returns the first leaf whose last element is at least value (greater, unless inclusive), or count.
+     */
+    int leafFor(long value, boolean inclusive) {
+      int low = 0;
+      int high = count - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        long last = leaves[mid][sizes[mid] - 1];
+        if (last < value || (last == value && !inclusive)) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      return low;
+    }
+
+    long ceilingPos(long value, boolean inclusive) {
+      int leaf = leafFor(value, inclusive);
+      if (leaf == count) {
+        return -1;
+      }
+      int index = Arrays.binarySearch(leaves[leaf], 0, sizes[leaf], value);
+      if (index < 0) {
+        index = -index - 1;
+      } else if (!inclusive) {
+        index++;
+      }
+      return pos(leaf, index);
+    }
+
+    long floorPos(long value, boolean inclusive) {
+      // The element before the first one at least value (or greater), if any
+      long pos = ceilingPos(value, !inclusive);
+      if (pos < 0) {
+        return lastPos();
+      }
+      return previousPos(pos);
+    }
+
+    long nextPos(long pos) {
+      int leaf = leaf(pos);
+      int index = index(pos) + 1;
+      if (index < sizes[leaf]) {
+        return pos(leaf, index);
+      }
+      return leaf + 1 < count ? pos(leaf + 1, 0) : -1;
+    }
+
+    long previousPos(long pos) {
+      int leaf = leaf(pos);
+      int index = index(pos);
+      if (index > 0) {
+        return pos(leaf, index - 1);
+      }
+      return leaf > 0 ? pos(leaf - 1, sizes[leaf - 1] - 1) : -1;
+    }
+
+    boolean contains(long value) {
+      int leaf = leafFor(value, true);
+      return leaf < count && Arrays.binarySearch(leaves[leaf], 0, sizes[leaf], value) >= 0;
+    }
+
+    boolean add(long value) {
+      if (count == 0) {
+        insertLeaf(0, new long[8]);
+        leaves[0][0] = value;
+        sizes[0] = 1;
+        size++;
+        modCount++;
+        return true;
+      }
+      int leaf = Math.min(leafFor(value, true), count - 1);
+      int index = Arrays.binarySearch(leaves[leaf], 0, sizes[leaf], value);
+      if (index >= 0) {
+        return false;
+      }
+      index = -index - 1;
+      if (sizes[leaf] == MAX) {
+        if (leaf == count - 1 && index == MAX) {
+          // Appending: start a new leaf rather than leave two half-full ones
+          insertLeaf(count, new long[8]);
+          leaf++;
+          index = 0;
+        } else {
+          split(leaf);
+          if (index > sizes[leaf]) {
+            index -= sizes[leaf];
+            leaf++;
+          }
+        }
+      }
+      long[] values = leaves[leaf];
+      int n = sizes[leaf];
+      if (n == values.length) {
+        values = leaves[leaf] = Arrays.copyOf(values, Math.min(MAX, n * 2));
+      }
+      System.arraycopy(values, index, values, index + 1, n - index);
+      values[index] = value;
+      sizes[leaf]++;
+      size++;
+      modCount++;
+      return true;
+    }
+
+    boolean remove(long value) {
+      long pos = ceilingPos(value, true);
+      if (pos < 0 || value(pos) != value) {
+        return false;
+      }
+      removeAt(pos);
+      return true;
+    }
+
+    void removeAt(long pos) {
+      int leaf = leaf(pos);
+      int index = index(pos);
+      long[] values = leaves[leaf];
+      System.arraycopy(values, index + 1, values, index, sizes[leaf] - index - 1);
+      size--;
+      modCount++;
+      if (--sizes[leaf] == 0) {
+        removeLeaf(leaf);
+      } else if (sizes[leaf] < MAX / 4) {
+        // Merge a sparse leaf into a neighbor, if the result is at most 3/4 full
+        if (leaf + 1 < count && sizes[leaf] + sizes[leaf + 1] <= MAX * 3 / 4) {
+          merge(leaf);
+        } else if (leaf > 0 && sizes[leaf - 1] + sizes[leaf] <= MAX * 3 / 4) {
+          merge(leaf - 1);
+        }
+      }
+    }
+
+    void clear() {
+      leaves = new long[4][];
+      sizes = new int[4];
+      count = 0;
+      size = 0;
+      modCount++;
+    }
+
+    /**
+     * Moves the upper half of a full leaf to a new leaf after it.
+     */
+    private void split(int leaf) {
+      int half = MAX / 2;
+      long[] upper = new long[MAX];
+      System.arraycopy(leaves[leaf], half, upper, 0, MAX - half);
+      sizes[leaf] = half;
+      insertLeaf(leaf + 1, upper);
+      sizes[leaf + 1] = MAX - half;
+    }
+
+    /**
+     * Appends the elements of leaf + 1 to leaf, and removes leaf + 1.
+     */
+    private void merge(int leaf) {
+      int n = sizes[leaf];
+      int m = sizes[leaf + 1];
+      if (leaves[leaf].length < n + m) {
+        leaves[leaf] = Arrays.copyOf(leaves[leaf], MAX);
+      }
+      System.arraycopy(leaves[leaf + 1], 0, leaves[leaf], n, m);
+      sizes[leaf] = n + m;
+      removeLeaf(leaf + 1);
+    }
+
+    private void insertLeaf(int leaf, long[] values) {
+      if (count == leaves.length) {
+        leaves = Arrays.copyOf(leaves, count * 2);
+        sizes = Arrays.copyOf(sizes, count * 2);
+      }
+      System.arraycopy(leaves, leaf, leaves, leaf + 1, count - leaf);
+      System.arraycopy(sizes, leaf, sizes, leaf + 1, count - leaf);
+      leaves[leaf] = values;
+      sizes[leaf] = 0;
+      count++;
+    }
+
+    private void removeLeaf(int leaf) {
+      System.arraycopy(leaves, leaf + 1, leaves, leaf, count - leaf - 1);
+      System.arraycopy(sizes, leaf + 1, sizes, leaf, count - leaf - 1);
+      leaves[--count] = null;
+    }
+  }
+
+  /**
+   * Iterates over the elements of the set (or view) without boxing:
+   * <pre>
+   * for (LongSortedSet.Cursor c = set.descendingCursor(); c.advance();) {
+   *   total += c.value();
+   * }
+   * </pre>
+   * The cursor fails with ConcurrentModificationException if the set is modified
+   * other than through its remove method.
+   */
+  public final class Cursor {
+
+    private final boolean descending;
+    private long pos = -1;
+    private long value;
+    private boolean started;
+    private boolean removed;
+    private int expectedModCount = store.modCount;
+
+    private Cursor(boolean descending) {
+      this.descending = descending;
+    }
+
+    /**
+     * Moves to the next element, and returns false if there are no more.
+     * @return
+     */
+    public boolean advance() {
+      if (store.modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      if (!started) {
+        started = true;
+        pos = descending ? lastPos() : firstPos();
+      } else if (removed) {
+        // The positions have moved, so find the neighbor of the removed element again
+        removed = false;
+        pos = descending ? floorPos(value, false) : ceilingPos(value, false);
+      } else if (pos >= 0) {
+        pos = descending ? store.previousPos(pos) : store.nextPos(pos);
+        if (pos >= 0 && (descending ? tooLow(store.value(pos)) : tooHigh(store.value(pos)))) {
+          pos = -1;
+        }
+      }
+      if (pos < 0) {
+        return false;
+      }
+      value = store.value(pos);
+      return true;
+    }
+
+    public long value() {
+      return value;
+    }
+
+    /**
+     * Removes the current element from the set.
+     */
+    public void remove() {
+      if (pos < 0 || removed) {
+        throw new IllegalStateException();
+      }
+      if (store.modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+      store.removeAt(pos);
+      expectedModCount = store.modCount;
+      removed = true;
+    }
+  }
+}
@@ -0,0 +1,333 @@
+package net.nuttle.java.util.primitive;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from object keys to int values, without boxing the values.
+ * Keys and values live in two parallel arrays, probed linearly, and get, put and remove
+ * allocate nothing beyond what the keys' hashCode and equals do.
+ * Removal shifts the following entries back instead of leaving tombstones.
+ * Null marks a free slot, so null keys are not allowed.
+ * Absent keys read as the no-entry value given to the constructor (0 by default).
+ * This class is not thread-safe.
+ * @author dan
+ *
+ * @param <K>
+ */
+public class ObjectIntHashMap<K> {
+
+  private final float loadFactor;
+  private final int noEntryValue;
+  private Object[] keys;
+  private int[] values;
+  private int mask;
+  private int resizeAt;
+  private int size;
+
+  /**
+   * Creates an empty map, whose absent keys read as 0.
+   */
+  public ObjectIntHashMap() {
+    this(16);
+  }
+
+  /**
+   * Creates an empty map that holds expected entries without growing.
+   * @param expected
+   */
+  public ObjectIntHashMap(int expected) {
+    this(expected, HashUtil.DEFAULT_LOAD_FACTOR, 0);
+  }
+
+  /**
+   * Creates an empty map.
+   * @param expected number of entries the map holds without growing
+   * @param loadFactor fraction of the table that may be filled, between 0 and 1
+   * @param noEntryValue value returned for absent keys
+   */
+  public ObjectIntHashMap(int expected, float loadFactor, int noEntryValue) {
+    this.loadFactor = loadFactor;
+    this.noEntryValue = noEntryValue;
+    allocate(HashUtil.capacityFor(expected, loadFactor));
+  }
+
+  /**
+   * Returns the value returned by get and remove for absent keys.
+   * @return
+   */
+  public int noEntryValue() {
+    return noEntryValue;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean containsKey(Object key) {
+    return keys[find(key)] != null;
+  }
+
+  /**
+   * Returns the value of key, or the no-entry value if key is absent.
+   * @param key
+   * @return
+   */
+  public int get(Object key) {
+    return getOrDefault(key, noEntryValue);
+  }
+
+  /**
+   * Returns the value of key, or defaultValue if key is absent.
+   * @param key
+   * @param defaultValue
+   * @return
+   */
+  public int getOrDefault(Object key, int defaultValue) {
+    int pos = find(key);
+    return keys[pos] != null ? values[pos] : defaultValue;
+  }
+
+  /**
+   * Maps key to value, and returns the previous value, or the no-entry value if key was absent.
+   * @param key
+   * @param value
+   * @return
+   * @throws NullPointerException if key is null
+   */
+  public int put(K key, int value) {
+    int pos = find(key);
+    if (keys[pos] != null) {
+      int previous = values[pos];
+      values[pos] = value;
+      return previous;
+    }
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return noEntryValue;
+  }
+
+  /**
+   * Adds delta to the value of key (an absent key counts as the no-entry value),
+   * and returns the new value.  This is the usual way to update counters.
+   * @param key
+   * @param delta
+   * @return
+   * @throws NullPointerException if key is null
+   */
+  public int addTo(K key, int delta) {
+    int pos = find(key);
+    if (keys[pos] != null) {
+      return values[pos] += delta;
+    }
+    int value = noEntryValue + delta;
+    keys[pos] = key;
+    values[pos] = value;
+    if (++size > resizeAt) {
+      rehash(keys.length << 1);
+    }
+    return value;
+  }
+
+  /**
+   * Removes key, and returns its value, or the no-entry value if key was absent.
+   * @param key
+   * @return
+   */
+  public int remove(Object key) {
+    int pos = find(key);
+    if (keys[pos] == null) {
+      return noEntryValue;
+    }
+    int previous = values[pos];
+    size--;
+    shiftKeys(pos);
+    return previous;
+  }
+
+  /**
+   * Removes all entries.  The table keeps its capacity.
+   */
+  public void clear() {
+    Arrays.fill(keys, null);
+    size = 0;
+  }
+
+  /**
+   * Returns a cursor over the entries of the map, in no particular order.
+   * The cursor must not be used after the map is structurally modified
+   * (a put of a new key, or a remove), but setValue is allowed.
+   * @return
+   */
+  public Cursor cursor() {
+    return new Cursor();
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ObjectIntHashMap)) {
+      return false;
+    }
+    ObjectIntHashMap<?> other = (ObjectIntHashMap<?>) obj;
+    if (size != other.size) {
+      return false;
+    }
+    for (Cursor c = cursor(); c.advance();) {
+      if (!other.containsKey(c.key()) || other.get(c.key()) != c.value()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the same hash code as a java.util.Map with the same (boxed) entries.
+   */
+  @Override
+  public int hashCode() {
+    int h = 0;
+    for (Cursor c = cursor(); c.advance();) {
+      h += c.key().hashCode() ^ HashUtil.hash(c.value());
+    }
+    return h;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    for (Cursor c = cursor(); c.advance();) {
+      if (sb.length() > 1) {
+        sb.append(", ");
+      }
+      sb.append(c.key() == this ? "(this Map)" : c.key()).append('=').append(c.value());
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Returns the slot of key if present, else the free slot where it would go.
+   * @throws NullPointerException if key is null
+   */
+  private int find(Object key) {
+    Object[] keys = this.keys;
+    int pos = HashUtil.mix(key) & mask;
+    Object k;
+    while ((k = keys[pos]) != null && k != key && !k.equals(key)) {
+      pos = (pos + 1) & mask;
+    }
+    return pos;
+  }
+
+  /**
+   * Empties slot pos by moving back the entries of the same probe sequence that follow it.
+   */
+  private void shiftKeys(int pos) {
+    Object[] keys = this.keys;
+    while (true) {
+      int last = pos;
+      Object key;
+      while (true) {
+        pos = (pos + 1) & mask;
+        key = keys[pos];
+        if (key == null) {
+          keys[last] = null;
+          return;
+        }
+        int slot = HashUtil.mix(key) & mask;
+        //Move the entry at pos back to last, unless its home slot lies cyclically in (last, pos]
+        if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) {
+          break;
+        }
+      }
+      keys[last] = key;
+      values[last] = values[pos];
+    }
+  }
+
+  private void allocate(int capacity) {
+    keys = new Object[capacity];
+    values = new int[capacity];
+    mask = capacity - 1;
+    resizeAt = HashUtil.resizeAt(capacity, loadFactor);
+  }
+
+  private void rehash(int capacity) {
+    if (capacity > HashUtil.MAX_CAPACITY) {
+      throw new IllegalStateException("Map is full: " + size + " entries");
+    }
+    Object[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(capacity);
+    for (int i = 0; i < oldKeys.length; i++) {
+      Object key = oldKeys[i];
+      if (key != null) {
+        int pos = find(key);
+        keys[pos] = key;
+        values[pos] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Iterates over the entries of the map without creating an object per entry:
+   * <pre>
+   * for (ObjectIntHashMap&lt;K&gt;.Cursor c = map.cursor(); c.advance();) {
+   *   total += c.value();
+   * }
+   * </pre>
+   */
+  public final class Cursor {
+
+    private int index = -1;
+    private K key;
+    private int value;
+
+    private Cursor() {
+    }
+
+    /**
+     * Moves to the next entry, and returns false if there are no more.
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public boolean advance() {
+      int capacity = keys.length;
+      while (++index < capacity) {
+        if (keys[index] != null) {
+          key = (K) keys[index];
+          value = values[index];
+          return true;
+        }
+      }
+      index = capacity;
+      key = null;
+      return false;
+    }
+
+    public K key() {
+      return key;
+    }
+
+    public int value() {
+      return value;
+    }
+
+    /**
+     * Replaces the value of the current entry.
+     * @param newValue
+     */
+    public void setValue(int newValue) {
+      values[index] = newValue;
+      value = newValue;
+    }
+  }
+}
@@ -0,0 +1,315 @@
+package net.nuttle.java.util.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests Cache.
+ * The first tests repeat the contract checked by MapTest for java.util.HashMap, on a cache
+ * large enough to never evict; the others test the bounds, the counters and concurrent use.
+ * @author dan
+ *
+ */
+public class CacheTest {
+
+  @Test
+  public void testContainsKey() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsKey("key1"));
+    assertFalse(map.containsKey("not_exist"));
+  }
+
+  @Test
+  public void testContainsValue() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsValue("abc"));
+    assertFalse(map.containsValue("not_exist"));
+  }
+
+  @Test
+  public void testGet() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.get("key1"))));
+    assertNull(map.get("not_exist"));
+  }
+
+  @Test
+  public void testPut() {
+    Map<String, String> map = getMap();
+    assertThat(map.put("key1", "newvalue"), is(equalTo("abc")));
+    assertThat("newvalue", is(equalTo(map.get("key1"))));
+  }
+
+  @Test
+  public void testRemove() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.remove("key1"))));
+    assertNull(map.remove("notexist"));
+  }
+
+  @Test
+  public void testPutAll() {
+    Map<String, String> map = getMap();
+    Map<String, String> map2 = new HashMap<String, String>();
+    map2.put("key3", "ghi");
+    map2.put("key4", "jkl");
+    map.putAll(map2);
+    assertThat(4, is(equalTo(map.keySet().size())));
+    assertThat("ghi", is(equalTo(map.get("key3"))));
+  }
+
+  @Test
+  public void testKeySet() {
+    Map<String, String> map = getMap();
+    assertTrue(map.keySet().contains("key1"));
+    assertTrue(map.keySet().contains("key2"));
+    assertThat(2, is(equalTo(map.keySet().size())));
+  }
+
+  @Test
+  public void testValues() {
+    Map<String, String> map = getMap();
+    assertThat(2, is(equalTo(map.values().size())));
+    assertTrue(map.values().contains("abc"));
+    assertTrue(map.values().contains("def"));
+  }
+
+  @Test
+  public void testEntrySet() {
+    Map<String, String> map = getMap();
+    Set<Map.Entry<String, String>> es = map.entrySet();
+    Iterator<Map.Entry<String, String>>  it = es.iterator();
+    Map.Entry<String, String> entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    assertFalse(it.hasNext());
+    it.remove();
+    assertThat(1, is(equalTo(map.size())));
+  }
+
+  /**
+   * Test that the cache never holds more than its maximum number of entries,
+   * and counts its evictions.
+   */
+  @Test
+  public void testMaximumSize() {
+    Cache<Integer, Integer> cache = new Cache<>(100, new LruPolicy<Integer>());
+    for (int i = 0; i < 1000; i++) {
+      cache.put(i, i);
+      assertTrue(cache.size() <= 100);
+    }
+    assertThat(cache.size(), is(equalTo(100)));
+    assertThat(cache.stats().evictionCount(), is(equalTo(900L)));
+    assertTrue(cache.containsKey(999));
+    assertFalse(cache.containsKey(0));
+  }
+
+  /**
+   * Test that reads reach the policy, in order, through the read buffer, including reads
+   * that fill a stripe of it before the next write.
+   */
+  @Test
+  public void testReadsReachPolicy() {
+    Cache<String, String> cache = new Cache<>(3, new LruPolicy<String>());
+    cache.put("a", "A");
+    cache.put("b", "B");
+    cache.put("c", "C");
+    for (int i = 0; i < 5 * ReadBuffer.STRIPE_SIZE; i++) {
+      cache.get("a");
+    }
+    cache.get("b");
+    cache.put("d", "D");
+    assertFalse(cache.containsKey("c"));
+    cache.put("e", "E");
+    assertFalse(cache.containsKey("a"));
+    assertTrue(cache.containsKey("b"));
+  }
+
+  /**
+   * Test a weighted cache: replacing a value updates the weight, and an entry heavier
+   * than the whole cache is evicted at once.
+   */
+  @Test
+  public void testMaximumWeight() {
+    Cache<String, String> cache = new Cache<>(10, new Weigher<String, String>() {
+      @Override
+      public int weigh(String key, String value) {
+        return value.length();
+      }
+    }, new LruPolicy<String>());
+    cache.put("a", "1234");
+    cache.put("b", "1234");
+    assertThat(cache.weight(), is(equalTo(8L)));
+    cache.put("a", "12");
+    assertThat(cache.weight(), is(equalTo(6L)));
+    cache.put("c", "12345");
+    assertFalse(cache.containsKey("b"));
+    assertThat(cache.weight(), is(equalTo(7L)));
+    cache.put("d", "12345678901");
+    assertFalse(cache.containsKey("d"));
+    assertTrue(cache.weight() <= 10);
+    cache.clear();
+    assertThat(cache.weight(), is(equalTo(0L)));
+  }
+
+  /**
+   * Test the hit and miss counters.
+   */
+  @Test
+  public void testStats() {
+    Cache<String, String> cache = new Cache<>(10, new LruPolicy<String>());
+    cache.put("key1", "abc");
+    cache.get("key1");
+    cache.get("key1");
+    cache.get("key2");
+    cache.containsKey("key2");
+    CacheStats stats = cache.stats();
+    assertThat(stats, is(equalTo(new CacheStats(2, 1, 0))));
+    assertThat(stats.requestCount(), is(equalTo(3L)));
+    assertThat(stats.hitRate(), is(equalTo(2.0 / 3)));
+  }
+
+  /**
+   * Test the atomic methods of ConcurrentMap.
+   */
+  @Test
+  public void testConcurrentMap() {
+    Cache<String, String> cache = new Cache<>(10, new LfuPolicy<String>());
+    assertNull(cache.putIfAbsent("key1", "abc"));
+    assertThat(cache.putIfAbsent("key1", "def"), is(equalTo("abc")));
+    assertFalse(cache.replace("key1", "def", "ghi"));
+    assertTrue(cache.replace("key1", "abc", "ghi"));
+    assertThat(cache.replace("key1", "jkl"), is(equalTo("ghi")));
+    assertNull(cache.replace("key2", "jkl"));
+    assertFalse(cache.remove("key1", "ghi"));
+    assertTrue(cache.remove("key1", "jkl"));
+    assertTrue(cache.isEmpty());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    getMap().put("key3", null);
+  }
+
+  /**
+   * Test many threads reading and writing a small cache.
+   * The bound must hold, the weight must match the entries, and every request must be counted.
+   */
+  @Test(timeout=30000)
+  public void testConcurrentAccess() throws Exception {
+    final int threads = 8;
+    final int operations = 50000;
+    final Cache<Integer, Integer> cache = new Cache<>(500, new TinyLfuPolicy<Integer>(500));
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            start.await();
+            for (int i = 0; i < operations; i++) {
+              int key = (i * 31 + thread * 7) % 2000;
+              if (cache.get(key) == null) {
+                cache.put(key, key);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(cache.size() <= 500);
+    assertThat(cache.weight(), is(equalTo((long) cache.size())));
+    assertThat(cache.stats().requestCount(), is(equalTo((long) threads * operations)));
+    for (Map.Entry<Integer, Integer> entry : cache.entrySet()) {
+      assertThat(entry.getValue(), is(equalTo(entry.getKey())));
+    }
+  }
+
+  /**
+   * Test that reads still steer the policy while many threads read through the cache at once:
+   * a hot set that fits in the cache must stay cached under a stream of keys read once.
+   */
+  @Test(timeout=60000)
+  public void testConcurrentHitRatio() throws Exception {
+    assertTrue(hitRatio(new LruPolicy<Integer>()) > 0.8);
+    assertTrue(hitRatio(new TinyLfuPolicy<Integer>(200)) > 0.8);
+  }
+
+  /**
+   * Returns the hit ratio of 8 threads reading through a cache of 200, 9 times in 10 from 100 hot keys
+   * and otherwise from keys of their own that are read once.
+   */
+  private static double hitRatio(EvictionPolicy<Integer> policy) throws Exception {
+    final int threads = 8;
+    final int operations = 100000;
+    final Cache<Integer, Integer> cache = new Cache<>(200, policy);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final CountDownLatch start = new CountDownLatch(1);
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        final int thread = t;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            Random random = new Random(thread);
+            start.await();
+            for (int i = 0; i < operations; i++) {
+              int key = random.nextInt(10) == 0 ? 1000 + thread * operations + i : random.nextInt(100);
+              if (cache.get(key) == null) {
+                cache.put(key, key);
+              }
+            }
+            return null;
+          }
+        }));
+      }
+      start.countDown();
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertTrue(cache.size() <= 200);
+    return cache.stats().hitRate();
+  }
+
+  private Map<String, String> getMap() {
+    Map<String, String> map = new Cache<String, String>(100, new LruPolicy<String>());
+    map.put("key1", "abc");
+    map.put("key2", "def");
+    return map;
+  }
+}
@@ -0,0 +1,111 @@
+package net.nuttle.java.util.cache;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the eviction order of LruPolicy, LfuPolicy and TinyLfuPolicy,
+ * and compares their hit rates in a Cache on a skewed workload interrupted by scans.
+ * @author dan
+ *
+ */
+public class EvictionPolicyTest {
+
+  /**
+   * Test that LruPolicy evicts the least recently used key.
+   */
+  @Test
+  public void testLru() {
+    EvictionPolicy<String> policy = new LruPolicy<>();
+    policy.onInsert("a");
+    policy.onInsert("b");
+    policy.onInsert("c");
+    policy.onAccess("a");
+    policy.onAccess("z");
+    assertThat(policy.evict(), is(equalTo("b")));
+    policy.onRemove("c");
+    assertThat(policy.evict(), is(equalTo("a")));
+    assertNull(policy.evict());
+  }
+
+  /**
+   * Test that LfuPolicy evicts the least frequently used key, the least recent one on ties.
+   */
+  @Test
+  public void testLfu() {
+    EvictionPolicy<String> policy = new LfuPolicy<>();
+    policy.onInsert("a");
+    policy.onInsert("b");
+    policy.onInsert("c");
+    policy.onAccess("a");
+    policy.onAccess("a");
+    policy.onAccess("c");
+    policy.onAccess("b");
+    assertThat(policy.evict(), is(equalTo("c")));
+    assertThat(policy.evict(), is(equalTo("b")));
+    policy.clear();
+    assertNull(policy.evict());
+  }
+
+  /**
+   * Test that TinyLfuPolicy rejects a new key seen less often than the key it would displace,
+   * and admits it once it has been seen more often.
+   */
+  @Test
+  public void testTinyLfuAdmission() {
+    //A window of 1 key, so each insertion moves the previous key to probation
+    EvictionPolicy<String> policy = new TinyLfuPolicy<>(100);
+    for (int i = 0; i < 100; i++) {
+      policy.onInsert("k" + i);
+      policy.onAccess("k" + i);
+    }
+    policy.onInsert("new");
+    policy.onInsert("next");
+    assertThat(policy.evict(), is(equalTo("new")));
+    policy.onInsert("hot");
+    for (int i = 0; i < 5; i++) {
+      policy.onAccess("hot");
+    }
+    policy.onInsert("after");
+    assertThat(policy.evict(), is(equalTo("k0")));
+    assertThat(policy.evict(), is(equalTo("k1")));
+  }
+
+  /**
+   * Test that on a Zipf-like workload with periodic scans of keys read once,
+   * TinyLfuPolicy gets a better hit rate than LruPolicy.
+   */
+  @Test
+  public void testScanResistance() {
+    double lru = hitRate(new LruPolicy<Integer>());
+    double tinyLfu = hitRate(new TinyLfuPolicy<Integer>(1000));
+    assertTrue("lru " + lru + ", tinylfu " + tinyLfu, tinyLfu > lru);
+  }
+
+  private double hitRate(EvictionPolicy<Integer> policy) {
+    Cache<Integer, Integer> cache = new Cache<>(1000, policy);
+    Random random = new Random(3);
+    int scanKey = 1000000;
+    for (int i = 0; i < 200000; i++) {
+      int key;
+      if (i % 10000 < 2000) {
+        key = scanKey++;
+      } else {
+        //Roughly Zipfian over 100000 keys
+        key = (int) Math.pow(100000, random.nextDouble()) - 1;
+      }
+      if (cache.get(key) == null) {
+        cache.put(key, key);
+      }
+    }
+    return cache.stats().hitRate();
+  }
+}
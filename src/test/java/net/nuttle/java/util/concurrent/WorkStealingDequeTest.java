@@ -0,0 +1,182 @@
+package net.nuttle.java.util.concurrent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests WorkStealingDeque with the methods of DequeTest that the owner end and the stealing end
+ * support, and an owner pushing and popping numbers while thieves steal them, checking that
+ * every number is taken exactly once.
+ * @author dan
+ *
+ */
+public class WorkStealingDequeTest {
+
+  private static final int THIEVES = 4;
+  private static final int COUNT = 1000000;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(THIEVES);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Test push, pop and pollLast, as DequeTest does on ArrayDeque.
+   */
+  @Test
+  public void testDeque() {
+    WorkStealingDeque<String> d = new WorkStealingDeque<>();
+    d.push("abc");
+    d.addFirst("def");
+    assertTrue(d.offerFirst("ghi"));
+    assertThat(d.size(), is(equalTo(3)));
+    assertThat(d.getFirst(), is(equalTo("ghi")));
+    assertThat(d.peek(), is(equalTo("ghi")));
+    assertThat(d.getLast(), is(equalTo("abc")));
+    assertThat(d.toString(), is(equalTo("[ghi, def, abc]")));
+    assertThat(d.pollLast(), is(equalTo("abc")));
+    assertThat(d.pop(), is(equalTo("ghi")));
+    assertThat(d.pollFirst(), is(equalTo("def")));
+    assertNull(d.pollFirst());
+    assertNull(d.pollLast());
+    assertNull(d.peekFirst());
+    assertNull(d.peekLast());
+    assertTrue(d.isEmpty());
+  }
+
+  @Test
+  public void testIterators() {
+    WorkStealingDeque<String> d = new WorkStealingDeque<>();
+    d.push("abc");
+    d.push("def");
+    d.push("ghi");
+    Iterator<String> it = d.descendingIterator();
+    assertThat(it.next(), is(equalTo("abc")));
+    assertThat(it.next(), is(equalTo("def")));
+    assertThat(it.next(), is(equalTo("ghi")));
+    assertFalse(it.hasNext());
+    it = d.iterator();
+    assertThat(it.next(), is(equalTo("ghi")));
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testPopEmpty() {
+    new WorkStealingDeque<String>().pop();
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testAddLast() {
+    new WorkStealingDeque<String>().add("abc");
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testPushNull() {
+    new WorkStealingDeque<String>().push(null);
+  }
+
+  /**
+   * Test that the deque grows, keeping its elements, when the tail has moved around the array.
+   */
+  @Test
+  public void testGrow() {
+    WorkStealingDeque<Integer> d = new WorkStealingDeque<>(4);
+    for (int i = 0; i < 3; i++) {
+      d.push(i);
+    }
+    assertThat(d.pollLast(), is(equalTo(0)));
+    assertThat(d.pollLast(), is(equalTo(1)));
+    for (int i = 3; i < 100; i++) {
+      d.push(i);
+    }
+    assertThat(d.size(), is(equalTo(98)));
+    for (int i = 99; i >= 52; i--) {
+      assertThat(d.pop(), is(equalTo(i)));
+    }
+    for (int i = 2; i < 52; i++) {
+      assertThat(d.pollLast(), is(equalTo(i)));
+    }
+    assertTrue(d.isEmpty());
+  }
+
+  /**
+   * Test an owner pushing numbers, and popping one in every three, while thieves steal the others.
+   */
+  @Test(timeout = 60000)
+  public void testSteal() throws Exception {
+    final WorkStealingDeque<Integer> d = new WorkStealingDeque<>(16);
+    final AtomicIntegerArray taken = new AtomicIntegerArray(COUNT);
+    final boolean[] done = new boolean[1];
+    List<Future<Integer>> thieves = new ArrayList<>();
+    for (int i = 0; i < THIEVES; i++) {
+      thieves.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() {
+          int n = 0;
+          while (true) {
+            Integer e = d.pollLast();
+            if (e != null) {
+              taken.incrementAndGet(e);
+              n++;
+            } else if (isDone()) {
+              return n;
+            }
+          }
+        }
+
+        private boolean isDone() {
+          synchronized (done) {
+            return done[0];
+          }
+        }
+      }));
+    }
+    for (int i = 0; i < COUNT; i++) {
+      d.push(i);
+      if (i % 3 == 0) {
+        Integer e = d.pollFirst();
+        if (e != null) {
+          taken.incrementAndGet(e);
+        }
+      }
+    }
+    Integer e;
+    while ((e = d.pollFirst()) != null) {
+      taken.incrementAndGet(e);
+    }
+    synchronized (done) {
+      done[0] = true;
+    }
+    for (Future<Integer> thief : thieves) {
+      thief.get();
+    }
+    for (int i = 0; i < COUNT; i++) {
+      assertThat(taken.get(i), is(equalTo(1)));
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package net.nuttle.java.util.concurrent;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests WorkStealingPool and Task with recursive tasks fine enough that the workers steal from
+ * each other throughout.
+ * @author dan
+ *
+ */
+public class WorkStealingPoolTest {
+
+  private WorkStealingPool pool;
+
+  @Before
+  public void setUp() {
+    pool = new WorkStealingPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Test(timeout = 30000)
+  public void testFibonacci() {
+    assertThat(pool.invoke(new Fibonacci(25)), is(equalTo(75025)));
+  }
+
+  @Test(timeout = 30000)
+  public void testSum() {
+    long[] values = new long[1000000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    assertThat(pool.invoke(new Sum(values, 0, values.length)), is(equalTo(499999500000L)));
+  }
+
+  /**
+   * Test that a task submitted to a worker runs on that worker.
+   */
+  @Test(timeout = 30000)
+  public void testAffinity() {
+    for (int worker = 0; worker < pool.parallelism(); worker++) {
+      Task<String> task = pool.submit(new Task<String>() {
+        @Override
+        protected String compute() {
+          return Thread.currentThread().getName();
+        }
+      }, worker);
+      assertThat(task.join(), is(equalTo("WorkStealingPool-worker-" + worker)));
+    }
+  }
+
+  @Test(timeout = 30000)
+  public void testFailure() {
+    Task<Integer> task = pool.submit(new Task<Integer>() {
+      @Override
+      protected Integer compute() {
+        throw new IllegalStateException("failed");
+      }
+    });
+    try {
+      task.join();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), is(equalTo("failed")));
+    }
+    assertTrue(task.isFailed());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testForkOutsidePool() {
+    new Fibonacci(3).fork();
+  }
+
+  @Test(timeout = 30000)
+  public void testShutdown() throws Exception {
+    final AtomicInteger count = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(1);
+    for (int i = 0; i < 100; i++) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            latch.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          count.incrementAndGet();
+        }
+      });
+    }
+    pool.shutdown();
+    assertFalse(pool.awaitTermination(10, TimeUnit.MILLISECONDS));
+    latch.countDown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    assertThat(count.get(), is(equalTo(100)));
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void testSubmitAfterShutdown() {
+    pool.shutdown();
+    pool.submit(new Fibonacci(3));
+  }
+
+  private static final class Fibonacci extends Task<Integer> {
+    private final int n;
+
+    Fibonacci(int n) {
+      this.n = n;
+    }
+
+    @Override
+    protected Integer compute() {
+      if (n < 2) {
+        return n;
+      }
+      Fibonacci a = new Fibonacci(n - 1);
+      Fibonacci b = new Fibonacci(n - 2);
+      b.fork();
+      return a.invoke() + b.join();
+    }
+  }
+
+  private static final class Sum extends Task<Long> {
+    private final long[] values;
+    private final int from;
+    private final int to;
+
+    Sum(long[] values, int from, int to) {
+      this.values = values;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected Long compute() {
+      if (to - from <= 1000) {
+        long sum = 0;
+        for (int i = from; i < to; i++) {
+          sum += values[i];
+        }
+        return sum;
+      }
+      int mid = (from + to) >>> 1;
+      Sum left = new Sum(values, from, mid);
+      Sum right = new Sum(values, mid, to);
+      invokeAll(left, right);
+      return left.join() + right.join();
+    }
+  }
+}
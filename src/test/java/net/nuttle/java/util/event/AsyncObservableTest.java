@@ -0,0 +1,243 @@
+package net.nuttle.java.util.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests AsyncObservable: batching by size and by delay, the overflow policies, with an observer
+ * held up by a latch, and removal and shutdown.
+ * @author dan
+ *
+ */
+public class AsyncObservableTest {
+
+  private ExecutorService executor;
+  private AsyncObservable<Integer> observable;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+    observable = new AsyncObservable<>(executor);
+  }
+
+  @After
+  public void tearDown() {
+    observable.shutdown();
+    executor.shutdownNow();
+  }
+
+  /**
+   * Test that with a long delay, notifications arrive in full batches only.
+   */
+  @Test(timeout = 10000)
+  public void testBatchSize() throws InterruptedException {
+    Recorder recorder = new Recorder(100);
+    observable.addObserver(recorder, 10, 1, TimeUnit.HOURS);
+    for (int i = 0; i < 100; i++) {
+      observable.notifyObservers(i);
+    }
+    recorder.await();
+    assertThat(recorder.batches.size(), is(equalTo(10)));
+    for (List<Integer> batch : recorder.batches) {
+      assertThat(batch.size(), is(equalTo(10)));
+    }
+    assertThat(recorder.values(), is(equalTo(range(0, 100))));
+  }
+
+  /**
+   * Test that a partial batch arrives after the delay.
+   */
+  @Test(timeout = 10000)
+  public void testDelay() throws InterruptedException {
+    Recorder recorder = new Recorder(5);
+    observable.addObserver(recorder, 1000, 50, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    for (int i = 0; i < 5; i++) {
+      observable.notifyObservers(i);
+    }
+    recorder.await();
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertThat(recorder.batches.size(), is(equalTo(1)));
+    assertThat(recorder.values(), is(equalTo(range(0, 5))));
+  }
+
+  @Test(timeout = 10000)
+  public void testDropNewest() throws InterruptedException {
+    Recorder recorder = new Recorder(5);
+    AsyncObservable<Integer>.Subscription subscription =
+      observable.addObserver(recorder, 1, 0, TimeUnit.MILLISECONDS, 4, OverflowPolicy.DROP_NEWEST);
+    fillWhileBlocked(recorder);
+    assertThat(subscription.dropped(), is(equalTo(6L)));
+    assertThat(recorder.values().toString(), is(equalTo("[0, 1, 2, 3, 4]")));
+  }
+
+  @Test(timeout = 10000)
+  public void testDropOldest() throws InterruptedException {
+    Recorder recorder = new Recorder(5);
+    AsyncObservable<Integer>.Subscription subscription =
+      observable.addObserver(recorder, 1, 0, TimeUnit.MILLISECONDS, 4, OverflowPolicy.DROP_OLDEST);
+    fillWhileBlocked(recorder);
+    assertThat(subscription.dropped(), is(equalTo(6L)));
+    assertThat(recorder.values().toString(), is(equalTo("[0, 7, 8, 9, 10]")));
+  }
+
+  /**
+   * Test that a BLOCK observer with a full queue holds up the notifying thread until it catches up.
+   */
+  @Test(timeout = 10000)
+  public void testBlock() throws Exception {
+    final Recorder recorder = new Recorder(6);
+    observable.addObserver(recorder, 1, 0, TimeUnit.MILLISECONDS, 4, OverflowPolicy.BLOCK);
+    recorder.hold();
+    observable.notifyObservers(0);
+    recorder.entered.await();
+    ExecutorService notifier = Executors.newSingleThreadExecutor();
+    try {
+      Future<?> future = notifier.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (int i = 1; i < 6; i++) {
+            observable.notifyObservers(i);
+          }
+        }
+      });
+      Thread.sleep(100);
+      assertFalse(future.isDone());
+      recorder.release();
+      future.get();
+    } finally {
+      notifier.shutdownNow();
+    }
+    recorder.await();
+    assertThat(recorder.values(), is(equalTo(range(0, 6))));
+  }
+
+  @Test(timeout = 10000)
+  public void testDeleteObserver() throws InterruptedException {
+    Recorder kept = new Recorder(3);
+    Recorder deleted = new Recorder(3);
+    observable.addObserver(kept, 10, 0, TimeUnit.MILLISECONDS);
+    observable.addObserver(deleted, 10, 0, TimeUnit.MILLISECONDS);
+    assertThat(observable.countObservers(), is(equalTo(2)));
+    assertTrue(observable.deleteObserver(deleted));
+    assertFalse(observable.deleteObserver(deleted));
+    assertThat(observable.countObservers(), is(equalTo(1)));
+    for (int i = 0; i < 3; i++) {
+      observable.notifyObservers(i);
+    }
+    kept.await();
+    assertTrue(deleted.batches.isEmpty());
+  }
+
+  /**
+   * Test that shutdown delivers the notifications still waiting for their delay.
+   */
+  @Test(timeout = 10000)
+  public void testShutdown() throws InterruptedException {
+    Recorder recorder = new Recorder(3);
+    observable.addObserver(recorder, 10, 1, TimeUnit.HOURS);
+    for (int i = 0; i < 3; i++) {
+      observable.notifyObservers(i);
+    }
+    observable.shutdown();
+    recorder.await();
+    assertThat(recorder.values(), is(equalTo(range(0, 3))));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testNotifyAfterShutdown() {
+    observable.shutdown();
+    observable.notifyObservers(0);
+  }
+
+  /**
+   * Notifies 0, waits until the observer is holding it, notifies 1 to 10, and lets the observer go on.
+   */
+  private void fillWhileBlocked(Recorder recorder) throws InterruptedException {
+    recorder.hold();
+    observable.notifyObservers(0);
+    recorder.entered.await();
+    for (int i = 1; i <= 10; i++) {
+      observable.notifyObservers(i);
+    }
+    recorder.release();
+    recorder.await();
+  }
+
+  private static List<Integer> range(int from, int to) {
+    List<Integer> values = new ArrayList<>();
+    for (int i = from; i < to; i++) {
+      values.add(i);
+    }
+    return values;
+  }
+
+  /**
+   * Records copies of the batches it receives, and can hold up its first batch until released.
+   */
+  private static final class Recorder implements BatchObserver<Integer> {
+    final List<List<Integer>> batches = new ArrayList<>();
+    final CountDownLatch entered = new CountDownLatch(1);
+    private final CountDownLatch done;
+    private volatile CountDownLatch held;
+
+    Recorder(int expected) {
+      this.done = new CountDownLatch(expected);
+    }
+
+    void hold() {
+      held = new CountDownLatch(1);
+    }
+
+    void release() {
+      held.countDown();
+    }
+
+    @Override
+    public void update(AsyncObservable<?> source, List<? extends Integer> batch) {
+      synchronized (this) {
+        batches.add(new ArrayList<Integer>(batch));
+      }
+      entered.countDown();
+      CountDownLatch latch = held;
+      if (latch != null) {
+        try {
+          latch.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        done.countDown();
+      }
+    }
+
+    void await() throws InterruptedException {
+      done.await();
+    }
+
+    synchronized List<Integer> values() {
+      List<Integer> values = new ArrayList<>();
+      for (List<Integer> batch : batches) {
+        values.addAll(batch);
+      }
+      return values;
+    }
+  }
+}
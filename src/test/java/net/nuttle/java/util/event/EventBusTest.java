@@ -0,0 +1,194 @@
+package net.nuttle.java.util.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import net.nuttle.java.util.impl.Supplier;
+import net.nuttle.java.util.impl.WaitStrategies;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Tests EventBus with handlers that check they see every event, in order, and after the handlers
+ * they depend on, from one publisher or several.
+ * @author dan
+ *
+ */
+public class EventBusTest {
+
+  private static final int COUNT = 200000;
+
+  private static final Supplier<Event> FACTORY = new Supplier<Event>() {
+    @Override
+    public Event get() {
+      return new Event();
+    }
+  };
+
+  private static final EventTranslator<Event, Long> TRANSLATOR = new EventTranslator<Event, Long>() {
+    @Override
+    public void translateTo(Event event, long sequence, Long arg) {
+      event.value = arg;
+      event.stage = 0;
+    }
+  };
+
+  private EventBus<Event> bus;
+
+  @After
+  public void tearDown() throws InterruptedException {
+    if (bus != null) {
+      bus.halt();
+    }
+  }
+
+  /**
+   * Test that every handler sees every event, in order.
+   */
+  @Test(timeout = 30000)
+  public void testMulticast() throws InterruptedException {
+    bus = new EventBus<>(FACTORY, 64);
+    List<Checker> checkers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      checkers.add(new Checker(-1));
+    }
+    bus.handleWith(checkers.get(0), checkers.get(1), checkers.get(2));
+    bus.start();
+    for (long i = 0; i < COUNT; i++) {
+      bus.publish(TRANSLATOR, i);
+    }
+    bus.shutdown();
+    for (Checker checker : checkers) {
+      assertThat(checker.count, is(equalTo((long) COUNT)));
+      assertThat(checker.errors, is(equalTo(0)));
+    }
+  }
+
+  /**
+   * Test that handlers added with then see each event only after the handlers before them.
+   */
+  @Test(timeout = 30000)
+  public void testDependencies() throws InterruptedException {
+    bus = new EventBus<>(FACTORY, 64, WaitStrategies.YIELD);
+    Checker first = new Checker(0);
+    Checker second = new Checker(1);
+    Checker third = new Checker(2);
+    bus.handleWith(first).then(second).then(third);
+    bus.start();
+    for (long i = 0; i < COUNT; i++) {
+      bus.publish(TRANSLATOR, i);
+    }
+    bus.shutdown();
+    assertThat(third.count, is(equalTo((long) COUNT)));
+    assertThat(first.errors + second.errors + third.errors, is(equalTo(0)));
+  }
+
+  /**
+   * Test several publisher threads, with a handler that checks each publisher's events arrive in order.
+   */
+  @Test(timeout = 30000)
+  public void testPublishers() throws Exception {
+    final int publishers = 4;
+    bus = new EventBus<>(FACTORY, 256);
+    final long[] next = new long[publishers];
+    final int[] errors = new int[1];
+    bus.handleWith(new EventHandler<Event>() {
+      @Override
+      public void onEvent(Event event, long sequence, boolean endOfBatch) {
+        int publisher = (int) (event.value >>> 32);
+        if ((event.value & 0xffffffffL) != next[publisher]++) {
+          errors[0]++;
+        }
+      }
+    });
+    bus.start();
+    ExecutorService executor = Executors.newFixedThreadPool(publishers);
+    try {
+      List<Future<Void>> futures = new ArrayList<>();
+      for (int p = 0; p < publishers; p++) {
+        final long publisher = p;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (long i = 0; i < COUNT; i++) {
+              bus.publish(TRANSLATOR, publisher << 32 | i);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    bus.shutdown();
+    assertThat(errors[0], is(equalTo(0)));
+    for (int p = 0; p < publishers; p++) {
+      assertThat(next[p], is(equalTo((long) COUNT)));
+    }
+  }
+
+  /**
+   * Test that publishers cannot overwrite events the handlers have not processed.
+   */
+  @Test
+  public void testFull() {
+    bus = new EventBus<>(FACTORY, 8);
+    bus.handleWith(new Checker(0));
+    for (long i = 0; i < 8; i++) {
+      assertTrue(bus.tryPublish(TRANSLATOR, i));
+    }
+    assertFalse(bus.tryPublish(TRANSLATOR, 8L));
+    assertThat(bus.ringBuffer().remainingCapacity(), is(equalTo(0L)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddAfterStart() {
+    bus = new EventBus<>(FACTORY, 8);
+    bus.start();
+    bus.handleWith(new Checker(0));
+  }
+
+  private static final class Event {
+    long value;
+    int stage;
+  }
+
+  /**
+   * Checks that events arrive in order of value, and unless stage is -1, that the handlers before it
+   * have seen them, then marks them as seen.
+   */
+  private static final class Checker implements EventHandler<Event> {
+    private final int stage;
+    long count;
+    int errors;
+
+    Checker(int stage) {
+      this.stage = stage;
+    }
+
+    @Override
+    public void onEvent(Event event, long sequence, boolean endOfBatch) {
+      if (event.value != count++ || (stage >= 0 && event.stage != stage)) {
+        errors++;
+      }
+      if (stage >= 0) {
+        event.stage = stage + 1;
+      }
+    }
+  }
+}
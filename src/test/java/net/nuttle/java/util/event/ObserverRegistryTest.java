@@ -0,0 +1,179 @@
+package net.nuttle.java.util.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ObserverRegistry with Observers as in ObserverTest, including the case that breaks
+ * the ArrayList of ObserverTest's ObservableImpl: an observer subscribing another during a notification.
+ * The concurrent test has threads adding and removing observers of their own while another notifies.
+ * @author dan
+ *
+ */
+public class ObserverRegistryTest {
+
+  private static final Notification<Observer, Object> UPDATE = new Notification<Observer, Object>() {
+    @Override
+    public void deliver(Observer observer, Object arg) {
+      observer.update(null, arg);
+    }
+  };
+
+  private ObserverRegistry<Observer> registry = null;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    registry = new ObserverRegistry<>();
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testAddRemove() {
+    Recorder a = new Recorder();
+    Recorder b = new Recorder();
+    assertTrue(registry.add(a));
+    assertFalse(registry.add(a));
+    assertTrue(registry.add(b));
+    assertThat(registry.size(), is(equalTo(2)));
+    assertTrue(registry.contains(b));
+    registry.notifyObservers(UPDATE, "NOTIFY");
+    assertThat(a.args.toString(), is(equalTo("[NOTIFY]")));
+    assertThat(b.args.toString(), is(equalTo("[NOTIFY]")));
+    assertTrue(registry.remove(a));
+    assertFalse(registry.remove(a));
+    registry.notifyObservers(UPDATE, "AGAIN");
+    assertThat(a.args.toString(), is(equalTo("[NOTIFY]")));
+    assertThat(b.args.toString(), is(equalTo("[NOTIFY, AGAIN]")));
+    registry.clear();
+    assertTrue(registry.isEmpty());
+  }
+
+  /**
+   * Test that an observer may subscribe and unsubscribe others during a notification,
+   * which sees the observers registered when it began.
+   */
+  @Test
+  public void testChangeDuringNotification() {
+    final Recorder added = new Recorder();
+    final Recorder removed = new Recorder();
+    registry.add(new Observer() {
+      @Override
+      public void update(Observable o, Object arg) {
+        registry.add(added);
+        registry.remove(removed);
+      }
+    });
+    registry.add(removed);
+    registry.notifyObservers(UPDATE, "FIRST");
+    registry.notifyObservers(UPDATE, "SECOND");
+    assertThat(removed.args.toString(), is(equalTo("[FIRST]")));
+    assertThat(added.args.toString(), is(equalTo("[SECOND]")));
+  }
+
+  @Test
+  public void testSnapshot() {
+    Recorder a = new Recorder();
+    registry.add(a);
+    Object[] snapshot = registry.snapshot();
+    registry.add(new Recorder());
+    assertThat(snapshot.length, is(equalTo(1)));
+    assertTrue(snapshot[0] == a);
+    assertThat(registry.snapshot().length, is(equalTo(2)));
+  }
+
+  /**
+   * Test threads adding and removing observers concurrently: none of their changes may be lost,
+   * and a permanent observer must receive every notification.
+   */
+  @Test(timeout = 30000)
+  public void testConcurrentChurn() throws Exception {
+    final Counter permanent = new Counter();
+    registry.add(permanent);
+    List<Future<Void>> futures = new ArrayList<>();
+    for (int t = 0; t < 3; t++) {
+      futures.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          List<Counter> mine = new ArrayList<>();
+          for (int i = 0; i < 100; i++) {
+            mine.add(new Counter());
+          }
+          for (int round = 0; round < 200; round++) {
+            for (Counter counter : mine) {
+              if (!registry.add(counter)) {
+                throw new AssertionError("add lost");
+              }
+            }
+            for (Counter counter : mine) {
+              if (!registry.remove(counter)) {
+                throw new AssertionError("remove lost");
+              }
+            }
+          }
+          return null;
+        }
+      }));
+    }
+    long notifications = 0;
+    while (!allDone(futures)) {
+      registry.notifyObservers(UPDATE, null);
+      notifications++;
+    }
+    for (Future<Void> future : futures) {
+      future.get();
+    }
+    assertThat(registry.size(), is(equalTo(1)));
+    assertThat(permanent.count.get(), is(equalTo(notifications)));
+  }
+
+  private static boolean allDone(List<Future<Void>> futures) {
+    for (Future<Void> future : futures) {
+      if (!future.isDone()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Recorder implements Observer {
+    final List<Object> args = new ArrayList<>();
+
+    @Override
+    public void update(Observable o, Object arg) {
+      args.add(arg);
+    }
+  }
+
+  private static final class Counter implements Observer {
+    final AtomicLong count = new AtomicLong();
+
+    @Override
+    public void update(Observable o, Object arg) {
+      count.incrementAndGet();
+    }
+  }
+}
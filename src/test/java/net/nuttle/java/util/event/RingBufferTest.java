@@ -0,0 +1,79 @@
+package net.nuttle.java.util.event;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import net.nuttle.java.util.impl.Supplier;
+import net.nuttle.java.util.impl.WaitStrategies;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the claiming and publishing of RingBuffer slots, without handler threads.
+ * @author dan
+ *
+ */
+public class RingBufferTest {
+
+  private RingBuffer<long[]> ring = null;
+  private Sequence handler = null;
+
+  @Before
+  public void setUp() {
+    ring = new RingBuffer<>(new Supplier<long[]>() {
+      @Override
+      public long[] get() {
+        return new long[1];
+      }
+    }, 4, WaitStrategies.SPIN);
+    handler = new Sequence(-1);
+    ring.setGating(new Sequence[] {handler});
+  }
+
+  /**
+   * Test that events published out of order become visible only up to the first unpublished one.
+   */
+  @Test
+  public void testPublishOutOfOrder() {
+    long a = ring.next();
+    long b = ring.next();
+    long c = ring.next();
+    assertThat(c, is(equalTo(2L)));
+    ring.publish(c);
+    ring.publish(a);
+    assertTrue(ring.isAvailable(a));
+    assertFalse(ring.isAvailable(b));
+    assertThat(ring.highestPublished(0, c), is(equalTo(0L)));
+    ring.publish(b);
+    assertThat(ring.highestPublished(0, c), is(equalTo(2L)));
+  }
+
+  /**
+   * Test that a slot cannot be claimed again until the handler has processed its last event.
+   */
+  @Test
+  public void testWrap() {
+    assertThat(ring.next(4), is(equalTo(3L)));
+    ring.publish(0, 3);
+    assertThat(ring.tryNext(1), is(equalTo(-1L)));
+    handler.set(1);
+    assertThat(ring.remainingCapacity(), is(equalTo(2L)));
+    assertThat(ring.tryNext(2), is(equalTo(5L)));
+    assertThat(ring.tryNext(1), is(equalTo(-1L)));
+    ring.get(4)[0] = 4;
+    ring.publish(4, 5);
+    assertFalse(ring.isAvailable(0));
+    assertTrue(ring.isAvailable(4));
+    assertThat(ring.get(0)[0], is(equalTo(4L)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadSize() {
+    new RingBuffer<long[]>(null, 6, WaitStrategies.SPIN);
+  }
+}
@@ -0,0 +1,324 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests of the NavigableMap contract shared by the sorted maps of this package.
+ * The first tests repeat NavigableMapTest, which checks java.util.TreeMap;
+ * the random tests replay the same operations on a TreeMap and compare the results,
+ * including through sub maps and descending views.
+ * Subclasses supply the map under test.
+ * @author dan
+ *
+ */
+public abstract class AbstractNavigableMapTest {
+
+  /**
+   * Returns an empty map of the class under test.
+   * @return
+   */
+  protected abstract <K extends Comparable<K>, V> NavigableMap<K, V> newMap();
+
+  @Test
+  public void testLowerEntry() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat("key2", is(equalTo(map.lowerEntry("key3").getKey())));
+    assertThat("key3", is(equalTo(map.lowerEntry("key33").getKey())));
+    assertNull(map.lowerEntry("key1"));
+    assertThat("key2", is(equalTo(map.lowerKey("key3"))));
+  }
+
+  @Test
+  public void testFloorEntry() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat("key3", is(equalTo(map.floorEntry("key3").getKey())));
+    assertThat("key3", is(equalTo(map.floorEntry("key33").getKey())));
+    assertNull(map.floorEntry("key0"));
+    assertThat("key3", is(equalTo(map.floorKey("key33"))));
+  }
+
+  @Test
+  public void testCeilingEntry() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat("key3", is(equalTo(map.ceilingEntry("key3").getKey())));
+    assertThat("key4", is(equalTo(map.ceilingEntry("key33").getKey())));
+    assertNull(map.ceilingKey("key9"));
+  }
+
+  @Test
+  public void testHigherEntry() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat("key3", is(equalTo(map.higherEntry("key2").getKey())));
+    assertThat("key3", is(equalTo(map.higherEntry("key22").getKey())));
+    assertNull(map.higherEntry("key9"));
+    assertNull(map.higherKey("key4"));
+  }
+
+  @Test
+  public void testFirstAndLastEntry() {
+    NavigableMap<String, String> map = getMap();
+    assertThat("key1", is(equalTo(map.firstEntry().getKey())));
+    assertThat("key2", is(equalTo(map.lastEntry().getKey())));
+    assertThat("key1", is(equalTo(map.firstKey())));
+    assertThat("key2", is(equalTo(map.lastKey())));
+    map = newMap();
+    assertNull(map.firstEntry());
+    assertNull(map.lastEntry());
+  }
+
+  @Test
+  public void testPollFirstEntry() {
+    NavigableMap<String, String> map = getMap();
+    assertThat("key1", is(equalTo(map.pollFirstEntry().getKey())));
+    assertThat(1, is(equalTo(map.size())));
+    map.pollFirstEntry();
+    assertNull(map.pollFirstEntry());
+  }
+
+  @Test
+  public void testPollLastEntry() {
+    NavigableMap<String, String> map = getMap();
+    assertThat("key2", is(equalTo(map.pollLastEntry().getKey())));
+    assertThat(1, is(equalTo(map.size())));
+    map.pollLastEntry();
+    assertNull(map.pollLastEntry());
+  }
+
+  @Test
+  public void testDescendingMap() {
+    NavigableMap<String, String> map = getMap();
+    NavigableMap<String, String> reverse = map.descendingMap();
+    assertThat("key2", is(equalTo(reverse.pollFirstEntry().getKey())));
+    assertThat("key1", is(equalTo(reverse.pollFirstEntry().getKey())));
+    assertNull(reverse.firstEntry());
+    assertThat(0, is(equalTo(map.size())));
+  }
+
+  @Test
+  public void testNavigableKeySet() {
+    NavigableMap<String, String> map = getMap();
+    NavigableSet<String> ns = map.navigableKeySet();
+    assertThat("key1", is(equalTo(ns.pollFirst())));
+    assertThat("key2", is(equalTo(ns.pollFirst())));
+    assertNull(ns.pollFirst());
+  }
+
+  @Test
+  public void testDescendingKeySet() {
+    NavigableMap<String, String> map = getMap();
+    NavigableSet<String> ns = map.descendingKeySet();
+    assertThat("key2", is(equalTo(ns.pollFirst())));
+    assertThat("key1", is(equalTo(ns.pollFirst())));
+    assertNull(ns.pollFirst());
+  }
+
+  @Test
+  public void testSubMap() {
+    NavigableMap<String, String> map = getMap(true);
+    NavigableMap<String, String> map2 = map.subMap("key2", true, "key4", false);
+    assertThat(2, is(equalTo(map2.size())));
+    assertThat("def", is(equalTo(map2.get("key2"))));
+    assertThat("ghi", is(equalTo(map2.get("key3"))));
+    assertNull(map2.get("key4"));
+    assertThat(2, is(equalTo(map.subMap("key2", "key4").size())));
+  }
+
+  @Test
+  public void testHeadMap() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat(3, is(equalTo(map.headMap("key3", true).size())));
+    NavigableMap<String, String> map2 = map.headMap("key3", false);
+    assertThat(2, is(equalTo(map2.size())));
+    assertTrue(map2.keySet().contains("key1"));
+    assertTrue(map2.keySet().contains("key2"));
+  }
+
+  @Test
+  public void testTailMap() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat(2, is(equalTo(map.tailMap("key3", true).size())));
+    NavigableMap<String, String> map2 = map.tailMap("key3", false);
+    assertThat(1, is(equalTo(map2.size())));
+    assertTrue(map2.keySet().contains("key4"));
+  }
+
+  /**
+   * Test the Map contract, and equality with a TreeMap in both directions.
+   */
+  @Test
+  public void testMap() {
+    NavigableMap<String, String> map = getMap(true);
+    assertThat(map.put("key1", "xyz"), is(equalTo("abc")));
+    assertThat(map.remove("key2"), is(equalTo("def")));
+    assertNull(map.remove("key2"));
+    assertTrue(map.containsValue("ghi"));
+    assertFalse(map.containsKey("key2"));
+    TreeMap<String, String> expected = new TreeMap<>(map);
+    assertTrue(map.equals(expected));
+    assertTrue(expected.equals(map));
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+    assertThat(map.toString(), is(equalTo(expected.toString())));
+  }
+
+  /**
+   * Test that entries of the entry set iterator write through, and that removal through
+   * an iterator keeps the iteration going.
+   */
+  @Test
+  public void testEntrySetIterator() {
+    NavigableMap<String, String> map = getMap(true);
+    List<String> seen = new ArrayList<>();
+    for (Iterator<Map.Entry<String, String>> it = map.entrySet().iterator(); it.hasNext();) {
+      Map.Entry<String, String> entry = it.next();
+      seen.add(entry.getKey());
+      if (entry.getKey().equals("key2")) {
+        it.remove();
+      } else {
+        entry.setValue(entry.getValue().toUpperCase());
+      }
+    }
+    assertThat(seen.size(), is(equalTo(4)));
+    assertThat(map.size(), is(equalTo(3)));
+    assertThat(map.get("key3"), is(equalTo("GHI")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSubMapOutOfRange() {
+    getMap(true).subMap("key2", true, "key3", true).put("key4", "jkl");
+  }
+
+  /**
+   * Test random puts and removes against TreeMap, with enough keys for a deep tree,
+   * checking the navigation methods along the way and the views at the end.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(5);
+    NavigableMap<Integer, Integer> map = newMap();
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 100000; i++) {
+      Integer key = random.nextInt(20000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+      if (i % 100 == 0) {
+        Integer probe = random.nextInt(20002) - 1;
+        assertThat(map.lowerKey(probe), is(equalTo(expected.lowerKey(probe))));
+        assertThat(map.floorKey(probe), is(equalTo(expected.floorKey(probe))));
+        assertThat(map.ceilingKey(probe), is(equalTo(expected.ceilingKey(probe))));
+        assertThat(map.higherKey(probe), is(equalTo(expected.higherKey(probe))));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    assertThat(new ArrayList<>(map.entrySet()), is(equalTo(new ArrayList<>(expected.entrySet()))));
+    assertThat(new ArrayList<>(map.descendingMap().keySet()),
+      is(equalTo(new ArrayList<>(expected.descendingMap().keySet()))));
+    for (int i = 0; i < 100; i++) {
+      int from = random.nextInt(20000);
+      int to = from + random.nextInt(2000);
+      boolean fromInclusive = random.nextBoolean();
+      boolean toInclusive = random.nextBoolean();
+      NavigableMap<Integer, Integer> sub = map.subMap(from, fromInclusive, to, toInclusive);
+      NavigableMap<Integer, Integer> expectedSub = expected.subMap(from, fromInclusive, to, toInclusive);
+      assertThat(sub.size(), is(equalTo(expectedSub.size())));
+      assertThat(new ArrayList<>(sub.keySet()), is(equalTo(new ArrayList<>(expectedSub.keySet()))));
+      NavigableMap<Integer, Integer> desc = sub.descendingMap();
+      NavigableMap<Integer, Integer> expectedDesc = expectedSub.descendingMap();
+      assertThat(new ArrayList<>(desc.values()), is(equalTo(new ArrayList<>(expectedDesc.values()))));
+      Integer probe = from + random.nextInt(2000);
+      assertThat(desc.lowerKey(probe), is(equalTo(expectedDesc.lowerKey(probe))));
+      assertThat(desc.ceilingKey(probe), is(equalTo(expectedDesc.ceilingKey(probe))));
+      assertThat(keyOrNull(desc.firstEntry()), is(equalTo(keyOrNull(expectedDesc.firstEntry()))));
+      assertThat(keyOrNull(sub.lastEntry()), is(equalTo(keyOrNull(expectedSub.lastEntry()))));
+      if (from < probe && probe < to) {
+        assertThat(new ArrayList<>(desc.headMap(probe, true).keySet()),
+          is(equalTo(new ArrayList<>(expectedDesc.headMap(probe, true).keySet()))));
+      }
+    }
+  }
+
+  /**
+   * Test removal through the iterators of sub maps, in both directions, and clear of a sub map.
+   */
+  @Test
+  public void testRandomRemoveThroughViews() {
+    Random random = new Random(6);
+    NavigableMap<Integer, Integer> map = newMap();
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 20000; i++) {
+      map.put(i, i);
+      expected.put(i, i);
+    }
+    for (int round = 0; round < 50; round++) {
+      int from = random.nextInt(20000);
+      int to = from + random.nextInt(1000);
+      boolean descending = random.nextBoolean();
+      NavigableMap<Integer, Integer> sub = map.subMap(from, true, to, false);
+      NavigableMap<Integer, Integer> expectedSub = expected.subMap(from, true, to, false);
+      if (descending) {
+        sub = sub.descendingMap();
+        expectedSub = expectedSub.descendingMap();
+      }
+      if (round % 10 == 0) {
+        sub.clear();
+        expectedSub.clear();
+        continue;
+      }
+      Iterator<Integer> it = sub.keySet().iterator();
+      Iterator<Integer> expectedIt = expectedSub.keySet().iterator();
+      while (expectedIt.hasNext()) {
+        assertThat(it.next(), is(equalTo(expectedIt.next())));
+        if (random.nextInt(3) > 0) {
+          it.remove();
+          expectedIt.remove();
+        }
+      }
+      assertFalse(it.hasNext());
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    assertThat(new ArrayList<>(map.keySet()), is(equalTo(new ArrayList<>(expected.keySet()))));
+    while (!expected.isEmpty()) {
+      assertThat(map.pollFirstEntry(), is(equalTo(expected.pollFirstEntry())));
+      assertThat(map.pollLastEntry(), is(equalTo(expected.pollLastEntry())));
+    }
+    assertTrue(map.isEmpty());
+  }
+
+  private static <K> K keyOrNull(Map.Entry<K, ?> e) {
+    return e == null ? null : e.getKey();
+  }
+
+  protected NavigableMap<String, String> getMap() {
+    return getMap(false);
+  }
+
+  protected NavigableMap<String, String> getMap(boolean longer) {
+    NavigableMap<String, String> map = newMap();
+    map.put("key1", "abc");
+    map.put("key2", "def");
+    if (longer) {
+      map.put("key3", "ghi");
+      map.put("key4", "jkl");
+    }
+    return map;
+  }
+}
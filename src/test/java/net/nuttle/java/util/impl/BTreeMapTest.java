@@ -0,0 +1,49 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NavigableMap;
+
+import org.junit.Test;
+
+/**
+ * Tests BTreeMap with the shared NavigableMap tests, plus its comparator and fail-fast iterators.
+ * @author dan
+ *
+ */
+public class BTreeMapTest extends AbstractNavigableMapTest {
+
+  @Override
+  protected <K extends Comparable<K>, V> NavigableMap<K, V> newMap() {
+    return new BTreeMap<K, V>();
+  }
+
+  /**
+   * Test a map ordered by a comparator, across several levels.
+   */
+  @Test
+  public void testComparator() {
+    NavigableMap<Integer, Integer> map = new BTreeMap<>(Collections.<Integer>reverseOrder());
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.firstKey(), is(equalTo(9999)));
+    assertThat(map.higherKey(500), is(equalTo(499)));
+    assertThat(map.headMap(9990).size(), is(equalTo(9)));
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    NavigableMap<String, String> map = getMap(true);
+    Iterator<String> it = map.keySet().iterator();
+    it.next();
+    map.put("key5", "mno");
+    it.next();
+  }
+}
@@ -0,0 +1,165 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+/**
+ * Tests BitSetOps.
+ * The expected results are computed with the pairwise BitSet operations tested in BitSetTest.
+ * @author dan
+ *
+ */
+public class BitSetOpsTest {
+
+  /**
+   * Test the and(BitSet... sets) method.
+   * It returns the bits set in every input.
+   */
+  @Test
+  public void testAnd() {
+    BitSet result = BitSetOps.and(getBitSet(true, true, true, false), getBitSet(true, false, true, true),
+      getBitSet(true, true, true));
+    assertThat(getBitSet(true, false, true), is(equalTo(result)));
+  }
+
+  /**
+   * Test the or(BitSet... sets) method.
+   * It returns the bits set in any input.
+   */
+  @Test
+  public void testOr() {
+    BitSet result = BitSetOps.or(getBitSet(true), getBitSet(false, false, true), getBitSet(false, false, false, true));
+    assertThat(getBitSet(true, false, true, true), is(equalTo(result)));
+  }
+
+  /**
+   * Test the threshold(int k, BitSet... sets) method.
+   * It returns the bits set in at least k inputs.
+   */
+  @Test
+  public void testThreshold() {
+    BitSet a = getBitSet(true, true, true, false);
+    BitSet b = getBitSet(true, true, false, false);
+    BitSet c = getBitSet(true, false, false, true);
+    assertThat(getBitSet(true, true, true, true), is(equalTo(BitSetOps.threshold(1, a, b, c))));
+    assertThat(getBitSet(true, true), is(equalTo(BitSetOps.threshold(2, a, b, c))));
+    assertThat(getBitSet(true), is(equalTo(BitSetOps.threshold(3, a, b, c))));
+    assertThat(new BitSet(), is(equalTo(BitSetOps.threshold(4, a, b, c))));
+  }
+
+  /**
+   * Test that the inputs are left unchanged.
+   */
+  @Test
+  public void testInputsUnchanged() {
+    BitSet a = getBitSet(true, true);
+    BitSet b = getBitSet(false, true);
+    BitSetOps.and(a, b);
+    BitSetOps.or(a, b);
+    assertThat(getBitSet(true, true), is(equalTo(a)));
+    assertThat(getBitSet(false, true), is(equalTo(b)));
+  }
+
+  /**
+   * Test the sequential and parallel methods against pairwise operations on large random sets.
+   */
+  @Test
+  public void testAgainstPairwise() {
+    Random random = new Random(42);
+    BitSet[] sets = new BitSet[13];
+    for (int i = 0; i < sets.length; i++) {
+      sets[i] = new BitSet();
+      int nbits = 1000000 + random.nextInt(100000);
+      for (int j = 0; j < nbits; j++) {
+        if (random.nextInt(10) < 8) {
+          sets[i].set(j);
+        }
+      }
+    }
+    BitSet and = (BitSet) sets[0].clone();
+    BitSet or = (BitSet) sets[0].clone();
+    for (int i = 1; i < sets.length; i++) {
+      and.and(sets[i]);
+      or.or(sets[i]);
+    }
+    BitSet atLeast7 = new BitSet();
+    for (int j = 0; j < or.length(); j++) {
+      int count = 0;
+      for (BitSet set : sets) {
+        if (set.get(j)) {
+          count++;
+        }
+      }
+      atLeast7.set(j, count >= 7);
+    }
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      assertThat(and, is(equalTo(BitSetOps.and(sets))));
+      assertThat(and, is(equalTo(BitSetOps.parallelAnd(pool, sets))));
+      assertThat(or, is(equalTo(BitSetOps.or(sets))));
+      assertThat(or, is(equalTo(BitSetOps.parallelOr(pool, sets))));
+      assertThat(atLeast7, is(equalTo(BitSetOps.threshold(7, sets))));
+      assertThat(atLeast7, is(equalTo(BitSetOps.parallelThreshold(pool, 7, sets))));
+      long[][] words = new long[sets.length][];
+      for (int i = 0; i < sets.length; i++) {
+        words[i] = sets[i].toLongArray();
+      }
+      assertThat(and, is(equalTo(BitSet.valueOf(BitSetOps.parallelAnd(pool, words)))));
+      assertThat(or, is(equalTo(BitSet.valueOf(BitSetOps.parallelOr(pool, words)))));
+      assertThat(atLeast7, is(equalTo(BitSet.valueOf(BitSetOps.parallelThreshold(pool, 7, words)))));
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Test the methods on word arrays of different lengths, which are read in place and left unchanged.
+   */
+  @Test
+  public void testWords() {
+    long[] a = {0x0fL, 0x1L};
+    long[] b = {0x3cL};
+    long[] c = {0x30L, 0x1L, 0x8000000000000000L};
+    assertThat(Arrays.toString(BitSetOps.and(a, b, c)), is(equalTo("[0]")));
+    assertThat(Arrays.toString(BitSetOps.and(a, b)), is(equalTo("[12]")));
+    assertThat(Arrays.toString(BitSetOps.or(a, b, c)), is(equalTo("[63, 1, -9223372036854775808]")));
+    assertThat(Arrays.toString(BitSetOps.threshold(2, a, b, c)), is(equalTo("[60, 1, 0]")));
+    assertThat(Arrays.toString(a), is(equalTo("[15, 1]")));
+    assertThat(Arrays.toString(b), is(equalTo("[60]")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoWords() {
+    BitSetOps.or(new long[0][]);
+  }
+
+  /**
+   * Test that threshold rejects k less than 1.
+   */
+  @Test(expected=IllegalArgumentException.class)
+  public void testThresholdRejectsZero() {
+    BitSetOps.threshold(0, getBitSet(true));
+  }
+
+  /**
+   * Utility method returns BitSet with specified values.
+   * @param arg
+   * @return
+   */
+  private BitSet getBitSet(boolean...arg) {
+    BitSet bs = new BitSet(arg.length);
+    for (int i = 0; i < arg.length; i++) {
+      bs.set(i, arg[i]);
+    }
+    return bs;
+  }
+}
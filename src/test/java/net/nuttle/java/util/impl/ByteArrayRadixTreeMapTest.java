@@ -0,0 +1,104 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests ByteArrayRadixTreeMap against a TreeMap ordered by the same comparator,
+ * with bytes from the whole range, so that nodes of every size appear.
+ * @author dan
+ *
+ */
+public class ByteArrayRadixTreeMapTest {
+
+  @Test
+  public void testLookupByContents() {
+    ByteArrayRadixTreeMap<String> map = new ByteArrayRadixTreeMap<>();
+    map.put(new byte[] {1, 2, 3}, "abc");
+    map.put(new byte[0], "def");
+    assertThat(map.get(new byte[] {1, 2, 3}), is(equalTo("abc")));
+    assertThat(map.get(new byte[0]), is(equalTo("def")));
+    assertThat(map.containsKey(new byte[] {1, 2}), is(false));
+  }
+
+  @Test
+  public void testUnsignedOrder() {
+    ByteArrayRadixTreeMap<String> map = new ByteArrayRadixTreeMap<>();
+    map.put(new byte[] {(byte) 0x80}, "high");
+    map.put(new byte[] {0x7f}, "low");
+    map.put(new byte[] {0x7f, 0}, "longer");
+    assertThat(new ArrayList<>(map.values()), is(equalTo(java.util.Arrays.asList("low", "longer", "high"))));
+  }
+
+  @Test
+  public void testPrefixMap() {
+    ByteArrayRadixTreeMap<String> map = new ByteArrayRadixTreeMap<>();
+    map.put(new byte[] {1, (byte) 0xff}, "a");
+    map.put(new byte[] {1, (byte) 0xff, 0}, "b");
+    map.put(new byte[] {2}, "c");
+    assertThat(new ArrayList<>(map.prefixMap(new byte[] {1, (byte) 0xff}).values()),
+      is(equalTo(java.util.Arrays.asList("a", "b"))));
+    assertThat(map.prefixMap(new byte[] {(byte) 0xff}).size(), is(equalTo(0)));
+  }
+
+  /**
+   * Test random puts and removes against TreeMap, and compare the entries and sub maps at the end.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(10);
+    ByteArrayRadixTreeMap<Integer> map = new ByteArrayRadixTreeMap<>();
+    TreeMap<byte[], Integer> expected = new TreeMap<>(ByteArrayRadixTreeMap.UNSIGNED);
+    for (int i = 0; i < 100000; i++) {
+      byte[] key = randomKey(random);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+      if (i % 100 == 0) {
+        byte[] probe = randomKey(random);
+        assertThat(map.lowerEntry(probe), is(equalTo(expected.lowerEntry(probe))));
+        assertThat(map.ceilingEntry(probe), is(equalTo(expected.ceilingEntry(probe))));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    assertThat(values(map), is(equalTo(values(expected))));
+    assertThat(values(map.descendingMap()), is(equalTo(values(expected.descendingMap()))));
+    for (int i = 0; i < 100; i++) {
+      byte[] from = randomKey(random);
+      byte[] to = randomKey(random);
+      if (ByteArrayRadixTreeMap.UNSIGNED.compare(from, to) > 0) {
+        byte[] swap = from;
+        from = to;
+        to = swap;
+      }
+      assertThat(values(map.subMap(from, to)), is(equalTo(values(expected.subMap(from, to)))));
+    }
+  }
+
+  /**
+   * Keys of up to 4 bytes: the first from the whole range, the others from a few values.
+   */
+  private static byte[] randomKey(Random random) {
+    byte[] key = new byte[random.nextInt(5)];
+    for (int i = 0; i < key.length; i++) {
+      key[i] = (byte) (i == 0 ? random.nextInt(256) : random.nextInt(4) * 0x55);
+    }
+    return key;
+  }
+
+  private static List<Integer> values(Map<byte[], Integer> map) {
+    return new ArrayList<>(map.values());
+  }
+}
@@ -0,0 +1,444 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests CompressedBitSet.
+ * The first tests repeat the cases of BitSetTest; the rest cover the chunk boundaries,
+ * the conversions between containers, and compare random operations against java.util.BitSet.
+ * @author dan
+ *
+ */
+public class CompressedBitSetTest {
+
+  private CompressedBitSet set = null;
+  @Before
+  public void setUp() {
+    set = getBitSet();
+  }
+
+  /**
+   * Test the flip(int) method.
+   */
+  @Test
+  public void testFlipInt() {
+    assertTrue(set.get(0));
+    set.flip(0);
+    assertFalse(set.get(0));
+    set.flip(0);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the flip(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testFlipIntInt() {
+    set = getBitSet(false, false, false, false);
+    set.flip(0,3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int index) method.
+   */
+  @Test
+  public void testSetInt() {
+    assertFalse(set.get(1));
+    set.set(1);
+    assertTrue(set.get(1));
+  }
+
+  /**
+   * Test the set(int index, boolean value) method.
+   */
+  @Test
+  public void testSetIntBoolean() {
+    assertTrue(set.get(0));
+    set.set(0, false);
+    assertFalse(set.get(0));
+    set.set(0, true);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testSetIntInt() {
+    set = getBitSet(false, false, false, false);
+    set.set(0, 3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex, boolean value) method.
+   */
+  @Test
+  public void testSetIntIntBoolean() {
+    set = getBitSet(true, true, true, true);
+    set.set(0, 3, false);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear(int index) method.
+   */
+  @Test
+  public void testClearInt() {
+    assertTrue(set.get(0));
+    set.clear(0);
+    assertFalse(set.get(0));
+  }
+
+  /**
+   * Test the clear(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testClearIntInt() {
+    set = getBitSet(true, true, true, true);
+    set.clear(0, 3);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear() method.
+   */
+  @Test
+  public void testClear() {
+    set = getBitSet(true, true, true, true);
+    set.clear();
+    assertThat(set.length(), is(equalTo(0)));
+  }
+
+  /**
+   * Test the get(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testGetIntInt() {
+    CompressedBitSet set2 = set.get(0, 3);
+    assertThat(3, is(equalTo(set2.length())));
+    assertTrue(set2.get(0));
+    assertFalse(set2.get(1));
+    assertTrue(set2.get(2));
+  }
+
+  /**
+   * Test the get(int fromIndex, int toIndex) method when the range is not aligned on a chunk.
+   */
+  @Test
+  public void testGetIntIntUnaligned() {
+    set.set(70000, 140000);
+    set.set(200001);
+    CompressedBitSet set2 = set.get(69999, 200002);
+    assertFalse(set2.get(0));
+    assertTrue(set2.get(1));
+    assertTrue(set2.get(70000));
+    assertFalse(set2.get(70001));
+    assertTrue(set2.get(130002));
+    assertThat(70001, is(equalTo(set2.cardinality())));
+  }
+
+  /**
+   * Test the nextSetBit(int index) method.
+   */
+  @Test
+  public void testNextSetBit() {
+    assertThat(0, is(equalTo(set.nextSetBit(0))));
+    assertThat(2, is(equalTo(set.nextSetBit(1))));
+    assertThat(-1, is(equalTo(set.nextSetBit(3))));
+    set.set(1 << 20);
+    assertThat(1 << 20, is(equalTo(set.nextSetBit(3))));
+  }
+
+  /**
+   * Test the nextClearBit(int index) method.
+   */
+  @Test
+  public void testNextClearBit() {
+    assertThat(1, is(equalTo(set.nextClearBit(0))));
+    assertThat(1, is(equalTo(set.nextClearBit(1))));
+    assertThat(3, is(equalTo(set.nextClearBit(2))));
+    assertThat(4, is(equalTo(set.nextClearBit(4))));
+    set.set(0, 200000);
+    assertThat(200000, is(equalTo(set.nextClearBit(0))));
+  }
+
+  /**
+   * Test the length() method.
+   */
+  @Test
+  public void testLength() {
+    assertThat(3, is(equalTo(set.length())));
+    set.clear();
+    assertThat(0, is(equalTo(set.length())));
+  }
+
+  /**
+   * Test the isEmpty() method.
+   */
+  @Test
+  public void testIsEmpty() {
+    assertFalse(set.isEmpty());
+    set.clear();
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test the intersects(CompressedBitSet bs) method.
+   */
+  @Test
+  public void testIntersects() {
+    CompressedBitSet set2 = getBitSet(false, true, false, true);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(false, false, false, false);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(true);
+    assertTrue(set.intersects(set2));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    assertFalse(set.intersects(set2));
+  }
+
+  /**
+   * Test the cardinality() method.
+   */
+  @Test
+  public void testCardinality() {
+    assertThat(2, is(equalTo(set.cardinality())));
+    set.clear(0);
+    assertThat(1, is(equalTo(set.cardinality())));
+    set.clear();
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the and(CompressedBitSet bs) method.
+   */
+  @Test
+  public void testAnd() {
+    CompressedBitSet set2 = getBitSet(true, false, false, false);
+    set.and(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    set.and(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the or(CompressedBitSet bs) method.
+   */
+  @Test
+  public void testOr() {
+    CompressedBitSet set2 = getBitSet();
+    set.or(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    assertTrue(set.get(2));
+    set2 = getBitSet(false, true, false, true);
+    set.or(set2);
+    assertThat(4, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the xor(CompressedBitSet bs) method.
+   */
+  @Test
+  public void testXor() {
+    CompressedBitSet set2 = getBitSet(true, false, true, false);
+    set.xor(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+    set = getBitSet();
+    set2 = getBitSet(false, false, true, false);
+    set.xor(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the andNot(CompressedBitSet bs) method.
+   */
+  @Test
+  public void testAndNot() {
+    CompressedBitSet set2 = getBitSet(false, false, false, false);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(false, true, false, true);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(true, true, true, true);
+    set.andNot(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test that a single high bit costs a few bytes, where BitSet would allocate 128 MB.
+   */
+  @Test
+  public void testSparseHighBit() {
+    set.set(1 << 30);
+    assertTrue(set.get(1 << 30));
+    assertThat((1 << 30) + 1, is(equalTo(set.length())));
+    assertTrue(set.sizeInBytes() < 1024);
+  }
+
+  /**
+   * Test that a long range is stored as runs, and can be punched and refilled.
+   */
+  @Test
+  public void testRanges() {
+    set.clear();
+    set.set(10, Integer.MAX_VALUE);
+    assertThat(Integer.MAX_VALUE - 10, is(equalTo(set.cardinality())));
+    //32768 chunks of a single run each, where a BitSet needs 256 MB
+    assertTrue(set.sizeInBytes() < 4 * 1024 * 1024);
+    set.clear(100000);
+    assertFalse(set.get(100000));
+    assertThat(100000, is(equalTo(set.nextClearBit(10))));
+    assertThat(Integer.MAX_VALUE, is(equalTo(set.nextClearBit(100001))));
+    set.set(Integer.MAX_VALUE);
+    assertThat(-1, is(equalTo(set.nextClearBit(100001))));
+    set.flip(0, Integer.MAX_VALUE);
+    assertThat(12, is(equalTo(set.cardinality())));
+    assertTrue(set.get(100000));
+  }
+
+  /**
+   * Test the conversions between array and bitmap containers.
+   */
+  @Test
+  public void testDenseChunk() {
+    set.clear();
+    for (int i = 0; i < 10000; i++) {
+      set.set(i * 2);
+    }
+    assertThat(10000, is(equalTo(set.cardinality())));
+    for (int i = 0; i < 10000; i++) {
+      set.clear(i * 2);
+    }
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test random operations against java.util.BitSet.
+   */
+  @Test
+  public void testAgainstBitSet() {
+    Random random = new Random(42);
+    BitSet expected = new BitSet();
+    CompressedBitSet actual = new CompressedBitSet();
+    BitSet expected2 = new BitSet();
+    CompressedBitSet actual2 = new CompressedBitSet();
+    for (int round = 0; round < 2000; round++) {
+      int from = random.nextInt(300000);
+      int to = from + random.nextInt(round % 10 == 0 ? 100000 : 100);
+      switch (random.nextInt(7)) {
+        case 0:
+          expected.set(from);
+          actual.set(from);
+          break;
+        case 1:
+          expected.set(from, to);
+          actual.set(from, to);
+          break;
+        case 2:
+          expected.clear(from, to);
+          actual.clear(from, to);
+          break;
+        case 3:
+          expected.flip(from, to);
+          actual.flip(from, to);
+          break;
+        case 4:
+          expected2.set(from, to);
+          actual2.set(from, to);
+          expected2.flip(to);
+          actual2.flip(to);
+          break;
+        case 5:
+          expected2.clear(from, to);
+          actual2.clear(from, to);
+          break;
+        default:
+          expected.clear(from);
+          actual.clear(from);
+      }
+      assertThat(expected, is(equalTo(actual.toBitSet())));
+      assertThat(expected.intersects(expected2), is(equalTo(actual.intersects(actual2))));
+      assertThat(expected.nextSetBit(from), is(equalTo(actual.nextSetBit(from))));
+      assertThat(expected.nextClearBit(from), is(equalTo(actual.nextClearBit(from))));
+    }
+    assertThat(expected.cardinality(), is(equalTo(actual.cardinality())));
+    assertThat(expected.length(), is(equalTo(actual.length())));
+    assertThat(expected.hashCode(), is(equalTo(actual.hashCode())));
+    assertThat(expected.get(1234, 250000), is(equalTo(actual.get(1234, 250000).toBitSet())));
+    BitSet e = (BitSet) expected.clone();
+    CompressedBitSet a = actual.clone();
+    e.and(expected2);
+    a.and(actual2);
+    assertThat(e, is(equalTo(a.toBitSet())));
+    e = (BitSet) expected.clone();
+    a = actual.clone();
+    e.or(expected2);
+    a.or(actual2);
+    assertThat(e, is(equalTo(a.toBitSet())));
+    e = (BitSet) expected.clone();
+    a = actual.clone();
+    e.xor(expected2);
+    a.xor(actual2);
+    assertThat(e, is(equalTo(a.toBitSet())));
+    e = (BitSet) expected.clone();
+    a = actual.clone();
+    e.andNot(expected2);
+    a.andNot(actual2);
+    assertThat(e, is(equalTo(a.toBitSet())));
+    assertThat(actual, is(equalTo(CompressedBitSet.valueOf(expected))));
+  }
+
+  /**
+   * Utility method returns CompressedBitSet with stock values:
+   * true, false, true, false
+   * @return
+   */
+  private CompressedBitSet getBitSet() {
+    return getBitSet(true, false, true, false);
+  }
+
+  /**
+   * Utility method returns CompressedBitSet with specified values.
+   * @param arg
+   * @return
+   */
+  private CompressedBitSet getBitSet(boolean...arg) {
+    CompressedBitSet bs = new CompressedBitSet();
+    for (int i = 0; i < arg.length; i++) {
+      bs.set(i, arg[i]);
+    }
+    return bs;
+  }
+}
@@ -0,0 +1,305 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ConcurrentBTreeMap with the shared NavigableMap tests, plus its snapshots,
+ * its ConcurrentMap methods and concurrent writes and scans, whose threads are released
+ * together with a latch, like StripedHashMapTest.
+ * @author dan
+ *
+ */
+public class ConcurrentBTreeMapTest extends AbstractNavigableMapTest {
+
+  private static final int THREADS = 8;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Override
+  protected <K extends Comparable<K>, V> NavigableMap<K, V> newMap() {
+    return new ConcurrentBTreeMap<K, V>();
+  }
+
+  @Test
+  public void testComparator() {
+    NavigableMap<Integer, Integer> map = new ConcurrentBTreeMap<>(Collections.<Integer>reverseOrder());
+    for (int i = 0; i < 10000; i++) {
+      map.put(i, i);
+    }
+    assertThat(map.firstKey(), is(equalTo(9999)));
+    assertThat(map.higherKey(500), is(equalTo(499)));
+    assertThat(map.headMap(9990).size(), is(equalTo(9)));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    new ConcurrentBTreeMap<String, String>().put("key1", null);
+  }
+
+  @Test
+  public void testConcurrentMapMethods() {
+    ConcurrentBTreeMap<String, String> map = new ConcurrentBTreeMap<>();
+    assertThat(map.putIfAbsent("key1", "abc"), is((String) null));
+    assertThat(map.putIfAbsent("key1", "def"), is(equalTo("abc")));
+    assertThat(map.replace("key2", "def"), is((String) null));
+    assertThat(map.replace("key1", "def"), is(equalTo("abc")));
+    assertThat(map.replace("key1", "abc", "ghi"), is(false));
+    assertThat(map.replace("key1", "def", "ghi"), is(true));
+    assertThat(map.remove("key1", "def"), is(false));
+    assertThat(map.remove("key1", "ghi"), is(true));
+    assertThat(map.isEmpty(), is(true));
+  }
+
+  /**
+   * Test that a snapshot, and an iterator already started, do not see later writes.
+   */
+  @Test
+  public void testSnapshot() {
+    ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<>();
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 5000; i++) {
+      map.put(i, i);
+      expected.put(i, i);
+    }
+    NavigableMap<Integer, Integer> snapshot = map.snapshot();
+    Iterator<Integer> it = map.subMap(1000, 2000).keySet().iterator();
+    for (int i = 0; i < 5000; i += 2) {
+      map.remove(i);
+    }
+    map.put(5000, 5000);
+    assertThat(snapshot, is(equalTo((Map<Integer, Integer>) expected)));
+    assertThat(snapshot.size(), is(equalTo(5000)));
+    assertThat(map.size(), is(equalTo(2501)));
+    for (int i = 1000; i < 2000; i++) {
+      assertThat(it.next(), is(equalTo(i)));
+    }
+    assertThat(it.hasNext(), is(false));
+  }
+
+  /**
+   * Test that an iterator that removes and sets entries itself still does not see the writes of others.
+   */
+  @Test
+  public void testSnapshotAfterIteratorWrites() {
+    ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<>();
+    for (int i = 0; i < 100; i += 2) {
+      map.put(i, i);
+    }
+    List<Integer> seen = new ArrayList<>();
+    Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator();
+    for (int i = 0; it.hasNext(); i++) {
+      Map.Entry<Integer, Integer> e = it.next();
+      seen.add(e.getKey());
+      // Writes by others, behind and ahead of the iterator
+      map.put(e.getKey() + 1, 0);
+      map.remove(e.getKey() + 4);
+      if (i % 2 == 0) {
+        it.remove();
+      } else {
+        e.setValue(-e.getValue());
+      }
+    }
+    assertThat(seen.size(), is(equalTo(50)));
+    for (int i = 0; i < 50; i++) {
+      assertThat(seen.get(i), is(equalTo(2 * i)));
+    }
+    assertFalse(map.containsKey(0));
+    assertThat(map.get(2), is(equalTo(-2)));
+    assertThat(map.get(3), is(equalTo(0)));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSnapshotReadOnly() {
+    ConcurrentBTreeMap<String, String> map = new ConcurrentBTreeMap<>();
+    map.put("key1", "abc");
+    map.snapshot().put("key2", "def");
+  }
+
+  /**
+   * Test that every snapshot taken along random writes keeps the entries it was taken with,
+   * across many splits and joins of the shared nodes.
+   */
+  @Test
+  public void testRandomSnapshots() {
+    Random random = new Random(7);
+    ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<>();
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    List<NavigableMap<Integer, Integer>> snapshots = new ArrayList<>();
+    List<TreeMap<Integer, Integer>> copies = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      Integer key = random.nextInt(5000);
+      if (random.nextBoolean()) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+      if (i % 10000 == 0) {
+        snapshots.add(map.snapshot());
+        copies.add(new TreeMap<>(expected));
+      }
+    }
+    for (int i = 0; i < snapshots.size(); i++) {
+      assertThat(new ArrayList<>(snapshots.get(i).entrySet()), is(equalTo(new ArrayList<>(copies.get(i).entrySet()))));
+    }
+  }
+
+  /**
+   * Test puts of disjoint keys from many threads.  No entry may be lost to a failed compare-and-set.
+   */
+  @Test(timeout=30000)
+  public void testConcurrentPuts() throws Exception {
+    final int perThread = 20000;
+    final ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<>();
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = 0; i < perThread; i++) {
+          map.put(i * THREADS + thread, thread);
+        }
+        return 0;
+      }
+    });
+    assertThat(map.size(), is(equalTo(perThread * THREADS)));
+    int i = 0;
+    for (Map.Entry<Integer, Integer> e : map.entrySet()) {
+      assertThat(e.getKey(), is(equalTo(i)));
+      assertThat(e.getValue(), is(equalTo(i % THREADS)));
+      i++;
+    }
+  }
+
+  /**
+   * Test that scans are snapshot-consistent while a writer runs.  The writer appends keys in order
+   * and then removes them in order, so that every state of the map holds a run of consecutive keys;
+   * a scan that mixed two states would see a gap.
+   */
+  @Test(timeout=30000)
+  public void testScansDuringWrites() throws Exception {
+    final int keys = 50000;
+    final ConcurrentBTreeMap<Integer, Integer> map = new ConcurrentBTreeMap<>();
+    final AtomicBoolean done = new AtomicBoolean();
+    List<Integer> gaps = run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        int gaps = 0;
+        if (thread == 0) {
+          for (int i = 0; i < keys; i++) {
+            map.put(i, i);
+          }
+          for (int i = 0; i < keys; i++) {
+            map.remove(i);
+          }
+          done.set(true);
+        } else {
+          while (!done.get()) {
+            NavigableMap<Integer, Integer> view = thread % 2 == 0 ? map : map.descendingMap();
+            Integer previous = null;
+            for (Integer key : view.keySet()) {
+              if (previous != null && Math.abs(key - previous) != 1) {
+                gaps++;
+              }
+              previous = key;
+            }
+          }
+        }
+        return gaps;
+      }
+    });
+    for (int count : gaps) {
+      assertThat(count, is(equalTo(0)));
+    }
+    assertThat(map.isEmpty(), is(true));
+  }
+
+  /**
+   * Test that replace loops count every increment exactly once.
+   */
+  @Test(timeout=30000)
+  public void testReplaceCounters() throws Exception {
+    final ConcurrentBTreeMap<Integer, Long> map = new ConcurrentBTreeMap<>();
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = 0; i < 20000; i++) {
+          Integer key = i % 100;
+          while (true) {
+            Long old = map.putIfAbsent(key, 1L);
+            if (old == null || map.replace(key, old, old + 1)) {
+              break;
+            }
+          }
+        }
+        return 0;
+      }
+    });
+    long total = 0;
+    for (long count : map.values()) {
+      total += count;
+    }
+    assertThat(total, is(equalTo(20000L * THREADS)));
+  }
+
+  /**
+   * A unit of work run by each thread.
+   */
+  private interface Task {
+    Integer call(int thread);
+  }
+
+  /**
+   * Runs task on THREADS threads released together, and returns their results.
+   */
+  private List<Integer> run(final Task task) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          start.await();
+          return task.call(thread);
+        }
+      }));
+    }
+    start.countDown();
+    List<Integer> results = new ArrayList<>();
+    for (Future<Integer> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+}
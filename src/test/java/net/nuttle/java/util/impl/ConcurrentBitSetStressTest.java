@@ -0,0 +1,179 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Multi-threaded tests of ConcurrentBitSet.
+ * Threads are released together by a latch, and always work on bits that share words,
+ * so that lost updates would show up as wrong counts.
+ * @author dan
+ *
+ */
+public class ConcurrentBitSetStressTest {
+
+  private static final int THREADS = 8;
+  private static final int NBITS = 1 << 20;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(THREADS + 1);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Test set(int) from many threads, each setting every THREADS-th bit.
+   * No update may be lost.
+   */
+  @Test(timeout=30000)
+  public void testSetInterleaved() throws Exception {
+    final ConcurrentBitSet set = new ConcurrentBitSet(NBITS);
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = thread; i < NBITS; i += THREADS) {
+          set.set(i);
+        }
+        return 0;
+      }
+    });
+    assertThat(NBITS, is(equalTo(set.cardinality())));
+    assertThat(NBITS, is(equalTo(set.nextClearBit(0))));
+  }
+
+  /**
+   * Test getAndSet(int, boolean) from many threads, all claiming every bit.
+   * Each bit must be claimed (previous value false) by exactly one thread.
+   */
+  @Test(timeout=30000)
+  public void testGetAndSetClaimsOnce() throws Exception {
+    final ConcurrentBitSet set = new ConcurrentBitSet(NBITS);
+    List<Integer> claims = run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        int claimed = 0;
+        for (int i = 0; i < NBITS; i++) {
+          if (!set.getAndSet((i + thread * 4096) % NBITS, true)) {
+            claimed++;
+          }
+        }
+        return claimed;
+      }
+    });
+    int total = 0;
+    for (Integer claimed : claims) {
+      total += claimed;
+    }
+    assertThat(NBITS, is(equalTo(total)));
+  }
+
+  /**
+   * Test flip(int) and flip(int, int) from many threads.
+   * Every bit is flipped an even number of times in total, so the set ends up empty.
+   */
+  @Test(timeout=30000)
+  public void testFlip() throws Exception {
+    final ConcurrentBitSet set = new ConcurrentBitSet(NBITS);
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = 0; i < NBITS; i++) {
+          set.flip(i);
+        }
+        for (int i = 0; i < NBITS; i += 1000) {
+          set.flip(i, Math.min(NBITS, i + 1000));
+          set.flip(i, Math.min(NBITS, i + 1000));
+        }
+        return 0;
+      }
+    });
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test that cardinality() never goes backwards while other threads only set bits.
+   */
+  @Test(timeout=30000)
+  public void testCardinalityIsMonotonic() throws Exception {
+    final ConcurrentBitSet set = new ConcurrentBitSet(NBITS);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    Future<Boolean> reader = executor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() {
+        int last = 0;
+        while (done.getCount() > 0) {
+          int card = set.cardinality();
+          if (card < last) {
+            return false;
+          }
+          last = card;
+        }
+        return true;
+      }
+    });
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = thread; i < NBITS; i += THREADS) {
+          set.set(i);
+        }
+        done.countDown();
+        return 0;
+      }
+    });
+    assertTrue(reader.get());
+    assertThat(NBITS, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * A unit of work run by each of the threads.
+   */
+  private interface Task {
+    Integer call(int thread);
+  }
+
+  /**
+   * Runs task on THREADS threads released at the same time, and returns their results.
+   */
+  private List<Integer> run(final Task task) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          start.await();
+          return task.call(thread);
+        }
+      }));
+    }
+    start.countDown();
+    List<Integer> results = new ArrayList<Integer>();
+    for (Future<Integer> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+}
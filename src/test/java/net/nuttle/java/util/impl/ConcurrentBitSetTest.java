@@ -0,0 +1,360 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.BitSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ConcurrentBitSet from a single thread, with the cases of BitSetTest.
+ * See ConcurrentBitSetStressTest for the multi-threaded tests.
+ * @author dan
+ *
+ */
+public class ConcurrentBitSetTest {
+
+  private ConcurrentBitSet set = null;
+  @Before
+  public void setUp() {
+    set = getBitSet();
+  }
+
+  /**
+   * Test the flip(int) method.
+   */
+  @Test
+  public void testFlipInt() {
+    assertTrue(set.get(0));
+    set.flip(0);
+    assertFalse(set.get(0));
+    set.flip(0);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the flip(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testFlipIntInt() {
+    set = getBitSet(false, false, false, false);
+    set.flip(0,3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int index) method.
+   */
+  @Test
+  public void testSetInt() {
+    assertFalse(set.get(1));
+    set.set(1);
+    assertTrue(set.get(1));
+  }
+
+  /**
+   * Test the set(int index, boolean value) method.
+   */
+  @Test
+  public void testSetIntBoolean() {
+    assertTrue(set.get(0));
+    set.set(0, false);
+    assertFalse(set.get(0));
+    set.set(0, true);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testSetIntInt() {
+    set = getBitSet(false, false, false, false);
+    set.set(0, 3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex, boolean value) method.
+   */
+  @Test
+  public void testSetIntIntBoolean() {
+    set = getBitSet(true, true, true, true);
+    set.set(0, 3, false);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear(int index) method.
+   */
+  @Test
+  public void testClearInt() {
+    assertTrue(set.get(0));
+    set.clear(0);
+    assertFalse(set.get(0));
+  }
+
+  /**
+   * Test the clear(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testClearIntInt() {
+    set = getBitSet(true, true, true, true);
+    set.clear(0, 3);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear() method.
+   */
+  @Test
+  public void testClear() {
+    set = getBitSet(true, true, true, true);
+    set.clear();
+    assertThat(set.length(), is(equalTo(0)));
+  }
+
+  /**
+   * Test the get(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testGetIntInt() {
+    BitSet set2 = set.get(0, 3);
+    assertThat(3, is(equalTo(set2.length())));
+    assertTrue(set2.get(0));
+    assertFalse(set2.get(1));
+    assertTrue(set2.get(2));
+  }
+
+  /**
+   * Test the nextSetBit(int index) method.
+   */
+  @Test
+  public void testNextSetBit() {
+    assertThat(0, is(equalTo(set.nextSetBit(0))));
+    assertThat(2, is(equalTo(set.nextSetBit(1))));
+    assertThat(-1, is(equalTo(set.nextSetBit(3))));
+    set.set(100);
+    assertThat(100, is(equalTo(set.nextSetBit(3))));
+  }
+
+  /**
+   * Test the nextClearBit(int index) method.
+   */
+  @Test
+  public void testNextClearBit() {
+    assertThat(1, is(equalTo(set.nextClearBit(0))));
+    assertThat(1, is(equalTo(set.nextClearBit(1))));
+    assertThat(3, is(equalTo(set.nextClearBit(2))));
+    assertThat(4, is(equalTo(set.nextClearBit(4))));
+    set.set(0, 100);
+    assertThat(100, is(equalTo(set.nextClearBit(0))));
+  }
+
+  /**
+   * Test the length() method.
+   */
+  @Test
+  public void testLength() {
+    assertThat(3, is(equalTo(set.length())));
+    set.clear();
+    assertThat(0, is(equalTo(set.length())));
+  }
+
+  /**
+   * Test the isEmpty() method.
+   */
+  @Test
+  public void testIsEmpty() {
+    assertFalse(set.isEmpty());
+    set.clear();
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test the intersects(ConcurrentBitSet bs) method.
+   */
+  @Test
+  public void testIntersects() {
+    ConcurrentBitSet set2 = getBitSet(false, true, false, true);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(false, false, false, false);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(true);
+    assertTrue(set.intersects(set2));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    assertFalse(set.intersects(set2));
+  }
+
+  /**
+   * Test the cardinality() method.
+   */
+  @Test
+  public void testCardinality() {
+    assertThat(2, is(equalTo(set.cardinality())));
+    set.clear(0);
+    assertThat(1, is(equalTo(set.cardinality())));
+    set.clear();
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the and(ConcurrentBitSet bs) method.
+   */
+  @Test
+  public void testAnd() {
+    ConcurrentBitSet set2 = getBitSet(true, false, false, false);
+    set.and(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    set.and(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the or(ConcurrentBitSet bs) method.
+   */
+  @Test
+  public void testOr() {
+    ConcurrentBitSet set2 = getBitSet();
+    set.or(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    assertTrue(set.get(2));
+    set2 = getBitSet(false, true, false, true);
+    set.or(set2);
+    assertThat(4, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the xor(ConcurrentBitSet bs) method.
+   */
+  @Test
+  public void testXor() {
+    ConcurrentBitSet set2 = getBitSet(true, false, true, false);
+    set.xor(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+    set = getBitSet();
+    set2 = getBitSet(false, false, true, false);
+    set.xor(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test that or and xor reject a set with a bit beyond the capacity of this one, even within
+   * its last word, and leave this set unchanged.
+   */
+  @Test
+  public void testCombineBeyondCapacity() {
+    ConcurrentBitSet small = new ConcurrentBitSet(10);
+    ConcurrentBitSet other = new ConcurrentBitSet(128);
+    other.set(3);
+    other.set(20);
+    try {
+      small.or(other);
+      throw new AssertionError("expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      small.xor(other);
+      throw new AssertionError("expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    assertThat(small.cardinality(), is(equalTo(0)));
+    other.clear(20);
+    other.set(9);
+    small.or(other);
+    assertThat(small.toString(), is(equalTo("{3, 9}")));
+  }
+
+  /**
+   * Test the andNot(ConcurrentBitSet bs) method.
+   */
+  @Test
+  public void testAndNot() {
+    ConcurrentBitSet set2 = getBitSet(false, false, false, false);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(false, true, false, true);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(true, true, true, true);
+    set.andNot(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the getAndSet(int index, boolean value) method.
+   * It sets bit index to value, and returns the previous value.
+   */
+  @Test
+  public void testGetAndSet() {
+    assertFalse(set.getAndSet(1, true));
+    assertTrue(set.getAndSet(1, true));
+    assertTrue(set.getAndSet(1, false));
+    assertFalse(set.get(1));
+  }
+
+  /**
+   * Test the size() method.
+   * Returns the fixed capacity of the set.
+   */
+  @Test
+  public void testSize() {
+    assertThat(128, is(equalTo(set.size())));
+  }
+
+  /**
+   * Test that bits beyond the capacity cannot be set.
+   */
+  @Test(expected=IndexOutOfBoundsException.class)
+  public void testSetBeyondCapacity() {
+    set.set(128);
+  }
+
+  /**
+   * Utility method returns ConcurrentBitSet with stock values:
+   * true, false, true, false
+   * @return
+   */
+  private ConcurrentBitSet getBitSet() {
+    return getBitSet(true, false, true, false);
+  }
+
+  /**
+   * Utility method returns ConcurrentBitSet with capacity 128 and specified values.
+   * @param arg
+   * @return
+   */
+  private ConcurrentBitSet getBitSet(boolean...arg) {
+    ConcurrentBitSet bs = new ConcurrentBitSet(128);
+    for (int i = 0; i < arg.length; i++) {
+      bs.set(i, arg[i]);
+    }
+    return bs;
+  }
+}
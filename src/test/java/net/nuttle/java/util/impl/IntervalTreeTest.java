@@ -0,0 +1,147 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests IntervalTree.  The random test keeps the same ranges in a TreeMap ordered like the tree,
+ * and compares the queries with scans of all its ranges.
+ * @author dan
+ *
+ */
+public class IntervalTreeTest {
+
+  private IntervalTree<Integer, String> tree = null;
+  @Before
+  public void setUp() {
+    tree = new IntervalTree<>();
+    tree.put(10, 20, "a");
+    tree.put(15, 30, "b");
+    tree.put(25, 26, "c");
+    tree.put(40, 50, "d");
+  }
+
+  @Test
+  public void testPutGetRemove() {
+    assertThat(tree.size(), is(equalTo(4)));
+    assertThat(tree.get(15, 30), is(equalTo("b")));
+    assertNull(tree.get(15, 31));
+    assertThat(tree.put(15, 30, "e"), is(equalTo("b")));
+    assertThat(tree.size(), is(equalTo(4)));
+    assertThat(tree.remove(10, 20), is(equalTo("a")));
+    assertNull(tree.remove(10, 20));
+    assertThat(tree.toString(), is(equalTo("{[15, 30)=e, [25, 26)=c, [40, 50)=d}")));
+    tree.clear();
+    assertTrue(tree.isEmpty());
+  }
+
+  @Test
+  public void testStab() {
+    assertThat(values(tree.stab(15)), is(equalTo("ab")));
+    assertThat(values(tree.stab(25)), is(equalTo("bc")));
+    assertThat(values(tree.stab(20)), is(equalTo("b")));
+    assertThat(values(tree.stab(30)), is(equalTo("")));
+    assertThat(tree.stab(10).get(0).getKey(), is(equalTo(new Range<>(10, 20))));
+  }
+
+  @Test
+  public void testOverlapping() {
+    assertThat(values(tree.overlapping(19, 41)), is(equalTo("abcd")));
+    assertThat(values(tree.overlapping(26, 40)), is(equalTo("b")));
+    assertThat(values(tree.overlapping(30, 40)), is(equalTo("")));
+    assertTrue(tree.overlaps(29, 30));
+    assertFalse(tree.overlaps(30, 40));
+    assertFalse(tree.overlaps(5, 10));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmptyRange() {
+    tree.put(10, 10, "x");
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testIteratorModified() {
+    Iterator<Map.Entry<Range<Integer>, String>> it = tree.iterator();
+    it.next();
+    tree.put(1, 2, "x");
+    it.next();
+  }
+
+  /**
+   * Test random puts and removes of overlapping ranges against scans of a TreeMap of them.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(19);
+    IntervalTree<Integer, Integer> tree = new IntervalTree<>();
+    TreeMap<Long, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 50000; i++) {
+      int start = random.nextInt(10000);
+      int end = start + 1 + (random.nextInt(10) == 0 ? random.nextInt(2000) : random.nextInt(50));
+      Long key = (long) start << 32 | end;
+      if (random.nextInt(3) == 0) {
+        assertThat(tree.remove(start, end), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(tree.put(start, end, i), is(equalTo(expected.put(key, i))));
+      }
+      if (i % 100 == 0) {
+        int lo = random.nextInt(12000);
+        int hi = lo + 1 + random.nextInt(100);
+        List<Integer> stabbed = new ArrayList<>();
+        List<Integer> overlapping = new ArrayList<>();
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+          int s = (int) (e.getKey() >>> 32);
+          int t = (int) (long) e.getKey();
+          if (s <= lo && lo < t) {
+            stabbed.add(e.getValue());
+          }
+          if (s < hi && lo < t) {
+            overlapping.add(e.getValue());
+          }
+        }
+        assertThat(valueList(tree.stab(lo)), is(equalTo(stabbed)));
+        assertThat(valueList(tree.overlapping(lo, hi)), is(equalTo(overlapping)));
+        assertThat(tree.overlaps(lo, hi), is(equalTo(!overlapping.isEmpty())));
+      }
+    }
+    assertThat(tree.size(), is(equalTo(expected.size())));
+    List<Integer> all = new ArrayList<>();
+    for (Map.Entry<Range<Integer>, Integer> e : tree) {
+      all.add(e.getValue());
+    }
+    List<Integer> expectedAll = new ArrayList<>(expected.values());
+    assertThat(all, is(equalTo(expectedAll)));
+  }
+
+  private static String values(List<Map.Entry<Range<Integer>, String>> entries) {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Range<Integer>, String> e : entries) {
+      sb.append(e.getValue());
+    }
+    return sb.toString();
+  }
+
+  private static List<Integer> valueList(List<Map.Entry<Range<Integer>, Integer>> entries) {
+    List<Integer> values = new ArrayList<>();
+    for (Map.Entry<Range<Integer>, Integer> e : entries) {
+      values.add(e.getValue());
+    }
+    return values;
+  }
+}
@@ -0,0 +1,377 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests MappedBitSet.
+ * The first tests repeat the cases of BitSetTest, against sets mapped from temporary files;
+ * the rest cover persistence and growth of the file.
+ * @author dan
+ *
+ */
+public class MappedBitSetTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private MappedBitSet set = null;
+  @Before
+  public void setUp() throws IOException {
+    set = getBitSet();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    set.close();
+  }
+
+  /**
+   * Test the flip(int) method.
+   */
+  @Test
+  public void testFlipInt() throws IOException {
+    assertTrue(set.get(0));
+    set.flip(0);
+    assertFalse(set.get(0));
+    set.flip(0);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the flip(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testFlipIntInt() throws IOException {
+    set = getBitSet(false, false, false, false);
+    set.flip(0,3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int index) method.
+   */
+  @Test
+  public void testSetInt() throws IOException {
+    assertFalse(set.get(1));
+    set.set(1);
+    assertTrue(set.get(1));
+  }
+
+  /**
+   * Test the set(int index, boolean value) method.
+   */
+  @Test
+  public void testSetIntBoolean() throws IOException {
+    assertTrue(set.get(0));
+    set.set(0, false);
+    assertFalse(set.get(0));
+    set.set(0, true);
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testSetIntInt() throws IOException {
+    set = getBitSet(false, false, false, false);
+    set.set(0, 3);
+    assertTrue(set.get(0));
+    assertTrue(set.get(1));
+    assertTrue(set.get(2));
+    assertFalse(set.get(3));
+  }
+
+  /**
+   * Test the set(int fromIndex, int toIndex, boolean value) method.
+   */
+  @Test
+  public void testSetIntIntBoolean() throws IOException {
+    set = getBitSet(true, true, true, true);
+    set.set(0, 3, false);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear(int index) method.
+   */
+  @Test
+  public void testClearInt() throws IOException {
+    assertTrue(set.get(0));
+    set.clear(0);
+    assertFalse(set.get(0));
+  }
+
+  /**
+   * Test the clear(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testClearIntInt() throws IOException {
+    set = getBitSet(true, true, true, true);
+    set.clear(0, 3);
+    assertFalse(set.get(0));
+    assertFalse(set.get(1));
+    assertFalse(set.get(2));
+    assertTrue(set.get(3));
+  }
+
+  /**
+   * Test the clear() method.
+   */
+  @Test
+  public void testClear() throws IOException {
+    set = getBitSet(true, true, true, true);
+    set.clear();
+    assertThat(set.length(), is(equalTo(0)));
+  }
+
+  /**
+   * Test the get(int fromIndex, int toIndex) method.
+   */
+  @Test
+  public void testGetIntInt() throws IOException {
+    BitSet set2 = set.get(0, 3);
+    assertThat(3, is(equalTo(set2.length())));
+    assertTrue(set2.get(0));
+    assertFalse(set2.get(1));
+    assertTrue(set2.get(2));
+  }
+
+  /**
+   * Test the get(int fromIndex, int toIndex) method when the range is not aligned on a word.
+   */
+  @Test
+  public void testGetIntIntUnaligned() throws IOException {
+    set.set(70000, 140000);
+    set.set(200001);
+    BitSet set2 = set.get(69999, 200002);
+    assertFalse(set2.get(0));
+    assertTrue(set2.get(1));
+    assertTrue(set2.get(70000));
+    assertFalse(set2.get(70001));
+    assertTrue(set2.get(130002));
+    assertThat(70001, is(equalTo(set2.cardinality())));
+  }
+
+  /**
+   * Test the nextSetBit(int index) method.
+   */
+  @Test
+  public void testNextSetBit() throws IOException {
+    assertThat(0, is(equalTo(set.nextSetBit(0))));
+    assertThat(2, is(equalTo(set.nextSetBit(1))));
+    assertThat(-1, is(equalTo(set.nextSetBit(3))));
+    set.set(1 << 20);
+    assertThat(1 << 20, is(equalTo(set.nextSetBit(3))));
+  }
+
+  /**
+   * Test the nextClearBit(int index) method.
+   */
+  @Test
+  public void testNextClearBit() throws IOException {
+    assertThat(1, is(equalTo(set.nextClearBit(0))));
+    assertThat(1, is(equalTo(set.nextClearBit(1))));
+    assertThat(3, is(equalTo(set.nextClearBit(2))));
+    assertThat(4, is(equalTo(set.nextClearBit(4))));
+    set.set(0, 200000);
+    assertThat(200000, is(equalTo(set.nextClearBit(0))));
+  }
+
+  /**
+   * Test the length() method.
+   */
+  @Test
+  public void testLength() throws IOException {
+    assertThat(3, is(equalTo(set.length())));
+    set.clear();
+    assertThat(0, is(equalTo(set.length())));
+  }
+
+  /**
+   * Test the isEmpty() method.
+   */
+  @Test
+  public void testIsEmpty() throws IOException {
+    assertFalse(set.isEmpty());
+    set.clear();
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test the intersects(MappedBitSet bs) method.
+   */
+  @Test
+  public void testIntersects() throws IOException {
+    MappedBitSet set2 = getBitSet(false, true, false, true);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(false, false, false, false);
+    assertFalse(set.intersects(set2));
+    set2 = getBitSet(true);
+    assertTrue(set.intersects(set2));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    assertFalse(set.intersects(set2));
+  }
+
+  /**
+   * Test the cardinality() method.
+   */
+  @Test
+  public void testCardinality() throws IOException {
+    assertThat(2, is(equalTo(set.cardinality())));
+    set.clear(0);
+    assertThat(1, is(equalTo(set.cardinality())));
+    set.clear();
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the and(MappedBitSet bs) method.
+   */
+  @Test
+  public void testAnd() throws IOException {
+    MappedBitSet set2 = getBitSet(true, false, false, false);
+    set.and(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    set = getBitSet(false, false);
+    set2 = getBitSet(false, false);
+    set.and(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the or(MappedBitSet bs) method.
+   */
+  @Test
+  public void testOr() throws IOException {
+    MappedBitSet set2 = getBitSet();
+    set.or(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+    assertTrue(set.get(2));
+    set2 = getBitSet(false, true, false, true);
+    set.or(set2);
+    assertThat(4, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the xor(MappedBitSet bs) method.
+   */
+  @Test
+  public void testXor() throws IOException {
+    MappedBitSet set2 = getBitSet(true, false, true, false);
+    set.xor(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+    set = getBitSet();
+    set2 = getBitSet(false, false, true, false);
+    set.xor(set2);
+    assertThat(1, is(equalTo(set.cardinality())));
+    assertTrue(set.get(0));
+  }
+
+  /**
+   * Test the andNot(MappedBitSet bs) method.
+   */
+  @Test
+  public void testAndNot() throws IOException {
+    MappedBitSet set2 = getBitSet(false, false, false, false);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(false, true, false, true);
+    set.andNot(set2);
+    assertThat(2, is(equalTo(set.cardinality())));
+    set2 = getBitSet(true, true, true, true);
+    set.andNot(set2);
+    assertThat(0, is(equalTo(set.cardinality())));
+  }
+
+  /**
+   * Test the size() method.
+   * Returns the number of bits held by the file, which doubles when a bit beyond it is set.
+   */
+  @Test
+  public void testSize() throws IOException {
+    assertThat(64, is(equalTo(set.size())));
+    set.set(64, true);
+    assertThat(128, is(equalTo(set.size())));
+  }
+
+  /**
+   * Test that the bits survive closing and reopening the file.
+   */
+  @Test
+  public void testReopen() throws IOException {
+    File file = folder.newFile();
+    MappedBitSet bs = new MappedBitSet(file);
+    bs.set(3);
+    bs.set(1000, 2000);
+    bs.close();
+    //2000 bits round up to 32 words
+    assertThat(256L, is(equalTo(file.length())));
+    bs = new MappedBitSet(file);
+    assertTrue(bs.get(3));
+    assertTrue(bs.get(1999));
+    assertFalse(bs.get(2000));
+    assertThat(1001, is(equalTo(bs.cardinality())));
+    BitSet expected = new BitSet();
+    expected.set(3);
+    expected.set(1000, 2000);
+    assertThat(expected, is(equalTo(bs.toBitSet())));
+    bs.close();
+  }
+
+  /**
+   * Test that a file which is not made of whole words is rejected.
+   */
+  @Test(expected=IOException.class)
+  public void testBadFile() throws IOException {
+    File file = folder.newFile();
+    java.nio.file.Files.write(file.toPath(), new byte[] {1, 2, 3});
+    new MappedBitSet(file);
+  }
+
+  /**
+   * Utility method returns MappedBitSet with stock values:
+   * true, false, true, false
+   * @return
+   */
+  private MappedBitSet getBitSet() throws IOException {
+    return getBitSet(true, false, true, false);
+  }
+
+  /**
+   * Utility method returns MappedBitSet, in a new temporary file, with specified values.
+   * @param arg
+   * @return
+   */
+  private MappedBitSet getBitSet(boolean...arg) throws IOException {
+    MappedBitSet bs = new MappedBitSet(folder.newFile(), arg.length);
+    for (int i = 0; i < arg.length; i++) {
+      bs.set(i, arg[i]);
+    }
+    return bs;
+  }
+}
@@ -0,0 +1,223 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests MpscQueue with the Queue methods of QueueTest, plus drain and the growth and reuse of chunks,
+ * and producer threads passing numbers to a consumer thread, which checks that each producer's
+ * numbers arrive in order and none are lost.  Small chunks make the producers link new ones often.
+ * @author dan
+ *
+ */
+public class MpscQueueTest {
+
+  private static final int PRODUCERS = 8;
+  private static final int COUNT = 200000;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(PRODUCERS + 1);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Test the Queue methods, as QueueTest does on ArrayDeque.
+   */
+  @Test
+  public void testQueue() {
+    MpscQueue<String> q = new MpscQueue<>(4);
+    assertTrue(q.offer("abc"));
+    assertTrue(q.add("def"));
+    assertThat(q.size(), is(equalTo(2)));
+    assertThat(q.peek(), is(equalTo("abc")));
+    assertThat(q.element(), is(equalTo("abc")));
+    assertThat(q.toString(), is(equalTo("[abc, def]")));
+    assertThat(q.poll(), is(equalTo("abc")));
+    assertThat(q.remove(), is(equalTo("def")));
+    assertNull(q.poll());
+    assertNull(q.peek());
+    assertTrue(q.isEmpty());
+    assertThat(q.capacity(), is(equalTo(Integer.MAX_VALUE)));
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testRemoveEmpty() {
+    new MpscQueue<String>(4).remove();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testOfferNull() {
+    new MpscQueue<String>(4).offer(null);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadChunkSize() {
+    new MpscQueue<String>(1);
+  }
+
+  /**
+   * Test that an unbounded queue links new chunks as it fills, and keeps the elements in order across them.
+   */
+  @Test
+  public void testGrowth() {
+    MpscQueue<Integer> q = new MpscQueue<>(4);
+    for (int i = 0; i < 100; i++) {
+      assertTrue(q.offer(i));
+    }
+    assertThat(q.size(), is(equalTo(100)));
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      expected.add(i);
+    }
+    List<Integer> iterated = new ArrayList<>(q);
+    assertThat(iterated, is(equalTo(expected)));
+    for (int i = 0; i < 100; i++) {
+      assertThat(q.peek(), is(equalTo(i)));
+      assertThat(q.poll(), is(equalTo(i)));
+    }
+    assertTrue(q.isEmpty());
+  }
+
+  /**
+   * Test that a queue the consumer keeps up with reuses its chunk rather than linking new ones.
+   */
+  @Test
+  public void testReuse() {
+    MpscQueue<Integer> q = new MpscQueue<>(8);
+    Object chunk = q.producerBuffer;
+    for (int i = 0; i < 1000; i++) {
+      q.offer(i);
+      q.offer(i);
+      q.poll();
+      q.poll();
+    }
+    assertTrue(q.producerBuffer == chunk);
+  }
+
+  @Test
+  public void testBounded() {
+    MpscQueue<Integer> q = new MpscQueue<>(4, 10);
+    assertThat(q.capacity(), is(equalTo(10)));
+    for (int i = 0; i < 10; i++) {
+      assertTrue(q.offer(i));
+    }
+    assertFalse(q.offer(10));
+    assertThat(q.poll(), is(equalTo(0)));
+    assertTrue(q.offer(10));
+    assertFalse(q.offer(11));
+    assertThat(q.size(), is(equalTo(10)));
+    q = new MpscQueue<>(16, 2);
+    assertTrue(q.offer(0));
+    assertTrue(q.offer(1));
+    assertFalse(q.offer(2));
+  }
+
+  @Test
+  public void testDrain() {
+    MpscQueue<Integer> q = new MpscQueue<>(4);
+    for (int i = 0; i < 10; i++) {
+      q.offer(i);
+    }
+    List<Integer> drained = new ArrayList<>();
+    assertThat(q.drainTo(drained, 4), is(equalTo(4)));
+    assertThat(q.drainTo(drained, 100), is(equalTo(6)));
+    assertThat(q.drainTo(drained, 100), is(equalTo(0)));
+    assertThat(drained.toString(), is(equalTo("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9]")));
+    assertTrue(q.isEmpty());
+    assertTrue(q.offer(10));
+    assertThat(q.poll(), is(equalTo(10)));
+  }
+
+  @Test(timeout = 30000)
+  public void testOfferPollSpin() throws Exception {
+    testProducers(new MpscQueue<Integer>(8, Integer.MAX_VALUE, WaitStrategies.SPIN), false);
+  }
+
+  @Test(timeout = 30000)
+  public void testBoundedDrainYield() throws Exception {
+    testProducers(new MpscQueue<Integer>(64, 256, WaitStrategies.YIELD), true);
+  }
+
+  @Test(timeout = 30000)
+  public void testOfferPollPark() throws Exception {
+    testProducers(new MpscQueue<Integer>(1024, 4096, WaitStrategies.PARK), false);
+  }
+
+  /**
+   * Runs PRODUCERS producer threads, each putting COUNT numbers tagged with its own number,
+   * and a consumer thread taking them, or draining them in batches, and checking their order.
+   */
+  private void testProducers(final MpscQueue<Integer> q, final boolean drain) throws Exception {
+    List<Future<?>> producers = new ArrayList<>();
+    for (int p = 0; p < PRODUCERS; p++) {
+      final int producer = p;
+      producers.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws InterruptedException {
+          for (int i = 0; i < COUNT; i++) {
+            q.put(producer << 24 | i);
+          }
+          return null;
+        }
+      }));
+    }
+    Future<Integer> consumer = executor.submit(new Callable<Integer>() {
+      @Override
+      public Integer call() throws InterruptedException {
+        final int[] next = new int[PRODUCERS];
+        final int[] errors = new int[1];
+        Consumer<Integer> checker = new Consumer<Integer>() {
+          @Override
+          public void accept(Integer e) {
+            if ((e & 0xffffff) != next[e >>> 24]++) {
+              errors[0]++;
+            }
+          }
+        };
+        int received = 0;
+        while (received < PRODUCERS * COUNT) {
+          if (drain) {
+            int n = q.drain(checker, 100);
+            if (n == 0) {
+              Thread.yield();
+            }
+            received += n;
+          } else {
+            checker.accept(q.take());
+            received++;
+          }
+        }
+        return errors[0];
+      }
+    });
+    for (Future<?> producer : producers) {
+      producer.get();
+    }
+    assertThat(consumer.get(), is(equalTo(0)));
+    assertTrue(q.isEmpty());
+  }
+}
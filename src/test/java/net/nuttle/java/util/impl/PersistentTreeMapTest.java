@@ -0,0 +1,204 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests PersistentTreeMap.  The random test keeps every tenth version along with a TreeMap copy
+ * of it, and checks the navigation contract of NavigableMapTest on each of them at the end,
+ * after all the later versions have shared and copied their nodes.
+ * @author dan
+ *
+ */
+public class PersistentTreeMapTest {
+
+  @Test
+  public void testPlusMinus() {
+    PersistentTreeMap<String, String> empty = new PersistentTreeMap<>();
+    PersistentTreeMap<String, String> one = empty.plus("key1", "abc");
+    PersistentTreeMap<String, String> two = one.plus("key2", "def");
+    PersistentTreeMap<String, String> replaced = two.plus("key1", "ghi");
+    PersistentTreeMap<String, String> removed = replaced.minus("key2");
+    assertTrue(empty.isEmpty());
+    assertThat(one.size(), is(equalTo(1)));
+    assertThat(two.get("key1"), is(equalTo("abc")));
+    assertThat(replaced.get("key1"), is(equalTo("ghi")));
+    assertThat(replaced.size(), is(equalTo(2)));
+    assertFalse(removed.containsKey("key2"));
+    assertTrue(two.containsKey("key2"));
+    assertNull(removed.get("key2"));
+    assertTrue(removed.empty().isEmpty());
+  }
+
+  @Test
+  public void testUnchangedVersion() {
+    PersistentTreeMap<String, String> map = getMap();
+    assertSame(map, map.minus("not_exist"));
+    assertSame(map, map.plus("key1", map.get("key1")));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testPut() {
+    getMap().put("key3", "ghi");
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testIteratorRemove() {
+    java.util.Iterator<String> it = getMap().keySet().iterator();
+    it.next();
+    it.remove();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    getMap().plus("key3", null);
+  }
+
+  @Test
+  public void testNavigation() {
+    NavigableMap<String, String> map = getMap().plus("key3", "ghi").plus("key4", "jkl");
+    assertThat(map.firstKey(), is(equalTo("key1")));
+    assertThat(map.lastKey(), is(equalTo("key4")));
+    assertThat(map.lowerKey("key3"), is(equalTo("key2")));
+    assertThat(map.ceilingKey("key21"), is(equalTo("key3")));
+    assertThat(map.subMap("key2", "key4").size(), is(equalTo(2)));
+    assertThat(map.descendingMap().firstKey(), is(equalTo("key4")));
+    assertThat(map.headMap("key3", true).size(), is(equalTo(3)));
+  }
+
+  @Test
+  public void testCopyConstructors() {
+    TreeMap<Integer, Integer> source = new TreeMap<>(Collections.<Integer>reverseOrder());
+    for (int i = 0; i < 1000; i++) {
+      source.put(i, i);
+    }
+    PersistentTreeMap<Integer, Integer> map = new PersistentTreeMap<>(source);
+    assertThat(map.firstKey(), is(equalTo(999)));
+    assertThat(map, is(equalTo((Map<Integer, Integer>) source)));
+    Map<Integer, Integer> unsorted = new java.util.HashMap<>(source);
+    assertThat(new PersistentTreeMap<>(unsorted).firstKey(), is(equalTo(0)));
+    assertThat(map.plusAll(unsorted), is(equalTo((Map<Integer, Integer>) source)));
+  }
+
+  /**
+   * Test random versions against TreeMap copies, with enough keys for a deep tree.
+   */
+  @Test
+  public void testRandomVersions() {
+    Random random = new Random(11);
+    PersistentTreeMap<Integer, Integer> map = new PersistentTreeMap<>();
+    TreeMap<Integer, Integer> expected = new TreeMap<>();
+    List<PersistentTreeMap<Integer, Integer>> versions = new ArrayList<>();
+    List<TreeMap<Integer, Integer>> copies = new ArrayList<>();
+    for (int i = 0; i < 50000; i++) {
+      Integer key = random.nextInt(10000);
+      if (random.nextInt(3) == 0) {
+        map = map.minus(key);
+        expected.remove(key);
+      } else {
+        map = map.plus(key, i);
+        expected.put(key, i);
+      }
+      if (i % 5000 == 0) {
+        versions.add(map);
+        copies.add(new TreeMap<>(expected));
+      }
+    }
+    versions.add(map);
+    copies.add(expected);
+    for (int v = 0; v < versions.size(); v++) {
+      NavigableMap<Integer, Integer> version = versions.get(v);
+      TreeMap<Integer, Integer> copy = copies.get(v);
+      assertThat(version.size(), is(equalTo(copy.size())));
+      assertThat(new ArrayList<>(version.entrySet()), is(equalTo(new ArrayList<>(copy.entrySet()))));
+      assertThat(new ArrayList<>(version.descendingKeySet()), is(equalTo(new ArrayList<>(copy.descendingKeySet()))));
+      for (int i = 0; i < 100; i++) {
+        Integer probe = random.nextInt(10002) - 1;
+        assertThat(version.lowerKey(probe), is(equalTo(copy.lowerKey(probe))));
+        assertThat(version.floorKey(probe), is(equalTo(copy.floorKey(probe))));
+        assertThat(version.ceilingKey(probe), is(equalTo(copy.ceilingKey(probe))));
+        assertThat(version.higherKey(probe), is(equalTo(copy.higherKey(probe))));
+        int to = probe + random.nextInt(500);
+        assertThat(new ArrayList<>(version.subMap(probe, false, to, true).keySet()),
+          is(equalTo(new ArrayList<>(copy.subMap(probe, false, to, true).keySet()))));
+      }
+    }
+  }
+
+  /**
+   * Test that readers iterating published versions always see complete ones while a writer makes new versions.
+   */
+  @Test(timeout=30000)
+  public void testReadersDuringWrites() throws Exception {
+    final int keys = 20000;
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final Holder holder = new Holder();
+      List<Future<Integer>> readers = new ArrayList<>();
+      for (int t = 0; t < 3; t++) {
+        readers.add(executor.submit(new Callable<Integer>() {
+          @Override
+          public Integer call() {
+            int errors = 0;
+            while (!holder.done) {
+              PersistentTreeMap<Integer, Integer> version = holder.map;
+              int expected = 0;
+              for (Integer key : version.keySet()) {
+                if (key != expected++) {
+                  errors++;
+                }
+              }
+              if (expected != version.size()) {
+                errors++;
+              }
+            }
+            return errors;
+          }
+        }));
+      }
+      PersistentTreeMap<Integer, Integer> map = holder.map;
+      for (int i = 0; i < keys; i++) {
+        map = map.plus(i, i);
+        holder.map = map;
+      }
+      holder.done = true;
+      for (Future<Integer> reader : readers) {
+        assertThat(reader.get(), is(equalTo(0)));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * The latest version, published to the readers.
+   */
+  private static final class Holder {
+    volatile PersistentTreeMap<Integer, Integer> map = new PersistentTreeMap<>();
+    volatile boolean done;
+  }
+
+  private PersistentTreeMap<String, String> getMap() {
+    return new PersistentTreeMap<String, String>().plus("key1", "abc").plus("key2", "def");
+  }
+}
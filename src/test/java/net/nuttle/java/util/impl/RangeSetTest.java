@@ -0,0 +1,146 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests RangeSet.  The random test replays the same adds and removes on a BitSet,
+ * from which it computes the coalesced ranges the set should hold.
+ * @author dan
+ *
+ */
+public class RangeSetTest {
+
+  private RangeSet<Integer> set = null;
+  @Before
+  public void setUp() {
+    set = new RangeSet<>();
+    set.add(10, 20);
+    set.add(30, 40);
+  }
+
+  /**
+   * Test that added ranges coalesce with the ranges they overlap or meet.
+   */
+  @Test
+  public void testAdd() {
+    assertFalse(set.add(12, 18));
+    assertFalse(set.add(15, 15));
+    assertTrue(set.add(20, 25));
+    assertThat(set.toString(), is(equalTo("[[10, 25), [30, 40)]")));
+    assertTrue(set.add(new Range<>(5, 30)));
+    assertThat(set.toString(), is(equalTo("[[5, 40)]")));
+    assertTrue(set.add(50, 60));
+    assertTrue(set.add(0, 100));
+    assertThat(set.size(), is(equalTo(1)));
+  }
+
+  /**
+   * Test that removed ranges split the ranges around them.
+   */
+  @Test
+  public void testRemove() {
+    assertFalse(set.remove(20, 30));
+    assertTrue(set.remove(12, 14));
+    assertThat(set.toString(), is(equalTo("[[10, 12), [14, 20), [30, 40)]")));
+    assertTrue(set.remove(new Range<>(15, 35)));
+    assertThat(set.toString(), is(equalTo("[[10, 12), [14, 15), [35, 40)]")));
+    assertTrue(set.remove(0, 100));
+    assertTrue(set.isEmpty());
+  }
+
+  @Test
+  public void testQueries() {
+    assertTrue(set.contains(10));
+    assertFalse(set.contains(20));
+    assertThat(set.rangeContaining(35), is(equalTo(new Range<>(30, 40))));
+    assertNull(set.rangeContaining(25));
+    assertTrue(set.encloses(12, 20));
+    assertFalse(set.encloses(12, 21));
+    assertTrue(set.intersects(19, 30));
+    assertFalse(set.intersects(20, 30));
+    assertThat(set.overlapping(15, 31).toString(), is(equalTo("[[10, 20), [30, 40)]")));
+    assertThat(set.overlapping(20, 30).size(), is(equalTo(0)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadRange() {
+    set.add(20, 10);
+  }
+
+  @Test
+  public void testComparator() {
+    RangeSet<Integer> set = new RangeSet<>(Collections.<Integer>reverseOrder());
+    set.add(20, 10);
+    set.add(10, 5);
+    assertThat(set.toString(), is(equalTo("[[20, 5)]")));
+    assertTrue(set.contains(15));
+    assertFalse(set.contains(5));
+  }
+
+  /**
+   * Test random adds and removes against a BitSet.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(17);
+    RangeSet<Integer> set = new RangeSet<>();
+    BitSet expected = new BitSet();
+    for (int i = 0; i < 20000; i++) {
+      int start = random.nextInt(10000);
+      int end = start + random.nextInt(100);
+      if (random.nextInt(3) == 0) {
+        boolean changed = !expected.get(start, end).isEmpty();
+        assertThat(set.remove(start, end), is(equalTo(changed)));
+        expected.clear(start, end);
+      } else {
+        boolean changed = expected.get(start, end).cardinality() != end - start;
+        assertThat(set.add(start, end), is(equalTo(changed)));
+        expected.set(start, end);
+      }
+      if (i % 100 == 0) {
+        int probe = random.nextInt(10100);
+        assertThat(set.contains(probe), is(equalTo(expected.get(probe))));
+        int to = probe + 1 + random.nextInt(200);
+        assertThat(set.intersects(probe, to), is(equalTo(!expected.get(probe, to).isEmpty())));
+        assertThat(set.encloses(probe, to), is(equalTo(expected.get(probe, to).cardinality() == to - probe)));
+        List<Range<Integer>> overlapping = new ArrayList<>();
+        for (Range<Integer> range : ranges(expected)) {
+          if (range.start() < to && range.end() > probe) {
+            overlapping.add(range);
+          }
+        }
+        assertThat(set.overlapping(probe, to), is(equalTo(overlapping)));
+      }
+    }
+    List<Range<Integer>> actual = new ArrayList<>();
+    for (Range<Integer> range : set) {
+      actual.add(range);
+    }
+    assertThat(actual, is(equalTo(ranges(expected))));
+  }
+
+  private static List<Range<Integer>> ranges(BitSet bits) {
+    List<Range<Integer>> ranges = new ArrayList<>();
+    for (int start = bits.nextSetBit(0); start >= 0; start = bits.nextSetBit(start)) {
+      int end = bits.nextClearBit(start);
+      ranges.add(new Range<>(start, end));
+      start = end;
+    }
+    return ranges;
+  }
+}
@@ -0,0 +1,117 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests RankSelectBitSet.
+ * The expected ranks and selections are computed with nextSetBit loops over a java.util.BitSet,
+ * the way BitSetTest.testNextSetBit walks a set.
+ * @author dan
+ *
+ */
+public class RankSelectBitSetTest {
+
+  private RankSelectBitSet set = null;
+  @Before
+  public void setUp() {
+    set = getBitSet(true, false, true, false);
+  }
+
+  /**
+   * Test the rank(int index) method.
+   * It returns the number of set bits before index.
+   */
+  @Test
+  public void testRank() {
+    assertThat(0, is(equalTo(set.rank(0))));
+    assertThat(1, is(equalTo(set.rank(1))));
+    assertThat(1, is(equalTo(set.rank(2))));
+    assertThat(2, is(equalTo(set.rank(3))));
+    assertThat(2, is(equalTo(set.rank(1000000))));
+  }
+
+  /**
+   * Test the select(int k) method.
+   * It returns the index of the set bit of rank k, or -1 if there is none.
+   */
+  @Test
+  public void testSelect() {
+    assertThat(0, is(equalTo(set.select(0))));
+    assertThat(2, is(equalTo(set.select(1))));
+    assertThat(-1, is(equalTo(set.select(2))));
+  }
+
+  /**
+   * Test that updates are visible to the next rank and select queries.
+   */
+  @Test
+  public void testUpdates() {
+    set.set(1);
+    assertThat(3, is(equalTo(set.cardinality())));
+    assertThat(1, is(equalTo(set.select(1))));
+    set.clear(0);
+    assertThat(0, is(equalTo(set.rank(1))));
+    assertThat(1, is(equalTo(set.select(0))));
+    set.flip(100000);
+    assertThat(100000, is(equalTo(set.select(2))));
+    assertThat(2, is(equalTo(set.rank(100000))));
+    assertThat(3, is(equalTo(set.rank(100001))));
+    assertTrue(set.get(100000));
+    assertFalse(set.get(99999));
+  }
+
+  /**
+   * Test rank and select against BitSet on random sets, across several rounds of updates.
+   */
+  @Test
+  public void testAgainstBitSet() {
+    Random random = new Random(42);
+    BitSet expected = new BitSet();
+    for (int i = 0; i < 2000000; i++) {
+      if (random.nextInt(10) < 3) {
+        expected.set(i);
+      }
+    }
+    RankSelectBitSet actual = new RankSelectBitSet(expected);
+    for (int round = 0; round < 5; round++) {
+      assertThat(expected.cardinality(), is(equalTo(actual.cardinality())));
+      int rank = 0;
+      for (int i = expected.nextSetBit(0); i >= 0; i = expected.nextSetBit(i + 1)) {
+        assertThat(rank, is(equalTo(actual.rank(i))));
+        assertThat(i, is(equalTo(actual.select(rank))));
+        rank++;
+      }
+      assertThat(-1, is(equalTo(actual.select(rank))));
+      for (int i = 0; i < 1000; i++) {
+        int index = 1500000 - round * 300000 + random.nextInt(500000);
+        expected.flip(index);
+        actual.flip(index);
+      }
+    }
+    assertThat(expected, is(equalTo(actual.toBitSet())));
+  }
+
+  /**
+   * Utility method returns RankSelectBitSet with specified values.
+   * @param arg
+   * @return
+   */
+  private RankSelectBitSet getBitSet(boolean...arg) {
+    RankSelectBitSet bs = new RankSelectBitSet();
+    for (int i = 0; i < arg.length; i++) {
+      bs.set(i, arg[i]);
+    }
+    return bs;
+  }
+}
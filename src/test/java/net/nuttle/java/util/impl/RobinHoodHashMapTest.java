@@ -0,0 +1,234 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Tests RobinHoodHashMap.
+ * The first tests repeat the contract checked by MapTest for java.util.HashMap;
+ * the random tests replay the same operations on a HashMap and compare the results.
+ * @author dan
+ *
+ */
+public class RobinHoodHashMapTest {
+
+  @Test
+  public void testContainsKey() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsKey("key1"));
+    assertFalse(map.containsKey("not_exist"));
+  }
+
+  @Test
+  public void testContainsValue() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsValue("abc"));
+    assertFalse(map.containsValue("not_exist"));
+  }
+
+  @Test
+  public void testGet() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.get("key1"))));
+    assertNull(map.get("not_exist"));
+  }
+
+  @Test
+  public void testPut() {
+    Map<String, String> map = getMap();
+    assertThat(map.put("key1", "newvalue"), is(equalTo("abc")));
+    assertThat("newvalue", is(equalTo(map.get("key1"))));
+    assertNull(map.put("key3", "ghi"));
+    assertThat(3, is(equalTo(map.size())));
+  }
+
+  @Test
+  public void testRemove() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.remove("key1"))));
+    assertNull(map.remove("notexist"));
+    assertThat(1, is(equalTo(map.size())));
+  }
+
+  @Test
+  public void testPutAll() {
+    Map<String, String> map = getMap();
+    Map<String, String> map2 = new HashMap<String, String>();
+    map2.put("key3", "ghi");
+    map2.put("key4", "jkl");
+    map.putAll(map2);
+    assertThat(4, is(equalTo(map.keySet().size())));
+    assertThat("ghi", is(equalTo(map.get("key3"))));
+  }
+
+  @Test
+  public void testKeySet() {
+    Map<String, String> map = getMap();
+    assertTrue(map.keySet().contains("key1"));
+    assertTrue(map.keySet().contains("key2"));
+    assertThat(2, is(equalTo(map.keySet().size())));
+    assertTrue(map.keySet().remove("key1"));
+    assertFalse(map.containsKey("key1"));
+  }
+
+  @Test
+  public void testValues() {
+    Map<String, String> map = getMap();
+    assertThat(2, is(equalTo(map.values().size())));
+    assertTrue(map.values().contains("abc"));
+    assertTrue(map.values().contains("def"));
+  }
+
+  @Test
+  public void testEntrySet() {
+    Map<String, String> map = getMap();
+    Set<Map.Entry<String, String>> es = map.entrySet();
+    Iterator<Map.Entry<String, String>>  it = es.iterator();
+    Map.Entry<String, String> entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    entry.setValue("xyz");
+    assertThat(map.get(entry.getKey()), is(equalTo("xyz")));
+    entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * Test equals and hashCode against java.util.HashMap, in both directions.
+   */
+  @Test
+  public void testEquals() {
+    Map<String, String> map = getMap();
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("key1", "abc");
+    expected.put("key2", "def");
+    assertTrue(map.equals(expected));
+    assertTrue(expected.equals(map));
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+  }
+
+  /**
+   * Test null keys and values.
+   */
+  @Test
+  public void testNulls() {
+    Map<String, String> map = getMap();
+    assertNull(map.put(null, "nul"));
+    assertNull(map.put("key3", null));
+    assertTrue(map.containsKey(null));
+    assertTrue(map.containsValue(null));
+    assertThat(map.get(null), is(equalTo("nul")));
+    assertTrue(map.keySet().contains(null));
+    assertThat(map.remove(null), is(equalTo("nul")));
+    assertFalse(map.containsKey(null));
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    Map<String, String> map = getMap();
+    Iterator<String> it = map.keySet().iterator();
+    it.next();
+    map.put("key3", "ghi");
+    it.next();
+  }
+
+  /**
+   * Test random puts and removes against java.util.HashMap, across several resizes.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    Map<Integer, Integer> map = new RobinHoodHashMap<>(4);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      Integer key = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+    }
+    assertThat(map, is(equalTo(expected)));
+    for (int key = 0; key < 5000; key++) {
+      assertThat(map.containsKey(key), is(equalTo(expected.containsKey(key))));
+    }
+  }
+
+  /**
+   * Test that removing through the iterator visits every entry exactly once,
+   * including the entries that a removal moves from the first slot of the table to the last.
+   */
+  @Test
+  public void testIteratorRemove() {
+    Random random = new Random(11);
+    for (int round = 0; round < 50; round++) {
+      Map<Integer, Integer> map = new RobinHoodHashMap<>(0);
+      Map<Integer, Integer> expected = new HashMap<>();
+      int n = 1 + random.nextInt(200);
+      for (int i = 0; i < n; i++) {
+        int key = random.nextInt();
+        map.put(key, i);
+        expected.put(key, i);
+      }
+      Map<Integer, Integer> seen = new HashMap<>();
+      for (Iterator<Map.Entry<Integer, Integer>> it = map.entrySet().iterator(); it.hasNext();) {
+        Map.Entry<Integer, Integer> entry = it.next();
+        assertNull(seen.put(entry.getKey(), entry.getValue()));
+        if (random.nextBoolean()) {
+          it.remove();
+          expected.remove(entry.getKey());
+        }
+      }
+      assertThat(seen.size(), is(equalTo(n)));
+      assertThat(map, is(equalTo(expected)));
+    }
+  }
+
+  /**
+   * Test removing through the iterator from a chain that wraps past the first slot
+   * up to the next entry the iterator would return: 7, 15 and 8 all hash to the last slot
+   * of a table of 4.
+   */
+  @Test
+  public void testIteratorRemoveWrappedChain() {
+    Map<Integer, String> map = new RobinHoodHashMap<>(2);
+    Map<Integer, String> expected = new HashMap<>();
+    for (int key : new int[] {7, 15, 8}) {
+      map.put(key, "v" + key);
+      expected.put(key, "v" + key);
+    }
+    Map<Integer, String> seen = new HashMap<>();
+    Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+    Map.Entry<Integer, String> first = it.next();
+    seen.put(first.getKey(), first.getValue());
+    it.remove();
+    while (it.hasNext()) {
+      Map.Entry<Integer, String> entry = it.next();
+      assertNull(seen.put(entry.getKey(), entry.getValue()));
+    }
+    assertThat(seen, is(equalTo(expected)));
+    expected.remove(first.getKey());
+    assertThat(map, is(equalTo(expected)));
+  }
+
+  private Map<String, String> getMap() {
+    Map<String, String> map = new RobinHoodHashMap<String, String>();
+    map.put("key1", "abc");
+    map.put("key2", "def");
+    return map;
+  }
+}
@@ -0,0 +1,229 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests SSTableMap with the shared NavigableMap tests, with a memtable small enough that they
+ * run over many flushes and background compactions, plus reopening, compaction and tables
+ * spread over many small segments.
+ * @author dan
+ *
+ */
+public class SSTableMapTest extends AbstractNavigableMapTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final List<SSTableMap<?, ?>> maps = new ArrayList<>();
+
+  @After
+  public void tearDown() throws IOException {
+    for (SSTableMap<?, ?> map : maps) {
+      map.close();
+    }
+  }
+
+  @Override
+  protected <K extends Comparable<K>, V> NavigableMap<K, V> newMap() {
+    try {
+      return open(folder.newFolder(), 500, SSTable.DEFAULT_SEGMENT_SIZE);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Test
+  public void testReopen() throws IOException {
+    File dir = folder.newFolder();
+    SSTableMap<Integer, String> map = open(dir, 100, SSTable.DEFAULT_SEGMENT_SIZE);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, "value" + i);
+    }
+    for (int i = 0; i < 1000; i += 3) {
+      map.remove(i);
+    }
+    map.close();
+    map = open(dir, 100, SSTable.DEFAULT_SEGMENT_SIZE);
+    assertThat(map.size(), is(equalTo(666)));
+    assertThat(map.get(1), is(equalTo("value1")));
+    assertNull(map.get(3));
+    assertThat(map.floorKey(999), is(equalTo(998)));
+    assertThat(map.ceilingKey(3), is(equalTo(4)));
+  }
+
+  @Test
+  public void testUnflushedWritesLost() throws IOException {
+    File dir = folder.newFolder();
+    SSTableMap<Integer, String> map = open(dir, 100, SSTable.DEFAULT_SEGMENT_SIZE);
+    map.put(1, "abc");
+    map.flush();
+    map.put(2, "def");
+    // Abandon the map without closing it, as a process that dies would
+    maps.remove(map);
+    map = open(dir, 100, SSTable.DEFAULT_SEGMENT_SIZE);
+    assertThat(map.size(), is(equalTo(1)));
+    assertFalse(map.containsKey(2));
+  }
+
+  /**
+   * Test setValue on the entries of an entry set iterator, which puts into the memtable
+   * the iterator is merging, including keys that are only in a table, and a flush.
+   */
+  @Test
+  public void testEntrySetValue() throws IOException {
+    SSTableMap<String, String> map = open(folder.newFolder(), 4, SSTable.DEFAULT_SEGMENT_SIZE);
+    map.put("a", "1");
+    map.put("b", "2");
+    map.put("c", "3");
+    map.flush();
+    map.put("y", "4");
+    map.put("z", "5");
+    List<String> keys = new ArrayList<>();
+    for (Map.Entry<String, String> e : map.entrySet()) {
+      keys.add(e.getKey());
+      String old = e.getValue();
+      assertThat(e.setValue("x"), is(equalTo(old)));
+    }
+    assertThat(keys.toString(), is(equalTo("[a, b, c, y, z]")));
+    for (Map.Entry<String, String> e : map.descendingMap().entrySet()) {
+      e.setValue(e.getValue() + e.getKey());
+    }
+    assertThat(map.toString(), is(equalTo("{a=xa, b=xb, c=xc, y=xy, z=xz}")));
+  }
+
+  @Test
+  public void testCompact() throws IOException {
+    File dir = folder.newFolder();
+    SSTableMap<Integer, String> map = open(dir, 100, SSTable.DEFAULT_SEGMENT_SIZE);
+    TreeMap<Integer, String> expected = new TreeMap<>();
+    Random random = new Random(7);
+    for (int i = 0; i < 5000; i++) {
+      Integer key = random.nextInt(2000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, "value" + i), is(equalTo(expected.put(key, "value" + i))));
+      }
+    }
+    map.compact();
+    assertThat(dir.list().length, is(equalTo(2)));
+    assertThat(map.size(), is(equalTo(expected.size())));
+    assertThat(new ArrayList<>(map.entrySet()), is(equalTo(new ArrayList<>(expected.entrySet()))));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertThat(dir.list().length, is(equalTo(1)));
+  }
+
+  @Test
+  public void testComparator() throws IOException {
+    SSTableMap<Integer, String> map = new SSTableMap<>(folder.newFolder(), Serializers.INTEGER, Serializers.STRING,
+      Collections.<Integer>reverseOrder(), 100);
+    maps.add(map);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, "value" + i);
+    }
+    assertThat(map.firstKey(), is(equalTo(999)));
+    assertThat(map.floorKey(500), is(equalTo(500)));
+    assertThat(map.lowerKey(500), is(equalTo(501)));
+    assertThat(map.headMap(990).size(), is(equalTo(9)));
+  }
+
+  /**
+   * Test tables spread over segments of 256 bytes, so that many records move past the end of a segment.
+   */
+  @Test
+  public void testSmallSegments() throws IOException {
+    File dir = folder.newFolder();
+    SSTableMap<Integer, String> map = open(dir, 1000, 256);
+    TreeMap<Integer, String> expected = new TreeMap<>();
+    Random random = new Random(8);
+    for (int i = 0; i < 3000; i++) {
+      String value = "value" + random.nextInt(1 << random.nextInt(30));
+      map.put(i * 2, value);
+      expected.put(i * 2, value);
+    }
+    map.compact();
+    for (int i = 0; i < 1000; i++) {
+      Integer probe = random.nextInt(6002) - 1;
+      assertThat(map.get(probe), is(equalTo(expected.get(probe))));
+      assertThat(map.floorKey(probe), is(equalTo(expected.floorKey(probe))));
+      assertThat(map.higherKey(probe), is(equalTo(expected.higherKey(probe))));
+    }
+    assertThat(new ArrayList<>(map.descendingMap().entrySet()),
+      is(equalTo(new ArrayList<>(expected.descendingMap().entrySet()))));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRecordTooLarge() throws IOException {
+    SSTableMap<Integer, String> map = open(folder.newFolder(), 1000, 64);
+    map.put(1, "a value longer than the sixty-four bytes of a segment, which no record may cross");
+    maps.remove(map);
+    map.flush();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullValue() {
+    NavigableMap<String, String> map = newMap();
+    map.put("key1", null);
+  }
+
+  private <K, V> SSTableMap<K, V> open(File dir, int memtableSize, int segmentSize) throws IOException {
+    SSTableMap<K, V> map = new SSTableMap<K, V>(dir, TestSerializer.<K>get(), TestSerializer.<V>get(), null,
+      memtableSize, segmentSize);
+    maps.add(map);
+    return map;
+  }
+
+  /**
+   * Writes the Integers and Strings of the tests, which Serializers.java() would write too,
+   * but slowly enough to make the random tests drag.
+   */
+  private static final class TestSerializer implements Serializer<Object> {
+
+    private static final TestSerializer INSTANCE = new TestSerializer();
+
+    @SuppressWarnings("unchecked")
+    static <T> Serializer<T> get() {
+      return (Serializer<T>) (Serializer<?>) INSTANCE;
+    }
+
+    @Override
+    public void write(Object value, DataOutput out) throws IOException {
+      if (value instanceof Integer) {
+        out.writeByte(0);
+        Serializers.INTEGER.write((Integer) value, out);
+      } else {
+        out.writeByte(1);
+        Serializers.STRING.write((String) value, out);
+      }
+    }
+
+    @Override
+    public Object read(ByteBuffer in) {
+      return in.get() == 0 ? Serializers.INTEGER.read(in) : Serializers.STRING.read(in);
+    }
+  }
+}
@@ -0,0 +1,236 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests SpscRingBuffer with the Queue methods of QueueTest, plus drain and fill, and a producer
+ * and a consumer thread passing a long sequence of numbers through a small buffer, so that
+ * it wraps around many times and both threads often find it full or empty.
+ * @author dan
+ *
+ */
+public class SpscRingBufferTest {
+
+  private static final int COUNT = 1000000;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(2);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testCapacity() {
+    assertThat(new SpscRingBuffer<String>(1).capacity(), is(equalTo(1)));
+    assertThat(new SpscRingBuffer<String>(5).capacity(), is(equalTo(8)));
+    assertThat(new SpscRingBuffer<String>(8).capacity(), is(equalTo(8)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBadCapacity() {
+    new SpscRingBuffer<String>(0);
+  }
+
+  /**
+   * Test the Queue methods, as QueueTest does on ArrayDeque.
+   */
+  @Test
+  public void testQueue() {
+    SpscRingBuffer<String> q = new SpscRingBuffer<>(2);
+    assertTrue(q.offer("abc"));
+    assertTrue(q.add("def"));
+    assertFalse(q.offer("ghi"));
+    assertThat(q.size(), is(equalTo(2)));
+    assertThat(q.peek(), is(equalTo("abc")));
+    assertThat(q.element(), is(equalTo("abc")));
+    assertThat(q.toString(), is(equalTo("[abc, def]")));
+    assertThat(q.poll(), is(equalTo("abc")));
+    assertThat(q.remove(), is(equalTo("def")));
+    assertNull(q.poll());
+    assertNull(q.peek());
+    assertTrue(q.isEmpty());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddFull() {
+    SpscRingBuffer<String> q = new SpscRingBuffer<>(1);
+    q.add("abc");
+    q.add("def");
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testRemoveEmpty() {
+    new SpscRingBuffer<String>(4).remove();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testOfferNull() {
+    new SpscRingBuffer<String>(4).offer(null);
+  }
+
+  /**
+   * Test drain and fill, with and without limits, across the wrap-around of the buffer.
+   */
+  @Test
+  public void testDrainFill() {
+    SpscRingBuffer<Integer> q = new SpscRingBuffer<>(8);
+    Counter counter = new Counter();
+    assertThat(q.fill(counter, 5), is(equalTo(5)));
+    Collector collector = new Collector();
+    assertThat(q.drain(collector, 3), is(equalTo(3)));
+    assertThat(q.fill(counter, 100), is(equalTo(6)));
+    assertThat(q.size(), is(equalTo(8)));
+    assertThat(q.fill(counter, 1), is(equalTo(0)));
+    assertThat(q.drain(collector), is(equalTo(8)));
+    assertThat(q.drain(collector), is(equalTo(0)));
+    assertThat(collector.values.toString(), is(equalTo("[0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10]")));
+  }
+
+  /**
+   * Test that a negative limit is rejected before the buffer changes.
+   */
+  @Test
+  public void testNegativeLimit() {
+    SpscRingBuffer<Integer> q = new SpscRingBuffer<>(8);
+    q.offer(1);
+    try {
+      q.fill(new Counter(), -3);
+      throw new AssertionError("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    try {
+      q.drain(new Collector(), -3);
+      throw new AssertionError("expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertThat(q.size(), is(equalTo(1)));
+    assertThat(q.poll(), is(equalTo(1)));
+  }
+
+  /**
+   * Test a producer and a consumer thread with offer and poll.
+   */
+  @Test(timeout = 30000)
+  public void testOfferPoll() throws Exception {
+    final SpscRingBuffer<Integer> q = new SpscRingBuffer<>(64);
+    Future<?> producer = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < COUNT; i++) {
+          while (!q.offer(i)) {
+            Thread.yield();
+          }
+        }
+      }
+    });
+    Future<Long> consumer = executor.submit(new Callable<Long>() {
+      @Override
+      public Long call() {
+        long errors = 0;
+        for (int i = 0; i < COUNT; i++) {
+          Integer e;
+          while ((e = q.poll()) == null) {
+            Thread.yield();
+          }
+          if (e != i) {
+            errors++;
+          }
+        }
+        return errors;
+      }
+    });
+    producer.get();
+    assertThat(consumer.get(), is(equalTo(0L)));
+    assertTrue(q.isEmpty());
+  }
+
+  /**
+   * Test a producer and a consumer thread with fill and drain.
+   */
+  @Test(timeout = 30000)
+  public void testFillDrain() throws Exception {
+    final SpscRingBuffer<Integer> q = new SpscRingBuffer<>(64);
+    Future<?> producer = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        Counter counter = new Counter();
+        while (counter.next < COUNT) {
+          if (q.fill(counter, Math.min(10, COUNT - counter.next)) == 0) {
+            Thread.yield();
+          }
+        }
+      }
+    });
+    final Checker checker = new Checker();
+    Future<?> consumer = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        while (checker.next < COUNT) {
+          if (q.drain(checker, 16) == 0) {
+            Thread.yield();
+          }
+        }
+      }
+    });
+    producer.get();
+    consumer.get();
+    assertThat(checker.errors, is(equalTo(0)));
+    assertTrue(q.isEmpty());
+  }
+
+  private static final class Counter implements Supplier<Integer> {
+    int next;
+
+    @Override
+    public Integer get() {
+      return next++;
+    }
+  }
+
+  private static final class Collector implements Consumer<Integer> {
+    final List<Integer> values = new ArrayList<>();
+
+    @Override
+    public void accept(Integer e) {
+      values.add(e);
+    }
+  }
+
+  private static final class Checker implements Consumer<Integer> {
+    int next;
+    int errors;
+
+    @Override
+    public void accept(Integer e) {
+      if (e != next++) {
+        errors++;
+      }
+    }
+  }
+}
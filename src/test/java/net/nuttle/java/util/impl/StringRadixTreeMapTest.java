@@ -0,0 +1,245 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+/**
+ * Tests StringRadixTreeMap.  The random tests replay the same operations on a TreeMap and compare
+ * the results, on keys built from a few chars, so that they share prefixes and are prefixes of
+ * each other, and that include chars beyond ASCII.
+ * @author dan
+ *
+ */
+public class StringRadixTreeMapTest {
+
+  private static final String[] PARTS = {"a", "b", "/", "ab", "/api/v2/", "\u00e9", "\uffff", "\ud83d\ude00", "\u007f"};
+
+  @Test
+  public void testContainsKey() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsKey("key1"));
+    assertFalse(map.containsKey("key"));
+    assertFalse(map.containsKey("key11"));
+  }
+
+  @Test
+  public void testGet() {
+    Map<String, String> map = getMap();
+    assertThat(map.get("key1"), is(equalTo("abc")));
+    assertNull(map.get("not_exist"));
+  }
+
+  @Test
+  public void testPut() {
+    Map<String, String> map = getMap();
+    assertThat(map.put("key1", "newvalue"), is(equalTo("abc")));
+    assertNull(map.put("key", "ghi"));
+    assertNull(map.put("", "jkl"));
+    assertThat(map.size(), is(equalTo(4)));
+    assertThat(map.get("key"), is(equalTo("ghi")));
+    assertThat(map.get(""), is(equalTo("jkl")));
+  }
+
+  @Test
+  public void testRemove() {
+    Map<String, String> map = getMap();
+    map.put("key", "ghi");
+    assertThat(map.remove("key"), is(equalTo("ghi")));
+    assertNull(map.remove("key"));
+    assertThat(map.remove("key1"), is(equalTo("abc")));
+    assertThat(map.size(), is(equalTo(1)));
+    assertThat(map.get("key2"), is(equalTo("def")));
+  }
+
+  @Test
+  public void testNavigation() {
+    NavigableMap<String, String> map = getMap();
+    map.put("key", "ghi");
+    assertThat(map.firstKey(), is(equalTo("key")));
+    assertThat(map.lastKey(), is(equalTo("key2")));
+    assertThat(map.higherKey("key"), is(equalTo("key1")));
+    assertThat(map.ceilingKey("key0"), is(equalTo("key1")));
+    assertThat(map.floorKey("key10"), is(equalTo("key1")));
+    assertThat(map.lowerKey("key1"), is(equalTo("key")));
+    assertNull(map.lowerKey("key"));
+    assertNull(map.higherKey("key2"));
+  }
+
+  @Test
+  public void testPrefixMap() {
+    StringRadixTreeMap<Integer> map = new StringRadixTreeMap<>();
+    String[] keys = {"/api/v1/users", "/api/v2/", "/api/v2/orders", "/api/v2/users", "/api/v2/users/1", "/api/v3", "/home"};
+    for (int i = 0; i < keys.length; i++) {
+      map.put(keys[i], i);
+    }
+    NavigableMap<String, Integer> v2 = map.prefixMap("/api/v2/");
+    assertThat(new ArrayList<>(v2.keySet()), is(equalTo(java.util.Arrays.asList(
+      "/api/v2/", "/api/v2/orders", "/api/v2/users", "/api/v2/users/1"))));
+    assertThat(map.prefixMap("/api/v2/users").size(), is(equalTo(2)));
+    assertThat(map.prefixMap("/api/v4").size(), is(equalTo(0)));
+    assertThat(map.prefixMap("").size(), is(equalTo(keys.length)));
+    v2.remove("/api/v2/orders");
+    assertFalse(map.containsKey("/api/v2/orders"));
+  }
+
+  /**
+   * Test that nodes grow through every size and shrink back, keeping their children in order.
+   */
+  @Test
+  public void testNodeSizes() {
+    StringRadixTreeMap<Integer> map = new StringRadixTreeMap<>();
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    for (char c = 0x7e; c > 0; c--) {
+      String key = "x" + c + "y";
+      map.put(key, (int) c);
+      expected.put(key, (int) c);
+      assertThat(new ArrayList<>(map.keySet()), is(equalTo(new ArrayList<>(expected.keySet()))));
+    }
+    for (char c = 1; c < 0x7f; c += 2) {
+      String key = "x" + c + "y";
+      assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      assertThat(new ArrayList<>(map.descendingKeySet()), is(equalTo(new ArrayList<>(expected.descendingKeySet()))));
+    }
+    for (char c = 2; c < 0x7f; c += 2) {
+      String key = "x" + c + "y";
+      assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      assertThat(new ArrayList<>(map.keySet()), is(equalTo(new ArrayList<>(expected.keySet()))));
+    }
+    assertTrue(map.isEmpty());
+  }
+
+  /**
+   * Test random puts and removes against TreeMap, checking the navigation methods along the way,
+   * and the views and prefix maps at the end.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(8);
+    StringRadixTreeMap<Integer> map = new StringRadixTreeMap<>();
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 100000; i++) {
+      String key = randomKey(random);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+      if (i % 100 == 0) {
+        String probe = randomKey(random);
+        assertThat(map.lowerKey(probe), is(equalTo(expected.lowerKey(probe))));
+        assertThat(map.floorKey(probe), is(equalTo(expected.floorKey(probe))));
+        assertThat(map.ceilingKey(probe), is(equalTo(expected.ceilingKey(probe))));
+        assertThat(map.higherKey(probe), is(equalTo(expected.higherKey(probe))));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    assertThat(map, is(equalTo((Map<String, Integer>) expected)));
+    assertThat(new ArrayList<>(map.entrySet()), is(equalTo(new ArrayList<>(expected.entrySet()))));
+    assertThat(new ArrayList<>(map.descendingMap().keySet()),
+      is(equalTo(new ArrayList<>(expected.descendingMap().keySet()))));
+    for (int i = 0; i < 200; i++) {
+      String from = randomKey(random);
+      String to = randomKey(random);
+      if (from.compareTo(to) > 0) {
+        String swap = from;
+        from = to;
+        to = swap;
+      }
+      boolean fromInclusive = random.nextBoolean();
+      boolean toInclusive = random.nextBoolean();
+      NavigableMap<String, Integer> sub = map.subMap(from, fromInclusive, to, toInclusive);
+      NavigableMap<String, Integer> expectedSub = expected.subMap(from, fromInclusive, to, toInclusive);
+      assertThat(new ArrayList<>(sub.keySet()), is(equalTo(new ArrayList<>(expectedSub.keySet()))));
+      assertThat(new ArrayList<>(sub.descendingKeySet()), is(equalTo(new ArrayList<>(expectedSub.descendingKeySet()))));
+      String prefix = from.substring(0, random.nextInt(from.length() + 1));
+      TreeMap<String, Integer> expectedPrefix = new TreeMap<>();
+      for (Map.Entry<String, Integer> e : expected.tailMap(prefix).entrySet()) {
+        if (!e.getKey().startsWith(prefix)) {
+          break;
+        }
+        expectedPrefix.put(e.getKey(), e.getValue());
+      }
+      assertThat(new ArrayList<>(map.prefixMap(prefix).entrySet()),
+        is(equalTo(new ArrayList<>(expectedPrefix.entrySet()))));
+    }
+  }
+
+  /**
+   * Test removal through iterators, in both directions.
+   */
+  @Test
+  public void testRandomRemoveThroughViews() {
+    Random random = new Random(9);
+    StringRadixTreeMap<Integer> map = new StringRadixTreeMap<>();
+    TreeMap<String, Integer> expected = new TreeMap<>();
+    for (int i = 0; i < 20000; i++) {
+      String key = randomKey(random);
+      map.put(key, i);
+      expected.put(key, i);
+    }
+    for (boolean descending : new boolean[] {false, true}) {
+      Iterator<String> it = descending ? map.descendingKeySet().iterator() : map.keySet().iterator();
+      Iterator<String> expectedIt = descending ? expected.descendingKeySet().iterator() : expected.keySet().iterator();
+      while (expectedIt.hasNext()) {
+        assertThat(it.next(), is(equalTo(expectedIt.next())));
+        if (random.nextBoolean()) {
+          it.remove();
+          expectedIt.remove();
+        }
+      }
+      assertFalse(it.hasNext());
+      assertThat(new ArrayList<>(map.keySet()), is(equalTo(new ArrayList<>(expected.keySet()))));
+    }
+    while (!expected.isEmpty()) {
+      assertThat(map.pollFirstEntry(), is(equalTo(expected.pollFirstEntry())));
+      assertThat(map.pollLastEntry(), is(equalTo(expected.pollLastEntry())));
+    }
+    assertTrue(map.isEmpty());
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    Map<String, String> map = getMap();
+    map.put("key3", "ghi");
+    Iterator<String> it = map.keySet().iterator();
+    it.next();
+    map.put("key4", "jkl");
+    it.next();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testNullKey() {
+    getMap().put(null, "abc");
+  }
+
+  private static String randomKey(Random random) {
+    StringBuilder sb = new StringBuilder();
+    int parts = random.nextInt(6);
+    for (int i = 0; i < parts; i++) {
+      sb.append(PARTS[random.nextInt(PARTS.length)]);
+    }
+    return sb.toString();
+  }
+
+  private NavigableMap<String, String> getMap() {
+    NavigableMap<String, String> map = new StringRadixTreeMap<String>();
+    map.put("key1", "abc");
+    map.put("key2", "def");
+    return map;
+  }
+}
@@ -0,0 +1,369 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests StripedHashMap.
+ * The first tests repeat the contract checked by MapTest for java.util.HashMap;
+ * the random test replays the same operations on a HashMap and compares the results,
+ * and the concurrent tests release their threads together with a latch, like ConcurrentBitSetStressTest.
+ * @author dan
+ *
+ */
+public class StripedHashMapTest {
+
+  private static final int THREADS = 8;
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(THREADS);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testContainsKey() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsKey("key1"));
+    assertFalse(map.containsKey("not_exist"));
+  }
+
+  @Test
+  public void testContainsValue() {
+    Map<String, String> map = getMap();
+    assertTrue(map.containsValue("abc"));
+    assertFalse(map.containsValue("not_exist"));
+  }
+
+  @Test
+  public void testGet() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.get("key1"))));
+    assertNull(map.get("not_exist"));
+  }
+
+  @Test
+  public void testPut() {
+    Map<String, String> map = getMap();
+    assertThat(map.put("key1", "newvalue"), is(equalTo("abc")));
+    assertThat("newvalue", is(equalTo(map.get("key1"))));
+    assertNull(map.put("key3", "ghi"));
+    assertThat(3, is(equalTo(map.size())));
+  }
+
+  @Test
+  public void testRemove() {
+    Map<String, String> map = getMap();
+    assertThat("abc", is(equalTo(map.remove("key1"))));
+    assertNull(map.remove("notexist"));
+    assertThat(1, is(equalTo(map.size())));
+  }
+
+  @Test
+  public void testPutAll() {
+    Map<String, String> map = getMap();
+    Map<String, String> map2 = new HashMap<String, String>();
+    map2.put("key3", "ghi");
+    map2.put("key4", "jkl");
+    map.putAll(map2);
+    assertThat(4, is(equalTo(map.keySet().size())));
+    assertThat("ghi", is(equalTo(map.get("key3"))));
+  }
+
+  @Test
+  public void testKeySet() {
+    Map<String, String> map = getMap();
+    assertTrue(map.keySet().contains("key1"));
+    assertTrue(map.keySet().contains("key2"));
+    assertThat(2, is(equalTo(map.keySet().size())));
+    assertTrue(map.keySet().remove("key1"));
+    assertFalse(map.containsKey("key1"));
+  }
+
+  @Test
+  public void testValues() {
+    Map<String, String> map = getMap();
+    assertThat(2, is(equalTo(map.values().size())));
+    assertTrue(map.values().contains("abc"));
+    assertTrue(map.values().contains("def"));
+  }
+
+  @Test
+  public void testEntrySet() {
+    Map<String, String> map = getMap();
+    Set<Map.Entry<String, String>> es = map.entrySet();
+    Iterator<Map.Entry<String, String>>  it = es.iterator();
+    Map.Entry<String, String> entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    entry.setValue("xyz");
+    assertThat(map.get(entry.getKey()), is(equalTo("xyz")));
+    entry = it.next();
+    assertThat(map.get(entry.getKey()), is(equalTo(entry.getValue())));
+    assertFalse(it.hasNext());
+  }
+
+  /**
+   * Test equals and hashCode against java.util.HashMap, in both directions.
+   */
+  @Test
+  public void testEquals() {
+    Map<String, String> map = getMap();
+    Map<String, String> expected = new HashMap<String, String>();
+    expected.put("key1", "abc");
+    expected.put("key2", "def");
+    assertTrue(map.equals(expected));
+    assertTrue(expected.equals(map));
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+  }
+
+
+
+  /**
+   * Test random puts and removes against java.util.HashMap, across several resizes.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    Map<Integer, Integer> map = new StripedHashMap<>(4, 4);
+    Map<Integer, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      Integer key = random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+    }
+    assertThat(map, is(equalTo(expected)));
+    for (int key = 0; key < 5000; key++) {
+      assertThat(map.containsKey(key), is(equalTo(expected.containsKey(key))));
+    }
+  }
+
+
+  /**
+   * Test that null keys and values are rejected, as in ConcurrentHashMap.
+   */
+  @Test
+  public void testNulls() {
+    Map<String, String> map = getMap();
+    try {
+      map.put(null, "abc");
+      fail();
+    } catch (NullPointerException e) {
+      //expected
+    }
+    try {
+      map.put("key3", null);
+      fail();
+    } catch (NullPointerException e) {
+      //expected
+    }
+    assertFalse(map.entrySet().contains(new AbstractMap.SimpleEntry<String, String>(null, "abc")));
+  }
+
+  /**
+   * Test the atomic methods of ConcurrentMap.
+   */
+  @Test
+  public void testConcurrentMap() {
+    ConcurrentMap<String, String> map = new StripedHashMap<String, String>();
+    assertNull(map.putIfAbsent("key1", "abc"));
+    assertThat(map.putIfAbsent("key1", "def"), is(equalTo("abc")));
+    assertFalse(map.replace("key1", "def", "ghi"));
+    assertTrue(map.replace("key1", "abc", "ghi"));
+    assertThat(map.replace("key1", "jkl"), is(equalTo("ghi")));
+    assertNull(map.replace("key2", "jkl"));
+    assertFalse(map.remove("key1", "ghi"));
+    assertTrue(map.remove("key1", "jkl"));
+    assertTrue(map.isEmpty());
+  }
+
+  /**
+   * Test that iterators are weakly consistent: removing and adding entries during iteration
+   * does not throw, and every entry present throughout is seen.
+   */
+  @Test
+  public void testWeaklyConsistentIterator() {
+    Map<Integer, Integer> map = new StripedHashMap<>(0, 4);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    int seen = 0;
+    for (Iterator<Integer> it = map.keySet().iterator(); it.hasNext();) {
+      int key = it.next();
+      if (key < 1000) {
+        seen++;
+        map.put(key + 1000, key);
+        if (key % 2 == 0) {
+          it.remove();
+        }
+      }
+    }
+    assertThat(seen, is(equalTo(1000)));
+    assertThat(map.size(), is(equalTo(1500)));
+  }
+
+  /**
+   * Test puts of disjoint keys from many threads, with tables growing underneath.
+   * No entry may be lost, and size() must be exact once the writers are done.
+   */
+  @Test(timeout=30000)
+  public void testConcurrentPuts() throws Exception {
+    final int perThread = 50000;
+    final Map<Integer, Integer> map = new StripedHashMap<>(0, 4);
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = 0; i < perThread; i++) {
+          map.put(i * THREADS + thread, thread);
+        }
+        return 0;
+      }
+    });
+    assertThat(map.size(), is(equalTo(perThread * THREADS)));
+    for (int i = 0; i < perThread * THREADS; i++) {
+      assertThat(map.get(i), is(equalTo(i % THREADS)));
+    }
+  }
+
+  /**
+   * Test that readers always find keys that are never removed, while writers add and remove
+   * other keys of the same stripes and make the tables grow.
+   */
+  @Test(timeout=30000)
+  public void testReadsDuringWrites() throws Exception {
+    final Map<Integer, Integer> map = new StripedHashMap<>(0, 2);
+    for (int i = 0; i < 1000; i++) {
+      map.put(i, i);
+    }
+    final AtomicBoolean done = new AtomicBoolean();
+    List<Integer> misses = run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        int misses = 0;
+        if (thread % 2 == 0) {
+          for (int i = 0; i < 100000; i++) {
+            int key = 1000 + thread * 100000 + i;
+            map.put(key, key);
+            if (i % 3 == 0) {
+              map.remove(key);
+            }
+          }
+          done.set(true);
+        } else {
+          while (!done.get()) {
+            for (int i = 0; i < 1000; i++) {
+              Integer value = map.get(i);
+              if (value == null || value != i) {
+                misses++;
+              }
+            }
+          }
+        }
+        return misses;
+      }
+    });
+    for (int count : misses) {
+      assertThat(count, is(equalTo(0)));
+    }
+  }
+
+  /**
+   * Test that replace loops count every increment exactly once.
+   */
+  @Test(timeout=30000)
+  public void testReplaceCounters() throws Exception {
+    final ConcurrentMap<Integer, Long> map = new StripedHashMap<>();
+    run(new Task() {
+      @Override
+      public Integer call(int thread) {
+        for (int i = 0; i < 20000; i++) {
+          Integer key = i % 10;
+          while (true) {
+            Long old = map.putIfAbsent(key, 1L);
+            if (old == null || map.replace(key, old, old + 1)) {
+              break;
+            }
+          }
+        }
+        return 0;
+      }
+    });
+    long total = 0;
+    for (long count : map.values()) {
+      total += count;
+    }
+    assertThat(total, is(equalTo(20000L * THREADS)));
+  }
+
+  /**
+   * A unit of work run by each thread.
+   */
+  private interface Task {
+    Integer call(int thread);
+  }
+
+  /**
+   * Runs task on THREADS threads released together, and returns their results.
+   */
+  private List<Integer> run(final Task task) throws Exception {
+    final CountDownLatch start = new CountDownLatch(1);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int t = 0; t < THREADS; t++) {
+      final int thread = t;
+      futures.add(executor.submit(new Callable<Integer>() {
+        @Override
+        public Integer call() throws Exception {
+          start.await();
+          return task.call(thread);
+        }
+      }));
+    }
+    start.countDown();
+    List<Integer> results = new ArrayList<>();
+    for (Future<Integer> future : futures) {
+      results.add(future.get());
+    }
+    return results;
+  }
+
+  private Map<String, String> getMap() {
+    Map<String, String> map = new StripedHashMap<String, String>();
+    map.put("key1", "abc");
+    map.put("key2", "def");
+    return map;
+  }
+}
@@ -0,0 +1,276 @@
+package net.nuttle.java.util.impl;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests TreeList with the operations of ListTest and ListIteratorTest.
+ * The random tests replay the same operations on a java.util.ArrayList and compare the results,
+ * with enough elements for several levels of splits and merges.
+ * @author dan
+ *
+ */
+public class TreeListTest {
+
+  private List<String> list = null;
+  @Before
+  public void setUp() {
+    list = new TreeList<>(Arrays.asList("A", "B", "C", "D"));
+  }
+
+  /**
+   * Test the positional methods.
+   */
+  @Test
+  public void testPositional() {
+    assertThat(list.size(), is(equalTo(4)));
+    assertThat(list.get(2), is(equalTo("C")));
+    assertThat(list.set(2, "X"), is(equalTo("C")));
+    list.add(0, "F");
+    list.add(5, null);
+    assertThat(list.toString(), is(equalTo("[F, A, B, X, D, null]")));
+    assertThat(list.remove(1), is(equalTo("A")));
+    assertTrue(list.remove("X"));
+    assertThat(list.indexOf("D"), is(equalTo(2)));
+    assertThat(list.indexOf(null), is(equalTo(3)));
+    assertTrue(list.contains("B"));
+    assertTrue(list.equals(Arrays.asList("F", "B", "D", null)));
+    assertThat(list.hashCode(), is(equalTo(Arrays.asList("F", "B", "D", null).hashCode())));
+    list.clear();
+    assertTrue(list.isEmpty());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    list.get(4);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testAddOutOfBounds() {
+    list.add(5, "E");
+  }
+
+  /**
+   * Test the list iterator in both directions, with set, add and remove.
+   */
+  @Test
+  public void testListIterator() {
+    List<String> values = new ArrayList<>();
+    for (ListIterator<String> lit = list.listIterator(list.size()); lit.hasPrevious();) {
+      String value = lit.previous();
+      values.add(value);
+      if ("C".equals(value)) {
+        lit.remove();
+      } else if ("B".equals(value)) {
+        lit.set("Y");
+        lit.add("Z");
+        assertThat(lit.previous(), is(equalTo("Z")));
+      }
+    }
+    assertThat(values.toString(), is(equalTo("[D, C, B, A]")));
+    assertThat(list.toString(), is(equalTo("[A, Z, Y, D]")));
+    ListIterator<String> lit = list.listIterator(1);
+    assertThat(lit.nextIndex(), is(equalTo(1)));
+    assertThat(lit.next(), is(equalTo("Z")));
+    assertThat(lit.previousIndex(), is(equalTo(1)));
+    lit.add("W");
+    assertThat(lit.next(), is(equalTo("Y")));
+    assertThat(list.toString(), is(equalTo("[A, Z, W, Y, D]")));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testListIteratorRemoveTwice() {
+    Iterator<String> it = list.iterator();
+    it.next();
+    it.remove();
+    it.remove();
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testListIteratorExhausted() {
+    new TreeList<String>().listIterator().next();
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testConcurrentModification() {
+    Iterator<String> it = list.iterator();
+    it.next();
+    list.add("E");
+    it.next();
+  }
+
+  /**
+   * Test that a subList writes through to the list.
+   */
+  @Test
+  public void testSubList() {
+    List<String> sub = list.subList(1, 3);
+    sub.add("E");
+    sub.remove("B");
+    assertThat(list.toString(), is(equalTo("[A, C, E, D]")));
+    sub.clear();
+    assertThat(list.toString(), is(equalTo("[A, D]")));
+  }
+
+  /**
+   * Test a list built by appending, which fills its leaves, then thinned out by removal
+   * and inserts in the middle.
+   */
+  @Test
+  public void testAppendAndRemove() {
+    List<Integer> list = new TreeList<>();
+    for (int i = 0; i < 100000; i++) {
+      list.add(i);
+    }
+    assertThat(list.get(54321), is(equalTo(54321)));
+    for (Iterator<Integer> it = list.iterator(); it.hasNext();) {
+      if (it.next() % 7 != 0) {
+        it.remove();
+      }
+    }
+    assertThat(list.size(), is(equalTo(14286)));
+    assertThat(list.get(1000), is(equalTo(7000)));
+    for (int i = 0; i < 10000; i++) {
+      list.add(7000, -i);
+    }
+    assertThat(list.get(7000), is(equalTo(-9999)));
+    assertThat(list.get(16999), is(equalTo(0)));
+    assertThat(list.get(17000), is(equalTo(49000)));
+    List<Integer> expected = new ArrayList<>(list);
+    while (!expected.isEmpty()) {
+      int index = expected.size() % 2 == 0 ? expected.size() - 1 : expected.size() / 3;
+      assertThat(list.remove(index), is(equalTo(expected.remove(index))));
+    }
+    assertTrue(list.isEmpty());
+  }
+
+  /**
+   * Test removal from the tail of a list appended past two levels (64 x 64 elements),
+   * whose last leaf starts out with a single element.
+   */
+  @Test
+  public void testAppendThenRemoveLast() {
+    List<Integer> list = new TreeList<>();
+    for (int i = 0; i < 4097; i++) {
+      list.add(i);
+    }
+    assertThat(list.remove(4096), is(equalTo(4096)));
+    assertThat(list.size(), is(equalTo(4096)));
+    for (int i = 4095; i >= 0; i--) {
+      assertThat(list.get(i), is(equalTo(i)));
+      assertThat(list.remove(i), is(equalTo(i)));
+    }
+    assertTrue(list.isEmpty());
+    for (int i = 0; i < 10000; i++) {
+      list.add(i);
+    }
+    for (int i = 0; i < 10000; i++) {
+      list.remove(list.size() - 1);
+      list.add(i);
+      list.remove(list.size() - 1);
+    }
+    assertTrue(list.isEmpty());
+  }
+
+  /**
+   * Test random positional operations and list iterator walks against java.util.ArrayList.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    List<Integer> list = new TreeList<>();
+    List<Integer> expected = new ArrayList<>();
+    for (int i = 0; i < 100000; i++) {
+      int value = random.nextInt(1000);
+      switch (random.nextInt(5)) {
+        case 0:
+        case 1:
+          int index = random.nextInt(expected.size() + 1);
+          list.add(index, value);
+          expected.add(index, value);
+          break;
+        case 2:
+          if (!expected.isEmpty()) {
+            index = random.nextInt(expected.size());
+            assertThat(list.remove(index), is(equalTo(expected.remove(index))));
+          }
+          break;
+        case 3:
+          if (!expected.isEmpty()) {
+            index = random.nextInt(expected.size());
+            assertThat(list.set(index, value), is(equalTo(expected.set(index, value))));
+          }
+          break;
+        default:
+          list.add(value);
+          expected.add(value);
+          break;
+      }
+      if (i % 1000 == 0 && !expected.isEmpty()) {
+        int index = random.nextInt(expected.size());
+        assertThat(list.get(index), is(equalTo(expected.get(index))));
+      }
+      assertThat(list.size(), is(equalTo(expected.size())));
+    }
+    assertThat(list, is(equalTo(expected)));
+    for (int i = 0; i < 20; i++) {
+      int start = random.nextInt(expected.size() + 1);
+      ListIterator<Integer> lit = list.listIterator(start);
+      ListIterator<Integer> elit = expected.listIterator(start);
+      for (int step = 0; step < 2000; step++) {
+        switch (random.nextInt(4)) {
+          case 0:
+            assertThat(lit.hasNext(), is(equalTo(elit.hasNext())));
+            if (elit.hasNext()) {
+              assertThat(lit.next(), is(equalTo(elit.next())));
+              if (random.nextInt(3) == 0) {
+                lit.remove();
+                elit.remove();
+              }
+            }
+            break;
+          case 1:
+            assertThat(lit.hasPrevious(), is(equalTo(elit.hasPrevious())));
+            if (elit.hasPrevious()) {
+              assertThat(lit.previous(), is(equalTo(elit.previous())));
+              if (random.nextInt(3) == 0) {
+                lit.set(-step);
+                elit.set(-step);
+              }
+            }
+            break;
+          case 2:
+            lit.add(step);
+            elit.add(step);
+            break;
+          default:
+            assertThat(lit.nextIndex(), is(equalTo(elit.nextIndex())));
+            break;
+        }
+      }
+    }
+    assertThat(list, is(equalTo(expected)));
+    while (!expected.isEmpty()) {
+      int index = random.nextInt(expected.size());
+      assertThat(list.remove(index), is(equalTo(expected.remove(index))));
+    }
+    assertTrue(list.isEmpty());
+    assertFalse(list.iterator().hasNext());
+  }
+}
@@ -0,0 +1,296 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests DoubleArrayList.
+ * The random tests replay the same operations on a java.util.ArrayList, and on a subList of each,
+ * and compare the results.
+ * @author dan
+ *
+ */
+public class DoubleArrayListTest {
+
+  private DoubleArrayList list = null;
+  @Before
+  public void setUp() {
+    list = new DoubleArrayList(new double[] {30, -10, 20, 10});
+  }
+
+  /**
+   * Test the positional methods.
+   */
+  @Test
+  public void testPositional() {
+    assertThat(list.size(), is(equalTo(4)));
+    assertThat(list.get(1), is(equalTo(-10.0)));
+    assertThat(list.set(1, 0), is(equalTo(-10.0)));
+    list.add(0, 40);
+    list.add(50);
+    assertThat(list.toString(), is(equalTo("[40.0, 30.0, 0.0, 20.0, 10.0, 50.0]")));
+    assertThat(list.remove(2), is(equalTo(0.0)));
+    assertTrue(list.removeValue(50));
+    assertFalse(list.removeValue(50));
+    list.addAll(1, new double[] {1, 2});
+    assertThat(list.toString(), is(equalTo("[40.0, 1.0, 2.0, 30.0, 20.0, 10.0]")));
+    list.add(2);
+    assertThat(list.indexOf(2), is(equalTo(2)));
+    assertThat(list.lastIndexOf(2), is(equalTo(6)));
+    assertThat(list.indexOf(3), is(equalTo(-1)));
+    assertTrue(list.contains(30));
+    list.clear();
+    assertTrue(list.isEmpty());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    list.get(4);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testAddOutOfBounds() {
+    list.add(5, 0);
+  }
+
+  @Test
+  public void testSortAndBinarySearch() {
+    list.sort();
+    assertThat(list.toString(), is(equalTo("[-10.0, 10.0, 20.0, 30.0]")));
+    assertThat(list.binarySearch(20), is(equalTo(2)));
+    assertThat(list.binarySearch(15), is(equalTo(-3)));
+    DoubleArrayList sub = list.subList(1, 3);
+    assertThat(sub.binarySearch(20), is(equalTo(1)));
+    assertThat(sub.binarySearch(25), is(equalTo(-3)));
+    assertThat(sub.binarySearch(-20), is(equalTo(-1)));
+  }
+
+  /**
+   * Test that a subList sees and writes through to the list, and fails once the list is changed.
+   */
+  @Test
+  public void testSubList() {
+    DoubleArrayList sub = list.subList(1, 3);
+    assertThat(sub.toString(), is(equalTo("[-10.0, 20.0]")));
+    sub.set(0, -1);
+    sub.add(25);
+    assertThat(list.toString(), is(equalTo("[30.0, -1.0, 20.0, 25.0, 10.0]")));
+    DoubleArrayList subSub = sub.subList(1, 3);
+    subSub.remove(0);
+    assertThat(sub.toString(), is(equalTo("[-1.0, 25.0]")));
+    assertThat(list.size(), is(equalTo(4)));
+    sub.clear();
+    assertThat(list.toString(), is(equalTo("[30.0, 10.0]")));
+    list.add(0);
+    try {
+      sub.size();
+      throw new AssertionError("expected ConcurrentModificationException");
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test the cursor in both directions, with set, add and remove.
+   */
+  @Test
+  public void testListCursor() {
+    List<Double> values = new ArrayList<>();
+    for (DoubleArrayList.ListCursor c = list.listCursor(list.size()); c.hasPrevious();) {
+      double value = c.previous();
+      values.add(value);
+      if (value == 20) {
+        c.remove();
+      } else if (value == -10) {
+        c.set(-11);
+        c.add(-12);
+        assertThat(c.previous(), is(equalTo(-12.0)));
+      }
+    }
+    assertThat(values.toString(), is(equalTo("[10.0, 20.0, -10.0, 30.0]")));
+    assertThat(list.toString(), is(equalTo("[30.0, -12.0, -11.0, 10.0]")));
+    DoubleArrayList.ListCursor c = list.listCursor(1);
+    assertThat(c.nextIndex(), is(equalTo(1)));
+    assertThat(c.next(), is(equalTo(-12.0)));
+    assertThat(c.previousIndex(), is(equalTo(1)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testListCursorRemoveTwice() {
+    DoubleArrayList.ListCursor c = list.listCursor();
+    c.next();
+    c.remove();
+    c.remove();
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testListCursorExhausted() {
+    new DoubleArrayList().listCursor().next();
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testListCursorModified() {
+    DoubleArrayList.ListCursor c = list.listCursor();
+    c.next();
+    list.add(40);
+    c.next();
+  }
+
+  /**
+   * Test equals, hashCode and toString against java.util.ArrayList.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    List<Double> expected = Arrays.asList(30.0, -10.0, 20.0, 10.0);
+    assertThat(list.hashCode(), is(equalTo(expected.hashCode())));
+    assertThat(list.toString(), is(equalTo(expected.toString())));
+    assertTrue(list.equals(new DoubleArrayList(new double[] {30, -10, 20, 10})));
+    assertTrue(list.subList(1, 3).equals(new DoubleArrayList(new double[] {-10, 20})));
+    assertThat(list.subList(1, 3).hashCode(), is(equalTo(expected.subList(1, 3).hashCode())));
+    assertFalse(list.equals(list.subList(0, 3)));
+  }
+
+  /**
+   * Test that elements are compared as Double.equals compares them.
+   */
+  @Test
+  public void testNaNAndNegativeZero() {
+    DoubleArrayList list = new DoubleArrayList(new double[] {0.0, Double.NaN, -0.0});
+    assertThat(list.indexOf(Double.NaN), is(equalTo(1)));
+    assertThat(list.indexOf(-0.0), is(equalTo(2)));
+    assertFalse(list.equals(new DoubleArrayList(new double[] {0.0, Double.NaN, 0.0})));
+    assertThat(list.hashCode(), is(equalTo(Arrays.asList(0.0, Double.NaN, -0.0).hashCode())));
+    list.sort();
+    assertThat(list.toString(), is(equalTo("[-0.0, 0.0, NaN]")));
+  }
+
+  /**
+   * Test growth from an empty array, and trimToSize.
+   */
+  @Test
+  public void testGrowth() {
+    DoubleArrayList list = new DoubleArrayList(0);
+    for (double i = 0; i < 100000; i++) {
+      list.add(i);
+    }
+    list.trimToSize();
+    assertThat(list.size(), is(equalTo(100000)));
+    assertThat(list.get(99999), is(equalTo(99999.0)));
+    list.add(0, -1);
+    assertThat(list.get(0), is(equalTo(-1.0)));
+    assertThat(list.binarySearch(50000), is(equalTo(50001)));
+  }
+
+  /**
+   * Test random operations on the list and on a subList against java.util.ArrayList.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    DoubleArrayList list = new DoubleArrayList();
+    List<Double> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      double value = random.nextInt(100);
+      list.add(value);
+      expected.add(value);
+    }
+    DoubleArrayList sub = list.subList(100, 900);
+    List<Double> expectedSub = expected.subList(100, 900);
+    for (int i = 0; i < 20000; i++) {
+      boolean onSub = random.nextBoolean();
+      DoubleArrayList l = onSub ? sub : list;
+      List<Double> e = onSub ? expectedSub : expected;
+      if (!onSub) {
+        // Changes to the list invalidate the subList, so take a new one
+        sub = null;
+      }
+      double value = random.nextInt(100);
+      switch (random.nextInt(6)) {
+        case 0:
+          int index = random.nextInt(e.size() + 1);
+          l.add(index, value);
+          e.add(index, value);
+          break;
+        case 1:
+          if (!e.isEmpty()) {
+            index = random.nextInt(e.size());
+            assertThat(l.remove(index), is(equalTo(e.remove(index))));
+          }
+          break;
+        case 2:
+          assertThat(l.removeValue(value), is(equalTo(e.remove(value))));
+          break;
+        case 3:
+          if (!e.isEmpty()) {
+            index = random.nextInt(e.size());
+            assertThat(l.set(index, value), is(equalTo(e.set(index, value))));
+          }
+          break;
+        case 4:
+          assertThat(l.indexOf(value), is(equalTo(e.indexOf(value))));
+          assertThat(l.lastIndexOf(value), is(equalTo(e.lastIndexOf(value))));
+          break;
+        default:
+          double[] values = {value, value + 1};
+          l.addAll(values);
+          e.addAll(Arrays.asList(value, value + 1));
+          break;
+      }
+      if (sub == null) {
+        int from = random.nextInt(expected.size() + 1);
+        int to = from + random.nextInt(expected.size() - from + 1);
+        sub = list.subList(from, to);
+        expectedSub = expected.subList(from, to);
+      }
+      assertThat(list.size(), is(equalTo(expected.size())));
+      assertThat(sub.size(), is(equalTo(expectedSub.size())));
+    }
+    assertThat(toList(list), is(equalTo(expected)));
+    assertThat(toList(sub), is(equalTo(expectedSub)));
+    sub.sort();
+    Collections.sort(expectedSub);
+    assertThat(toList(list), is(equalTo(expected)));
+    for (int i = 0; i < 100; i++) {
+      double value = random.nextInt(100);
+      int index = sub.binarySearch(value);
+      if (index >= 0) {
+        assertThat(sub.get(index), is(equalTo(value)));
+      } else {
+        assertThat(index, is(equalTo(Collections.binarySearch(expectedSub, value))));
+      }
+    }
+    ListIterator<Double> it = expected.listIterator();
+    for (DoubleArrayList.ListCursor c = list.listCursor(); c.hasNext();) {
+      assertThat(c.next(), is(equalTo(it.next())));
+      if (random.nextBoolean()) {
+        c.remove();
+        it.remove();
+      }
+    }
+    assertThat(toList(list), is(equalTo(expected)));
+  }
+
+  private static List<Double> toList(DoubleArrayList list) {
+    List<Double> values = new ArrayList<>();
+    for (double value : list.toArray()) {
+      values.add(value);
+    }
+    return values;
+  }
+}
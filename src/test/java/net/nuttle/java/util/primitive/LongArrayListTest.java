@@ -0,0 +1,282 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests LongArrayList.
+ * The random tests replay the same operations on a java.util.ArrayList, and on a subList of each,
+ * and compare the results.
+ * @author dan
+ *
+ */
+public class LongArrayListTest {
+
+  private LongArrayList list = null;
+  @Before
+  public void setUp() {
+    list = new LongArrayList(new long[] {30, -10, 20, 10});
+  }
+
+  /**
+   * Test the positional methods.
+   */
+  @Test
+  public void testPositional() {
+    assertThat(list.size(), is(equalTo(4)));
+    assertThat(list.get(1), is(equalTo(-10L)));
+    assertThat(list.set(1, 0), is(equalTo(-10L)));
+    list.add(0, 40);
+    list.add(50);
+    assertThat(list.toString(), is(equalTo("[40, 30, 0, 20, 10, 50]")));
+    assertThat(list.remove(2), is(equalTo(0L)));
+    assertTrue(list.removeValue(50));
+    assertFalse(list.removeValue(50));
+    list.addAll(1, new long[] {1, 2});
+    assertThat(list.toString(), is(equalTo("[40, 1, 2, 30, 20, 10]")));
+    list.add(2);
+    assertThat(list.indexOf(2), is(equalTo(2)));
+    assertThat(list.lastIndexOf(2), is(equalTo(6)));
+    assertThat(list.indexOf(3), is(equalTo(-1)));
+    assertTrue(list.contains(30));
+    list.clear();
+    assertTrue(list.isEmpty());
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetOutOfBounds() {
+    list.get(4);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testAddOutOfBounds() {
+    list.add(5, 0);
+  }
+
+  @Test
+  public void testSortAndBinarySearch() {
+    list.sort();
+    assertThat(list.toString(), is(equalTo("[-10, 10, 20, 30]")));
+    assertThat(list.binarySearch(20), is(equalTo(2)));
+    assertThat(list.binarySearch(15), is(equalTo(-3)));
+    LongArrayList sub = list.subList(1, 3);
+    assertThat(sub.binarySearch(20), is(equalTo(1)));
+    assertThat(sub.binarySearch(25), is(equalTo(-3)));
+    assertThat(sub.binarySearch(-20), is(equalTo(-1)));
+  }
+
+  /**
+   * Test that a subList sees and writes through to the list, and fails once the list is changed.
+   */
+  @Test
+  public void testSubList() {
+    LongArrayList sub = list.subList(1, 3);
+    assertThat(sub.toString(), is(equalTo("[-10, 20]")));
+    sub.set(0, -1);
+    sub.add(25);
+    assertThat(list.toString(), is(equalTo("[30, -1, 20, 25, 10]")));
+    LongArrayList subSub = sub.subList(1, 3);
+    subSub.remove(0);
+    assertThat(sub.toString(), is(equalTo("[-1, 25]")));
+    assertThat(list.size(), is(equalTo(4)));
+    sub.clear();
+    assertThat(list.toString(), is(equalTo("[30, 10]")));
+    list.add(0);
+    try {
+      sub.size();
+      throw new AssertionError("expected ConcurrentModificationException");
+    } catch (ConcurrentModificationException e) {
+      // expected
+    }
+  }
+
+  /**
+   * Test the cursor in both directions, with set, add and remove.
+   */
+  @Test
+  public void testListCursor() {
+    List<Long> values = new ArrayList<>();
+    for (LongArrayList.ListCursor c = list.listCursor(list.size()); c.hasPrevious();) {
+      long value = c.previous();
+      values.add(value);
+      if (value == 20) {
+        c.remove();
+      } else if (value == -10) {
+        c.set(-11);
+        c.add(-12);
+        assertThat(c.previous(), is(equalTo(-12L)));
+      }
+    }
+    assertThat(values.toString(), is(equalTo("[10, 20, -10, 30]")));
+    assertThat(list.toString(), is(equalTo("[30, -12, -11, 10]")));
+    LongArrayList.ListCursor c = list.listCursor(1);
+    assertThat(c.nextIndex(), is(equalTo(1)));
+    assertThat(c.next(), is(equalTo(-12L)));
+    assertThat(c.previousIndex(), is(equalTo(1)));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testListCursorRemoveTwice() {
+    LongArrayList.ListCursor c = list.listCursor();
+    c.next();
+    c.remove();
+    c.remove();
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testListCursorExhausted() {
+    new LongArrayList().listCursor().next();
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testListCursorModified() {
+    LongArrayList.ListCursor c = list.listCursor();
+    c.next();
+    list.add(40);
+    c.next();
+  }
+
+  /**
+   * Test equals, hashCode and toString against java.util.ArrayList.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    List<Long> expected = Arrays.asList(30L, -10L, 20L, 10L);
+    assertThat(list.hashCode(), is(equalTo(expected.hashCode())));
+    assertThat(list.toString(), is(equalTo(expected.toString())));
+    assertTrue(list.equals(new LongArrayList(new long[] {30, -10, 20, 10})));
+    assertTrue(list.subList(1, 3).equals(new LongArrayList(new long[] {-10, 20})));
+    assertThat(list.subList(1, 3).hashCode(), is(equalTo(expected.subList(1, 3).hashCode())));
+    assertFalse(list.equals(list.subList(0, 3)));
+  }
+
+  /**
+   * Test growth from an empty array, and trimToSize.
+   */
+  @Test
+  public void testGrowth() {
+    LongArrayList list = new LongArrayList(0);
+    for (long i = 0; i < 100000; i++) {
+      list.add(i);
+    }
+    list.trimToSize();
+    assertThat(list.size(), is(equalTo(100000)));
+    assertThat(list.get(99999), is(equalTo(99999L)));
+    list.add(0, -1);
+    assertThat(list.get(0), is(equalTo(-1L)));
+    assertThat(list.binarySearch(50000), is(equalTo(50001)));
+  }
+
+  /**
+   * Test random operations on the list and on a subList against java.util.ArrayList.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    LongArrayList list = new LongArrayList();
+    List<Long> expected = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      long value = random.nextInt(100);
+      list.add(value);
+      expected.add(value);
+    }
+    LongArrayList sub = list.subList(100, 900);
+    List<Long> expectedSub = expected.subList(100, 900);
+    for (int i = 0; i < 20000; i++) {
+      boolean onSub = random.nextBoolean();
+      LongArrayList l = onSub ? sub : list;
+      List<Long> e = onSub ? expectedSub : expected;
+      if (!onSub) {
+        // Changes to the list invalidate the subList, so take a new one
+        sub = null;
+      }
+      long value = random.nextInt(100);
+      switch (random.nextInt(6)) {
+        case 0:
+          int index = random.nextInt(e.size() + 1);
+          l.add(index, value);
+          e.add(index, value);
+          break;
+        case 1:
+          if (!e.isEmpty()) {
+            index = random.nextInt(e.size());
+            assertThat(l.remove(index), is(equalTo(e.remove(index))));
+          }
+          break;
+        case 2:
+          assertThat(l.removeValue(value), is(equalTo(e.remove(value))));
+          break;
+        case 3:
+          if (!e.isEmpty()) {
+            index = random.nextInt(e.size());
+            assertThat(l.set(index, value), is(equalTo(e.set(index, value))));
+          }
+          break;
+        case 4:
+          assertThat(l.indexOf(value), is(equalTo(e.indexOf(value))));
+          assertThat(l.lastIndexOf(value), is(equalTo(e.lastIndexOf(value))));
+          break;
+        default:
+          long[] values = {value, value + 1};
+          l.addAll(values);
+          e.addAll(Arrays.asList(value, value + 1));
+          break;
+      }
+      if (sub == null) {
+        int from = random.nextInt(expected.size() + 1);
+        int to = from + random.nextInt(expected.size() - from + 1);
+        sub = list.subList(from, to);
+        expectedSub = expected.subList(from, to);
+      }
+      assertThat(list.size(), is(equalTo(expected.size())));
+      assertThat(sub.size(), is(equalTo(expectedSub.size())));
+    }
+    assertThat(toList(list), is(equalTo(expected)));
+    assertThat(toList(sub), is(equalTo(expectedSub)));
+    sub.sort();
+    Collections.sort(expectedSub);
+    assertThat(toList(list), is(equalTo(expected)));
+    for (int i = 0; i < 100; i++) {
+      long value = random.nextInt(100);
+      int index = sub.binarySearch(value);
+      if (index >= 0) {
+        assertThat(sub.get(index), is(equalTo(value)));
+      } else {
+        assertThat(index, is(equalTo(Collections.binarySearch(expectedSub, value))));
+      }
+    }
+    ListIterator<Long> it = expected.listIterator();
+    for (LongArrayList.ListCursor c = list.listCursor(); c.hasNext();) {
+      assertThat(c.next(), is(equalTo(it.next())));
+      if (random.nextBoolean()) {
+        c.remove();
+        it.remove();
+      }
+    }
+    assertThat(toList(list), is(equalTo(expected)));
+  }
+
+  private static List<Long> toList(LongArrayList list) {
+    List<Long> values = new ArrayList<>();
+    for (long value : list.toArray()) {
+      values.add(value);
+    }
+    return values;
+  }
+}
@@ -0,0 +1,162 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests LongLongHashMap.
+ * The random tests replay the same operations on a java.util.HashMap and compare the results,
+ * using a small key range so that removals shift long probe sequences.
+ * @author dan
+ *
+ */
+public class LongLongHashMapTest {
+
+  private LongLongHashMap map = null;
+  @Before
+  public void setUp() {
+    map = new LongLongHashMap();
+    map.put(1, 10);
+    map.put(-2, 20);
+    map.put(0, 30);
+  }
+
+  /**
+   * Test get, including the zero key and absent keys.
+   */
+  @Test
+  public void testGet() {
+    assertThat(map.get(1), is(equalTo(10L)));
+    assertThat(map.get(-2), is(equalTo(20L)));
+    assertThat(map.get(0), is(equalTo(30L)));
+    assertThat(map.get(3), is(equalTo(0L)));
+    assertThat(map.getOrDefault(3, -1), is(equalTo(-1L)));
+    assertTrue(map.containsKey(0));
+    assertFalse(map.containsKey(3));
+    assertThat(map.size(), is(equalTo(3)));
+  }
+
+  /**
+   * Test that put returns the previous value, or the no-entry value.
+   */
+  @Test
+  public void testPut() {
+    assertThat(map.put(1, 11), is(equalTo(10L)));
+    assertThat(map.put(0, 31), is(equalTo(30L)));
+    assertThat(map.put(4, 40), is(equalTo(0L)));
+    assertThat(map.get(1), is(equalTo(11L)));
+    assertThat(map.size(), is(equalTo(4)));
+    LongLongHashMap other = new LongLongHashMap(0, 0.5f, -1);
+    assertThat(other.put(5, 50), is(equalTo(-1L)));
+    assertThat(other.get(6), is(equalTo(-1L)));
+  }
+
+  /**
+   * Test addTo.
+   */
+  @Test
+  public void testAddTo() {
+    assertThat(map.addTo(1, 5), is(equalTo(15L)));
+    assertThat(map.addTo(7, 5), is(equalTo(5L)));
+    assertThat(map.addTo(0, -30), is(equalTo(0L)));
+    assertTrue(map.containsKey(0));
+    assertThat(map.size(), is(equalTo(4)));
+  }
+
+  /**
+   * Test remove.
+   */
+  @Test
+  public void testRemove() {
+    assertThat(map.remove(1), is(equalTo(10L)));
+    assertThat(map.remove(1), is(equalTo(0L)));
+    assertThat(map.remove(0), is(equalTo(30L)));
+    assertFalse(map.containsKey(0));
+    assertThat(map.size(), is(equalTo(1)));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.containsKey(-2));
+  }
+
+  /**
+   * Test that the cursor visits every entry once, and that setValue writes through.
+   */
+  @Test
+  public void testCursor() {
+    long keySum = 0;
+    int count = 0;
+    for (LongLongHashMap.Cursor c = map.cursor(); c.advance();) {
+      keySum += c.key();
+      count++;
+      c.setValue(c.value() + 1);
+    }
+    assertThat(count, is(equalTo(3)));
+    assertThat(keySum, is(equalTo(-1L)));
+    assertThat(map.get(0), is(equalTo(31L)));
+    assertThat(map.get(-2), is(equalTo(21L)));
+    assertFalse(new LongLongHashMap().cursor().advance());
+  }
+
+  /**
+   * Test equals, hashCode and toString against java.util.HashMap.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    LongLongHashMap other = new LongLongHashMap(1000);
+    other.put(0, 30);
+    other.put(-2, 20);
+    other.put(1, 10);
+    assertTrue(map.equals(other));
+    assertThat(map.hashCode(), is(equalTo(other.hashCode())));
+    Map<Long, Long> expected = new HashMap<>();
+    expected.put(1L, 10L);
+    expected.put(-2L, 20L);
+    expected.put(0L, 30L);
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+    other.put(1, 11);
+    assertFalse(map.equals(other));
+    assertThat(new LongLongHashMap().toString(), is(equalTo("{}")));
+  }
+
+  /**
+   * Test random puts and removes against java.util.HashMap, across several resizes.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    LongLongHashMap map = new LongLongHashMap(4);
+    Map<Long, Long> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      long key = random.nextInt(5000) - 100;
+      long value = random.nextLong();
+      if (random.nextInt(3) == 0) {
+        Long previous = expected.remove(key);
+        assertThat(map.remove(key), is(equalTo(previous == null ? 0L : previous)));
+      } else {
+        Long previous = expected.put(key, value);
+        assertThat(map.put(key, value), is(equalTo(previous == null ? 0L : previous)));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    for (long key = -100; key < 4900; key++) {
+      assertThat(map.containsKey(key), is(equalTo(expected.containsKey(key))));
+    }
+    int count = 0;
+    for (LongLongHashMap.Cursor c = map.cursor(); c.advance();) {
+      assertThat(c.value(), is(equalTo(expected.get(c.key()))));
+      count++;
+    }
+    assertThat(count, is(equalTo(expected.size())));
+  }
+}
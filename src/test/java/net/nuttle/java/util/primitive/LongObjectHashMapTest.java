@@ -0,0 +1,136 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests LongObjectHashMap.
+ * @author dan
+ *
+ */
+public class LongObjectHashMapTest {
+
+  private LongObjectHashMap<String> map = null;
+  @Before
+  public void setUp() {
+    map = new LongObjectHashMap<>();
+    map.put(1, "one");
+    map.put(Long.MIN_VALUE, "min");
+    map.put(0, "zero");
+  }
+
+  /**
+   * Test get, including the zero key, null values and absent keys.
+   */
+  @Test
+  public void testGet() {
+    assertThat(map.get(1), is(equalTo("one")));
+    assertThat(map.get(Long.MIN_VALUE), is(equalTo("min")));
+    assertThat(map.get(0), is(equalTo("zero")));
+    assertNull(map.get(2));
+    assertThat(map.getOrDefault(2, "none"), is(equalTo("none")));
+    map.put(2, null);
+    assertNull(map.get(2));
+    assertTrue(map.containsKey(2));
+    assertThat(map.size(), is(equalTo(4)));
+  }
+
+  /**
+   * Test put and putIfAbsent.
+   */
+  @Test
+  public void testPut() {
+    assertThat(map.put(1, "uno"), is(equalTo("one")));
+    assertNull(map.put(3, "three"));
+    assertThat(map.putIfAbsent(3, "tres"), is(equalTo("three")));
+    assertThat(map.putIfAbsent(0, "cero"), is(equalTo("zero")));
+    assertNull(map.putIfAbsent(4, "four"));
+    assertThat(map.get(3), is(equalTo("three")));
+    assertThat(map.size(), is(equalTo(5)));
+  }
+
+  /**
+   * Test remove.
+   */
+  @Test
+  public void testRemove() {
+    assertThat(map.remove(0), is(equalTo("zero")));
+    assertNull(map.remove(0));
+    assertThat(map.remove(1), is(equalTo("one")));
+    assertThat(map.size(), is(equalTo(1)));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertNull(map.get(Long.MIN_VALUE));
+  }
+
+  /**
+   * Test that the cursor visits every entry once, and that setValue writes through.
+   */
+  @Test
+  public void testCursor() {
+    int count = 0;
+    for (LongObjectHashMap<String>.Cursor c = map.cursor(); c.advance();) {
+      c.setValue(c.value().toUpperCase());
+      count++;
+    }
+    assertThat(count, is(equalTo(3)));
+    assertThat(map.get(0), is(equalTo("ZERO")));
+    assertThat(map.get(1), is(equalTo("ONE")));
+  }
+
+  /**
+   * Test equals and hashCode against java.util.HashMap.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    LongObjectHashMap<String> other = new LongObjectHashMap<>();
+    other.put(0, "zero");
+    other.put(Long.MIN_VALUE, "min");
+    other.put(1, "one");
+    assertTrue(map.equals(other));
+    Map<Long, String> expected = new HashMap<>();
+    expected.put(1L, "one");
+    expected.put(Long.MIN_VALUE, "min");
+    expected.put(0L, "zero");
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+    other.put(1, null);
+    assertFalse(map.equals(other));
+  }
+
+  /**
+   * Test random puts and removes against java.util.HashMap, across several resizes.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    LongObjectHashMap<Integer> map = new LongObjectHashMap<>(4);
+    Map<Long, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      long key = (random.nextInt(5000) - 100) * 1000000007L;
+      if (random.nextInt(3) == 0) {
+        assertThat(map.remove(key), is(equalTo(expected.remove(key))));
+      } else {
+        assertThat(map.put(key, i), is(equalTo(expected.put(key, i))));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    int count = 0;
+    for (LongObjectHashMap<Integer>.Cursor c = map.cursor(); c.advance();) {
+      assertThat(c.value(), is(equalTo(expected.get(c.key()))));
+      count++;
+    }
+    assertThat(count, is(equalTo(expected.size())));
+  }
+}
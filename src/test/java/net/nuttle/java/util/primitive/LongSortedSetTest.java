@@ -0,0 +1,247 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests LongSortedSet.
+ * The random tests replay the same operations on a java.util.TreeSet and compare the results,
+ * with enough elements for many leaf splits and merges.
+ * @author dan
+ *
+ */
+public class LongSortedSetTest {
+
+  private LongSortedSet set = null;
+  @Before
+  public void setUp() {
+    set = new LongSortedSet(new long[] {30, -10, 20, 10});
+  }
+
+  /**
+   * Test the navigation methods, including the no-entry value.
+   */
+  @Test
+  public void testNavigation() {
+    assertThat(set.size(), is(equalTo(4)));
+    assertThat(set.first(), is(equalTo(-10L)));
+    assertThat(set.last(), is(equalTo(30L)));
+    assertThat(set.lower(10), is(equalTo(-10L)));
+    assertThat(set.floor(10), is(equalTo(10L)));
+    assertThat(set.ceiling(11), is(equalTo(20L)));
+    assertThat(set.higher(20), is(equalTo(30L)));
+    assertThat(set.higher(30), is(equalTo(Long.MIN_VALUE)));
+    assertThat(set.lower(-10), is(equalTo(Long.MIN_VALUE)));
+    assertTrue(set.contains(20));
+    assertFalse(set.contains(21));
+    LongSortedSet other = new LongSortedSet(-1);
+    assertThat(other.ceiling(5), is(equalTo(-1L)));
+    assertThat(other.pollFirst(), is(equalTo(-1L)));
+  }
+
+  @Test(expected = NoSuchElementException.class)
+  public void testFirstEmpty() {
+    new LongSortedSet().first();
+  }
+
+  /**
+   * Test add, remove, pollFirst and pollLast.
+   */
+  @Test
+  public void testAddRemove() {
+    assertFalse(set.add(10));
+    assertTrue(set.add(0));
+    assertTrue(set.remove(-10));
+    assertFalse(set.remove(-10));
+    assertThat(set.pollFirst(), is(equalTo(0L)));
+    assertThat(set.pollLast(), is(equalTo(30L)));
+    assertThat(set.toString(), is(equalTo("[10, 20]")));
+    set.clear();
+    assertTrue(set.isEmpty());
+  }
+
+  /**
+   * Test that views see and write through to the set, and reject elements outside their range.
+   */
+  @Test
+  public void testViews() {
+    LongSortedSet sub = set.subSet(-10, false, 30, true);
+    assertThat(sub.toString(), is(equalTo("[10, 20, 30]")));
+    assertThat(sub.first(), is(equalTo(10L)));
+    assertThat(sub.lower(10), is(equalTo(Long.MIN_VALUE)));
+    assertThat(sub.floor(100), is(equalTo(30L)));
+    assertThat(sub.headSet(20).size(), is(equalTo(1)));
+    assertThat(sub.tailSet(20, false).size(), is(equalTo(1)));
+    set.add(25);
+    assertThat(sub.size(), is(equalTo(4)));
+    sub.remove(20);
+    assertFalse(set.contains(20));
+    sub.clear();
+    assertThat(set.toString(), is(equalTo("[-10]")));
+    assertTrue(sub.isEmpty());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testViewAddOutOfRange() {
+    set.headSet(20).add(20);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testViewOutOfRange() {
+    set.headSet(20).tailSet(10).subSet(5, 15);
+  }
+
+  /**
+   * Test the cursors in both directions, and removal through them.
+   */
+  @Test
+  public void testCursor() {
+    List<Long> values = new ArrayList<>();
+    for (LongSortedSet.Cursor c = set.descendingCursor(); c.advance();) {
+      values.add(c.value());
+      if (c.value() == 10) {
+        c.remove();
+      }
+    }
+    assertThat(values.toString(), is(equalTo("[30, 20, 10, -10]")));
+    assertThat(set.toString(), is(equalTo("[-10, 20, 30]")));
+    assertFalse(new LongSortedSet().cursor().advance());
+  }
+
+  @Test(expected = ConcurrentModificationException.class)
+  public void testCursorModified() {
+    LongSortedSet.Cursor c = set.cursor();
+    c.advance();
+    set.add(40);
+    c.advance();
+  }
+
+  /**
+   * Test equals, hashCode and toString against java.util.TreeSet.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    LongSortedSet other = new LongSortedSet();
+    for (long value : new long[] {10, 20, 30, -10}) {
+      other.add(value);
+    }
+    assertTrue(set.equals(other));
+    Set<Long> expected = new HashSet<>();
+    for (long value : set.toArray()) {
+      expected.add(value);
+    }
+    assertThat(set.hashCode(), is(equalTo(expected.hashCode())));
+    assertThat(set.toString(), is(equalTo(new TreeSet<>(expected).toString())));
+    other.add(40);
+    assertFalse(set.equals(other));
+    assertTrue(set.subSet(10, 30).equals(new LongSortedSet(new long[] {20, 10})));
+  }
+
+  /**
+   * Test elements added in order, which fill their leaves, then thinned out by removal.
+   */
+  @Test
+  public void testAppend() {
+    LongSortedSet set = new LongSortedSet();
+    for (long i = 0; i < 100000; i++) {
+      set.add(i * 1000);
+    }
+    assertThat(set.size(), is(equalTo(100000)));
+    assertThat(set.floor(50000500), is(equalTo(50000000L)));
+    for (LongSortedSet.Cursor c = set.cursor(); c.advance();) {
+      if (c.value() % 7000 != 0) {
+        c.remove();
+      }
+    }
+    assertThat(set.size(), is(equalTo(14286)));
+    assertThat(set.higher(7000), is(equalTo(14000L)));
+    assertThat(set.subSet(0, 70000).size(), is(equalTo(10)));
+  }
+
+  /**
+   * Test random adds and removes against java.util.TreeSet, checking the navigation methods
+   * along the way and random views and cursors at the end.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    LongSortedSet set = new LongSortedSet();
+    TreeSet<Long> expected = new TreeSet<>();
+    for (int i = 0; i < 200000; i++) {
+      long value = random.nextInt(20000);
+      if (random.nextInt(3) == 0) {
+        assertThat(set.remove(value), is(equalTo(expected.remove(value))));
+      } else {
+        assertThat(set.add(value), is(equalTo(expected.add(value))));
+      }
+      if (i % 100 == 0) {
+        long probe = random.nextInt(20002) - 1;
+        assertThat(set.lower(probe), is(equalTo(orNoEntry(expected.lower(probe)))));
+        assertThat(set.floor(probe), is(equalTo(orNoEntry(expected.floor(probe)))));
+        assertThat(set.ceiling(probe), is(equalTo(orNoEntry(expected.ceiling(probe)))));
+        assertThat(set.higher(probe), is(equalTo(orNoEntry(expected.higher(probe)))));
+      }
+    }
+    assertThat(set.size(), is(equalTo(expected.size())));
+    assertThat(toList(set.cursor()), is(equalTo(new ArrayList<>(expected))));
+    for (int i = 0; i < 200; i++) {
+      long from = random.nextInt(20000);
+      long to = from + random.nextInt(2000);
+      boolean fromInclusive = random.nextBoolean();
+      boolean toInclusive = random.nextBoolean();
+      LongSortedSet sub = set.subSet(from, fromInclusive, to, toInclusive);
+      NavigableSet<Long> expectedSub = expected.subSet(from, fromInclusive, to, toInclusive);
+      assertThat(sub.size(), is(equalTo(expectedSub.size())));
+      assertThat(toList(sub.descendingCursor()), is(equalTo(new ArrayList<>(expectedSub.descendingSet()))));
+      long probe = from + random.nextInt(2000) - 1000;
+      assertThat(sub.lower(probe), is(equalTo(orNoEntry(expectedSub.lower(probe)))));
+      assertThat(sub.ceiling(probe), is(equalTo(orNoEntry(expectedSub.ceiling(probe)))));
+      if (i % 10 == 0) {
+        assertThat(sub.pollLast(), is(equalTo(orNoEntry(expectedSub.pollLast()))));
+        LongSortedSet.Cursor c = sub.cursor();
+        Iterator<Long> it = expectedSub.iterator();
+        while (it.hasNext()) {
+          assertTrue(c.advance());
+          assertThat(c.value(), is(equalTo(it.next())));
+          if (random.nextBoolean()) {
+            c.remove();
+            it.remove();
+          }
+        }
+        assertFalse(c.advance());
+      }
+    }
+    assertThat(set.size(), is(equalTo(expected.size())));
+    assertThat(toList(set.descendingCursor()), is(equalTo(new ArrayList<>(expected.descendingSet()))));
+  }
+
+  private static long orNoEntry(Long value) {
+    return value == null ? Long.MIN_VALUE : value;
+  }
+
+  private static ArrayList<Long> toList(LongSortedSet.Cursor c) {
+    ArrayList<Long> values = new ArrayList<>();
+    while (c.advance()) {
+      values.add(c.value());
+    }
+    return values;
+  }
+}
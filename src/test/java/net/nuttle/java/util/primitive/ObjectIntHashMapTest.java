@@ -0,0 +1,144 @@
+package net.nuttle.java.util.primitive;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.equalTo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ObjectIntHashMap.
+ * @author dan
+ *
+ */
+public class ObjectIntHashMapTest {
+
+  private ObjectIntHashMap<String> map = null;
+  @Before
+  public void setUp() {
+    map = new ObjectIntHashMap<>();
+    map.put("one", 1);
+    map.put("two", 2);
+    map.put("three", 3);
+  }
+
+  /**
+   * Test get and containsKey.
+   */
+  @Test
+  public void testGet() {
+    assertThat(map.get("one"), is(equalTo(1)));
+    assertThat(map.get(new String("three")), is(equalTo(3)));
+    assertThat(map.get("four"), is(equalTo(0)));
+    assertThat(map.getOrDefault("four", -1), is(equalTo(-1)));
+    assertTrue(map.containsKey("two"));
+    assertFalse(map.containsKey("four"));
+    assertThat(map.size(), is(equalTo(3)));
+  }
+
+  /**
+   * Test put, addTo and the no-entry value.
+   */
+  @Test
+  public void testPut() {
+    assertThat(map.put("one", 11), is(equalTo(1)));
+    assertThat(map.put("four", 4), is(equalTo(0)));
+    assertThat(map.addTo("four", 6), is(equalTo(10)));
+    assertThat(map.addTo("five", 5), is(equalTo(5)));
+    assertThat(map.size(), is(equalTo(5)));
+    ObjectIntHashMap<String> other = new ObjectIntHashMap<>(0, 0.5f, -1);
+    assertThat(other.get("a"), is(equalTo(-1)));
+    assertThat(other.addTo("a", 1), is(equalTo(0)));
+  }
+
+  /**
+   * Test that null keys are rejected.
+   */
+  @Test(expected = NullPointerException.class)
+  public void testPutNull() {
+    map.put(null, 0);
+  }
+
+  /**
+   * Test remove.
+   */
+  @Test
+  public void testRemove() {
+    assertThat(map.remove("two"), is(equalTo(2)));
+    assertThat(map.remove("two"), is(equalTo(0)));
+    assertThat(map.size(), is(equalTo(2)));
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.containsKey("one"));
+  }
+
+  /**
+   * Test that the cursor visits every entry once, and that setValue writes through.
+   */
+  @Test
+  public void testCursor() {
+    int sum = 0;
+    for (ObjectIntHashMap<String>.Cursor c = map.cursor(); c.advance();) {
+      sum += c.value();
+      c.setValue(c.key().length());
+    }
+    assertThat(sum, is(equalTo(6)));
+    assertThat(map.get("three"), is(equalTo(5)));
+  }
+
+  /**
+   * Test equals and hashCode against java.util.HashMap.
+   */
+  @Test
+  public void testEqualsAndHashCode() {
+    ObjectIntHashMap<String> other = new ObjectIntHashMap<>();
+    other.put("three", 3);
+    other.put("two", 2);
+    other.put("one", 1);
+    assertTrue(map.equals(other));
+    Map<String, Integer> expected = new HashMap<>();
+    expected.put("one", 1);
+    expected.put("two", 2);
+    expected.put("three", 3);
+    assertThat(map.hashCode(), is(equalTo(expected.hashCode())));
+    other.addTo("one", 1);
+    assertFalse(map.equals(other));
+  }
+
+  /**
+   * Test random counter updates and removes against java.util.HashMap, across several resizes.
+   */
+  @Test
+  public void testRandom() {
+    Random random = new Random(7);
+    ObjectIntHashMap<String> map = new ObjectIntHashMap<>(4);
+    Map<String, Integer> expected = new HashMap<>();
+    for (int i = 0; i < 200000; i++) {
+      String key = "k" + random.nextInt(5000);
+      if (random.nextInt(3) == 0) {
+        Integer previous = expected.remove(key);
+        assertThat(map.remove(key), is(equalTo(previous == null ? 0 : previous)));
+      } else {
+        Integer previous = expected.get(key);
+        int value = (previous == null ? 0 : previous) + i;
+        expected.put(key, value);
+        assertThat(map.addTo(key, i), is(equalTo(value)));
+      }
+    }
+    assertThat(map.size(), is(equalTo(expected.size())));
+    int count = 0;
+    for (ObjectIntHashMap<String>.Cursor c = map.cursor(); c.advance();) {
+      assertThat(c.value(), is(equalTo(expected.get(c.key()))));
+      count++;
+    }
+    assertThat(count, is(equalTo(expected.size())));
+  }
+}